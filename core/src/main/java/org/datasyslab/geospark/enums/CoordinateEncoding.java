@@ -0,0 +1,50 @@
+/*
+ * FILE: CoordinateEncoding
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.enums;
+
+import java.io.Serializable;
+
+/**
+ * Encoding of the coordinates of geometries serialized by Kryo for shuffles and caching.
+ */
+public enum CoordinateEncoding
+        implements Serializable
+{
+    /**
+     * 8 byte doubles. Lossless.
+     */
+    DOUBLE,
+
+    /**
+     * Coordinates rounded to a fixed number of decimal digits. Each coordinate is written as
+     * a variable length integer delta to the previous coordinate of the same geometry.
+     */
+    FIXED,
+
+    /**
+     * 4 byte floats. Only suitable when about 7 significant digits are enough, e.g. for visualization.
+     */
+    FLOAT;
+
+    public static CoordinateEncoding getCoordinateEncoding(String str)
+    {
+        for (CoordinateEncoding me : CoordinateEncoding.values()) {
+            if (me.name().equalsIgnoreCase(str)) { return me; }
+        }
+        return null;
+    }
+}
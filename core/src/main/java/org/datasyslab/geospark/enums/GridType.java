@@ -54,7 +54,23 @@ public enum GridType
     /**
      * K-D-B-tree (k-dimensional B-tree)
      */
-    KDBTREE;
+    KDBTREE,
+
+    /**
+     * Ranges of the Z-order curve over the dataset boundary
+     */
+    ZORDER,
+
+    /**
+     * Ranges of geohashes, i.e. of the Z-order curve over the longitude and latitude of the world.
+     * Datasets beyond longitude and latitude bounds are partitioned with ZORDER instead.
+     */
+    GEOHASH,
+
+    /**
+     * Rectangles of similar estimated cost, cut from a histogram of the whole dataset
+     */
+    HISTOGRAM;
 
     /**
      * Gets the grid type.
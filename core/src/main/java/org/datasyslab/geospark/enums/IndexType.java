@@ -35,7 +35,12 @@ public enum IndexType
     /**
      * The rtree.
      */
-    RTREE;
+    RTREE,
+
+    /**
+     * The R-Tree packed into flat primitive arrays.
+     */
+    PACKED_RTREE;
 
     /**
      * Gets the index type.
@@ -0,0 +1,58 @@
+/*
+ * FILE: JoinAlgorithm
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.enums;
+
+import java.io.Serializable;
+
+/**
+ * Algorithm used to join a pair of co-located partitions.
+ */
+public enum JoinAlgorithm
+        implements Serializable
+{
+    /**
+     * Index lookup if an index is requested or already exists, nested loop otherwise.
+     */
+    DEFAULT,
+
+    /**
+     * Sort the envelopes of both sides by minimum X and sweep them together.
+     * Doesn't build an index.
+     */
+    PLANE_SWEEP,
+
+    /**
+     * Choose between nested loop, index on either side and plane sweep for each partition
+     * based on the number of geometries on both sides of that partition.
+     */
+    ADAPTIVE,
+
+    /**
+     * Build an index over the build side on the driver, broadcast it and probe it with
+     * the other side without partitioning or shuffling either side.
+     * Only suitable when the build side is small.
+     */
+    BROADCAST;
+
+    public static JoinAlgorithm getJoinAlgorithm(String str)
+    {
+        for (JoinAlgorithm me : JoinAlgorithm.values()) {
+            if (me.name().equalsIgnoreCase(str)) { return me; }
+        }
+        return null;
+    }
+}
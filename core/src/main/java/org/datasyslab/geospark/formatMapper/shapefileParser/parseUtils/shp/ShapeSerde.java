@@ -104,6 +104,14 @@ public class ShapeSerde
         return parser.parseShape(reader);
     }
 
+    public static Geometry deserialize(byte[] input, int offset, int length, GeometryFactory factory)
+    {
+        ShapeReader reader = ShapeReaderFactory.fromByteBuffer(ByteBuffer.wrap(input, offset, length));
+        ShapeType type = ShapeType.getType(reader.readByte());
+        ShapeParser parser = type.getParser(factory);
+        return parser.parseShape(reader);
+    }
+
     private static final int POINT_LENGTH = 1 + 2 * DOUBLE_LENGTH;
 
     private static byte[] serialize(Point point)
@@ -0,0 +1,161 @@
+/*
+ * FILE: CoordinateQuantizer
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.datasyslab.geospark.geometryObjects;
+
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFilter;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.datasyslab.geospark.enums.CoordinateEncoding;
+
+import java.io.Serializable;
+
+/**
+ * Rounds coordinates exactly like {@link GeometrySerde} writes them in a lossy
+ * {@link CoordinateEncoding}.
+ * <p>
+ * Spatial partitioning places the rounded geometries, so that the partitions they are shuffled
+ * to match the coordinates they are read back with, e.g. when joins de-duplicate their results.
+ * Rounding is monotonic and rounding a rounded coordinate again leaves it unchanged.
+ */
+public class CoordinateQuantizer
+        implements Serializable
+{
+    /**
+     * Coordinates scaled for the fixed precision encoding must stay below this absolute value,
+     * so that they and their deltas are exact. Other geometries are written as doubles.
+     */
+    static final double MAX_SCALED_COORDINATE = 1L << 53;
+
+    private final CoordinateEncoding coordinateEncoding;
+    private final double scale;
+
+    /**
+     * @param coordinateEncoding Encoding of the coordinates, see {@link GeometrySerde}
+     * @param precision Number of decimal digits kept by {@link CoordinateEncoding#FIXED}
+     */
+    public CoordinateQuantizer(CoordinateEncoding coordinateEncoding, int precision)
+    {
+        this.coordinateEncoding = coordinateEncoding;
+        this.scale = Math.pow(10, precision);
+    }
+
+    /**
+     * Returns true if the encoding changes coordinates, i.e. if it is not {@link CoordinateEncoding#DOUBLE}
+     */
+    public static boolean isLossy(CoordinateEncoding coordinateEncoding)
+    {
+        return coordinateEncoding != null && coordinateEncoding != CoordinateEncoding.DOUBLE;
+    }
+
+    /**
+     * Returns the encoding the geometry is written with. Geometries too large for the fixed
+     * precision encoding are written as doubles.
+     */
+    static CoordinateEncoding getEncoding(Geometry geometry, CoordinateEncoding coordinateEncoding, double scale)
+    {
+        if (coordinateEncoding != CoordinateEncoding.FIXED) {
+            return coordinateEncoding;
+        }
+
+        final Envelope envelope = geometry.getEnvelopeInternal();
+        if (envelope.isNull()) {
+            return coordinateEncoding;
+        }
+
+        final double maxAbsCoordinate = Math.max(
+                Math.max(Math.abs(envelope.getMinX()), Math.abs(envelope.getMaxX())),
+                Math.max(Math.abs(envelope.getMinY()), Math.abs(envelope.getMaxY())));
+        // Also false for infinite and NaN coordinates
+        return maxAbsCoordinate * scale < MAX_SCALED_COORDINATE ? CoordinateEncoding.FIXED : CoordinateEncoding.DOUBLE;
+    }
+
+    /**
+     * Returns a copy of the geometry, including its user data, with the coordinates it would be
+     * read back with after serialization. Returns the geometry itself if they are unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    public <G extends Geometry> G quantize(G geometry)
+    {
+        if (geometry instanceof Circle) {
+            final Circle circle = (Circle) geometry;
+            final Circle quantized = new Circle(quantize(circle.getCenterGeometry()), circle.getRadius());
+            quantized.setUserData(circle.getUserData());
+            return (G) quantized;
+        }
+
+        final CoordinateEncoding encoding = getEncoding(geometry, coordinateEncoding, scale);
+        if (encoding == CoordinateEncoding.DOUBLE) {
+            return geometry;
+        }
+
+        final G quantized = (G) geometry.copy();
+        quantized.apply(new CoordinateSequenceFilter()
+        {
+            @Override
+            public void filter(CoordinateSequence coordinates, int i)
+            {
+                coordinates.setOrdinate(i, CoordinateSequence.X, quantize(coordinates.getX(i), encoding));
+                coordinates.setOrdinate(i, CoordinateSequence.Y, quantize(coordinates.getY(i), encoding));
+            }
+
+            @Override
+            public boolean isDone()
+            {
+                return false;
+            }
+
+            @Override
+            public boolean isGeometryChanged()
+            {
+                return true;
+            }
+        });
+        return quantized;
+    }
+
+    /**
+     * Returns the smallest envelope that contains the envelope and its rounded corners. Since
+     * rounding is monotonic, it contains every rounded geometry inside the envelope.
+     */
+    public Envelope quantize(Envelope envelope)
+    {
+        final Envelope quantized = new Envelope(envelope);
+        if (envelope.isNull() || coordinateEncoding == CoordinateEncoding.FIXED
+                && Math.max(Math.max(Math.abs(envelope.getMinX()), Math.abs(envelope.getMaxX())),
+                Math.max(Math.abs(envelope.getMinY()), Math.abs(envelope.getMaxY()))) * scale >= MAX_SCALED_COORDINATE) {
+            return quantized;
+        }
+
+        quantized.expandToInclude(quantize(envelope.getMinX(), coordinateEncoding), quantize(envelope.getMinY(), coordinateEncoding));
+        quantized.expandToInclude(quantize(envelope.getMaxX(), coordinateEncoding), quantize(envelope.getMaxY(), coordinateEncoding));
+        return quantized;
+    }
+
+    private double quantize(double coordinate, CoordinateEncoding encoding)
+    {
+        switch (encoding) {
+            case FIXED:
+                return Math.round(coordinate * scale) / scale;
+            case FLOAT:
+                return (float) coordinate;
+            default:
+                return coordinate;
+        }
+    }
+}
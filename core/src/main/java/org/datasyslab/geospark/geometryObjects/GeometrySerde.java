@@ -18,22 +18,26 @@
 package org.datasyslab.geospark.geometryObjects;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
 import com.esotericsoftware.kryo.Registration;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.MultiLineString;
 import org.locationtech.jts.geom.MultiPoint;
 import org.locationtech.jts.geom.MultiPolygon;
 import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.apache.log4j.Logger;
-import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeSerde;
+import org.datasyslab.geospark.enums.CoordinateEncoding;
 
 /**
  * Provides methods to efficiently serialize and deserialize geometry types.
@@ -43,6 +47,19 @@ import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.Shape
  * <p>
  * First byte contains {@link Type#id}. Then go type-specific bytes, followed
  * by user-data attached to the geometry.
+ * <p>
+ * Shapes are written straight into the Kryo output and read straight into coordinate sequences,
+ * without intermediate buffers. A shape starts with a byte for its {@link ShapeKind} in the lower
+ * four bits and its {@link CoordinateEncoding} in the upper four bits, followed by the number of
+ * decimal digits for the fixed precision encoding. Then go the numbers of parts and coordinates
+ * as variable length integers and the XY coordinates in the given encoding. Since every shape
+ * records its encoding, shapes are read regardless of the encoding configured for writing.
+ * <p>
+ * FIXED and FLOAT encodings round coordinates. Spatial partitioning places geometries by their
+ * rounded coordinates, see {@link CoordinateQuantizer}.
+ * <p>
+ * User data starts with a byte for its {@link UserDataType}. Strings and Spark SQL rows are
+ * written without their class, other objects are written by Kryo along with their class.
  */
 public class GeometrySerde
         extends Serializer
@@ -51,6 +68,52 @@ public class GeometrySerde
     private static final Logger log = Logger.getLogger(GeometrySerde.class);
     private static final GeometryFactory geometryFactory = new GeometryFactory();
 
+    /**
+     * Class of the rows of Spark SQL, which are attached to the geometries of spatial joins,
+     * or null if Spark SQL is not on the class path
+     */
+    private static final Class<?> unsafeRowClass = findUnsafeRowClass();
+
+    private static final CoordinateEncoding[] coordinateEncodings = CoordinateEncoding.values();
+
+    /**
+     * Maximum number of decimal digits of the fixed precision encoding
+     */
+    private static final int MAX_PRECISION = 15;
+
+    private final CoordinateEncoding coordinateEncoding;
+    private final int precision;
+    private final double scale;
+
+    /**
+     * Last coordinate written or read in the fixed precision encoding, scaled. Like the Kryo
+     * instance this serializer is registered with, it is only used by one thread at a time.
+     */
+    private long previousX;
+    private long previousY;
+
+    public GeometrySerde()
+    {
+        this(CoordinateEncoding.DOUBLE, 0);
+    }
+
+    /**
+     * @param coordinateEncoding Encoding of the coordinates of the shapes written by this serializer
+     * @param precision Number of decimal digits kept by {@link CoordinateEncoding#FIXED}
+     */
+    public GeometrySerde(CoordinateEncoding coordinateEncoding, int precision)
+    {
+        if (coordinateEncoding == null) {
+            throw new IllegalArgumentException("Coordinate encoding must be one of double, fixed or float");
+        }
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between 0 and " + MAX_PRECISION + ": " + precision);
+        }
+        this.coordinateEncoding = coordinateEncoding;
+        this.precision = precision;
+        this.scale = Math.pow(10, precision);
+    }
+
     private enum Type
     {
         SHAPE(0),
@@ -77,6 +140,38 @@ public class GeometrySerde
         }
     }
 
+    private enum ShapeKind
+    {
+        POINT,
+        LINESTRING,
+        POLYGON,
+        MULTIPOINT,
+        MULTILINESTRING,
+        MULTIPOLYGON;
+
+        private static final ShapeKind[] values = values();
+
+        public static ShapeKind fromId(int id)
+        {
+            return values[id];
+        }
+    }
+
+    private enum UserDataType
+    {
+        NULL,
+        STRING,
+        UNSAFE_ROW,
+        OBJECT;
+
+        private static final UserDataType[] values = values();
+
+        public static UserDataType fromId(int id)
+        {
+            return values[id];
+        }
+    }
+
     @Override
     public void write(Kryo kryo, Output out, Object object)
     {
@@ -123,17 +218,132 @@ public class GeometrySerde
 
     private void writeGeometry(Kryo kryo, Output out, Geometry geometry)
     {
-        byte[] data = ShapeSerde.serialize(geometry);
-        out.write(data, 0, data.length);
+        writeShape(out, geometry);
         writeUserData(kryo, out, geometry);
     }
 
+    private void writeShape(Output out, Geometry geometry)
+    {
+        final CoordinateEncoding encoding = getEncoding(geometry);
+        if (geometry instanceof Point) {
+            writeShapeHeader(out, ShapeKind.POINT, encoding);
+            writeCoordinates(out, ((Point) geometry).getCoordinateSequence(), encoding);
+        }
+        else if (geometry instanceof LineString) {
+            writeShapeHeader(out, ShapeKind.LINESTRING, encoding);
+            writeCoordinates(out, ((LineString) geometry).getCoordinateSequence(), encoding);
+        }
+        else if (geometry instanceof Polygon) {
+            writeShapeHeader(out, ShapeKind.POLYGON, encoding);
+            writePolygon(out, (Polygon) geometry, encoding);
+        }
+        else if (geometry instanceof MultiPoint) {
+            writeShapeHeader(out, ShapeKind.MULTIPOINT, encoding);
+            out.writeVarInt(geometry.getNumGeometries(), true);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(out, ((Point) geometry.getGeometryN(i)).getCoordinateSequence(), encoding);
+            }
+        }
+        else if (geometry instanceof MultiLineString) {
+            writeShapeHeader(out, ShapeKind.MULTILINESTRING, encoding);
+            out.writeVarInt(geometry.getNumGeometries(), true);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writeCoordinates(out, ((LineString) geometry.getGeometryN(i)).getCoordinateSequence(), encoding);
+            }
+        }
+        else if (geometry instanceof MultiPolygon) {
+            writeShapeHeader(out, ShapeKind.MULTIPOLYGON, encoding);
+            out.writeVarInt(geometry.getNumGeometries(), true);
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                writePolygon(out, (Polygon) geometry.getGeometryN(i), encoding);
+            }
+        }
+        else {
+            throw new UnsupportedOperationException("Geometry type is not supported: " +
+                    geometry.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Returns the configured encoding, unless the coordinates of the geometry are out of range
+     * of the fixed precision encoding
+     */
+    private CoordinateEncoding getEncoding(Geometry geometry)
+    {
+        return CoordinateQuantizer.getEncoding(geometry, coordinateEncoding, scale);
+    }
+
+    private void writeShapeHeader(Output out, ShapeKind kind, CoordinateEncoding encoding)
+    {
+        out.writeByte((byte) (kind.ordinal() | encoding.ordinal() << 4));
+        if (encoding == CoordinateEncoding.FIXED) {
+            out.writeByte((byte) precision);
+        }
+        previousX = 0;
+        previousY = 0;
+    }
+
+    private void writePolygon(Output out, Polygon polygon, CoordinateEncoding encoding)
+    {
+        if (polygon.isEmpty()) {
+            out.writeVarInt(0, true);
+            return;
+        }
+
+        out.writeVarInt(polygon.getNumInteriorRing() + 1, true);
+        writeCoordinates(out, polygon.getExteriorRing().getCoordinateSequence(), encoding);
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            writeCoordinates(out, polygon.getInteriorRingN(i).getCoordinateSequence(), encoding);
+        }
+    }
+
+    private void writeCoordinates(Output out, CoordinateSequence coordinates, CoordinateEncoding encoding)
+    {
+        final int size = coordinates.size();
+        out.writeVarInt(size, true);
+        switch (encoding) {
+            case FIXED:
+                for (int i = 0; i < size; i++) {
+                    final long x = Math.round(coordinates.getX(i) * scale);
+                    final long y = Math.round(coordinates.getY(i) * scale);
+                    out.writeVarLong(x - previousX, false);
+                    out.writeVarLong(y - previousY, false);
+                    previousX = x;
+                    previousY = y;
+                }
+                break;
+            case FLOAT:
+                for (int i = 0; i < size; i++) {
+                    out.writeFloat((float) coordinates.getX(i));
+                    out.writeFloat((float) coordinates.getY(i));
+                }
+                break;
+            default:
+                for (int i = 0; i < size; i++) {
+                    out.writeDouble(coordinates.getX(i));
+                    out.writeDouble(coordinates.getY(i));
+                }
+        }
+    }
+
     private void writeUserData(Kryo kryo, Output out, Geometry geometry)
     {
-        out.writeBoolean(geometry.getUserData() != null);
-        if (geometry.getUserData() != null) {
-            kryo.writeClass(out, geometry.getUserData().getClass());
-            kryo.writeObject(out, geometry.getUserData());
+        final Object userData = geometry.getUserData();
+        if (userData == null) {
+            out.writeByte((byte) UserDataType.NULL.ordinal());
+        }
+        else if (userData instanceof String) {
+            out.writeByte((byte) UserDataType.STRING.ordinal());
+            out.writeString((String) userData);
+        }
+        else if (userData.getClass() == unsafeRowClass) {
+            out.writeByte((byte) UserDataType.UNSAFE_ROW.ordinal());
+            ((KryoSerializable) userData).write(kryo, out);
+        }
+        else {
+            out.writeByte((byte) UserDataType.OBJECT.ordinal());
+            kryo.writeClass(out, userData.getClass());
+            kryo.writeObject(out, userData);
         }
     }
 
@@ -179,18 +389,121 @@ public class GeometrySerde
 
     private Object readUserData(Kryo kryo, Input input)
     {
-        Object userData = null;
-        if (input.readBoolean()) {
-            Registration clazz = kryo.readClass(input);
-            userData = kryo.readObject(input, clazz.getType());
+        switch (UserDataType.fromId(input.readByte())) {
+            case NULL:
+                return null;
+            case STRING:
+                return input.readString();
+            case UNSAFE_ROW: {
+                KryoSerializable row = (KryoSerializable) kryo.newInstance(unsafeRowClass);
+                row.read(kryo, input);
+                return row;
+            }
+            default: {
+                Registration clazz = kryo.readClass(input);
+                return kryo.readObject(input, clazz.getType());
+            }
         }
-        return userData;
     }
 
     private Geometry readGeometry(Kryo kryo, Input input)
     {
-        Geometry geometry = ShapeSerde.deserialize(input, geometryFactory);
+        Geometry geometry = readShape(input);
         geometry.setUserData(readUserData(kryo, input));
         return geometry;
     }
+
+    private Geometry readShape(Input input)
+    {
+        final int header = input.readByte() & 0xFF;
+        final ShapeKind kind = ShapeKind.fromId(header & 0x0F);
+        final CoordinateEncoding encoding = coordinateEncodings[header >>> 4];
+        final double coordinateScale = encoding == CoordinateEncoding.FIXED ? Math.pow(10, input.readByte()) : 0;
+        previousX = 0;
+        previousY = 0;
+
+        switch (kind) {
+            case POINT:
+                return geometryFactory.createPoint(readCoordinates(input, encoding, coordinateScale));
+            case LINESTRING:
+                return geometryFactory.createLineString(readCoordinates(input, encoding, coordinateScale));
+            case POLYGON:
+                return readPolygon(input, encoding, coordinateScale);
+            case MULTIPOINT: {
+                Point[] points = new Point[input.readVarInt(true)];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = geometryFactory.createPoint(readCoordinates(input, encoding, coordinateScale));
+                }
+                return geometryFactory.createMultiPoint(points);
+            }
+            case MULTILINESTRING: {
+                LineString[] lineStrings = new LineString[input.readVarInt(true)];
+                for (int i = 0; i < lineStrings.length; i++) {
+                    lineStrings[i] = geometryFactory.createLineString(readCoordinates(input, encoding, coordinateScale));
+                }
+                return geometryFactory.createMultiLineString(lineStrings);
+            }
+            default: {
+                Polygon[] polygons = new Polygon[input.readVarInt(true)];
+                for (int i = 0; i < polygons.length; i++) {
+                    polygons[i] = readPolygon(input, encoding, coordinateScale);
+                }
+                return geometryFactory.createMultiPolygon(polygons);
+            }
+        }
+    }
+
+    private Polygon readPolygon(Input input, CoordinateEncoding encoding, double coordinateScale)
+    {
+        final int numRings = input.readVarInt(true);
+        if (numRings == 0) {
+            return geometryFactory.createPolygon((LinearRing) null, null);
+        }
+
+        final LinearRing shell = geometryFactory.createLinearRing(readCoordinates(input, encoding, coordinateScale));
+        final LinearRing[] holes = new LinearRing[numRings - 1];
+        for (int i = 0; i < holes.length; i++) {
+            holes[i] = geometryFactory.createLinearRing(readCoordinates(input, encoding, coordinateScale));
+        }
+        return geometryFactory.createPolygon(shell, holes);
+    }
+
+    private CoordinateSequence readCoordinates(Input input, CoordinateEncoding encoding, double coordinateScale)
+    {
+        final Coordinate[] coordinates = new Coordinate[input.readVarInt(true)];
+        switch (encoding) {
+            case FIXED:
+                for (int i = 0; i < coordinates.length; i++) {
+                    previousX += input.readVarLong(false);
+                    previousY += input.readVarLong(false);
+                    coordinates[i] = new Coordinate(previousX / coordinateScale, previousY / coordinateScale);
+                }
+                break;
+            case FLOAT:
+                for (int i = 0; i < coordinates.length; i++) {
+                    final double x = input.readFloat();
+                    final double y = input.readFloat();
+                    coordinates[i] = new Coordinate(x, y);
+                }
+                break;
+            default:
+                for (int i = 0; i < coordinates.length; i++) {
+                    final double x = input.readDouble();
+                    final double y = input.readDouble();
+                    coordinates[i] = new Coordinate(x, y);
+                }
+        }
+        return geometryFactory.getCoordinateSequenceFactory().create(coordinates);
+    }
+
+    private static Class<?> findUnsafeRowClass()
+    {
+        try {
+            return Class.forName("org.apache.spark.sql.catalyst.expressions.UnsafeRow");
+        }
+        catch (ClassNotFoundException e) {
+            log.debug("Spark SQL is not on the class path. Rows are serialized as other user data.");
+            return null;
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * FILE: IdentifiedUserData
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.geometryObjects;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.Serializable;
+
+/**
+ * User data of a geometry which carries a record ID assigned by
+ * {@link org.datasyslab.geospark.spatialRDD.SpatialRDD#assignRecordIds()}
+ * next to the original user data.
+ * <p>
+ * Record IDs let operators shuffle and group on a single long instead of hashing,
+ * comparing and serializing whole geometries.
+ */
+public final class IdentifiedUserData
+        implements Serializable
+{
+    private final long id;
+    private final Object userData;
+
+    public IdentifiedUserData(long id, Object userData)
+    {
+        this.id = id;
+        this.userData = userData;
+    }
+
+    public long getId()
+    {
+        return id;
+    }
+
+    public Object getUserData()
+    {
+        return userData;
+    }
+
+    /**
+     * Returns the record ID of the geometry.
+     *
+     * @throws IllegalArgumentException if the geometry doesn't have a record ID
+     */
+    public static long getRecordId(Geometry geometry)
+    {
+        final Object userData = geometry.getUserData();
+        if (!(userData instanceof IdentifiedUserData)) {
+            throw new IllegalArgumentException("Geometry doesn't have a record ID. Please call SpatialRDD.assignRecordIds() first.");
+        }
+        return ((IdentifiedUserData) userData).id;
+    }
+
+    /**
+     * Returns the user data of the geometry without the record ID.
+     */
+    public static Object getOriginalUserData(Geometry geometry)
+    {
+        final Object userData = geometry.getUserData();
+        if (userData instanceof IdentifiedUserData) {
+            return ((IdentifiedUserData) userData).userData;
+        }
+        return userData;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof IdentifiedUserData)) {
+            return false;
+        }
+        final IdentifiedUserData other = (IdentifiedUserData) o;
+        return id == other.id && (userData == null ? other.userData == null : userData.equals(other.userData));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Long.hashCode(id);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.valueOf(userData);
+    }
+
+    /**
+     * Writes the record ID as a variable-length long followed by the original user data.
+     */
+    public static class Serde
+            extends Serializer<IdentifiedUserData>
+    {
+        @Override
+        public void write(Kryo kryo, Output out, IdentifiedUserData identifiedUserData)
+        {
+            out.writeLong(identifiedUserData.id, true);
+            kryo.writeClassAndObject(out, identifiedUserData.userData);
+        }
+
+        @Override
+        public IdentifiedUserData read(Kryo kryo, Input input, Class<IdentifiedUserData> aClass)
+        {
+            final long id = input.readLong(true);
+            return new IdentifiedUserData(id, kryo.readClassAndObject(input));
+        }
+    }
+}
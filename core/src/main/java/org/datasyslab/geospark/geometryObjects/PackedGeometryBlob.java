@@ -0,0 +1,128 @@
+/*
+ * FILE: PackedGeometryBlob
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.geometryObjects;
+
+import com.esotericsoftware.kryo.io.Output;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.MultiPoint;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.datasyslab.geospark.formatMapper.shapefileParser.parseUtils.shp.ShapeSerde;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
+
+/**
+ * Items of a {@link PackedRTree} in serialized form.
+ * <p>
+ * Points, line strings, polygons and their multi variants are stored one after another in a single
+ * byte array, in {@link ShapeSerde} format, and are decoded on demand. The user data of these
+ * geometries and all other items (circles, geometry collections) are kept as objects.
+ */
+public class PackedGeometryBlob
+        implements PackedRTree.ItemDecoder
+{
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    private final byte[] blob;
+    /**
+     * Start of every item in the blob, followed by the end of the last item. Items
+     * that are kept as objects take no bytes.
+     */
+    private final int[] offsets;
+    /**
+     * User data of the items stored in the blob, or the items themselves
+     */
+    private final Object[] objects;
+
+    public PackedGeometryBlob(byte[] blob, int[] offsets, Object[] objects)
+    {
+        this.blob = blob;
+        this.offsets = offsets;
+        this.objects = objects;
+    }
+
+    public static PackedGeometryBlob encode(Object[] items)
+    {
+        final Output output = new Output(4096, -1);
+        final int[] offsets = new int[items.length + 1];
+        final Object[] objects = new Object[items.length];
+        for (int i = 0; i < items.length; i++) {
+            offsets[i] = output.position();
+            if (isShape(items[i])) {
+                final Geometry geometry = (Geometry) items[i];
+                output.writeBytes(ShapeSerde.serialize(geometry));
+                objects[i] = geometry.getUserData();
+            }
+            else {
+                objects[i] = items[i];
+            }
+        }
+        offsets[items.length] = output.position();
+        return new PackedGeometryBlob(output.toBytes(), offsets, objects);
+    }
+
+    private static boolean isShape(Object item)
+    {
+        return item instanceof Point || item instanceof LineString
+                || item instanceof Polygon || item instanceof MultiPoint
+                || item instanceof MultiLineString || item instanceof MultiPolygon;
+    }
+
+    @Override
+    public int size()
+    {
+        return objects.length;
+    }
+
+    @Override
+    public Object decode(int itemId)
+    {
+        if (!isInBlob(itemId)) {
+            return objects[itemId];
+        }
+
+        final Geometry geometry = ShapeSerde.deserialize(blob, offsets[itemId], offsets[itemId + 1] - offsets[itemId], geometryFactory);
+        geometry.setUserData(objects[itemId]);
+        return geometry;
+    }
+
+    /**
+     * Returns true if the item is stored in the blob, false if it is kept as an object
+     */
+    public boolean isInBlob(int itemId)
+    {
+        return offsets[itemId + 1] > offsets[itemId];
+    }
+
+    public byte[] getBlob()
+    {
+        return blob;
+    }
+
+    public int[] getOffsets()
+    {
+        return offsets;
+    }
+
+    public Object[] getObjects()
+    {
+        return objects;
+    }
+}
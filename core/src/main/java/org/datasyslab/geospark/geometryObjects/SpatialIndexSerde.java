@@ -29,6 +29,7 @@ import org.locationtech.jts.index.strtree.AbstractNode;
 import org.locationtech.jts.index.strtree.ItemBoundable;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.apache.log4j.Logger;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,9 +37,11 @@ import java.util.List;
 /**
  * Provides methods to efficiently serialize and deserialize spatialIndex types.
  * <p>
- * Support Quadtree, STRtree types
+ * Support Quadtree, STRtree and PackedRTree types
  * <p>
- * trees are serialized recursively.
+ * Quadtree and STRtree are serialized recursively. PackedRTree is serialized as contiguous blocks
+ * of node bounds, child offsets and a geometry blob with offsets. Its geometries are decoded
+ * lazily after deserialization, when a query first reaches them.
  */
 public class SpatialIndexSerde
         extends Serializer
@@ -64,7 +67,8 @@ public class SpatialIndexSerde
     {
 
         QUADTREE(0),
-        RTREE(1);
+        RTREE(1),
+        PACKED_RTREE(2);
 
         private final int id;
 
@@ -138,6 +142,34 @@ public class SpatialIndexSerde
                 }
             }
         }
+        else if (o instanceof PackedRTree) {
+            // serialize packed rtree as contiguous blocks: levels, child offsets, bounds, geometries
+            writeType(output, Type.PACKED_RTREE);
+            PackedRTree tree = (PackedRTree) o;
+            output.writeInt(tree.getNodeCapacity());
+            int[] levelEnds = tree.getLevelEnds();
+            output.writeInt(tree.size());
+            output.writeInt(levelEnds.length);
+            output.writeInts(levelEnds);
+            output.writeInts(tree.getChildOffsets());
+            output.writeDoubles(tree.getBounds());
+            // a lazily decoded tree is written back without decoding its items
+            PackedGeometryBlob items = tree.getItemDecoder() instanceof PackedGeometryBlob
+                    ? (PackedGeometryBlob) tree.getItemDecoder() : PackedGeometryBlob.encode(tree.getItems());
+            output.writeInt(items.getBlob().length);
+            output.writeBytes(items.getBlob());
+            output.writeInts(items.getOffsets());
+            Object[] objects = items.getObjects();
+            for (int i = 0; i < objects.length; ++i) {
+                if (items.isInBlob(i)) {
+                    // user data
+                    kryo.writeClassAndObject(output, objects[i]);
+                }
+                else {
+                    geometrySerde.write(kryo, output, objects[i]);
+                }
+            }
+        }
         else {
             throw new UnsupportedOperationException(" index type not supported ");
         }
@@ -189,6 +221,27 @@ public class SpatialIndexSerde
                 }
                 else { return new STRtree(nodeCapacity); }
             }
+            case PACKED_RTREE: {
+                int nodeCapacity = input.readInt();
+                int numItems = input.readInt();
+                int numLevels = input.readInt();
+                int[] levelEnds = input.readInts(numLevels);
+                int numPositions = levelEnds[numLevels - 1];
+                int[] childOffsets = input.readInts(numPositions - numItems);
+                double[] bounds = input.readDoubles(4 * numPositions);
+                byte[] blob = input.readBytes(input.readInt());
+                int[] offsets = input.readInts(numItems + 1);
+                Object[] objects = new Object[numItems];
+                for (int i = 0; i < numItems; ++i) {
+                    if (offsets[i + 1] > offsets[i]) {
+                        objects[i] = kryo.readClassAndObject(input);
+                    }
+                    else {
+                        objects[i] = geometrySerde.read(kryo, input, Geometry.class);
+                    }
+                }
+                return new PackedRTree(nodeCapacity, new PackedGeometryBlob(blob, offsets, objects), bounds, childOffsets, levelEnds);
+            }
             default: {
                 throw new UnsupportedOperationException("can't deserialize spatial index of type" + indexType);
             }
@@ -0,0 +1,199 @@
+/*
+ * FILE: AdaptiveJoinJudgement
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.enums.JoinBuildSide;
+import org.datasyslab.geospark.monitoring.GeoSparkGauge;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+
+import javax.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Joins a pair of partitions using the strategy that suits the number of geometries
+ * on each side of that particular partition.
+ * <p>
+ * Both sides are loaded into memory and counted first. Then,
+ * <ul>
+ * <li>if the number of candidate pairs is at most {@code nestedLoopMaxPairs}, a nested loop is
+ * used and no index is built;</li>
+ * <li>if one side is at least {@code lopsidedRatio} times larger than the other, an index of
+ * {@code indexType} is built on the smaller side and the larger side is streamed through it;</li>
+ * <li>otherwise, both sides are sorted and joined using a plane sweep.</li>
+ * </ul>
+ * The strategy chosen for each partition is reported through the 'strategy' gauge
+ * as the ordinal of {@link Strategy}.
+ */
+public class AdaptiveJoinJudgement<T extends Geometry, U extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction2<Iterator<U>, Iterator<T>, Pair<U, T>>, Serializable
+{
+    private static final Logger log = LogManager.getLogger(AdaptiveJoinJudgement.class);
+
+    /**
+     * Join strategies available for a single partition
+     */
+    public enum Strategy
+    {
+        NESTED_LOOP,
+        INDEX_LEFT,
+        INDEX_RIGHT,
+        PLANE_SWEEP
+    }
+
+    private final GeoSparkMetric buildCount;
+    private final GeoSparkMetric streamCount;
+    private final GeoSparkMetric resultCount;
+    private final GeoSparkMetric candidateCount;
+    private final GeoSparkGauge strategy;
+
+    /**
+     * Maximum number of candidate pairs (left count times right count) joined with a nested loop
+     */
+    private final long nestedLoopMaxPairs;
+
+    /**
+     * Minimum ratio between the larger and the smaller side for a partition to be considered lopsided
+     */
+    private final int lopsidedRatio;
+
+    private final DynamicIndexLookupJudgement<T, U> indexLeftJudgement;
+    private final DynamicIndexLookupJudgement<T, U> indexRightJudgement;
+    private final PlaneSweepJudgement<T, U> planeSweepJudgement;
+
+    /**
+     * @param indexType Type of the index built on the smaller side of lopsided partitions
+     * @param nestedLoopMaxPairs Maximum number of candidate pairs joined with a nested loop
+     * @param lopsidedRatio Minimum ratio between the larger and the smaller side of lopsided partitions
+     * @see JudgementBase
+     */
+    public AdaptiveJoinJudgement(boolean considerBoundaryIntersection,
+            IndexType indexType,
+            long nestedLoopMaxPairs,
+            int lopsidedRatio,
+            @Nullable DedupParams dedupParams,
+            GeoSparkMetric buildCount,
+            GeoSparkMetric streamCount,
+            GeoSparkMetric resultCount,
+            GeoSparkMetric candidateCount,
+            GeoSparkGauge strategy)
+    {
+        super(considerBoundaryIntersection, dedupParams, JoinBuildSide.LEFT);
+        this.buildCount = buildCount;
+        this.streamCount = streamCount;
+        this.resultCount = resultCount;
+        this.candidateCount = candidateCount;
+        this.strategy = strategy;
+        this.nestedLoopMaxPairs = nestedLoopMaxPairs;
+        this.lopsidedRatio = lopsidedRatio;
+        this.indexLeftJudgement = new DynamicIndexLookupJudgement<>(considerBoundaryIntersection,
+                indexType, JoinBuildSide.LEFT, dedupParams,
+                buildCount, streamCount, resultCount, candidateCount);
+        this.indexRightJudgement = new DynamicIndexLookupJudgement<>(considerBoundaryIntersection,
+                indexType, JoinBuildSide.RIGHT, dedupParams,
+                buildCount, streamCount, resultCount, candidateCount);
+        this.planeSweepJudgement = new PlaneSweepJudgement<>(considerBoundaryIntersection, dedupParams,
+                buildCount, streamCount, resultCount, candidateCount);
+    }
+
+    @Override
+    public Iterator<Pair<U, T>> call(Iterator<U> leftShapes, Iterator<T> rightShapes)
+            throws Exception
+    {
+        if (!leftShapes.hasNext() || !rightShapes.hasNext()) {
+            buildCount.add(0);
+            streamCount.add(0);
+            resultCount.add(0);
+            candidateCount.add(0);
+            return Collections.emptyIterator();
+        }
+
+        final List<U> left = toList(leftShapes);
+        final List<T> right = toList(rightShapes);
+
+        final Strategy chosen = chooseStrategy(left.size(), right.size(), nestedLoopMaxPairs, lopsidedRatio);
+        strategy.add(chosen.ordinal());
+        log.debug("Joining " + left.size() + " left and " + right.size() + " right shapes using " + chosen);
+
+        switch (chosen) {
+            case NESTED_LOOP:
+                return nestedLoop(left, right);
+            case INDEX_LEFT:
+                return indexLeftJudgement.call(left.iterator(), right.iterator());
+            case INDEX_RIGHT:
+                return indexRightJudgement.call(left.iterator(), right.iterator());
+            case PLANE_SWEEP:
+                return planeSweepJudgement.call(left.iterator(), right.iterator());
+            default:
+                throw new IllegalStateException("Unsupported join strategy: " + chosen);
+        }
+    }
+
+    static Strategy chooseStrategy(long leftCount, long rightCount, long nestedLoopMaxPairs, int lopsidedRatio)
+    {
+        if (leftCount * rightCount <= nestedLoopMaxPairs) {
+            return Strategy.NESTED_LOOP;
+        }
+        if (leftCount >= rightCount * lopsidedRatio) {
+            return Strategy.INDEX_RIGHT;
+        }
+        if (rightCount >= leftCount * lopsidedRatio) {
+            return Strategy.INDEX_LEFT;
+        }
+        return Strategy.PLANE_SWEEP;
+    }
+
+    private Iterator<Pair<U, T>> nestedLoop(List<U> left, List<T> right)
+    {
+        initPartition();
+
+        streamCount.add(left.size());
+        buildCount.add(right.size());
+        candidateCount.add((long) left.size() * right.size());
+
+        final List<Pair<U, T>> result = new ArrayList<>();
+        for (U leftShape : left) {
+            for (T rightShape : right) {
+                if (match(leftShape, rightShape)) {
+                    result.add(Pair.of(leftShape, rightShape));
+                }
+            }
+        }
+        resultCount.add(result.size());
+        return result.iterator();
+    }
+
+    private static <G> List<G> toList(Iterator<G> shapes)
+    {
+        final List<G> list = new ArrayList<>();
+        while (shapes.hasNext()) {
+            list.add(shapes.next());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * FILE: BroadcastIndex
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.index.SpatialIndex;
+
+import java.io.Serializable;
+
+/**
+ * A spatial index over the build side of a broadcast join, together with the prepared versions
+ * of its geometries.
+ * <p>
+ * Spark deserializes a broadcast value once per executor and shares it between all the tasks
+ * running on that executor. The prepared geometries are kept with the deserialized value, so the
+ * tasks of an executor share one bounded cache of prepared build-side geometries, which is
+ * released together with the broadcast.
+ */
+public final class BroadcastIndex
+        implements Serializable
+{
+    private final SpatialIndex index;
+    private final int size;
+
+    transient private volatile PreparedGeometryCache preparedGeometries;
+
+    /**
+     * @param index Index of the geometries on the build side of the join
+     * @param size Number of geometries in the index
+     */
+    public BroadcastIndex(SpatialIndex index, int size)
+    {
+        this.index = index;
+        this.size = size;
+    }
+
+    public SpatialIndex getIndex()
+    {
+        return index;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    PreparedGeometryCache getPreparedGeometries()
+    {
+        PreparedGeometryCache cache = preparedGeometries;
+        if (cache == null) {
+            synchronized (this) {
+                cache = preparedGeometries;
+                if (cache == null) {
+                    cache = new PreparedGeometryCache();
+                    preparedGeometries = cache;
+                }
+            }
+        }
+        return cache;
+    }
+}
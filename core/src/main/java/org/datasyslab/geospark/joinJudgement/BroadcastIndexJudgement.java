@@ -0,0 +1,161 @@
+/*
+ * FILE: BroadcastIndexJudgement
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.SpatialIndex;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.enums.JoinBuildSide;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Probes a broadcast spatial index with the geometries of a single partition of the other side.
+ * <p>
+ * The index is built on the driver over the smaller side of the join and shipped to the executors
+ * as a broadcast variable, so the larger side is neither partitioned nor shuffled. Spark
+ * deserializes a broadcast value once per executor and shares it between all the tasks
+ * running on that executor, together with the geometries prepared by those tasks.
+ * <p>
+ * The probed side isn't spatially partitioned, hence each pair of geometries is examined
+ * in exactly one partition and no de-duplication is needed.
+ */
+public class BroadcastIndexJudgement<T extends Geometry, U extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction<Iterator<Geometry>, Pair<U, T>>, Serializable
+{
+    private final Broadcast<BroadcastIndex> broadcastIndex;
+    private final JoinBuildSide joinBuildSide;
+    private final GeoSparkMetric buildCount;
+    private final GeoSparkMetric streamCount;
+    private final GeoSparkMetric resultCount;
+    private final GeoSparkMetric candidateCount;
+
+    /**
+     * @param considerBoundaryIntersection true for 'intersects', false for 'contains' join condition
+     * @param broadcastIndex Index of the geometries on the build side of the join
+     * @param joinBuildSide Side of the join the index was built on
+     */
+    public BroadcastIndexJudgement(boolean considerBoundaryIntersection,
+            Broadcast<BroadcastIndex> broadcastIndex,
+            JoinBuildSide joinBuildSide,
+            GeoSparkMetric buildCount,
+            GeoSparkMetric streamCount,
+            GeoSparkMetric resultCount,
+            GeoSparkMetric candidateCount)
+    {
+        super(considerBoundaryIntersection, null, joinBuildSide);
+        this.broadcastIndex = broadcastIndex;
+        this.joinBuildSide = joinBuildSide;
+        this.buildCount = buildCount;
+        this.streamCount = streamCount;
+        this.resultCount = resultCount;
+        this.candidateCount = candidateCount;
+    }
+
+    /**
+     * Shares the prepared build-side geometries with the other tasks running on this executor,
+     * instead of preparing them again in a bounded cache per task.
+     */
+    @Override
+    PreparedGeometryCache createPreparedGeometryCache()
+    {
+        return broadcastIndex.value().getPreparedGeometries();
+    }
+
+    @Override
+    public Iterator<Pair<U, T>> call(final Iterator<Geometry> streamShapes)
+            throws Exception
+    {
+        initPartition();
+
+        final SpatialIndex spatialIndex = broadcastIndex.value().getIndex();
+        final boolean buildLeft = (joinBuildSide == JoinBuildSide.LEFT);
+        buildCount.add(broadcastIndex.value().getSize());
+
+        return new Iterator<Pair<U, T>>()
+        {
+            // A batch of pre-computed matches
+            private List<Pair<U, T>> batch = new ArrayList<>();
+            // An index of the element from 'batch' to return next
+            private int nextIndex = 0;
+
+            private final CandidateVisitor<Geometry> candidates = new CandidateVisitor<Geometry>(spatialIndex)
+            {
+                @Override
+                void visitCandidate(Geometry streamShape, Geometry buildShape)
+                {
+                    candidateCount.add(1);
+                    if (buildLeft) {
+                        if (match(buildShape, streamShape)) {
+                            batch.add(Pair.of((U) buildShape, (T) streamShape));
+                            resultCount.add(1);
+                        }
+                    }
+                    else {
+                        if (match(streamShape, buildShape)) {
+                            batch.add(Pair.of((U) streamShape, (T) buildShape));
+                            resultCount.add(1);
+                        }
+                    }
+                }
+            };
+
+            @Override
+            public boolean hasNext()
+            {
+                while (nextIndex >= batch.size()) {
+                    if (!streamShapes.hasNext()) {
+                        return false;
+                    }
+                    batch.clear();
+                    nextIndex = 0;
+                    probe(streamShapes.next());
+                }
+                return true;
+            }
+
+            @Override
+            public Pair<U, T> next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(nextIndex++);
+            }
+
+            private void probe(Geometry streamShape)
+            {
+                streamCount.add(1);
+                candidates.probe(streamShape);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * FILE: DedupFilter
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Envelope;
+import org.datasyslab.geospark.utils.HalfOpenRectangle;
+
+import javax.annotation.Nullable;
+
+import java.util.List;
+
+/**
+ * Decides whether the partition processed by a task should report a pair of geometries
+ * which may be present in several partitions.
+ * <p>
+ * The pair is reported by the partition which owns the reference point of the intersection
+ * of the envelopes of the two geometries, according to {@link DedupParams}.
+ */
+public final class DedupFilter
+{
+    @Nullable
+    private final HalfOpenRectangle extent;
+    @Nullable
+    private final ReferencePointOwner owner;
+    @Nullable
+    private final DedupParams.PointPartitioner pointPartitioner;
+    private final int partitionId;
+
+    private DedupFilter(@Nullable HalfOpenRectangle extent, @Nullable ReferencePointOwner owner)
+    {
+        this.extent = extent;
+        this.owner = owner;
+        this.pointPartitioner = null;
+        this.partitionId = -1;
+    }
+
+    private DedupFilter(DedupParams.PointPartitioner pointPartitioner, int partitionId)
+    {
+        this.extent = null;
+        this.owner = null;
+        this.pointPartitioner = pointPartitioner;
+        this.partitionId = partitionId;
+    }
+
+    /**
+     * Returns the filter for the task with the given index, or null if the partition
+     * processed by the task is not known.
+     */
+    @Nullable
+    public static DedupFilter create(DedupParams dedupParams, int taskId)
+    {
+        final int partitionId = dedupParams.getPartitionId(taskId);
+
+        if (dedupParams.getPointPartitioner() != null) {
+            return partitionId >= 0 ? new DedupFilter(dedupParams.getPointPartitioner(), partitionId) : null;
+        }
+
+        final List<Envelope> partitionExtents = dedupParams.getPartitionExtents();
+        if (dedupParams.isOverlappingExtents() && partitionId >= 0 && partitionId <= partitionExtents.size()) {
+            return new DedupFilter(null, new ReferencePointOwner(partitionExtents, partitionId));
+        }
+        if (!dedupParams.isOverlappingExtents() && partitionId >= 0
+                && partitionId < partitionExtents.size() && partitionExtents.get(partitionId) != null) {
+            return new DedupFilter(new HalfOpenRectangle(partitionExtents.get(partitionId)), null);
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if this partition owns the reference point of the intersection of
+     * the envelopes, or if the envelopes don't intersect.
+     */
+    public boolean ownsReferencePoint(Envelope envelope1, Envelope envelope2)
+    {
+        final Envelope intersection = envelope1.intersection(envelope2);
+        if (intersection.isNull()) {
+            return true;
+        }
+
+        if (pointPartitioner != null) {
+            return pointPartitioner.getPartition(intersection.getMinX(), intersection.getMinY()) == partitionId;
+        }
+        if (owner != null) {
+            return owner.owns(intersection.getMinX(), intersection.getMinY());
+        }
+        return extent.contains(intersection.getMinX(), intersection.getMinY());
+    }
+}
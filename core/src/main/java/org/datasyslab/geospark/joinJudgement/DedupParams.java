@@ -18,29 +18,129 @@ package org.datasyslab.geospark.joinJudgement;
 
 import org.locationtech.jts.geom.Envelope;
 
+import javax.annotation.Nullable;
+
 import java.io.Serializable;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * Contains information necessary to activate de-dup logic in sub-classes of {@link JudgementBase}.
+ * <p>
+ * Partition extents are interpreted in one of two ways:
+ * <ul>
+ * <li>Non-overlapping extents: a reference point belongs to the partition whose
+ * half-open extent contains it.</li>
+ * <li>Overlapping extents, e.g. R-Tree or Voronoi grids: a reference point belongs to the
+ * first partition whose closed extent contains it, or to the overflow partition, whose ID
+ * equals the number of extents, if there is no such partition.</li>
+ * <li>Partitions that are not rectangles, e.g. ranges of a space-filling curve: a reference point
+ * belongs to the partition reported by a {@link PointPartitioner}.</li>
+ * </ul>
  */
 public final class DedupParams
         implements Serializable
 {
     private final List<Envelope> partitionExtents;
+    private final boolean overlappingExtents;
+    @Nullable
+    private final PointPartitioner pointPartitioner;
+    @Nullable
+    private final int[] taskPartitionIds;
 
     /**
-     * @param partitionExtents A list of partition extents in such an order that
-     * an index of an element in this list matches partition ID.
+     * Finds the partition which owns a point
+     */
+    public interface PointPartitioner
+            extends Serializable
+    {
+        int getPartition(double x, double y);
+    }
+
+    /**
+     * @param partitionExtents A list of non-overlapping partition extents in such an order that
+     * an index of an element in this list matches partition ID. Partitions without
+     * an extent may be represented by null elements.
      */
     public DedupParams(List<Envelope> partitionExtents)
+    {
+        this(partitionExtents, false, null);
+    }
+
+    /**
+     * @param partitionExtents A list of partition extents in such an order that
+     * an index of an element in this list matches partition ID
+     * @param overlappingExtents true if the extents may overlap or may not cover the full extent
+     * of the data, in which case the partition with ID equal to the number of extents is
+     * the overflow partition
+     */
+    public DedupParams(List<Envelope> partitionExtents, boolean overlappingExtents)
+    {
+        this(partitionExtents, overlappingExtents, null);
+    }
+
+    /**
+     * @param taskPartitionIds Optional mapping from the index of the task processing
+     * the join to the ID of the partition it processes. If null, the two are the same.
+     */
+    public DedupParams(List<Envelope> partitionExtents, boolean overlappingExtents, @Nullable int[] taskPartitionIds)
+    {
+        this(partitionExtents, overlappingExtents, null, taskPartitionIds);
+    }
+
+    /**
+     * @param partitionExtents A list of partition extents in such an order that
+     * an index of an element in this list matches partition ID
+     * @param pointPartitioner Finds the partition owning a reference point. The extents are
+     * only used for reporting.
+     */
+    public DedupParams(List<Envelope> partitionExtents, PointPartitioner pointPartitioner)
+    {
+        this(partitionExtents, true, Objects.requireNonNull(pointPartitioner, "pointPartitioner"), null);
+    }
+
+    private DedupParams(List<Envelope> partitionExtents, boolean overlappingExtents,
+            @Nullable PointPartitioner pointPartitioner, @Nullable int[] taskPartitionIds)
     {
         this.partitionExtents = Objects.requireNonNull(partitionExtents, "partitionExtents");
+        this.overlappingExtents = overlappingExtents;
+        this.pointPartitioner = pointPartitioner;
+        this.taskPartitionIds = taskPartitionIds;
     }
 
     public List<Envelope> getPartitionExtents()
     {
         return partitionExtents;
     }
+
+    public boolean isOverlappingExtents()
+    {
+        return overlappingExtents;
+    }
+
+    @Nullable
+    public PointPartitioner getPointPartitioner()
+    {
+        return pointPartitioner;
+    }
+
+    /**
+     * Returns the ID of the partition processed by the task with the given index,
+     * or -1 if the task is not known.
+     */
+    public int getPartitionId(int taskId)
+    {
+        if (taskPartitionIds == null) {
+            return taskId;
+        }
+        return taskId < taskPartitionIds.length ? taskPartitionIds[taskId] : -1;
+    }
+
+    /**
+     * Returns a copy of these parameters for a join whose tasks process the given partitions.
+     */
+    public DedupParams withTaskPartitionIds(int[] taskPartitionIds)
+    {
+        return new DedupParams(partitionExtents, overlappingExtents, pointPartitioner, taskPartitionIds);
+    }
 }
@@ -30,6 +30,7 @@ import org.apache.spark.api.java.function.FlatMapFunction2;
 import org.datasyslab.geospark.enums.IndexType;
 import org.datasyslab.geospark.enums.JoinBuildSide;
 import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
 
 import javax.annotation.Nullable;
 
@@ -68,7 +69,7 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
             GeoSparkMetric resultCount,
             GeoSparkMetric candidateCount)
     {
-        super(considerBoundaryIntersection, dedupParams);
+        super(considerBoundaryIntersection, dedupParams, joinBuildSide);
         this.indexType = indexType;
         this.joinBuildSide = joinBuildSide;
         this.buildCount = buildCount;
@@ -116,6 +117,27 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
 
             private int shapeCnt = 0;
 
+            private final CandidateVisitor<Geometry> candidates = new CandidateVisitor<Geometry>(spatialIndex)
+            {
+                @Override
+                void visitCandidate(Geometry streamShape, Geometry buildShape)
+                {
+                    candidateCount.add(1);
+                    if (buildLeft) {
+                        if (match(buildShape, streamShape)) {
+                            batch.add(Pair.of((U) buildShape, (T) streamShape));
+                            resultCount.add(1);
+                        }
+                    }
+                    else {
+                        if (match(streamShape, buildShape)) {
+                            batch.add(Pair.of((U) streamShape, (T) buildShape));
+                            resultCount.add(1);
+                        }
+                    }
+                }
+            };
+
             @Override
             public boolean hasNext()
             {
@@ -161,24 +183,7 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
                 while (streamShapes.hasNext()) {
                     shapeCnt++;
                     streamCount.add(1);
-                    final Geometry streamShape = streamShapes.next();
-                    final List candidates = spatialIndex.query(streamShape.getEnvelopeInternal());
-                    for (Object candidate : candidates) {
-                        candidateCount.add(1);
-                        final Geometry buildShape = (Geometry) candidate;
-                        if (buildLeft) {
-                            if (match(buildShape, streamShape)) {
-                                batch.add(Pair.of((U) buildShape, (T) streamShape));
-                                resultCount.add(1);
-                            }
-                        }
-                        else {
-                            if (match(streamShape, buildShape)) {
-                                batch.add(Pair.of((U) streamShape, (T) buildShape));
-                                resultCount.add(1);
-                            }
-                        }
-                    }
+                    candidates.probe(streamShapes.next());
                     logMilestone(shapeCnt, 100 * 1000, "Streaming shapes");
                     if (!batch.isEmpty()) {
                         return true;
@@ -220,6 +225,8 @@ public class DynamicIndexLookupJudgement<T extends Geometry, U extends Geometry>
                 return new STRtree();
             case QUADTREE:
                 return new Quadtree();
+            case PACKED_RTREE:
+                return new PackedRTree();
             default:
                 throw new IllegalArgumentException("Unsupported index type: " + indexType);
         }
@@ -16,20 +16,19 @@
  */
 package org.datasyslab.geospark.joinJudgement;
 
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.index.SpatialIndex;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.spark.TaskContext;
-import org.datasyslab.geospark.utils.HalfOpenRectangle;
+import org.datasyslab.geospark.enums.JoinBuildSide;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
 
 import javax.annotation.Nullable;
 
 import java.io.Serializable;
-import java.util.List;
 
 /**
  * Base class for partition level join implementations.
@@ -50,6 +49,13 @@ import java.util.List;
  * <p>
  * For (2), provide `DedupParams` when instantiating JudgementBase object. If `DedupParams`
  * is specified, the implementation of the `match` method assumes that condition (1) holds.
+ * Partitioning with overlapping extents, e.g. R-Tree or Voronoi grids, is supported as long as
+ * the `DedupParams` are marked as such and every point is assigned to the first partition whose
+ * extent contains it, or to the overflow partition.
+ * <p>
+ * Polygons and line strings on the build side are prepared on their second probe and reused
+ * for further probes. The prepared geometries are kept in a bounded cache that is reset
+ * by `initPartition`.
  */
 abstract class JudgementBase
         implements Serializable
@@ -58,46 +64,59 @@ abstract class JudgementBase
 
     private final boolean considerBoundaryIntersection;
     private final DedupParams dedupParams;
+    private final JoinBuildSide buildSide;
+
+    transient private DedupFilter dedupFilter;
 
-    transient private HalfOpenRectangle extent;
+    transient private PreparedGeometryCache preparedGeometries;
 
     /**
      * @param considerBoundaryIntersection true for 'intersects', false for 'contains' join condition
      * @param dedupParams Optional information to activate de-dup logic
+     * @param buildSide Side of the `match` arguments which is reused across many probes
+     * and whose geometries should be prepared
      */
-    protected JudgementBase(boolean considerBoundaryIntersection, @Nullable DedupParams dedupParams)
+    protected JudgementBase(boolean considerBoundaryIntersection, @Nullable DedupParams dedupParams, JoinBuildSide buildSide)
     {
         this.considerBoundaryIntersection = considerBoundaryIntersection;
         this.dedupParams = dedupParams;
+        this.buildSide = buildSide;
     }
 
     /**
      * Looks up the extent of the current partition. If found, `match` method will
      * activate the logic to avoid emitting duplicate join results from multiple partitions.
+     * Also resets the cache of prepared build-side geometries.
      * <p>
      * Must be called before processing a partition. Must be called from the
      * same instance that will be used to process the partition.
      */
     protected void initPartition()
     {
+        preparedGeometries = createPreparedGeometryCache();
+
         if (dedupParams == null) {
             return;
         }
 
-        final int partitionId = TaskContext.getPartitionId();
-
-        final List<Envelope> partitionExtents = dedupParams.getPartitionExtents();
-        if (partitionId < partitionExtents.size()) {
-            extent = new HalfOpenRectangle(partitionExtents.get(partitionId));
-        }
-        else {
-            log.warn("Didn't find partition extent for this partition: " + partitionId);
+        dedupFilter = DedupFilter.create(dedupParams, TaskContext.getPartitionId());
+        if (dedupFilter == null) {
+            log.warn("Didn't find partition extent for this partition: "
+                    + dedupParams.getPartitionId(TaskContext.getPartitionId()));
         }
     }
 
+    /**
+     * Returns the cache of prepared build-side geometries for the current partition
+     */
+    PreparedGeometryCache createPreparedGeometryCache()
+    {
+        return new PreparedGeometryCache();
+    }
+
     protected boolean match(Geometry left, Geometry right)
     {
-        if (extent != null) {
+        if (dedupFilter != null) {
             // Handle easy case: points. Since each point is assigned to exactly one partition,
             // different partitions cannot emit duplicate results.
             if (left instanceof Point || right instanceof Point) {
@@ -109,28 +128,80 @@ abstract class JudgementBase
             // Check if reference point of the intersection of the bounding boxes lies within
             // the extent of this partition. If not, don't run any checks. Let the partition
             // that contains the reference point do all the work.
-            Envelope intersection =
-                    left.getEnvelopeInternal().intersection(right.getEnvelopeInternal());
-            if (!intersection.isNull()) {
-                final Point referencePoint =
-                        makePoint(intersection.getMinX(), intersection.getMinY(), left.getFactory());
-                if (!extent.contains(referencePoint)) {
-                    return false;
-                }
+            if (!dedupFilter.ownsReferencePoint(left.getEnvelopeInternal(), right.getEnvelopeInternal())) {
+                return false;
             }
         }
 
         return geoMatch(left, right);
     }
 
-    private Point makePoint(double x, double y, GeometryFactory factory)
-    {
-        return factory.createPoint(new Coordinate(x, y));
-    }
-
     private boolean geoMatch(Geometry left, Geometry right)
     {
         //log.warn("Check "+left.toText()+" with "+right.toText());
+        if (preparedGeometries != null) {
+            if (buildSide == JoinBuildSide.LEFT) {
+                final PreparedGeometry preparedLeft = preparedGeometries.get(left);
+                if (preparedLeft != null) {
+                    return considerBoundaryIntersection ? preparedLeft.intersects(right) : preparedLeft.covers(right);
+                }
+            }
+            else if (considerBoundaryIntersection) {
+                // 'intersects' is symmetric. There is no optimized prepared 'coveredBy', so
+                // 'contains' with the build side on the right falls through to the plain check.
+                final PreparedGeometry preparedRight = preparedGeometries.get(right);
+                if (preparedRight != null) {
+                    return preparedRight.intersects(left);
+                }
+            }
+        }
         return considerBoundaryIntersection ? left.intersects(right) : left.covers(right);
     }
+
+    /**
+     * Passes the candidates of an index for one probe geometry after another to
+     * {@link #visitCandidate}. Packed R-Trees report the IDs of the candidates to this visitor,
+     * which is reused for every probe, so probes allocate neither a visitor nor a list of
+     * candidates. Other indexes return a list of candidates.
+     */
+    abstract static class CandidateVisitor<S extends Geometry>
+            implements PackedRTree.ItemIdVisitor
+    {
+        private final SpatialIndex index;
+        @Nullable
+        private final PackedRTree packedIndex;
+
+        private S probeShape;
+
+        CandidateVisitor(SpatialIndex index)
+        {
+            this.index = index;
+            this.packedIndex = index instanceof PackedRTree ? (PackedRTree) index : null;
+        }
+
+        /**
+         * Passes every candidate whose envelope intersects the envelope of the probe geometry
+         */
+        final void probe(S shape)
+        {
+            if (packedIndex != null) {
+                probeShape = shape;
+                packedIndex.query(shape.getEnvelopeInternal(), this);
+                probeShape = null;
+                return;
+            }
+
+            for (Object candidate : index.query(shape.getEnvelopeInternal())) {
+                visitCandidate(shape, (Geometry) candidate);
+            }
+        }
+
+        @Override
+        public final void visitItem(int itemId)
+        {
+            visitCandidate(probeShape, (Geometry) packedIndex.getItem(itemId));
+        }
+
+        abstract void visitCandidate(S shape, Geometry candidate);
+    }
 }
@@ -21,6 +21,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.enums.JoinBuildSide;
 
 import javax.annotation.Nullable;
 
@@ -40,7 +41,7 @@ public class NestedLoopJudgement<T extends Geometry, U extends Geometry>
      */
     public NestedLoopJudgement(boolean considerBoundaryIntersection, @Nullable DedupParams dedupParams)
     {
-        super(considerBoundaryIntersection, dedupParams);
+        super(considerBoundaryIntersection, dedupParams, JoinBuildSide.LEFT);
     }
 
     @Override
@@ -0,0 +1,308 @@
+/*
+ * FILE: PlaneSweepJudgement
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.enums.JoinBuildSide;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+
+import javax.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Joins a pair of partitions using a forward plane sweep.
+ * <p>
+ * Envelopes of both sides are copied into primitive arrays and sorted by minimum X.
+ * The sweep then walks both sorted sides together. Whichever side has the smaller minimum X
+ * becomes active and is checked against the other side's envelopes until their minimum X
+ * passes the active envelope's maximum X. Every pair of overlapping envelopes is examined
+ * exactly once. No index is built and no per-candidate collections are allocated.
+ * <p>
+ * Works best when both sides of a partition are of similar size.
+ */
+public class PlaneSweepJudgement<T extends Geometry, U extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction2<Iterator<U>, Iterator<T>, Pair<U, T>>, Serializable
+{
+    private final GeoSparkMetric buildCount;
+    private final GeoSparkMetric streamCount;
+    private final GeoSparkMetric resultCount;
+    private final GeoSparkMetric candidateCount;
+
+    /**
+     * @see JudgementBase
+     */
+    public PlaneSweepJudgement(boolean considerBoundaryIntersection,
+            @Nullable DedupParams dedupParams,
+            GeoSparkMetric buildCount,
+            GeoSparkMetric streamCount,
+            GeoSparkMetric resultCount,
+            GeoSparkMetric candidateCount)
+    {
+        super(considerBoundaryIntersection, dedupParams, JoinBuildSide.LEFT);
+        this.buildCount = buildCount;
+        this.streamCount = streamCount;
+        this.resultCount = resultCount;
+        this.candidateCount = candidateCount;
+    }
+
+    @Override
+    public Iterator<Pair<U, T>> call(Iterator<U> leftShapes, Iterator<T> rightShapes)
+            throws Exception
+    {
+        if (!leftShapes.hasNext() || !rightShapes.hasNext()) {
+            buildCount.add(0);
+            streamCount.add(0);
+            resultCount.add(0);
+            candidateCount.add(0);
+            return Collections.emptyIterator();
+        }
+
+        initPartition();
+
+        final SortedEnvelopes<U> left = new SortedEnvelopes<>(leftShapes);
+        final SortedEnvelopes<T> right = new SortedEnvelopes<>(rightShapes);
+        streamCount.add(left.size());
+        buildCount.add(right.size());
+
+        return new Iterator<Pair<U, T>>()
+        {
+            // Positions of the next unprocessed envelopes on each side
+            private int leftPos = 0;
+            private int rightPos = 0;
+
+            // Whether an active envelope is being checked against the other side
+            private boolean scanning = false;
+            // True if the active envelope comes from the left side
+            private boolean leftActive;
+            // Position on the opposite side of the next envelope to check against the active one
+            private int scanPos;
+
+            private Pair<U, T> next = null;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (next == null) {
+                    next = advance();
+                }
+                return next != null;
+            }
+
+            @Override
+            public Pair<U, T> next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Pair<U, T> result = next;
+                next = null;
+                return result;
+            }
+
+            private Pair<U, T> advance()
+            {
+                while (true) {
+                    if (!scanning) {
+                        if (leftPos >= left.size() || rightPos >= right.size()) {
+                            return null;
+                        }
+                        leftActive = left.minX[leftPos] <= right.minX[rightPos];
+                        scanPos = leftActive ? rightPos : leftPos;
+                        scanning = true;
+                    }
+
+                    if (leftActive) {
+                        final double maxX = left.maxX[leftPos];
+                        while (scanPos < right.size() && right.minX[scanPos] <= maxX) {
+                            final int candidate = scanPos++;
+                            if (overlapsY(left, leftPos, right, candidate)) {
+                                final Pair<U, T> result = check(left.geometry(leftPos), right.geometry(candidate));
+                                if (result != null) {
+                                    return result;
+                                }
+                            }
+                        }
+                        leftPos++;
+                    }
+                    else {
+                        final double maxX = right.maxX[rightPos];
+                        while (scanPos < left.size() && left.minX[scanPos] <= maxX) {
+                            final int candidate = scanPos++;
+                            if (overlapsY(left, candidate, right, rightPos)) {
+                                final Pair<U, T> result = check(left.geometry(candidate), right.geometry(rightPos));
+                                if (result != null) {
+                                    return result;
+                                }
+                            }
+                        }
+                        rightPos++;
+                    }
+                    scanning = false;
+                }
+            }
+
+            private Pair<U, T> check(U leftShape, T rightShape)
+            {
+                candidateCount.add(1);
+                if (match(leftShape, rightShape)) {
+                    resultCount.add(1);
+                    return Pair.of(leftShape, rightShape);
+                }
+                return null;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static boolean overlapsY(SortedEnvelopes left, int leftPos, SortedEnvelopes right, int rightPos)
+    {
+        return left.minY[leftPos] <= right.maxY[rightPos] && right.minY[rightPos] <= left.maxY[leftPos];
+    }
+
+    /**
+     * Geometries of one side of the join with their envelopes stored column-wise
+     * in primitive arrays sorted by minimum X.
+     */
+    private static final class SortedEnvelopes<G extends Geometry>
+    {
+        private final List<G> geometries;
+        // Position of the geometry in 'geometries' for each sorted envelope
+        private final int[] ids;
+        private final double[] minX;
+        private final double[] maxX;
+        private final double[] minY;
+        private final double[] maxY;
+
+        SortedEnvelopes(Iterator<G> shapes)
+        {
+            geometries = new ArrayList<>();
+            while (shapes.hasNext()) {
+                geometries.add(shapes.next());
+            }
+
+            final int size = geometries.size();
+            ids = new int[size];
+            minX = new double[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = i;
+                minX[i] = geometries.get(i).getEnvelopeInternal().getMinX();
+            }
+
+            sort(minX, ids, 0, size - 1);
+
+            maxX = new double[size];
+            minY = new double[size];
+            maxY = new double[size];
+            for (int i = 0; i < size; i++) {
+                final Envelope envelope = geometries.get(ids[i]).getEnvelopeInternal();
+                maxX[i] = envelope.getMaxX();
+                minY[i] = envelope.getMinY();
+                maxY[i] = envelope.getMaxY();
+            }
+        }
+
+        int size()
+        {
+            return ids.length;
+        }
+
+        G geometry(int position)
+        {
+            return geometries.get(ids[position]);
+        }
+    }
+
+    /**
+     * Sorts keys in ascending order and applies the same permutation to values.
+     */
+    private static void sort(double[] keys, int[] values, int from, int to)
+    {
+        while (to - from > 16) {
+            final double pivot = medianOfThree(keys[from], keys[(from + to) >>> 1], keys[to]);
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth
+            if (j - from < to - i) {
+                sort(keys, values, from, j);
+                from = i;
+            }
+            else {
+                sort(keys, values, i, to);
+                to = j;
+            }
+        }
+
+        for (int i = from + 1; i <= to; i++) {
+            final double key = keys[i];
+            final int value = values[i];
+            int j = i - 1;
+            while (j >= from && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private static double medianOfThree(double a, double b, double c)
+    {
+        if (a < b) {
+            return b < c ? b : (a < c ? c : a);
+        }
+        return a < c ? a : (b < c ? c : b);
+    }
+
+    private static void swap(double[] keys, int[] values, int i, int j)
+    {
+        final double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        final int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
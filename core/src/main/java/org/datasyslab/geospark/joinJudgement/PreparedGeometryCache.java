@@ -0,0 +1,154 @@
+/*
+ * FILE: PreparedGeometryCache
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Lineal;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+
+import javax.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of prepared geometries.
+ * <p>
+ * Preparing a geometry builds its edge index once so that repeated 'intersects' and 'covers'
+ * checks against different probe geometries don't have to rebuild it. Only polygonal and
+ * lineal geometries are prepared; points gain nothing from preparation.
+ * <p>
+ * A geometry is prepared on its second use only, so that geometries probed once aren't prepared
+ * in vain. The cache holds at most {@code maxEntries} geometries, used once or prepared, and
+ * prepared geometries with at most {@code maxVertices} vertices in total, since a prepared
+ * geometry takes several times the memory of the geometry itself.
+ * <p>
+ * The cache is safe to share between threads. Prepared geometries are thread-safe, so a geometry
+ * prepared by one task is reused by the others.
+ */
+final class PreparedGeometryCache
+{
+    static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    static final long DEFAULT_MAX_VERTICES = 1000000;
+
+    private final int maxEntries;
+    private final long maxVertices;
+
+    /**
+     * Geometries used once map to null. HashMap checks reference equality before calling
+     * Geometry.equals, so lookups of the same build-side object never fall back to
+     * coordinate-by-coordinate comparison.
+     */
+    private final LinkedHashMap<Geometry, PreparedGeometry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Number of vertices of the prepared geometries in the cache
+     */
+    private long numVertices;
+
+    PreparedGeometryCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VERTICES);
+    }
+
+    /**
+     * @param maxEntries Maximum number of geometries to keep, used once or prepared
+     * @param maxVertices Maximum total number of vertices of the prepared geometries to keep
+     */
+    PreparedGeometryCache(int maxEntries, long maxVertices)
+    {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be > 0");
+        }
+        if (maxVertices <= 0) {
+            throw new IllegalArgumentException("Max vertices must be > 0");
+        }
+        this.maxEntries = maxEntries;
+        this.maxVertices = maxVertices;
+    }
+
+    /**
+     * Returns a prepared version of the geometry, building it if needed, or null if the geometry
+     * type doesn't benefit from preparation or the geometry hasn't been used recently.
+     */
+    @Nullable
+    PreparedGeometry get(Geometry geometry)
+    {
+        if (!(geometry instanceof Polygonal || geometry instanceof Lineal)) {
+            return null;
+        }
+
+        synchronized (cache) {
+            if (!cache.containsKey(geometry)) {
+                cache.put(geometry, null);
+                evict();
+                return null;
+            }
+            final PreparedGeometry prepared = cache.get(geometry);
+            if (prepared != null) {
+                return prepared;
+            }
+        }
+
+        // Prepare outside of the lock. Concurrent tasks may prepare the same geometry twice.
+        final PreparedGeometry prepared = PreparedGeometryFactory.prepare(geometry);
+        final int geometryVertices = geometry.getNumPoints();
+        if (geometryVertices <= maxVertices) {
+            synchronized (cache) {
+                if (cache.put(geometry, prepared) == null) {
+                    numVertices += geometryVertices;
+                }
+                evict();
+            }
+        }
+        return prepared;
+    }
+
+    int size()
+    {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    long getNumVertices()
+    {
+        synchronized (cache) {
+            return numVertices;
+        }
+    }
+
+    /**
+     * Removes the least recently used geometries until the cache is within bounds. The geometry
+     * used last is never removed, since it is within bounds on its own.
+     */
+    private void evict()
+    {
+        final Iterator<Map.Entry<Geometry, PreparedGeometry>> entries = cache.entrySet().iterator();
+        while ((cache.size() > maxEntries || numVertices > maxVertices) && entries.hasNext()) {
+            final Map.Entry<Geometry, PreparedGeometry> eldest = entries.next();
+            if (eldest.getValue() != null) {
+                numVertices -= eldest.getKey().getNumPoints();
+            }
+            entries.remove();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * FILE: ReferencePointOwner
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.List;
+
+/**
+ * Decides whether a reference point belongs to a given partition of a grid whose cells
+ * may overlap and may not cover the full extent of the data.
+ * <p>
+ * A point belongs to the first grid cell that contains it, or to the overflow partition,
+ * whose ID equals the number of cells, if no cell contains it. This matches the placement of
+ * points by {@link org.datasyslab.geospark.spatialPartitioning.FlatGridPartitioner}. Any pair of
+ * geometries whose envelopes contain the point is placed into its owner partition as well.
+ * <p>
+ * Only the cells that precede the given partition and overlap it can take a point away
+ * from it. These cells are indexed once per partition.
+ */
+final class ReferencePointOwner
+{
+    private final Envelope extent;
+    private final STRtree precedingCells;
+
+    /**
+     * @param grids Grid cells in the order of partition IDs
+     * @param partitionId ID of the partition; equals the number of cells for the overflow partition
+     */
+    ReferencePointOwner(List<Envelope> grids, int partitionId)
+    {
+        this.extent = partitionId < grids.size() ? grids.get(partitionId) : null;
+        this.precedingCells = new STRtree();
+        for (int i = 0; i < partitionId; i++) {
+            final Envelope cell = grids.get(i);
+            if (cell != null && (extent == null || cell.intersects(extent))) {
+                precedingCells.insert(cell, cell);
+            }
+        }
+        precedingCells.build();
+    }
+
+    boolean owns(double x, double y)
+    {
+        if (extent != null && !extent.contains(x, y)) {
+            return false;
+        }
+
+        final Envelope point = new Envelope(x, x, y, y);
+        for (Object cell : precedingCells.query(point)) {
+            if (((Envelope) cell).contains(x, y)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -21,6 +21,7 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.index.SpatialIndex;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.enums.JoinBuildSide;
 
 import javax.annotation.Nullable;
 
@@ -39,14 +40,14 @@ public class RightIndexLookupJudgement<T extends Geometry, U extends Geometry>
      */
     public RightIndexLookupJudgement(boolean considerBoundaryIntersection, @Nullable DedupParams dedupParams)
     {
-        super(considerBoundaryIntersection, dedupParams);
+        super(considerBoundaryIntersection, dedupParams, JoinBuildSide.RIGHT);
     }
 
     @Override
     public Iterator<Pair<T, U>> call(Iterator<T> streamShapes, Iterator<SpatialIndex> indexIterator)
             throws Exception
     {
-        List<Pair<T, U>> result = new ArrayList<>();
+        final List<Pair<T, U>> result = new ArrayList<>();
 
         if (!indexIterator.hasNext() || !streamShapes.hasNext()) {
             return result.iterator();
@@ -55,15 +56,19 @@ public class RightIndexLookupJudgement<T extends Geometry, U extends Geometry>
         initPartition();
 
         SpatialIndex treeIndex = indexIterator.next();
-        while (streamShapes.hasNext()) {
-            T streamShape = streamShapes.next();
-            List<Geometry> candidates = treeIndex.query(streamShape.getEnvelopeInternal());
-            for (Geometry candidate : candidates) {
+        final CandidateVisitor<T> candidates = new CandidateVisitor<T>(treeIndex)
+        {
+            @Override
+            void visitCandidate(T streamShape, Geometry candidate)
+            {
                 // Refine phase. Use the real polygon (instead of its MBR) to recheck the spatial relation.
                 if (match(streamShape, candidate)) {
                     result.add(Pair.of(streamShape, (U) candidate));
                 }
             }
+        };
+        while (streamShapes.hasNext()) {
+            candidates.probe(streamShapes.next());
         }
         return result.iterator();
     }
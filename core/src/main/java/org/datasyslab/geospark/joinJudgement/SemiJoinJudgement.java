@@ -0,0 +1,145 @@
+/*
+ * FILE: SemiJoinJudgement
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.enums.JoinBuildSide;
+import org.datasyslab.geospark.monitoring.GeoSparkMetric;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Partition level implementation of spatial semi-joins and anti-joins.
+ * <p>
+ * Builds a packed R-Tree over the other side of the partition and probes it with each stream
+ * geometry. Once a candidate satisfies the join condition, the remaining candidates aren't
+ * checked, so each stream geometry is reported at most once per partition, together with a flag
+ * telling whether a match was found.
+ * <p>
+ * No de-dup is applied: any match, not only the one whose reference point lies in this
+ * partition, decides whether the stream geometry has a match.
+ */
+public class SemiJoinJudgement<S extends Geometry, O extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction2<Iterator<S>, Iterator<O>, Pair<S, Boolean>>, Serializable
+{
+    private final boolean streamIsLeft;
+    private final boolean reportUnmatched;
+    private final GeoSparkMetric buildCount;
+    private final GeoSparkMetric streamCount;
+    private final GeoSparkMetric resultCount;
+    private final GeoSparkMetric candidateCount;
+
+    /**
+     * @param considerBoundaryIntersection true for 'intersects', false for 'contains' join condition
+     * @param streamIsLeft true if stream geometries are the left argument of the join condition,
+     * e.g. the containing geometries of a 'contains' join
+     * @param reportUnmatched true to report stream geometries without a match as well,
+     * false to report only the ones with a match
+     */
+    public SemiJoinJudgement(boolean considerBoundaryIntersection,
+            boolean streamIsLeft,
+            boolean reportUnmatched,
+            GeoSparkMetric buildCount,
+            GeoSparkMetric streamCount,
+            GeoSparkMetric resultCount,
+            GeoSparkMetric candidateCount)
+    {
+        super(considerBoundaryIntersection, null, streamIsLeft ? JoinBuildSide.RIGHT : JoinBuildSide.LEFT);
+        this.streamIsLeft = streamIsLeft;
+        this.reportUnmatched = reportUnmatched;
+        this.buildCount = buildCount;
+        this.streamCount = streamCount;
+        this.resultCount = resultCount;
+        this.candidateCount = candidateCount;
+    }
+
+    @Override
+    public Iterator<Pair<S, Boolean>> call(final Iterator<S> streamShapes, Iterator<O> otherShapes)
+            throws Exception
+    {
+        initPartition();
+
+        final PackedRTree index = new PackedRTree();
+        int count = 0;
+        while (otherShapes.hasNext()) {
+            final O shape = otherShapes.next();
+            index.insert(shape.getEnvelopeInternal(), shape);
+            count++;
+        }
+        index.build();
+        buildCount.add(count);
+
+        return new Iterator<Pair<S, Boolean>>()
+        {
+            private Pair<S, Boolean> next = null;
+
+            private boolean matched;
+
+            private final CandidateVisitor<S> candidates = new CandidateVisitor<S>(index)
+            {
+                @Override
+                void visitCandidate(S streamShape, Geometry otherShape)
+                {
+                    if (matched) {
+                        return;
+                    }
+                    candidateCount.add(1);
+                    matched = streamIsLeft ? match(streamShape, otherShape) : match(otherShape, streamShape);
+                }
+            };
+
+            @Override
+            public boolean hasNext()
+            {
+                while (next == null && streamShapes.hasNext()) {
+                    final S streamShape = streamShapes.next();
+                    streamCount.add(1);
+                    matched = false;
+                    candidates.probe(streamShape);
+                    if (matched || reportUnmatched) {
+                        next = Pair.of(streamShape, matched);
+                        resultCount.add(1);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Pair<S, Boolean> next()
+            {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final Pair<S, Boolean> result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * FILE: BatchKnnJudgement
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.knnJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Finds the k nearest geometries of a partition for each of a batch of query geometries.
+ * <p>
+ * The partition is scanned once to build an R-Tree, which then serves all query geometries.
+ * Emits a single list holding the neighbours of each query geometry, in the order of the
+ * query geometries, ordered by distance.
+ */
+public class BatchKnnJudgement<U extends Geometry, T extends Geometry>
+        implements FlatMapFunction<Iterator<T>, List<List<T>>>, Serializable
+{
+    private final Broadcast<List<U>> queryShapes;
+    private final int k;
+
+    /**
+     * @param queryShapes the query geometries
+     * @param k the number of neighbours to find for each query geometry
+     */
+    public BatchKnnJudgement(Broadcast<List<U>> queryShapes, int k)
+    {
+        this.queryShapes = queryShapes;
+        this.k = k;
+    }
+
+    @Override
+    public Iterator<List<List<T>>> call(Iterator<T> input)
+            throws Exception
+    {
+        final STRtree tree = KnnJoinJudgement.buildTree(input);
+        return Collections.singletonList(nearestNeighbours(tree, queryShapes.value(), k)).iterator();
+    }
+
+    static <T extends Geometry> List<List<T>> nearestNeighbours(STRtree tree, List<? extends Geometry> queryShapes, int k)
+    {
+        final List<List<T>> result = new ArrayList<>(queryShapes.size());
+        for (Geometry queryShape : queryShapes) {
+            result.add(KnnJoinJudgement.<T>nearestNeighbours(tree, queryShape, k));
+        }
+        return result;
+    }
+}
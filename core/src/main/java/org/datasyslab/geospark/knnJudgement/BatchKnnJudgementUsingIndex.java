@@ -0,0 +1,75 @@
+/*
+ * FILE: BatchKnnJudgementUsingIndex
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.knnJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Same as {@link BatchKnnJudgement}, but uses the index built prior to the query.
+ */
+public class BatchKnnJudgementUsingIndex<U extends Geometry, T extends Geometry>
+        implements FlatMapFunction<Iterator<SpatialIndex>, List<List<T>>>, Serializable
+{
+    private final Broadcast<List<U>> queryShapes;
+    private final int k;
+
+    /**
+     * @param queryShapes the query geometries
+     * @param k the number of neighbours to find for each query geometry
+     */
+    public BatchKnnJudgementUsingIndex(Broadcast<List<U>> queryShapes, int k)
+    {
+        this.queryShapes = queryShapes;
+        this.k = k;
+    }
+
+    @Override
+    public Iterator<List<List<T>>> call(Iterator<SpatialIndex> treeIndexes)
+            throws Exception
+    {
+        final STRtree tree;
+        if (!treeIndexes.hasNext()) {
+            tree = KnnJoinJudgement.buildTree(Collections.<T>emptyIterator());
+        }
+        else {
+            final SpatialIndex treeIndex = treeIndexes.next();
+            if (treeIndex instanceof PackedRTree) {
+                final List<List<T>> result = new ArrayList<>();
+                for (U queryShape : queryShapes.value()) {
+                    result.add(((PackedRTree) treeIndex).<T>nearestNeighbours(queryShape, k));
+                }
+                return Collections.singletonList(result).iterator();
+            }
+            if (!(treeIndex instanceof STRtree)) {
+                throw new Exception("[BatchKnnJudgementUsingIndex][Call] " + treeIndex.getClass().getSimpleName() + " index doesn't support KNN search.");
+            }
+            tree = (STRtree) treeIndex;
+        }
+        return Collections.singletonList(BatchKnnJudgement.<T>nearestNeighbours(tree, queryShapes.value(), k)).iterator();
+    }
+}
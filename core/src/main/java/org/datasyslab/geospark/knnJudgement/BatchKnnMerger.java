@@ -0,0 +1,58 @@
+/*
+ * FILE: BatchKnnMerger
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.knnJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.broadcast.Broadcast;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges two partial results of {@link BatchKnnJudgement} or {@link BatchKnnJudgementUsingIndex},
+ * query geometry by query geometry, keeping at most k nearest neighbours of each.
+ */
+public class BatchKnnMerger<U extends Geometry, T extends Geometry>
+        implements Function2<List<List<T>>, List<List<T>>, List<List<T>>>, Serializable
+{
+    private final Broadcast<List<U>> queryShapes;
+    private final int k;
+
+    /**
+     * @param queryShapes the query geometries
+     * @param k the number of neighbours to keep for each query geometry
+     */
+    public BatchKnnMerger(Broadcast<List<U>> queryShapes, int k)
+    {
+        this.queryShapes = queryShapes;
+        this.k = k;
+    }
+
+    @Override
+    public List<List<T>> call(List<List<T>> neighbours1, List<List<T>> neighbours2)
+            throws Exception
+    {
+        final List<U> queries = queryShapes.value();
+        final List<List<T>> merged = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            merged.add(KnnNeighbourMerger.merge(queries.get(i), neighbours1.get(i), neighbours2.get(i), k, false, false));
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * FILE: KnnExpansionJudgement
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.knnJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.spark.api.java.function.FlatMapFunction2;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Second, partition level step of the k-nearest-neighbour join.
+ * <p>
+ * Receives the output of {@link KnnJoinJudgement} shuffled by partition ID. Finds the k nearest
+ * local geometries for every query geometry which arrives without neighbours and passes
+ * the neighbours found by the first step through.
+ */
+public class KnnExpansionJudgement<U extends Geometry, T extends Geometry>
+        implements FlatMapFunction2<Iterator<Pair<U, List<T>>>, Iterator<T>, Pair<U, List<T>>>, Serializable
+{
+    private final int k;
+
+    /**
+     * @param k the number of neighbours to find for each query geometry
+     */
+    public KnnExpansionJudgement(int k)
+    {
+        this.k = k;
+    }
+
+    @Override
+    public Iterator<Pair<U, List<T>>> call(Iterator<Pair<U, List<T>>> probes, Iterator<T> spatialShapes)
+            throws Exception
+    {
+        STRtree tree = null;
+        final List<Pair<U, List<T>>> result = new ArrayList<>();
+        while (probes.hasNext()) {
+            final Pair<U, List<T>> probe = probes.next();
+            if (probe.getValue() != null) {
+                result.add(probe);
+                continue;
+            }
+
+            // Most partitions receive no probes at all, so the tree is built on first use
+            if (tree == null) {
+                tree = KnnJoinJudgement.buildTree(spatialShapes);
+            }
+            final List<T> neighbours = KnnJoinJudgement.nearestNeighbours(tree, probe.getKey(), k);
+            result.add(Pair.of(probe.getKey(), neighbours));
+        }
+        return result.iterator();
+    }
+}
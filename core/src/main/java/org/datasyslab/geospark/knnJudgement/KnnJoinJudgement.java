@@ -0,0 +1,230 @@
+/*
+ * FILE: KnnJoinJudgement
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.knnJudgement;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.strtree.GeometryItemDistance;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
+import scala.Tuple2;
+
+import javax.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * First, partition level step of the k-nearest-neighbour join.
+ * <p>
+ * Finds the k nearest geometries of the local partition for every query geometry and
+ * emits them keyed by the current partition ID. If the distance to the k-th local neighbour
+ * reaches beyond the current partition, the query geometry is also emitted, without
+ * neighbours, keyed by the ID of every other partition its search envelope overlaps.
+ * {@link KnnExpansionJudgement} runs the search in these partitions.
+ * <p>
+ * If the local partition holds fewer than k geometries, the search widens ring by ring through
+ * the partitions overlapping the extent searched so far, like
+ * {@link org.datasyslab.geospark.spatialOperator.KNNQuery#PartitionedSpatialKnnQuery}, but based
+ * on the number of geometries in each partition. Once the rings hold at least k geometries, the
+ * distance to the farthest corner of their extent bounds the search envelope.
+ * <p>
+ * Query geometries other than points may be placed into several partitions. Only the copy in
+ * the first of these partitions is processed.
+ */
+public class KnnJoinJudgement<U extends Geometry, T extends Geometry>
+        implements FlatMapFunction2<Iterator<U>, Iterator<T>, Tuple2<Integer, Pair<U, List<T>>>>, Serializable
+{
+    private final int k;
+    private final SpatialPartitioner partitioner;
+    @Nullable
+    private final long[] partitionCounts;
+    private final boolean disjointPartitions;
+
+    /**
+     * @param k the number of neighbours to find for each query geometry
+     * @param partitioner the partitioner of both sides of the join
+     * @param partitionCounts the number of geometries in each partition of the spatial side,
+     * or null to search every partition if the local partition holds fewer than k geometries
+     * @param disjointPartitions true if each geometry of the spatial side is placed into a single
+     * partition, e.g. points, so that the counts of several partitions add up
+     */
+    public KnnJoinJudgement(int k, SpatialPartitioner partitioner, @Nullable long[] partitionCounts, boolean disjointPartitions)
+    {
+        this.k = k;
+        this.partitioner = partitioner;
+        this.partitionCounts = partitionCounts;
+        this.disjointPartitions = disjointPartitions;
+    }
+
+    @Override
+    public Iterator<Tuple2<Integer, Pair<U, List<T>>>> call(Iterator<U> queryShapes, Iterator<T> spatialShapes)
+            throws Exception
+    {
+        final int partitionId = TaskContext.getPartitionId();
+        final List<Envelope> grids = partitioner.getGrids();
+        final boolean hasOverflowPartition = partitioner.numPartitions() > grids.size();
+
+        final STRtree tree = buildTree(spatialShapes);
+        final List<Tuple2<Integer, Pair<U, List<T>>>> result = new ArrayList<>();
+        while (queryShapes.hasNext()) {
+            final U queryShape = queryShapes.next();
+            if (!(queryShape instanceof Point) && getHomePartition(queryShape) != partitionId) {
+                continue;
+            }
+
+            final List<T> neighbours = nearestNeighbours(tree, queryShape, k);
+            result.add(new Tuple2<>(partitionId, Pair.of(queryShape, neighbours)));
+
+            final Envelope searchEnvelope;
+            if (neighbours.size() >= k) {
+                searchEnvelope = new Envelope(queryShape.getEnvelopeInternal());
+                searchEnvelope.expandBy(queryShape.distance(neighbours.get(neighbours.size() - 1)));
+            }
+            else {
+                searchEnvelope = expandByRings(queryShape, partitionId, neighbours.size());
+                if (searchEnvelope == null) {
+                    // Every partition may hold a neighbour
+                    for (int i = 0; i < partitioner.numPartitions(); i++) {
+                        if (i != partitionId) {
+                            result.add(new Tuple2<>(i, Pair.of(queryShape, (List<T>) null)));
+                        }
+                    }
+                    continue;
+                }
+            }
+            for (int i = 0; i < grids.size(); i++) {
+                if (i != partitionId && grids.get(i).intersects(searchEnvelope)) {
+                    result.add(new Tuple2<>(i, Pair.of(queryShape, (List<T>) null)));
+                }
+            }
+
+            // The overflow partition holds geometries not covered by any grid cell
+            final boolean withinPartition = partitionId < grids.size() && grids.get(partitionId).covers(searchEnvelope);
+            if (hasOverflowPartition && partitionId != grids.size() && !withinPartition) {
+                result.add(new Tuple2<>(grids.size(), Pair.of(queryShape, (List<T>) null)));
+            }
+        }
+        return result.iterator();
+    }
+
+    /**
+     * Widens the search ring by ring until the partitions within the searched extent hold at least
+     * k geometries. Each of these geometries lies within the distance from the query geometry to
+     * the farthest corner of the extent, so the query envelope expanded by that distance contains
+     * the k nearest neighbours.
+     *
+     * @return the search envelope, or null if the partition counts are unknown, the query geometry
+     * is in the overflow partition or the partitions reachable by rings hold fewer than k geometries
+     */
+    @Nullable
+    private Envelope expandByRings(Geometry queryShape, int partitionId, long localCount)
+    {
+        final List<Envelope> grids = partitioner.getGrids();
+        if (partitionCounts == null || partitionId >= grids.size()) {
+            return null;
+        }
+
+        final Set<Integer> scanned = new HashSet<>();
+        scanned.add(partitionId);
+        final Envelope scannedExtent = new Envelope(grids.get(partitionId));
+        // Geometries placed into several partitions are counted once per partition. Without
+        // disjoint partitions, only the count of the largest partition is certain to be distinct.
+        long count = localCount;
+        while (count < k) {
+            boolean widened = false;
+            final Envelope ringExtent = new Envelope(scannedExtent);
+            for (int ringPartitionId : partitioner.getOverlappingPartitions(scannedExtent)) {
+                if (ringPartitionId < grids.size() && scanned.add(ringPartitionId)) {
+                    final long ringCount = partitionCounts[ringPartitionId];
+                    count = disjointPartitions ? count + ringCount : Math.max(count, ringCount);
+                    ringExtent.expandToInclude(grids.get(ringPartitionId));
+                    widened = true;
+                }
+            }
+            if (!widened) {
+                return null;
+            }
+            scannedExtent.expandToInclude(ringExtent);
+        }
+
+        final Coordinate origin = queryShape.getCoordinate();
+        if (origin == null) {
+            return null;
+        }
+        double radius = 0;
+        for (double x : new double[] {scannedExtent.getMinX(), scannedExtent.getMaxX()}) {
+            for (double y : new double[] {scannedExtent.getMinY(), scannedExtent.getMaxY()}) {
+                radius = Math.max(radius, origin.distance(new Coordinate(x, y)));
+            }
+        }
+
+        final Envelope searchEnvelope = new Envelope(queryShape.getEnvelopeInternal());
+        searchEnvelope.expandBy(radius);
+        return searchEnvelope;
+    }
+
+    private int getHomePartition(U queryShape)
+            throws Exception
+    {
+        int homePartition = Integer.MAX_VALUE;
+        final Iterator<Tuple2<Integer, U>> placements = partitioner.placeObject(queryShape);
+        while (placements.hasNext()) {
+            homePartition = Math.min(homePartition, placements.next()._1());
+        }
+        return homePartition;
+    }
+
+    static <T extends Geometry> STRtree buildTree(Iterator<T> shapes)
+    {
+        final STRtree tree = new STRtree();
+        while (shapes.hasNext()) {
+            final T shape = shapes.next();
+            tree.insert(shape.getEnvelopeInternal(), shape);
+        }
+        tree.build();
+        return tree;
+    }
+
+    /**
+     * Returns up to k geometries of the tree nearest to the query geometry, ordered by distance.
+     */
+    static <T extends Geometry> List<T> nearestNeighbours(STRtree tree, Geometry queryShape, int k)
+    {
+        if (tree.size() == 0) {
+            return new ArrayList<>();
+        }
+
+        final Object[] nearest = tree.nearestNeighbour(queryShape.getEnvelopeInternal(), queryShape, new GeometryItemDistance(), k);
+        final List<T> neighbours = new ArrayList<>(nearest.length);
+        for (Object shape : nearest) {
+            neighbours.add((T) shape);
+        }
+        Collections.sort(neighbours, new GeometryDistanceComparator(queryShape, true));
+        return neighbours;
+    }
+}
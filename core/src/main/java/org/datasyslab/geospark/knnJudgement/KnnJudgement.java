@@ -78,7 +78,8 @@ public class KnnJudgement<U extends Geometry, T extends Geometry>
             }
         }
         ArrayList<T> res = new ArrayList<T>();
-        for (int i = 0; i < k; i++) {
+        // Partitions may hold fewer than k geometries
+        while (!pq.isEmpty()) {
             res.add(pq.poll());
         }
         return res.iterator();
@@ -21,6 +21,7 @@ import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.strtree.GeometryItemDistance;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.apache.spark.api.java.function.FlatMapFunction;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -67,11 +68,17 @@ public class KnnJudgementUsingIndex<U extends Geometry, T extends Geometry>
     {
         SpatialIndex treeIndex = treeIndexes.next();
         final Object[] localK;
-        if (treeIndex instanceof STRtree) {
+        if (treeIndex instanceof STRtree && ((STRtree) treeIndex).size() == 0) {
+            localK = new Object[0];
+        }
+        else if (treeIndex instanceof STRtree) {
             localK = ((STRtree) treeIndex).nearestNeighbour(queryCenter.getEnvelopeInternal(), queryCenter, new GeometryItemDistance(), k);
         }
+        else if (treeIndex instanceof PackedRTree) {
+            localK = ((PackedRTree) treeIndex).nearestNeighbours(queryCenter, k).toArray();
+        }
         else {
-            throw new Exception("[KnnJudgementUsingIndex][Call] QuadTree index doesn't support KNN search.");
+            throw new Exception("[KnnJudgementUsingIndex][Call] " + treeIndex.getClass().getSimpleName() + " index doesn't support KNN search.");
         }
         List<T> result = new ArrayList();
         for (int i = 0; i < localK.length; i++) {
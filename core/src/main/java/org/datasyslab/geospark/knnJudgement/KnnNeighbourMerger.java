@@ -0,0 +1,91 @@
+/*
+ * FILE: KnnNeighbourMerger
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.knnJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.spark.api.java.function.Function2;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges two lists of neighbours of the same query geometry, each ordered by distance,
+ * into a list of at most k nearest neighbours ordered by distance.
+ * <p>
+ * Geometries other than points may be placed into several partitions and found by more than
+ * one of them. If de-dup is requested, such copies are reported once. They are recognized
+ * by record ID if the geometries have one, or by geometry equality otherwise.
+ */
+public class KnnNeighbourMerger<U extends Geometry, T extends Geometry>
+        implements Function2<Pair<U, List<T>>, Pair<U, List<T>>, Pair<U, List<T>>>, Serializable
+{
+    private final int k;
+    private final boolean dedup;
+    private final boolean byRecordId;
+
+    /**
+     * @param k the number of neighbours to keep
+     * @param dedup true if the same neighbour may be found in more than one partition
+     * @param byRecordId true if the neighbours carry record IDs, see {@link IdentifiedUserData}
+     */
+    public KnnNeighbourMerger(int k, boolean dedup, boolean byRecordId)
+    {
+        this.k = k;
+        this.dedup = dedup;
+        this.byRecordId = byRecordId;
+    }
+
+    @Override
+    public Pair<U, List<T>> call(Pair<U, List<T>> neighbours1, Pair<U, List<T>> neighbours2)
+            throws Exception
+    {
+        final U queryShape = neighbours1.getKey();
+        final List<T> merged = merge(queryShape, neighbours1.getValue(), neighbours2.getValue(), k, dedup, byRecordId);
+        return Pair.of(queryShape, merged);
+    }
+
+    /**
+     * Merges two lists of neighbours of the query geometry, each ordered by distance,
+     * into a list of at most k nearest neighbours ordered by distance.
+     */
+    static <T extends Geometry> List<T> merge(Geometry queryShape, List<T> list1, List<T> list2, int k, boolean dedup, boolean byRecordId)
+    {
+        final List<T> merged = new ArrayList<>(Math.min(k, list1.size() + list2.size()));
+        final Set<Object> seen = new HashSet<>();
+        int i = 0;
+        int j = 0;
+        while (merged.size() < k && (i < list1.size() || j < list2.size())) {
+            final T next;
+            if (j >= list2.size() || (i < list1.size() && queryShape.distance(list1.get(i)) <= queryShape.distance(list2.get(j)))) {
+                next = list1.get(i++);
+            }
+            else {
+                next = list2.get(j++);
+            }
+
+            if (!dedup || seen.add(byRecordId ? IdentifiedUserData.getRecordId(next) : next)) {
+                merged.add(next);
+            }
+        }
+        return merged;
+    }
+}
@@ -17,9 +17,17 @@
 
 package org.datasyslab.geospark.rangeJudgement;
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.strtree.AbstractNode;
+import org.locationtech.jts.index.strtree.Boundable;
+import org.locationtech.jts.index.strtree.ItemBoundable;
+import org.locationtech.jts.index.strtree.STRtree;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
 
 import java.io.Serializable;
 
@@ -45,6 +53,110 @@ public class JudgementBase<U extends Geometry>
         this.leftCoveredByRight = leftCoveredByRight;
     }
 
+    /**
+     * Passes every geometry of the index which matches the query window to the visitor.
+     * <p>
+     * If the query window is a rectangle which should cover/intersect the geometries,
+     * any geometry whose envelope lies inside the window matches without a geometry test.
+     * For an STRtree or a packed R-Tree, whole subtrees whose bounds lie inside the window are
+     * passed to the visitor without looking at the individual envelopes.
+     */
+    protected void visitMatches(SpatialIndex treeIndex, final ItemVisitor visitor)
+    {
+        final Envelope queryEnvelope = queryGeometry.getEnvelopeInternal();
+        final boolean rectangleWindow = leftCoveredByRight && queryGeometry.isRectangle();
+
+        if (treeIndex instanceof PackedRTree) {
+            final PackedRTree tree = (PackedRTree) treeIndex;
+            final PackedRTree.ItemIdVisitor refiningVisitor = new PackedRTree.ItemIdVisitor()
+            {
+                @Override
+                public void visitItem(int itemId)
+                {
+                    final Geometry geometry = (Geometry) tree.getItem(itemId);
+                    if (leftCoveredByRight ? match(geometry, queryGeometry) : match(queryGeometry, geometry)) {
+                        visitor.visitItem(geometry);
+                    }
+                }
+            };
+            if (rectangleWindow) {
+                tree.query(queryEnvelope, new PackedRTree.ItemIdVisitor()
+                {
+                    @Override
+                    public void visitItem(int itemId)
+                    {
+                        visitor.visitItem(tree.getItem(itemId));
+                    }
+                }, refiningVisitor);
+            }
+            else {
+                tree.query(queryEnvelope, refiningVisitor);
+            }
+            return;
+        }
+
+        if (rectangleWindow && treeIndex instanceof STRtree) {
+            final STRtree tree = (STRtree) treeIndex;
+            if (tree.size() > 0) {
+                visitNode(tree.getRoot(), queryEnvelope, visitor);
+            }
+            return;
+        }
+
+        treeIndex.query(queryEnvelope, new ItemVisitor()
+        {
+            @Override
+            public void visitItem(Object item)
+            {
+                final Geometry geometry = (Geometry) item;
+                if (leftCoveredByRight) {
+                    if ((rectangleWindow && queryEnvelope.covers(geometry.getEnvelopeInternal())) || match(geometry, queryGeometry)) {
+                        visitor.visitItem(item);
+                    }
+                }
+                else {
+                    if (match(queryGeometry, geometry)) {
+                        visitor.visitItem(item);
+                    }
+                }
+            }
+        });
+    }
+
+    private void visitNode(AbstractNode node, Envelope queryEnvelope, ItemVisitor visitor)
+    {
+        for (Object child : node.getChildBoundables()) {
+            final Envelope bounds = (Envelope) ((Boundable) child).getBounds();
+            if (!queryEnvelope.intersects(bounds)) {
+                continue;
+            }
+
+            if (queryEnvelope.covers(bounds)) {
+                visitAll((Boundable) child, visitor);
+            }
+            else if (child instanceof AbstractNode) {
+                visitNode((AbstractNode) child, queryEnvelope, visitor);
+            }
+            else {
+                final Object item = ((ItemBoundable) child).getItem();
+                if (match((Geometry) item, queryGeometry)) {
+                    visitor.visitItem(item);
+                }
+            }
+        }
+    }
+
+    private static void visitAll(Boundable boundable, ItemVisitor visitor)
+    {
+        if (boundable instanceof ItemBoundable) {
+            visitor.visitItem(((ItemBoundable) boundable).getItem());
+            return;
+        }
+        for (Object child : ((AbstractNode) boundable).getChildBoundables()) {
+            visitAll((Boundable) child, visitor);
+        }
+    }
+
     public boolean match(Geometry spatialObject, Geometry queryWindow)
     {
         if (considerBoundaryIntersection) {
@@ -0,0 +1,51 @@
+/*
+ * FILE: MultiRangeCounter
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Scans a partition once and counts the geometries which each query window covers/intersects,
+ * without collecting them. Emits a single array of counts, indexed by window ID, per partition.
+ */
+public class MultiRangeCounter<U extends Geometry, T extends Geometry>
+        extends MultiRangeJudgementBase<U>
+        implements FlatMapFunction<Iterator<T>, long[]>
+{
+    public MultiRangeCounter(Broadcast<List<U>> queryWindows, boolean considerBoundaryIntersection)
+    {
+        super(queryWindows, considerBoundaryIntersection);
+    }
+
+    @Override
+    public Iterator<long[]> call(Iterator<T> geometries)
+            throws Exception
+    {
+        initPartition();
+        final long[] counts = new long[getWindows().size()];
+        while (geometries.hasNext()) {
+            countMatches(geometries.next(), counts);
+        }
+        return Collections.singletonList(counts).iterator();
+    }
+}
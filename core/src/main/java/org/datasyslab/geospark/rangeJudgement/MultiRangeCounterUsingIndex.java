@@ -0,0 +1,68 @@
+/*
+ * FILE: MultiRangeCounterUsingIndex
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Same as {@link MultiRangeCounter}, but traverses the index of the partition once per batch of
+ * query windows, with the envelope of all windows.
+ */
+public class MultiRangeCounterUsingIndex<U extends Geometry>
+        extends MultiRangeJudgementBase<U>
+        implements FlatMapFunction<Iterator<SpatialIndex>, long[]>
+{
+    public MultiRangeCounterUsingIndex(Broadcast<List<U>> queryWindows, boolean considerBoundaryIntersection)
+    {
+        super(queryWindows, considerBoundaryIntersection);
+    }
+
+    @Override
+    public Iterator<long[]> call(Iterator<SpatialIndex> treeIndexes)
+            throws Exception
+    {
+        final long[] counts = new long[getWindows().size()];
+        if (!treeIndexes.hasNext()) {
+            return Collections.singletonList(counts).iterator();
+        }
+
+        initPartition();
+        while (treeIndexes.hasNext()) {
+            final SpatialIndex treeIndex = treeIndexes.next();
+            if (getWindowsEnvelope().isNull()) {
+                continue;
+            }
+            treeIndex.query(getWindowsEnvelope(), new ItemVisitor()
+            {
+                @Override
+                public void visitItem(Object item)
+                {
+                    countMatches((Geometry) item, counts);
+                }
+            });
+        }
+        return Collections.singletonList(counts).iterator();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * FILE: MultiRangeFilterUsingIndex
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Same as {@link MultiRangeFilter}, but uses the index of the partition. The index is traversed
+ * once per batch of query windows, with the envelope of all windows, and each geometry found is
+ * matched against the windows whose envelopes meet its envelope.
+ */
+public class MultiRangeFilterUsingIndex<U extends Geometry, T extends Geometry>
+        extends MultiRangeJudgementBase<U>
+        implements FlatMapFunction<Iterator<SpatialIndex>, Tuple2<Integer, T>>
+{
+    public MultiRangeFilterUsingIndex(Broadcast<List<U>> queryWindows, boolean considerBoundaryIntersection)
+    {
+        super(queryWindows, considerBoundaryIntersection);
+    }
+
+    @Override
+    public Iterator<Tuple2<Integer, T>> call(Iterator<SpatialIndex> treeIndexes)
+            throws Exception
+    {
+        final List<Tuple2<Integer, T>> results = new ArrayList<>();
+        if (!treeIndexes.hasNext()) {
+            return results.iterator();
+        }
+
+        final SpatialIndex treeIndex = treeIndexes.next();
+        initPartition();
+        if (getWindowsEnvelope().isNull()) {
+            return results.iterator();
+        }
+
+        treeIndex.query(getWindowsEnvelope(), new ItemVisitor()
+        {
+            @Override
+            public void visitItem(Object item)
+            {
+                addMatches((T) item, results);
+            }
+        });
+        return results.iterator();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * FILE: MultiRangeJudgementBase
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.apache.spark.broadcast.Broadcast;
+import scala.Tuple2;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Base class for range filters which evaluate a batch of query windows at once.
+ * <p>
+ * The query windows are broadcast and indexed with an R-Tree once per partition. Each geometry
+ * is matched against the windows whose envelopes meet its envelope. Scans visit every geometry
+ * of the partition. Partition indexes are traversed once per batch, with the envelope of all
+ * windows, and the geometries found are probed against the windows in the same way. A window ID
+ * is the index of the window in the broadcast list.
+ */
+public abstract class MultiRangeJudgementBase<U extends Geometry>
+        implements Serializable
+{
+    private final Broadcast<List<U>> queryWindows;
+    private final boolean considerBoundaryIntersection;
+
+    transient private STRtree windowIndex;
+    transient private Envelope windowsEnvelope;
+
+    /**
+     * @param queryWindows the query windows
+     * @param considerBoundaryIntersection the consider boundary intersection
+     */
+    protected MultiRangeJudgementBase(Broadcast<List<U>> queryWindows, boolean considerBoundaryIntersection)
+    {
+        this.queryWindows = queryWindows;
+        this.considerBoundaryIntersection = considerBoundaryIntersection;
+    }
+
+    /**
+     * Indexes the query windows. Must be called before matching the geometries of a partition.
+     */
+    protected void initPartition()
+    {
+        final List<U> windows = queryWindows.value();
+        windowIndex = new STRtree();
+        windowsEnvelope = new Envelope();
+        for (int i = 0; i < windows.size(); i++) {
+            final Envelope envelope = windows.get(i).getEnvelopeInternal();
+            windowIndex.insert(envelope, i);
+            windowsEnvelope.expandToInclude(envelope);
+        }
+        windowIndex.build();
+    }
+
+    /**
+     * Returns the envelope of all query windows, which is null if there are no windows
+     */
+    protected Envelope getWindowsEnvelope()
+    {
+        return windowsEnvelope;
+    }
+
+    protected List<U> getWindows()
+    {
+        return queryWindows.value();
+    }
+
+    /**
+     * Returns true if the window covers/intersects the geometry
+     */
+    protected boolean matches(U window, Geometry spatialObject)
+    {
+        return considerBoundaryIntersection ? window.intersects(spatialObject) : window.covers(spatialObject);
+    }
+
+    /**
+     * Adds a pair of window ID and geometry to the results for each window which
+     * covers/intersects the geometry.
+     */
+    protected <T extends Geometry> void addMatches(T spatialObject, List<Tuple2<Integer, T>> results)
+    {
+        final List<U> windows = queryWindows.value();
+        final List<Integer> candidates = windowIndex.query(spatialObject.getEnvelopeInternal());
+        for (Integer windowId : candidates) {
+            if (matches(windows.get(windowId), spatialObject)) {
+                results.add(new Tuple2<>(windowId, spatialObject));
+            }
+        }
+    }
+
+    /**
+     * Increments the count of each window which covers/intersects the geometry.
+     */
+    protected void countMatches(Geometry spatialObject, long[] counts)
+    {
+        final List<U> windows = queryWindows.value();
+        final List<Integer> candidates = windowIndex.query(spatialObject.getEnvelopeInternal());
+        for (Integer windowId : candidates) {
+            if (matches(windows.get(windowId), spatialObject)) {
+                counts[windowId]++;
+            }
+        }
+    }
+}
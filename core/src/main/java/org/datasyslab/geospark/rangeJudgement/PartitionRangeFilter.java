@@ -0,0 +1,79 @@
+/*
+ * FILE: PartitionRangeFilter
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.datasyslab.geospark.joinJudgement.DedupFilter;
+import org.datasyslab.geospark.joinJudgement.DedupParams;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Range filter for a spatially partitioned RDD.
+ * <p>
+ * Geometries other than points may be placed into several partitions. If {@code DedupParams}
+ * are provided, such a geometry is reported only by the partition which owns the reference
+ * point of the intersection of its envelope and the envelope of the query window.
+ */
+public class PartitionRangeFilter<U extends Geometry, T extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction<Iterator<T>, T>
+{
+    @Nullable
+    private final DedupParams dedupParams;
+
+    public PartitionRangeFilter(U queryWindow, boolean considerBoundaryIntersection, @Nullable DedupParams dedupParams)
+    {
+        super(queryWindow, considerBoundaryIntersection, true);
+        this.dedupParams = dedupParams;
+    }
+
+    @Override
+    public Iterator<T> call(Iterator<T> geometries)
+            throws Exception
+    {
+        final DedupFilter dedupFilter = createDedupFilter(dedupParams);
+        final List<T> results = new ArrayList<>();
+        while (geometries.hasNext()) {
+            final T geometry = geometries.next();
+            if (isOwner(dedupFilter, geometry, queryGeometry) && match(geometry, queryGeometry)) {
+                results.add(geometry);
+            }
+        }
+        return results.iterator();
+    }
+
+    @Nullable
+    static DedupFilter createDedupFilter(@Nullable DedupParams dedupParams)
+    {
+        return dedupParams == null ? null : DedupFilter.create(dedupParams, TaskContext.getPartitionId());
+    }
+
+    static boolean isOwner(@Nullable DedupFilter dedupFilter, Geometry geometry, Geometry queryWindow)
+    {
+        // Points are placed into exactly one partition
+        return dedupFilter == null || geometry instanceof Point
+                || dedupFilter.ownsReferencePoint(geometry.getEnvelopeInternal(), queryWindow.getEnvelopeInternal());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * FILE: PartitionRangeFilterUsingIndex
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.datasyslab.geospark.joinJudgement.DedupFilter;
+import org.datasyslab.geospark.joinJudgement.DedupParams;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Same as {@link PartitionRangeFilter}, but uses the index built on the spatially
+ * partitioned RDD. Matches are found like in {@link RangeFilterUsingIndex}.
+ */
+public class PartitionRangeFilterUsingIndex<U extends Geometry, T extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction<Iterator<SpatialIndex>, T>
+{
+    @Nullable
+    private final DedupParams dedupParams;
+
+    public PartitionRangeFilterUsingIndex(U queryWindow, boolean considerBoundaryIntersection, @Nullable DedupParams dedupParams)
+    {
+        super(queryWindow, considerBoundaryIntersection, true);
+        this.dedupParams = dedupParams;
+    }
+
+    @Override
+    public Iterator<T> call(Iterator<SpatialIndex> treeIndexes)
+            throws Exception
+    {
+        final List<T> results = new ArrayList<>();
+        if (!treeIndexes.hasNext()) {
+            return results.iterator();
+        }
+
+        final DedupFilter dedupFilter = PartitionRangeFilter.createDedupFilter(dedupParams);
+        visitMatches(treeIndexes.next(), new ItemVisitor()
+        {
+            @Override
+            public void visitItem(Object item)
+            {
+                final T geometry = (T) item;
+                if (PartitionRangeFilter.isOwner(dedupFilter, geometry, queryGeometry)) {
+                    results.add(geometry);
+                }
+            }
+        });
+        return results.iterator();
+    }
+}
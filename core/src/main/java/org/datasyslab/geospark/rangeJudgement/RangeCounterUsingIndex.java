@@ -0,0 +1,58 @@
+/*
+ * FILE: RangeCounterUsingIndex
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.rangeJudgement;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.apache.spark.api.java.function.FlatMapFunction;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Counts the geometries of a partition index which match the query window, without
+ * collecting them. Emits a single count per partition.
+ */
+public class RangeCounterUsingIndex<U extends Geometry>
+        extends JudgementBase
+        implements FlatMapFunction<Iterator<SpatialIndex>, Long>
+{
+
+    public RangeCounterUsingIndex(U queryWindow, boolean considerBoundaryIntersection, boolean leftCoveredByRight)
+    {
+        super(queryWindow, considerBoundaryIntersection, leftCoveredByRight);
+    }
+
+    @Override
+    public Iterator<Long> call(Iterator<SpatialIndex> treeIndexes)
+            throws Exception
+    {
+        final long[] count = new long[1];
+        while (treeIndexes.hasNext()) {
+            visitMatches(treeIndexes.next(), new ItemVisitor()
+            {
+                @Override
+                public void visitItem(Object item)
+                {
+                    count[0]++;
+                }
+            });
+        }
+        return Collections.singletonList(count[0]).iterator();
+    }
+}
@@ -17,6 +17,7 @@
 package org.datasyslab.geospark.rangeJudgement;
 
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.ItemVisitor;
 import org.locationtech.jts.index.SpatialIndex;
 import org.apache.spark.api.java.function.FlatMapFunction;
 
@@ -52,20 +53,15 @@ public class RangeFilterUsingIndex<U extends Geometry, T extends Geometry>
     {
         assert treeIndexes.hasNext() == true;
         SpatialIndex treeIndex = treeIndexes.next();
-        List<T> results = new ArrayList<T>();
-        List<T> tempResults = treeIndex.query(this.queryGeometry.getEnvelopeInternal());
-        for (T tempResult : tempResults) {
-            if (leftCoveredByRight) {
-                if (match(tempResult, queryGeometry)) {
-                    results.add(tempResult);
-                }
+        final List<T> results = new ArrayList<T>();
+        visitMatches(treeIndex, new ItemVisitor()
+        {
+            @Override
+            public void visitItem(Object item)
+            {
+                results.add((T) item);
             }
-            else {
-                if (match(queryGeometry, tempResult)) {
-                    results.add(tempResult);
-                }
-            }
-        }
+        });
         return results.iterator();
     }
 }
@@ -29,10 +29,14 @@ import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.index.quadtree.Quadtree;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.apache.log4j.Logger;
+import org.apache.spark.SparkEnv;
 import org.apache.spark.serializer.KryoRegistrator;
 import org.datasyslab.geospark.geometryObjects.Circle;
 import org.datasyslab.geospark.geometryObjects.GeometrySerde;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
 import org.datasyslab.geospark.geometryObjects.SpatialIndexSerde;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
+import org.datasyslab.geospark.utils.GeoSparkConf;
 
 public class GeoSparkKryoRegistrator
         implements KryoRegistrator
@@ -43,7 +47,7 @@ public class GeoSparkKryoRegistrator
     @Override
     public void registerClasses(Kryo kryo)
     {
-        GeometrySerde serializer = new GeometrySerde();
+        GeometrySerde serializer = createGeometrySerde();
         SpatialIndexSerde indexSerializer = new SpatialIndexSerde(serializer);
 
         log.info("Registering custom serializers for geometry types");
@@ -57,8 +61,26 @@ public class GeoSparkKryoRegistrator
         kryo.register(GeometryCollection.class, serializer);
         kryo.register(Circle.class, serializer);
         kryo.register(Envelope.class, serializer);
+        kryo.register(IdentifiedUserData.class, new IdentifiedUserData.Serde());
         // TODO: Replace the default serializer with default spatial index serializer
         kryo.register(Quadtree.class, indexSerializer);
         kryo.register(STRtree.class, indexSerializer);
+        kryo.register(PackedRTree.class, indexSerializer);
+    }
+
+    /**
+     * Creates a geometry serializer with the coordinate encoding set in the configuration of
+     * the running Spark application, if any
+     */
+    private static GeometrySerde createGeometrySerde()
+    {
+        final SparkEnv sparkEnv = SparkEnv.get();
+        if (sparkEnv == null) {
+            return new GeometrySerde();
+        }
+
+        final GeoSparkConf geoSparkConf = new GeoSparkConf(sparkEnv.conf());
+        log.info("Serializing geometry coordinates as " + geoSparkConf.getSerdeCoordinateEncoding());
+        return new GeometrySerde(geoSparkConf.getSerdeCoordinateEncoding(), geoSparkConf.getSerdeCoordinatePrecision());
     }
 }
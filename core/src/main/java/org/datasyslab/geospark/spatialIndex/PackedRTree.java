@@ -0,0 +1,555 @@
+/*
+ * FILE: PackedRTree
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialIndex;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An R-Tree bulk loaded with the Sort-Tile-Recursive algorithm and stored in flat primitive arrays.
+ * <p>
+ * Items and nodes are numbered level by level: positions [0, size()) hold the items, in packed
+ * order, followed by the leaf nodes, and so on up to the root, which comes last. The bounds of
+ * every position are kept in a single double array and the position of the first child of every
+ * node in a single int array. The children of a node are contiguous.
+ * <p>
+ * Like the JTS STRtree, the tree is built on the first query and doesn't accept items afterwards.
+ * Queries through {@link ItemIdVisitor} report item IDs and don't allocate.
+ * <p>
+ * A tree may also be created from its packed representation with an {@link ItemDecoder} in place
+ * of the items. Each item is then decoded the first time a query reaches it.
+ */
+public class PackedRTree
+        implements SpatialIndex, Serializable
+{
+    public static final int DEFAULT_NODE_CAPACITY = 16;
+
+    /**
+     * Receives the IDs of the items matched by a query. See {@link #getItem(int)}.
+     */
+    public interface ItemIdVisitor
+    {
+        void visitItem(int itemId);
+    }
+
+    /**
+     * Decodes the items of a tree created from its packed representation
+     */
+    public interface ItemDecoder
+            extends Serializable
+    {
+        int size();
+
+        Object decode(int itemId);
+    }
+
+    private final int nodeCapacity;
+
+    /**
+     * Items and their bounds inserted before the tree is built
+     */
+    private List<Object> pendingItems = new ArrayList<>();
+    private double[] pendingBounds = new double[4 * DEFAULT_NODE_CAPACITY];
+
+    private boolean built = false;
+    private int numItems;
+    /**
+     * Items in packed order, or null if the items are decoded lazily
+     */
+    private Object[] items;
+    private ItemDecoder itemDecoder;
+    private AtomicReferenceArray<Object> decodedItems;
+    /**
+     * minX, minY, maxX, maxY of every position
+     */
+    private double[] bounds;
+    /**
+     * Position of the first child of every node, indexed by node position minus number of items
+     */
+    private int[] childOffsets;
+    /**
+     * End position of every level. Level 0 holds the items, the last level holds the root.
+     */
+    private int[] levelEnds;
+
+    public PackedRTree()
+    {
+        this(DEFAULT_NODE_CAPACITY);
+    }
+
+    public PackedRTree(int nodeCapacity)
+    {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("Node capacity must be at least 2: " + nodeCapacity);
+        }
+        this.nodeCapacity = nodeCapacity;
+    }
+
+    /**
+     * Creates a built tree from its packed representation, as returned by the getters.
+     */
+    public PackedRTree(int nodeCapacity, Object[] items, double[] bounds, int[] childOffsets, int[] levelEnds)
+    {
+        this.nodeCapacity = nodeCapacity;
+        this.numItems = items.length;
+        this.items = items;
+        this.bounds = bounds;
+        this.childOffsets = childOffsets;
+        this.levelEnds = levelEnds;
+        this.pendingItems = null;
+        this.pendingBounds = null;
+        this.built = true;
+    }
+
+    /**
+     * Creates a built tree from its packed representation. Items are decoded on first access.
+     */
+    public PackedRTree(int nodeCapacity, ItemDecoder itemDecoder, double[] bounds, int[] childOffsets, int[] levelEnds)
+    {
+        this.nodeCapacity = nodeCapacity;
+        this.numItems = itemDecoder.size();
+        this.itemDecoder = itemDecoder;
+        this.decodedItems = new AtomicReferenceArray<>(numItems);
+        this.bounds = bounds;
+        this.childOffsets = childOffsets;
+        this.levelEnds = levelEnds;
+        this.pendingItems = null;
+        this.pendingBounds = null;
+        this.built = true;
+    }
+
+    @Override
+    public void insert(Envelope itemEnv, Object item)
+    {
+        if (built) {
+            throw new IllegalStateException("Cannot insert items into a packed R-Tree after it has been built.");
+        }
+        if (itemEnv.isNull()) {
+            return;
+        }
+
+        final int offset = 4 * pendingItems.size();
+        if (offset == pendingBounds.length) {
+            final double[] grownBounds = new double[2 * pendingBounds.length];
+            System.arraycopy(pendingBounds, 0, grownBounds, 0, pendingBounds.length);
+            pendingBounds = grownBounds;
+        }
+        pendingBounds[offset] = itemEnv.getMinX();
+        pendingBounds[offset + 1] = itemEnv.getMinY();
+        pendingBounds[offset + 2] = itemEnv.getMaxX();
+        pendingBounds[offset + 3] = itemEnv.getMaxY();
+        pendingItems.add(item);
+    }
+
+    @Override
+    public boolean remove(Envelope itemEnv, Object item)
+    {
+        throw new UnsupportedOperationException("Packed R-Tree doesn't support removal of items.");
+    }
+
+    /**
+     * Packs the inserted items into the tree. Called by the first query if not called explicitly.
+     */
+    public void build()
+    {
+        if (built) {
+            return;
+        }
+
+        numItems = pendingItems.size();
+        final int[] order = packingOrder(pendingBounds, numItems, nodeCapacity);
+
+        final List<Integer> ends = new ArrayList<>();
+        int levelSize = numItems;
+        int numPositions = numItems;
+        ends.add(numPositions);
+        while (levelSize > 1 || (levelSize == 1 && ends.size() == 1)) {
+            levelSize = (levelSize + nodeCapacity - 1) / nodeCapacity;
+            numPositions += levelSize;
+            ends.add(numPositions);
+        }
+
+        items = new Object[numItems];
+        bounds = new double[4 * numPositions];
+        childOffsets = new int[numPositions - numItems];
+        levelEnds = new int[ends.size()];
+        for (int i = 0; i < levelEnds.length; i++) {
+            levelEnds[i] = ends.get(i);
+        }
+
+        for (int i = 0; i < numItems; i++) {
+            items[i] = pendingItems.get(order[i]);
+            System.arraycopy(pendingBounds, 4 * order[i], bounds, 4 * i, 4);
+        }
+
+        for (int level = 1; level < levelEnds.length; level++) {
+            final int childEnd = levelEnds[level - 1];
+            int node = childEnd;
+            for (int child = level == 1 ? 0 : levelEnds[level - 2]; child < childEnd; child += nodeCapacity) {
+                childOffsets[node - numItems] = child;
+                setUnion(node, child, Math.min(child + nodeCapacity, childEnd));
+                node++;
+            }
+        }
+
+        pendingItems = null;
+        pendingBounds = null;
+        built = true;
+    }
+
+    /**
+     * Orders the items by the x coordinate of their centres, cuts them into vertical slices
+     * of whole leaves and orders every slice by the y coordinate of the centres.
+     */
+    private static int[] packingOrder(double[] itemBounds, int numItems, int nodeCapacity)
+    {
+        final int[] order = new int[numItems];
+        final double[] centreX = new double[numItems];
+        final double[] centreY = new double[numItems];
+        for (int i = 0; i < numItems; i++) {
+            order[i] = i;
+            centreX[i] = (itemBounds[4 * i] + itemBounds[4 * i + 2]) / 2;
+            centreY[i] = (itemBounds[4 * i + 1] + itemBounds[4 * i + 3]) / 2;
+        }
+
+        sort(order, centreX, 0, numItems);
+        final int numLeaves = (numItems + nodeCapacity - 1) / nodeCapacity;
+        final int numSlices = (int) Math.ceil(Math.sqrt(numLeaves));
+        if (numSlices > 0) {
+            final int sliceSize = nodeCapacity * ((numLeaves + numSlices - 1) / numSlices);
+            for (int from = 0; from < numItems; from += sliceSize) {
+                sort(order, centreY, from, Math.min(from + sliceSize, numItems));
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Sorts order[from, to) by the keys the entries refer to
+     */
+    private static void sort(int[] order, double[] keys, int from, int to)
+    {
+        while (to - from > 16) {
+            final double pivot = keys[order[(from + to) >>> 1]];
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) {
+                    i++;
+                }
+                while (keys[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int swap = order[i];
+                    order[i] = order[j];
+                    order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the shorter range, loop over the longer one
+            if (j + 1 - from < to - i) {
+                sort(order, keys, from, j + 1);
+                from = i;
+            }
+            else {
+                sort(order, keys, i, to);
+                to = j + 1;
+            }
+        }
+
+        for (int i = from + 1; i < to; i++) {
+            final int entry = order[i];
+            int j = i - 1;
+            while (j >= from && keys[order[j]] > keys[entry]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = entry;
+        }
+    }
+
+    private void setUnion(int node, int firstChild, int endChild)
+    {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int child = firstChild; child < endChild; child++) {
+            minX = Math.min(minX, bounds[4 * child]);
+            minY = Math.min(minY, bounds[4 * child + 1]);
+            maxX = Math.max(maxX, bounds[4 * child + 2]);
+            maxY = Math.max(maxY, bounds[4 * child + 3]);
+        }
+        bounds[4 * node] = minX;
+        bounds[4 * node + 1] = minY;
+        bounds[4 * node + 2] = maxX;
+        bounds[4 * node + 3] = maxY;
+    }
+
+    /**
+     * Reports every item whose bounds intersect the search envelope.
+     */
+    public void query(Envelope searchEnv, ItemIdVisitor visitor)
+    {
+        query(searchEnv, visitor, visitor);
+    }
+
+    /**
+     * Reports every item whose bounds intersect the search envelope. Items below nodes whose bounds
+     * are covered by the search envelope go to the first visitor without further bounds checks,
+     * the other items to the second visitor.
+     */
+    public void query(Envelope searchEnv, ItemIdVisitor coveredVisitor, ItemIdVisitor intersectingVisitor)
+    {
+        build();
+        if (numItems == 0 || searchEnv.isNull()) {
+            return;
+        }
+
+        final int root = levelEnds[levelEnds.length - 1] - 1;
+        queryNode(root, levelEnds.length - 1, searchEnv.getMinX(), searchEnv.getMinY(),
+                searchEnv.getMaxX(), searchEnv.getMaxY(), coveredVisitor, intersectingVisitor);
+    }
+
+    private void queryNode(int node, int level, double minX, double minY, double maxX, double maxY,
+            ItemIdVisitor coveredVisitor, ItemIdVisitor intersectingVisitor)
+    {
+        final int firstChild = childOffsets[node - numItems];
+        final int endChild = Math.min(firstChild + nodeCapacity, levelEnds[level - 1]);
+        for (int child = firstChild; child < endChild; child++) {
+            final int offset = 4 * child;
+            if (bounds[offset] > maxX || bounds[offset + 2] < minX || bounds[offset + 1] > maxY || bounds[offset + 3] < minY) {
+                continue;
+            }
+
+            final boolean covered = bounds[offset] >= minX && bounds[offset + 2] <= maxX
+                    && bounds[offset + 1] >= minY && bounds[offset + 3] <= maxY;
+            if (level == 1) {
+                (covered ? coveredVisitor : intersectingVisitor).visitItem(child);
+            }
+            else if (covered && coveredVisitor != intersectingVisitor) {
+                visitAll(child, level - 1, coveredVisitor);
+            }
+            else {
+                queryNode(child, level - 1, minX, minY, maxX, maxY, coveredVisitor, intersectingVisitor);
+            }
+        }
+    }
+
+    private void visitAll(int node, int level, ItemIdVisitor visitor)
+    {
+        final int firstChild = childOffsets[node - numItems];
+        final int endChild = Math.min(firstChild + nodeCapacity, levelEnds[level - 1]);
+        for (int child = firstChild; child < endChild; child++) {
+            if (level == 1) {
+                visitor.visitItem(child);
+            }
+            else {
+                visitAll(child, level - 1, visitor);
+            }
+        }
+    }
+
+    @Override
+    public List query(Envelope searchEnv)
+    {
+        final List<Object> result = new ArrayList<>();
+        query(searchEnv, new ItemIdVisitor()
+        {
+            @Override
+            public void visitItem(int itemId)
+            {
+                result.add(item(itemId));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void query(Envelope searchEnv, final ItemVisitor visitor)
+    {
+        query(searchEnv, new ItemIdVisitor()
+        {
+            @Override
+            public void visitItem(int itemId)
+            {
+                visitor.visitItem(item(itemId));
+            }
+        });
+    }
+
+    /**
+     * Returns up to k items nearest to the query geometry, ordered by distance.
+     * All items must be geometries.
+     */
+    public <T> List<T> nearestNeighbours(Geometry queryShape, int k)
+    {
+        build();
+        final List<T> result = new ArrayList<>();
+        if (numItems == 0 || k <= 0) {
+            return result;
+        }
+
+        final Envelope queryEnv = queryShape.getEnvelopeInternal();
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        final int root = levelEnds[levelEnds.length - 1] - 1;
+        queue.add(new Candidate(root, levelEnds.length - 1, 0));
+        while (!queue.isEmpty()) {
+            final Candidate candidate = queue.poll();
+            if (candidate.level == 0) {
+                // Items are queued with their exact distance, so no closer item is left
+                result.add((T) item(candidate.position));
+                if (result.size() == k) {
+                    break;
+                }
+                continue;
+            }
+
+            final int firstChild = childOffsets[candidate.position - numItems];
+            final int endChild = Math.min(firstChild + nodeCapacity, levelEnds[candidate.level - 1]);
+            for (int child = firstChild; child < endChild; child++) {
+                final double distance = candidate.level == 1
+                        ? queryShape.distance((Geometry) item(child))
+                        : distance(queryEnv, child);
+                queue.add(new Candidate(child, candidate.level - 1, distance));
+            }
+        }
+        return result;
+    }
+
+    private double distance(Envelope env, int position)
+    {
+        final int offset = 4 * position;
+        final double dx = Math.max(0, Math.max(bounds[offset] - env.getMaxX(), env.getMinX() - bounds[offset + 2]));
+        final double dy = Math.max(0, Math.max(bounds[offset + 1] - env.getMaxY(), env.getMinY() - bounds[offset + 3]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private static final class Candidate
+            implements Comparable<Candidate>
+    {
+        private final int position;
+        private final int level;
+        private final double distance;
+
+        private Candidate(int position, int level, double distance)
+        {
+            this.position = position;
+            this.level = level;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Candidate other)
+        {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    /**
+     * Returns the item with the given ID, as reported by {@link ItemIdVisitor}
+     */
+    public Object getItem(int itemId)
+    {
+        build();
+        return item(itemId);
+    }
+
+    private Object item(int itemId)
+    {
+        if (items != null) {
+            return items[itemId];
+        }
+
+        Object item = decodedItems.get(itemId);
+        if (item == null) {
+            item = itemDecoder.decode(itemId);
+            if (!decodedItems.compareAndSet(itemId, null, item)) {
+                item = decodedItems.get(itemId);
+            }
+        }
+        return item;
+    }
+
+    public int size()
+    {
+        return built ? numItems : pendingItems.size();
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    public int getNodeCapacity()
+    {
+        return nodeCapacity;
+    }
+
+    /**
+     * Returns all items in packed order. Decodes all items of a lazily decoded tree.
+     */
+    public Object[] getItems()
+    {
+        build();
+        if (items != null) {
+            return items;
+        }
+
+        final Object[] allItems = new Object[numItems];
+        for (int i = 0; i < numItems; i++) {
+            allItems[i] = item(i);
+        }
+        return allItems;
+    }
+
+    /**
+     * Returns the decoder of a lazily decoded tree, or null
+     */
+    public ItemDecoder getItemDecoder()
+    {
+        return itemDecoder;
+    }
+
+    public double[] getBounds()
+    {
+        build();
+        return bounds;
+    }
+
+    public int[] getChildOffsets()
+    {
+        build();
+        return childOffsets;
+    }
+
+    public int[] getLevelEnds()
+    {
+        build();
+        return levelEnds;
+    }
+}
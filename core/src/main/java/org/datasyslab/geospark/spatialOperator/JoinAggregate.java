@@ -0,0 +1,102 @@
+/*
+ * FILE: JoinAggregate
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialOperator;
+
+import java.io.Serializable;
+
+/**
+ * Aggregate of the geometries matching a single query geometry in a spatial join:
+ * the number of matches and the sum, minimum and maximum of a numeric user data field.
+ * <p>
+ * Matches whose user data field is missing or not numeric are counted, but don't
+ * contribute to the sum, minimum and maximum.
+ */
+public final class JoinAggregate
+        implements Serializable
+{
+    private long count;
+    private long valueCount;
+    private double sum;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    void addMatch()
+    {
+        count++;
+    }
+
+    void addValue(double value)
+    {
+        valueCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    JoinAggregate merge(JoinAggregate other)
+    {
+        count += other.count;
+        valueCount += other.valueCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    /**
+     * @return Number of matching geometries
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * @return Number of matching geometries with a numeric user data field
+     */
+    public long getValueCount()
+    {
+        return valueCount;
+    }
+
+    public double getSum()
+    {
+        return sum;
+    }
+
+    /**
+     * @return Minimum of the user data field, or NaN if no match has a numeric value
+     */
+    public double getMin()
+    {
+        return valueCount == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * @return Maximum of the user data field, or NaN if no match has a numeric value
+     */
+    public double getMax()
+    {
+        return valueCount == 0 ? Double.NaN : max;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "JoinAggregate{count=" + count + ", sum=" + sum + ", min=" + getMin() + ", max=" + getMax() + "}";
+    }
+}
@@ -17,30 +17,51 @@
 package org.datasyslab.geospark.spatialOperator;
 
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.SpatialIndex;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.apache.spark.SparkContext;
 import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.api.java.function.PairFunction;
+import org.apache.spark.broadcast.Broadcast;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.enums.JoinAlgorithm;
 import org.datasyslab.geospark.enums.JoinBuildSide;
 import org.datasyslab.geospark.geometryObjects.Circle;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
+import org.datasyslab.geospark.joinJudgement.AdaptiveJoinJudgement;
+import org.datasyslab.geospark.joinJudgement.BroadcastIndex;
+import org.datasyslab.geospark.joinJudgement.BroadcastIndexJudgement;
 import org.datasyslab.geospark.joinJudgement.DedupParams;
 import org.datasyslab.geospark.joinJudgement.DynamicIndexLookupJudgement;
 import org.datasyslab.geospark.joinJudgement.LeftIndexLookupJudgement;
 import org.datasyslab.geospark.joinJudgement.NestedLoopJudgement;
+import org.datasyslab.geospark.joinJudgement.PlaneSweepJudgement;
 import org.datasyslab.geospark.joinJudgement.RightIndexLookupJudgement;
+import org.datasyslab.geospark.joinJudgement.SemiJoinJudgement;
+import org.datasyslab.geospark.knnJudgement.KnnExpansionJudgement;
+import org.datasyslab.geospark.knnJudgement.KnnJoinJudgement;
+import org.datasyslab.geospark.knnJudgement.KnnNeighbourMerger;
+import org.datasyslab.geospark.monitoring.GeoSparkGauge;
 import org.datasyslab.geospark.monitoring.GeoSparkMetric;
 import org.datasyslab.geospark.monitoring.GeoSparkMetrics;
 import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
 import org.datasyslab.geospark.spatialRDD.CircleRDD;
+import org.datasyslab.geospark.spatialRDD.PointRDD;
 import org.datasyslab.geospark.spatialRDD.SpatialRDD;
+import org.datasyslab.geospark.spatialRddTool.BroadcastReleaser;
+import org.datasyslab.geospark.spatialRddTool.IndexBuilder;
 import scala.Tuple2;
 
+import javax.annotation.Nullable;
+
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 
 public class JoinQuery
@@ -82,8 +103,19 @@ public class JoinQuery
         }
     }
 
-    private static <U extends Geometry, T extends Geometry> JavaPairRDD<U, HashSet<T>> collectGeometriesByKey(JavaPairRDD<U, T> input)
+    private static <U extends Geometry, T extends Geometry> void verifyRecordIds(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD)
+    {
+        if (!spatialRDD.hasRecordIds() || !queryRDD.hasRecordIds()) {
+            throw new IllegalArgumentException("[JoinQuery] both input RDDs must have record IDs. Please call SpatialRDD.assignRecordIds() first.");
+        }
+    }
+
+    private static <U extends Geometry, T extends Geometry> JavaPairRDD<U, HashSet<T>> collectGeometriesByKey(JavaPairRDD<U, T> input, boolean byRecordId)
     {
+        if (byRecordId) {
+            return collectGeometriesByRecordId(input);
+        }
+
         return input.aggregateByKey(
                 new HashSet<T>(),
                 new Function2<HashSet<T>, T, HashSet<T>>()
@@ -108,39 +140,199 @@ public class JoinQuery
                 });
     }
 
-    private static <U extends Geometry, T extends Geometry> JavaPairRDD<U, Long> countGeometriesByKey(JavaPairRDD<U, T> input)
+    /**
+     * Same as {@link #collectGeometriesByKey(JavaPairRDD, boolean)}, but shuffles on the record IDs
+     * of the keys. Records with equal geometries but different IDs make separate groups.
+     */
+    private static <U extends Geometry, T extends Geometry> JavaPairRDD<U, HashSet<T>> collectGeometriesByRecordId(JavaPairRDD<U, T> input)
     {
-        return input.aggregateByKey(
-                0L,
-                new Function2<Long, T, Long>()
+        final JavaPairRDD<Long, Tuple2<U, HashSet<T>>> groups = input.mapToPair(new PairFunction<Tuple2<U, T>, Long, Tuple2<U, T>>()
+        {
+            @Override
+            public Tuple2<Long, Tuple2<U, T>> call(Tuple2<U, T> pair)
+                    throws Exception
+            {
+                return new Tuple2<>(IdentifiedUserData.getRecordId(pair._1()), pair);
+            }
+        }).combineByKey(
+                new Function<Tuple2<U, T>, Tuple2<U, HashSet<T>>>()
+                {
+                    @Override
+                    public Tuple2<U, HashSet<T>> call(Tuple2<U, T> pair)
+                            throws Exception
+                    {
+                        final HashSet<T> ts = new HashSet<>();
+                        ts.add(pair._2());
+                        return new Tuple2<>(pair._1(), ts);
+                    }
+                },
+                new Function2<Tuple2<U, HashSet<T>>, Tuple2<U, T>, Tuple2<U, HashSet<T>>>()
                 {
-
                     @Override
-                    public Long call(Long count, T t)
+                    public Tuple2<U, HashSet<T>> call(Tuple2<U, HashSet<T>> group, Tuple2<U, T> pair)
                             throws Exception
                     {
-                        return count + 1;
+                        group._2().add(pair._2());
+                        return group;
                     }
                 },
-                new Function2<Long, Long, Long>()
+                new Function2<Tuple2<U, HashSet<T>>, Tuple2<U, HashSet<T>>, Tuple2<U, HashSet<T>>>()
                 {
+                    @Override
+                    public Tuple2<U, HashSet<T>> call(Tuple2<U, HashSet<T>> group1, Tuple2<U, HashSet<T>> group2)
+                            throws Exception
+                    {
+                        group1._2().addAll(group2._2());
+                        return group1;
+                    }
+                });
+        return JavaPairRDD.fromJavaRDD(groups.values());
+    }
+
+    /**
+     * Aggregates join results in the tasks that produce them. Returns one partial
+     * aggregate per query geometry and partition.
+     */
+    private static <U extends Geometry, T extends Geometry> JavaPairRDD<U, JoinAggregate> aggregatePartitions(JavaRDD<Pair<U, T>> joinResults, int userDataField)
+    {
+        final JavaRDD<Tuple2<U, JoinAggregate>> partials =
+                joinResults.mapPartitions(new PartialJoinAggregator<U, T>(userDataField));
+        return JavaPairRDD.fromJavaRDD(partials);
+    }
+
+    private static <U extends Geometry> JavaPairRDD<U, JoinAggregate> mergeAggregates(JavaPairRDD<U, JoinAggregate> partials, boolean byRecordId)
+    {
+        if (byRecordId) {
+            return mergeAggregatesByRecordId(partials);
+        }
 
+        return partials.reduceByKey(
+                new Function2<JoinAggregate, JoinAggregate, JoinAggregate>()
+                {
                     @Override
-                    public Long call(Long count1, Long count2)
+                    public JoinAggregate call(JoinAggregate aggregate1, JoinAggregate aggregate2)
                             throws Exception
                     {
-                        return count1 + count2;
+                        return aggregate1.merge(aggregate2);
                     }
                 });
     }
 
+    private static <U extends Geometry> JavaPairRDD<U, JoinAggregate> mergeAggregatesByRecordId(JavaPairRDD<U, JoinAggregate> partials)
+    {
+        final JavaPairRDD<Long, Tuple2<U, JoinAggregate>> aggregates = partials.mapToPair(new PairFunction<Tuple2<U, JoinAggregate>, Long, Tuple2<U, JoinAggregate>>()
+        {
+            @Override
+            public Tuple2<Long, Tuple2<U, JoinAggregate>> call(Tuple2<U, JoinAggregate> partial)
+                    throws Exception
+            {
+                return new Tuple2<>(IdentifiedUserData.getRecordId(partial._1()), partial);
+            }
+        }).reduceByKey(new Function2<Tuple2<U, JoinAggregate>, Tuple2<U, JoinAggregate>, Tuple2<U, JoinAggregate>>()
+        {
+            @Override
+            public Tuple2<U, JoinAggregate> call(Tuple2<U, JoinAggregate> partial1, Tuple2<U, JoinAggregate> partial2)
+                    throws Exception
+            {
+                partial1._2().merge(partial2._2());
+                return partial1;
+            }
+        });
+        return JavaPairRDD.fromJavaRDD(aggregates.values());
+    }
+
+    private static <U extends Geometry, T extends Geometry> JavaPairRDD<Long, Long> toRecordIds(JavaRDD<Pair<U, T>> joinResults)
+    {
+        return joinResults.mapToPair(new PairFunction<Pair<U, T>, Long, Long>()
+        {
+            @Override
+            public Tuple2<Long, Long> call(Pair<U, T> pair)
+                    throws Exception
+            {
+                return new Tuple2<>(IdentifiedUserData.getRecordId(pair.getKey()), IdentifiedUserData.getRecordId(pair.getValue()));
+            }
+        });
+    }
+
+    /**
+     * Removes duplicate pairs by shuffling on the record IDs of both geometries
+     * instead of on the geometries themselves.
+     */
+    private static <U extends Geometry, T extends Geometry> JavaRDD<Pair<U, T>> distinctByRecordIds(JavaRDD<Pair<U, T>> joinResults)
+    {
+        return joinResults.mapToPair(new PairFunction<Pair<U, T>, Tuple2<Long, Long>, Pair<U, T>>()
+        {
+            @Override
+            public Tuple2<Tuple2<Long, Long>, Pair<U, T>> call(Pair<U, T> pair)
+                    throws Exception
+            {
+                final Tuple2<Long, Long> ids = new Tuple2<>(IdentifiedUserData.getRecordId(pair.getKey()), IdentifiedUserData.getRecordId(pair.getValue()));
+                return new Tuple2<>(ids, pair);
+            }
+        }).reduceByKey(new Function2<Pair<U, T>, Pair<U, T>, Pair<U, T>>()
+        {
+            @Override
+            public Pair<U, T> call(Pair<U, T> pair1, Pair<U, T> pair2)
+                    throws Exception
+            {
+                return pair1;
+            }
+        }).values();
+    }
+
+    private static <U extends Geometry> JavaPairRDD<U, Long> toCounts(JavaPairRDD<U, JoinAggregate> aggregates)
+    {
+        return aggregates.mapValues(new Function<JoinAggregate, Long>()
+        {
+            @Override
+            public Long call(JoinAggregate aggregate)
+                    throws Exception
+            {
+                return aggregate.getCount();
+            }
+        });
+    }
+
+    private static <V> JavaPairRDD<Geometry, V> toCenters(JavaPairRDD<Circle, V> circles)
+    {
+        return circles.mapToPair(new PairFunction<Tuple2<Circle, V>, Geometry, V>()
+        {
+            @Override
+            public Tuple2<Geometry, V> call(Tuple2<Circle, V> circle)
+                    throws Exception
+            {
+                return new Tuple2<>(circle._1().getCenterGeometry(), circle._2());
+            }
+        });
+    }
+
     public static final class JoinParams
     {
+        public static final long DEFAULT_NESTED_LOOP_MAX_PAIRS = 10000;
+        public static final int DEFAULT_LOPSIDED_RATIO = 10;
+
         public final boolean useIndex;
         public final boolean considerBoundaryIntersection;
         public final boolean allowDuplicates;
         public final IndexType indexType;
         public final JoinBuildSide joinBuildSide;
+        public final JoinAlgorithm joinAlgorithm;
+        /**
+         * Partitions larger than the median partition by more than this factor are split
+         * into several tasks. 0 disables skew handling. Both sides are read once per task,
+         * so persist their spatialPartitionedRDD when enabling it.
+         */
+        public final double skewFactor;
+        /**
+         * {@link JoinAlgorithm#ADAPTIVE} joins partitions with at most this many candidate pairs
+         * (left count times right count) with a nested loop
+         */
+        public final long nestedLoopMaxPairs;
+        /**
+         * {@link JoinAlgorithm#ADAPTIVE} builds an index of {@code indexType} on the smaller side
+         * of partitions whose larger side holds at least this many times more geometries
+         */
+        public final int lopsidedRatio;
 
         public JoinParams(boolean useIndex, boolean considerBoundaryIntersection, boolean allowDuplicates)
         {
@@ -149,15 +341,49 @@ public class JoinQuery
             this.allowDuplicates = allowDuplicates;
             this.indexType = IndexType.RTREE;
             this.joinBuildSide = JoinBuildSide.RIGHT;
+            this.joinAlgorithm = JoinAlgorithm.DEFAULT;
+            this.skewFactor = 0;
+            this.nestedLoopMaxPairs = DEFAULT_NESTED_LOOP_MAX_PAIRS;
+            this.lopsidedRatio = DEFAULT_LOPSIDED_RATIO;
         }
 
         public JoinParams(boolean considerBoundaryIntersection, IndexType polygonIndexType, JoinBuildSide joinBuildSide)
         {
+            this(considerBoundaryIntersection, polygonIndexType, joinBuildSide, JoinAlgorithm.DEFAULT);
+        }
+
+        public JoinParams(boolean considerBoundaryIntersection, IndexType polygonIndexType, JoinBuildSide joinBuildSide, JoinAlgorithm joinAlgorithm)
+        {
+            this(considerBoundaryIntersection, polygonIndexType, joinBuildSide, joinAlgorithm, 0);
+        }
+
+        public JoinParams(boolean considerBoundaryIntersection, IndexType polygonIndexType, JoinBuildSide joinBuildSide, JoinAlgorithm joinAlgorithm, double skewFactor)
+        {
+            this(considerBoundaryIntersection, polygonIndexType, joinBuildSide, joinAlgorithm, skewFactor,
+                    DEFAULT_NESTED_LOOP_MAX_PAIRS, DEFAULT_LOPSIDED_RATIO);
+        }
+
+        public JoinParams(boolean considerBoundaryIntersection, IndexType polygonIndexType, JoinBuildSide joinBuildSide, JoinAlgorithm joinAlgorithm, double skewFactor,
+                long nestedLoopMaxPairs, int lopsidedRatio)
+        {
+            if (skewFactor != 0 && skewFactor <= 1) {
+                throw new IllegalArgumentException("Skew factor must be 0 or > 1. Received " + skewFactor);
+            }
+            if (nestedLoopMaxPairs < 0) {
+                throw new IllegalArgumentException("Nested loop max pairs must be >= 0. Received " + nestedLoopMaxPairs);
+            }
+            if (lopsidedRatio <= 1) {
+                throw new IllegalArgumentException("Lopsided ratio must be > 1. Received " + lopsidedRatio);
+            }
             this.useIndex = false;
             this.considerBoundaryIntersection = considerBoundaryIntersection;
             this.allowDuplicates = false;
             this.indexType = polygonIndexType;
             this.joinBuildSide = joinBuildSide;
+            this.joinAlgorithm = Objects.requireNonNull(joinAlgorithm, "joinAlgorithm");
+            this.skewFactor = skewFactor;
+            this.nestedLoopMaxPairs = nestedLoopMaxPairs;
+            this.lopsidedRatio = lopsidedRatio;
         }
     }
 
@@ -189,14 +415,14 @@ public class JoinQuery
     {
         final JoinParams joinParams = new JoinParams(useIndex, considerBoundaryIntersection, false);
         final JavaPairRDD<U, T> joinResults = spatialJoin(queryRDD, spatialRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     public static <U extends Geometry, T extends Geometry> JavaPairRDD<U, HashSet<T>> SpatialJoinQuery(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, JoinParams joinParams)
             throws Exception
     {
         final JavaPairRDD<U, T> joinResults = spatialJoin(queryRDD, spatialRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     /**
@@ -216,14 +442,14 @@ public class JoinQuery
     {
         final JoinParams joinParams = new JoinParams(useIndex, considerBoundaryIntersection, true);
         final JavaPairRDD<U, T> joinResults = spatialJoin(queryRDD, spatialRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     public static <U extends Geometry, T extends Geometry> JavaPairRDD<U, HashSet<T>> SpatialJoinQueryWithDuplicates(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, JoinParams joinParams)
             throws Exception
     {
         final JavaPairRDD<U, T> joinResults = spatialJoin(queryRDD, spatialRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     /**
@@ -261,6 +487,25 @@ public class JoinQuery
         return spatialJoin(queryRDD, spatialRDD, joinParams);
     }
 
+    /**
+     * Same as {@link #SpatialJoinQueryFlat(SpatialRDD, SpatialRDD, JoinParams)}, but returns pairs of record IDs
+     * instead of pairs of geometries. Both RDDs must have record IDs, see {@link SpatialRDD#assignRecordIds()}.
+     *
+     * @param <U> Type of the geometries in queryWindowRDD set
+     * @param <T> Type of the geometries in spatialRDD set
+     * @param spatialRDD Set of geometries
+     * @param queryRDD Set of geometries which serve as query windows
+     * @param joinParams Join parameters
+     * @return RDD of pairs of record IDs where the first ID belongs to the queryRDD and the second to the spatialRDD
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> JavaPairRDD<Long, Long> SpatialJoinQueryIdPairs(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, JoinParams joinParams)
+            throws Exception
+    {
+        verifyRecordIds(spatialRDD, queryRDD);
+        return toRecordIds(joinPairs(queryRDD, spatialRDD, joinParams));
+    }
+
     /**
      * {@link #SpatialJoinQueryFlat(SpatialRDD, SpatialRDD, boolean, boolean)} count by key.
      * <p>
@@ -279,15 +524,234 @@ public class JoinQuery
             throws Exception
     {
         final JoinParams joinParams = new JoinParams(useIndex, considerBoundaryIntersection, false);
-        final JavaPairRDD<U, T> joinResults = spatialJoin(queryRDD, spatialRDD, joinParams);
-        return countGeometriesByKey(joinResults);
+        return SpatialJoinQueryCountByKey(spatialRDD, queryRDD, joinParams);
     }
 
     public static <U extends Geometry, T extends Geometry> JavaPairRDD<U, Long> SpatialJoinQueryCountByKey(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, JoinParams joinParams)
             throws Exception
     {
-        final JavaPairRDD<U, T> joinResults = spatialJoin(queryRDD, spatialRDD, joinParams);
-        return countGeometriesByKey(joinResults);
+        final JavaRDD<Pair<U, T>> joinResults = joinPairs(queryRDD, spatialRDD, joinParams);
+        return toCounts(mergeAggregates(aggregatePartitions(joinResults, PartialJoinAggregator.NO_FIELD), queryRDD.hasRecordIds()));
+    }
+
+    /**
+     * Joins two sets of geometries like {@link #SpatialJoinQueryFlat(SpatialRDD, SpatialRDD, JoinParams)}
+     * and aggregates the matches of each query geometry: their count and the sum, minimum and maximum
+     * of a numeric field in their user data.
+     * <p>
+     * Matches are aggregated by the partition-level join, which emits one partial aggregate per
+     * query geometry and partition. Matching pairs are never shuffled.
+     * <p>
+     * Duplicates present in the input RDDs will be reflected in the join results.
+     *
+     * @param <U> Type of the geometries in queryWindowRDD set
+     * @param <T> Type of the geometries in spatialRDD set
+     * @param spatialRDD Set of geometries
+     * @param queryRDD Set of geometries which serve as query windows
+     * @param joinParams Join parameters
+     * @param userDataField Zero-based index of the field in the tab-separated user data of
+     * {@code spatialRDD} geometries to aggregate
+     * @return RDD of pairs where each pair contains a geometry and the aggregate of matching geometries
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> JavaPairRDD<U, JoinAggregate> SpatialJoinQueryAggregateByKey(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, JoinParams joinParams, int userDataField)
+            throws Exception
+    {
+        if (userDataField < 0) {
+            throw new IllegalArgumentException("User data field must be >= 0. Received " + userDataField);
+        }
+        final JavaRDD<Pair<U, T>> joinResults = joinPairs(queryRDD, spatialRDD, joinParams);
+        return mergeAggregates(aggregatePartitions(joinResults, userDataField), queryRDD.hasRecordIds());
+    }
+
+    /**
+     * Returns geometries from {@code spatialRDD} for which at least one geometry in {@code queryRDD}
+     * satisfies the join condition, i.e. contains or intersects them. Each geometry is reported once.
+     * <p>
+     * The partition level join stops probing as soon as it finds the first match for a geometry.
+     * Geometries other than points may be placed into multiple partitions and are de-duplicated
+     * with a shuffle on their record IDs, if present, or on the geometries themselves. In the latter
+     * case, duplicates in the original spatialRDD are eliminated.
+     *
+     * @param <U> Type of the geometries in queryWindowRDD set
+     * @param <T> Type of the geometries in spatialRDD set
+     * @param spatialRDD Set of geometries to filter
+     * @param queryRDD Set of geometries which serve as query windows
+     * @param joinParams Join parameters; only {@code considerBoundaryIntersection} is used
+     * @return RDD of geometries from {@code spatialRDD} with at least one match
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> JavaRDD<T> SpatialSemiJoinQuery(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, JoinParams joinParams)
+            throws Exception
+    {
+        return semiJoin(spatialRDD, queryRDD, joinParams, false, false);
+    }
+
+    /**
+     * Returns geometries from {@code spatialRDD} for which no geometry in {@code queryRDD}
+     * satisfies the join condition. See {@link #SpatialSemiJoinQuery(SpatialRDD, SpatialRDD, JoinParams)}.
+     * <p>
+     * QUADTREE and KDBTREE partitioners drop geometries outside of their extent. Build the
+     * partitioner on {@code spatialRDD} so that none of its geometries are lost.
+     *
+     * @param <U> Type of the geometries in queryWindowRDD set
+     * @param <T> Type of the geometries in spatialRDD set
+     * @param spatialRDD Set of geometries to filter
+     * @param queryRDD Set of geometries which serve as query windows
+     * @param joinParams Join parameters; only {@code considerBoundaryIntersection} is used
+     * @return RDD of geometries from {@code spatialRDD} without any match
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> JavaRDD<T> SpatialAntiJoinQuery(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, JoinParams joinParams)
+            throws Exception
+    {
+        return semiJoin(spatialRDD, queryRDD, joinParams, false, true);
+    }
+
+    /**
+     * <p>
+     * Note: INTERNAL FUNCTION. API COMPATIBILITY IS NOT GUARANTEED. DO NOT USE IF YOU DON'T KNOW WHAT IT IS.
+     * </p>
+     *
+     * @param streamIsLeft true if geometries of {@code streamRDD} are the left argument of the
+     * join condition, e.g. the containing geometries of a 'contains' join
+     * @param anti true for an anti-join, false for a semi-join
+     */
+    public static <S extends Geometry, O extends Geometry> JavaRDD<S> semiJoin(
+            SpatialRDD<S> streamRDD,
+            SpatialRDD<O> otherRDD,
+            JoinParams joinParams,
+            boolean streamIsLeft,
+            final boolean anti)
+            throws Exception
+    {
+        verifyCRSMatch(streamRDD, otherRDD);
+        verifyPartitioningMatch(streamRDD, otherRDD);
+
+        SparkContext sparkContext = streamRDD.spatialPartitionedRDD.context();
+        GeoSparkMetric buildCount = GeoSparkMetrics.createMetric(sparkContext, "buildCount");
+        GeoSparkMetric streamCount = GeoSparkMetrics.createMetric(sparkContext, "streamCount");
+        GeoSparkMetric resultCount = GeoSparkMetrics.createMetric(sparkContext, "resultCount");
+        GeoSparkMetric candidateCount = GeoSparkMetrics.createMetric(sparkContext, "candidateCount");
+
+        final SemiJoinJudgement<S, O> judgement = new SemiJoinJudgement<>(
+                joinParams.considerBoundaryIntersection, streamIsLeft, anti,
+                buildCount, streamCount, resultCount, candidateCount);
+        JavaRDD<Pair<S, Boolean>> flagged =
+                streamRDD.spatialPartitionedRDD.zipPartitions(otherRDD.spatialPartitionedRDD, judgement);
+
+        // Points are placed into exactly one partition. Other geometries may be reported by
+        // several partitions and have a match in some of them only.
+        if (!(streamRDD instanceof PointRDD)) {
+            final boolean byRecordId = streamRDD.hasRecordIds();
+            flagged = flagged.mapToPair(new PairFunction<Pair<S, Boolean>, Object, Pair<S, Boolean>>()
+            {
+                @Override
+                public Tuple2<Object, Pair<S, Boolean>> call(Pair<S, Boolean> pair)
+                        throws Exception
+                {
+                    final Object key = byRecordId ? IdentifiedUserData.getRecordId(pair.getKey()) : pair.getKey();
+                    return new Tuple2<>(key, pair);
+                }
+            }).reduceByKey(new Function2<Pair<S, Boolean>, Pair<S, Boolean>, Pair<S, Boolean>>()
+            {
+                @Override
+                public Pair<S, Boolean> call(Pair<S, Boolean> pair1, Pair<S, Boolean> pair2)
+                        throws Exception
+                {
+                    return pair1.getValue() ? pair1 : pair2;
+                }
+            }).values();
+        }
+
+        return flagged.filter(new Function<Pair<S, Boolean>, Boolean>()
+        {
+            @Override
+            public Boolean call(Pair<S, Boolean> pair)
+                    throws Exception
+            {
+                return pair.getValue() != anti;
+            }
+        }).map(new Function<Pair<S, Boolean>, S>()
+        {
+            @Override
+            public S call(Pair<S, Boolean> pair)
+                    throws Exception
+            {
+                return pair.getKey();
+            }
+        });
+    }
+
+    /**
+     * Finds the k nearest geometries of {@code spatialRDD} for every geometry of {@code queryRDD}.
+     * <p>
+     * Both RDDs must be spatially partitioned with the same partitioner. Each query geometry is
+     * first matched against the geometries of its own partition. The search expands into other
+     * partitions only if the distance to the k-th local neighbour crosses the boundary of
+     * the partition, and only into the partitions within that distance. If the own partition
+     * holds fewer than k geometries, the search widens ring by ring through the neighbouring
+     * partitions until they hold at least k geometries, based on {@link SpatialRDD#getPartitionCounts()}.
+     * <p>
+     * Each query geometry is reported once, by record ID if present or by geometry equality
+     * otherwise. In the latter case, duplicates in the original queryRDD are eliminated.
+     * The same applies to the neighbours unless {@code spatialRDD} is a PointRDD.
+     * <p>
+     * QUADTREE and KDBTREE partitioners drop geometries outside of their extent. Such geometries
+     * are neither queried nor returned as neighbours.
+     *
+     * @param <U> Type of the geometries in queryRDD set
+     * @param <T> Type of the geometries in spatialRDD set
+     * @param spatialRDD Set of geometries to search for neighbours
+     * @param queryRDD Set of geometries whose neighbours to find
+     * @param k the number of neighbours to find for each query geometry
+     * @return RDD of query geometries and their neighbours ordered by distance. Fewer than k
+     * neighbours are reported only if {@code spatialRDD} has fewer than k geometries.
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> JavaPairRDD<U, List<T>> KnnJoinQuery(SpatialRDD<T> spatialRDD, SpatialRDD<U> queryRDD, int k)
+            throws Exception
+    {
+        if (k <= 0) {
+            throw new IllegalArgumentException("[JoinQuery] k must be positive: " + k);
+        }
+        verifyCRSMatch(spatialRDD, queryRDD);
+        verifyPartitioningMatch(spatialRDD, queryRDD);
+
+        final SpatialPartitioner partitioner = spatialRDD.getPartitioner();
+        final KnnJoinJudgement<U, T> judgement =
+                new KnnJoinJudgement<>(k, partitioner, spatialRDD.getPartitionCounts(), spatialRDD instanceof PointRDD);
+        final JavaRDD<Tuple2<Integer, Pair<U, List<T>>>> localNeighbours = queryRDD.spatialPartitionedRDD.zipPartitions(
+                spatialRDD.spatialPartitionedRDD, judgement);
+
+        // Route the query geometries whose search crosses their partition boundary to the
+        // neighbouring partitions. Local neighbours stay in their partition.
+        final JavaRDD<Pair<U, List<T>>> neighbours = JavaPairRDD.fromJavaRDD(localNeighbours)
+                .partitionBy(partitioner)
+                .values()
+                .zipPartitions(spatialRDD.spatialPartitionedRDD, new KnnExpansionJudgement<U, T>(k));
+
+        final boolean queryByRecordId = queryRDD.hasRecordIds();
+        final KnnNeighbourMerger<U, T> merger =
+                new KnnNeighbourMerger<>(k, !(spatialRDD instanceof PointRDD), spatialRDD.hasRecordIds());
+        return neighbours.mapToPair(new PairFunction<Pair<U, List<T>>, Object, Pair<U, List<T>>>()
+        {
+            @Override
+            public Tuple2<Object, Pair<U, List<T>>> call(Pair<U, List<T>> pair)
+                    throws Exception
+            {
+                final Object key = queryByRecordId ? IdentifiedUserData.getRecordId(pair.getKey()) : pair.getKey();
+                return new Tuple2<>(key, pair);
+            }
+        }).reduceByKey(merger).mapToPair(new PairFunction<Tuple2<Object, Pair<U, List<T>>>, U, List<T>>()
+        {
+            @Override
+            public Tuple2<U, List<T>> call(Tuple2<Object, Pair<U, List<T>>> pair)
+                    throws Exception
+            {
+                return new Tuple2<>(pair._2().getKey(), pair._2().getValue());
+            }
+        });
     }
 
     /**
@@ -324,6 +788,17 @@ public class JoinQuery
         return distanceJoin(spatialRDD, queryRDD, joinParams);
     }
 
+    /**
+     * Same as {@link #DistanceJoinQueryFlat(SpatialRDD, CircleRDD, JoinParams)}, but returns pairs of record IDs.
+     * See {@link #SpatialJoinQueryIdPairs(SpatialRDD, SpatialRDD, JoinParams)}.
+     */
+    public static <T extends Geometry> JavaPairRDD<Long, Long> DistanceJoinQueryIdPairs(SpatialRDD<T> spatialRDD, CircleRDD queryRDD, JoinParams joinParams)
+            throws Exception
+    {
+        verifyRecordIds(spatialRDD, queryRDD);
+        return toRecordIds(joinPairs(queryRDD, spatialRDD, joinParams));
+    }
+
     /**
      * Inner joins two sets of geometries on 'within' relationship (aka. distance join).
      * The query window objects are converted to circle objects. The radius is the given distance.
@@ -353,14 +828,14 @@ public class JoinQuery
     {
         final JoinParams joinParams = new JoinParams(useIndex, considerBoundaryIntersection, false);
         JavaPairRDD<Geometry, T> joinResults = distanceJoin(spatialRDD, queryRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     public static <T extends Geometry> JavaPairRDD<Geometry, HashSet<T>> DistanceJoinQuery(SpatialRDD<T> spatialRDD, CircleRDD queryRDD, JoinParams joinParams)
             throws Exception
     {
         JavaPairRDD<Geometry, T> joinResults = distanceJoin(spatialRDD, queryRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     /**
@@ -379,14 +854,14 @@ public class JoinQuery
     {
         final JoinParams joinParams = new JoinParams(useIndex, considerBoundaryIntersection, true);
         JavaPairRDD<Geometry, T> joinResults = distanceJoin(spatialRDD, queryRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     public static <T extends Geometry> JavaPairRDD<Geometry, HashSet<T>> DistanceJoinQueryWithDuplicates(SpatialRDD<T> spatialRDD, CircleRDD queryRDD, JoinParams joinParams)
             throws Exception
     {
         JavaPairRDD<Geometry, T> joinResults = distanceJoin(spatialRDD, queryRDD, joinParams);
-        return collectGeometriesByKey(joinResults);
+        return collectGeometriesByKey(joinResults, queryRDD.hasRecordIds());
     }
 
     /**
@@ -406,15 +881,28 @@ public class JoinQuery
             throws Exception
     {
         final JoinParams joinParams = new JoinParams(useIndex, considerBoundaryIntersection, false);
-        final JavaPairRDD<Geometry, T> joinResults = distanceJoin(spatialRDD, queryRDD, joinParams);
-        return countGeometriesByKey(joinResults);
+        return DistanceJoinQueryCountByKey(spatialRDD, queryRDD, joinParams);
     }
 
     public static <T extends Geometry> JavaPairRDD<Geometry, Long> DistanceJoinQueryCountByKey(SpatialRDD<T> spatialRDD, CircleRDD queryRDD, JoinParams joinParams)
             throws Exception
     {
-        final JavaPairRDD<Geometry, T> joinResults = distanceJoin(spatialRDD, queryRDD, joinParams);
-        return countGeometriesByKey(joinResults);
+        final JavaRDD<Pair<Circle, T>> joinResults = joinPairs(queryRDD, spatialRDD, joinParams);
+        return toCounts(mergeAggregates(toCenters(aggregatePartitions(joinResults, PartialJoinAggregator.NO_FIELD)), queryRDD.hasRecordIds()));
+    }
+
+    /**
+     * {@link #DistanceJoinQueryFlat(SpatialRDD, CircleRDD, JoinParams)} aggregated by key.
+     * See {@link #SpatialJoinQueryAggregateByKey(SpatialRDD, SpatialRDD, JoinParams, int)}.
+     */
+    public static <T extends Geometry> JavaPairRDD<Geometry, JoinAggregate> DistanceJoinQueryAggregateByKey(SpatialRDD<T> spatialRDD, CircleRDD queryRDD, JoinParams joinParams, int userDataField)
+            throws Exception
+    {
+        if (userDataField < 0) {
+            throw new IllegalArgumentException("User data field must be >= 0. Received " + userDataField);
+        }
+        final JavaRDD<Pair<Circle, T>> joinResults = joinPairs(queryRDD, spatialRDD, joinParams);
+        return mergeAggregates(toCenters(aggregatePartitions(joinResults, userDataField)), queryRDD.hasRecordIds());
     }
 
     /**
@@ -448,8 +936,19 @@ public class JoinQuery
             JoinParams joinParams)
             throws Exception
     {
+        return toTuples(joinPairs(leftRDD, rightRDD, joinParams));
+    }
 
+    private static <U extends Geometry, T extends Geometry> JavaRDD<Pair<U, T>> joinPairs(
+            SpatialRDD<U> leftRDD,
+            SpatialRDD<T> rightRDD,
+            JoinParams joinParams)
+            throws Exception
+    {
         verifyCRSMatch(leftRDD, rightRDD);
+        if (joinParams.joinAlgorithm == JoinAlgorithm.BROADCAST) {
+            return broadcastJoin(leftRDD, rightRDD, joinParams);
+        }
         verifyPartitioningMatch(leftRDD, rightRDD);
 
         SparkContext sparkContext = leftRDD.spatialPartitionedRDD.context();
@@ -458,33 +957,100 @@ public class JoinQuery
         GeoSparkMetric resultCount = GeoSparkMetrics.createMetric(sparkContext, "resultCount");
         GeoSparkMetric candidateCount = GeoSparkMetrics.createMetric(sparkContext, "candidateCount");
 
-        final SpatialPartitioner partitioner =
-                (SpatialPartitioner) rightRDD.spatialPartitionedRDD.partitioner().get();
+        final GeoSparkGauge strategy = (joinParams.joinAlgorithm == JoinAlgorithm.ADAPTIVE)
+                ? GeoSparkMetrics.createGauge(sparkContext, "strategy") : null;
+
+        final SpatialPartitioner partitioner = rightRDD.getPartitioner();
         final DedupParams dedupParams = partitioner.getDedupParams();
 
         final JavaRDD<Pair<U, T>> resultWithDuplicates;
-        if (joinParams.useIndex) {
-            if (rightRDD.indexedRDD != null) {
-                final RightIndexLookupJudgement judgement =
-                        new RightIndexLookupJudgement(joinParams.considerBoundaryIntersection, dedupParams);
-                resultWithDuplicates = leftRDD.spatialPartitionedRDD.zipPartitions(rightRDD.indexedRDD, judgement);
-            }
-            else if (leftRDD.indexedRDD != null) {
-                final LeftIndexLookupJudgement judgement =
-                        new LeftIndexLookupJudgement(joinParams.considerBoundaryIntersection, dedupParams);
-                resultWithDuplicates = leftRDD.indexedRDD.zipPartitions(rightRDD.spatialPartitionedRDD, judgement);
-            }
-            else {
-                log.warn("UseIndex is true, but no index exists. Will build index on the fly.");
-                DynamicIndexLookupJudgement judgement =
-                        new DynamicIndexLookupJudgement(
-                                joinParams.considerBoundaryIntersection,
-                                joinParams.indexType,
-                                joinParams.joinBuildSide,
-                                dedupParams,
-                                buildCount, streamCount, resultCount, candidateCount);
-                resultWithDuplicates = leftRDD.spatialPartitionedRDD.zipPartitions(rightRDD.spatialPartitionedRDD, judgement);
+        if (joinParams.useIndex && rightRDD.indexedRDD != null) {
+            final RightIndexLookupJudgement judgement =
+                    new RightIndexLookupJudgement(joinParams.considerBoundaryIntersection, dedupParams);
+            resultWithDuplicates = leftRDD.spatialPartitionedRDD.zipPartitions(rightRDD.indexedRDD, judgement);
+        }
+        else if (joinParams.useIndex && leftRDD.indexedRDD != null) {
+            final LeftIndexLookupJudgement judgement =
+                    new LeftIndexLookupJudgement(joinParams.considerBoundaryIntersection, dedupParams);
+            resultWithDuplicates = leftRDD.indexedRDD.zipPartitions(rightRDD.spatialPartitionedRDD, judgement);
+        }
+        else if (joinParams.skewFactor > 0) {
+            final SkewedPartitionSplitter splitter = SkewedPartitionSplitter.plan(leftRDD, rightRDD, joinParams.skewFactor);
+            final DedupParams roundDedupParams = splitter.getDedupParams(dedupParams);
+            JavaRDD<Pair<U, T>> rounds = null;
+            for (int round = 0; round < splitter.getNumRounds(); round++) {
+                final JavaRDD<Pair<U, T>> roundResult = joinPartitions(
+                        splitter.getRound(leftRDD.spatialPartitionedRDD, true, round),
+                        splitter.getRound(rightRDD.spatialPartitionedRDD, false, round),
+                        joinParams,
+                        roundDedupParams,
+                        buildCount, streamCount, resultCount, candidateCount, strategy);
+                rounds = (rounds == null) ? roundResult : rounds.union(roundResult);
             }
+            resultWithDuplicates = rounds;
+        }
+        else {
+            resultWithDuplicates = joinPartitions(
+                    leftRDD.spatialPartitionedRDD,
+                    rightRDD.spatialPartitionedRDD,
+                    joinParams,
+                    dedupParams,
+                    buildCount, streamCount, resultCount, candidateCount, strategy);
+        }
+
+        final boolean uniqueResults = dedupParams != null;
+
+        if (joinParams.allowDuplicates || uniqueResults) {
+            return resultWithDuplicates;
+        }
+        return (leftRDD.hasRecordIds() && rightRDD.hasRecordIds()) ? distinctByRecordIds(resultWithDuplicates)
+                : resultWithDuplicates.distinct();
+    }
+
+    /**
+     * Joins co-located partitions of two spatially partitioned RDDs using the judgement
+     * selected by {@code joinParams}.
+     */
+    private static <U extends Geometry, T extends Geometry> JavaRDD<Pair<U, T>> joinPartitions(
+            JavaRDD<U> left,
+            JavaRDD<T> right,
+            JoinParams joinParams,
+            @Nullable DedupParams dedupParams,
+            GeoSparkMetric buildCount,
+            GeoSparkMetric streamCount,
+            GeoSparkMetric resultCount,
+            GeoSparkMetric candidateCount,
+            @Nullable GeoSparkGauge strategy)
+    {
+        if (joinParams.joinAlgorithm == JoinAlgorithm.PLANE_SWEEP) {
+            PlaneSweepJudgement judgement =
+                    new PlaneSweepJudgement(
+                            joinParams.considerBoundaryIntersection,
+                            dedupParams,
+                            buildCount, streamCount, resultCount, candidateCount);
+            return left.zipPartitions(right, judgement);
+        }
+        else if (joinParams.joinAlgorithm == JoinAlgorithm.ADAPTIVE) {
+            AdaptiveJoinJudgement judgement =
+                    new AdaptiveJoinJudgement(
+                            joinParams.considerBoundaryIntersection,
+                            joinParams.indexType != null ? joinParams.indexType : IndexType.RTREE,
+                            joinParams.nestedLoopMaxPairs,
+                            joinParams.lopsidedRatio,
+                            dedupParams,
+                            buildCount, streamCount, resultCount, candidateCount, strategy);
+            return left.zipPartitions(right, judgement);
+        }
+        else if (joinParams.useIndex) {
+            log.warn("UseIndex is true, but no index exists. Will build index on the fly.");
+            DynamicIndexLookupJudgement judgement =
+                    new DynamicIndexLookupJudgement(
+                            joinParams.considerBoundaryIntersection,
+                            joinParams.indexType,
+                            joinParams.joinBuildSide,
+                            dedupParams,
+                            buildCount, streamCount, resultCount, candidateCount);
+            return left.zipPartitions(right, judgement);
         }/*
         else if (joinParams.indexType != null) {
             DynamicIndexLookupJudgement judgement =
@@ -494,20 +1060,61 @@ public class JoinQuery
                     joinParams.joinBuildSide,
                     dedupParams,
                     buildCount, streamCount, resultCount, candidateCount);
-            resultWithDuplicates = leftRDD.spatialPartitionedRDD.zipPartitions(rightRDD.spatialPartitionedRDD, judgement);
+            return left.zipPartitions(right, judgement);
         }*/
         else {
             NestedLoopJudgement judgement = new NestedLoopJudgement(joinParams.considerBoundaryIntersection, dedupParams);
-            resultWithDuplicates = rightRDD.spatialPartitionedRDD.zipPartitions(leftRDD.spatialPartitionedRDD, judgement);
+            return right.zipPartitions(left, judgement);
         }
+    }
 
-        final boolean uniqueResults = dedupParams != null;
+    /**
+     * Joins two sets of geometries by building an index over the {@code joinParams.joinBuildSide}
+     * on the driver, broadcasting it and probing it with the raw RDD of the other side.
+     * Neither side needs to be spatially partitioned and no shuffle takes place.
+     * <p>
+     * Executors drop their copies of the index once the first job computing the result ends, see
+     * {@link BroadcastReleaser}. Spark destroys the index once the result is garbage collected.
+     */
+    private static <U extends Geometry, T extends Geometry> JavaRDD<Pair<U, T>> broadcastJoin(
+            SpatialRDD<U> leftRDD,
+            SpatialRDD<T> rightRDD,
+            JoinParams joinParams)
+            throws Exception
+    {
+        final boolean buildLeft = (joinParams.joinBuildSide == JoinBuildSide.LEFT);
+        final JavaRDD<Geometry> buildRDD = (JavaRDD<Geometry>) (buildLeft ? leftRDD.rawSpatialRDD : rightRDD.rawSpatialRDD);
+        final JavaRDD streamRDD = buildLeft ? rightRDD.rawSpatialRDD : leftRDD.rawSpatialRDD;
+        Objects.requireNonNull(buildRDD, "[JoinQuery] rawSpatialRDD of the build side is null.");
+        Objects.requireNonNull(streamRDD, "[JoinQuery] rawSpatialRDD of the stream side is null.");
+
+        final List<Geometry> buildShapes = buildRDD.collect();
+        final SpatialIndex index = new IndexBuilder<Geometry>(joinParams.indexType).call(buildShapes.iterator()).next();
+        log.info("[JoinQuery] Broadcasting an index of " + buildShapes.size() + " shapes");
 
-        final JavaRDD<Pair<U, T>> result =
-                (joinParams.allowDuplicates || uniqueResults) ? resultWithDuplicates
-                        : resultWithDuplicates.distinct();
+        final SparkContext sparkContext = streamRDD.context();
+        final Broadcast<BroadcastIndex> broadcastIndex =
+                JavaSparkContext.fromSparkContext(sparkContext).broadcast(new BroadcastIndex(index, buildShapes.size()));
 
-        return result.mapToPair(new PairFunction<Pair<U, T>, U, T>()
+        GeoSparkMetric buildCount = GeoSparkMetrics.createMetric(sparkContext, "buildCount");
+        GeoSparkMetric streamCount = GeoSparkMetrics.createMetric(sparkContext, "streamCount");
+        GeoSparkMetric resultCount = GeoSparkMetrics.createMetric(sparkContext, "resultCount");
+        GeoSparkMetric candidateCount = GeoSparkMetrics.createMetric(sparkContext, "candidateCount");
+
+        final BroadcastIndexJudgement judgement =
+                new BroadcastIndexJudgement(
+                        joinParams.considerBoundaryIntersection,
+                        broadcastIndex,
+                        joinParams.joinBuildSide,
+                        buildCount, streamCount, resultCount, candidateCount);
+        final JavaRDD<Pair<U, T>> result = streamRDD.mapPartitions(judgement);
+        BroadcastReleaser.register(result, broadcastIndex);
+        return result;
+    }
+
+    private static <U extends Geometry, T extends Geometry> JavaPairRDD<U, T> toTuples(JavaRDD<Pair<U, T>> pairs)
+    {
+        return pairs.mapToPair(new PairFunction<Pair<U, T>, U, T>()
         {
             @Override
             public Tuple2<U, T> call(Pair<U, T> pair)
@@ -16,16 +16,30 @@
  */
 package org.datasyslab.geospark.spatialOperator;
 
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
+import org.datasyslab.geospark.knnJudgement.BatchKnnJudgement;
+import org.datasyslab.geospark.knnJudgement.BatchKnnJudgementUsingIndex;
+import org.datasyslab.geospark.knnJudgement.BatchKnnMerger;
 import org.datasyslab.geospark.knnJudgement.GeometryDistanceComparator;
 import org.datasyslab.geospark.knnJudgement.KnnJudgement;
 import org.datasyslab.geospark.knnJudgement.KnnJudgementUsingIndex;
+import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
+import org.datasyslab.geospark.spatialRDD.PointRDD;
 import org.datasyslab.geospark.spatialRDD.SpatialRDD;
 import org.datasyslab.geospark.utils.CRSTransformation;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 // TODO: Auto-generated Javadoc
 
@@ -68,4 +82,158 @@ public class KNNQuery
             return result;
         }
     }
+
+    /**
+     * Spatial knn query for a batch of query geometries.
+     * <p>
+     * Broadcasts the query geometries and scans each partition once for all of them. The top k
+     * of each partition are merged with a tree reduce, so the whole batch runs as a single job.
+     *
+     * @param spatialRDD the spatial RDD
+     * @param originalQueryPoints the original query geometries
+     * @param k the k
+     * @param useIndex the use index
+     * @return the k nearest geometries of each query geometry, ordered by distance, in the order of the query geometries
+     */
+    public static <U extends Geometry, T extends Geometry> List<List<T>> SpatialKnnQuery(SpatialRDD<T> spatialRDD, List<U> originalQueryPoints, Integer k, boolean useIndex)
+    {
+        final List<U> queryCenters = new ArrayList<>(originalQueryPoints.size());
+        for (U originalQueryPoint : originalQueryPoints) {
+            if (spatialRDD.getCRStransformation()) {
+                queryCenters.add(CRSTransformation.Transform(spatialRDD.getSourceEpsgCode(), spatialRDD.getTargetEpgsgCode(), originalQueryPoint));
+            }
+            else {
+                queryCenters.add(originalQueryPoint);
+            }
+        }
+
+        final JavaRDD<List<List<T>>> partialResults;
+        final Broadcast<List<U>> broadcastQueryCenters;
+        if (useIndex) {
+            if (spatialRDD.indexedRawRDD == null) {
+                throw new NullPointerException("Need to invoke buildIndex() first, indexedRDDNoId is null");
+            }
+            broadcastQueryCenters = JavaSparkContext.fromSparkContext(spatialRDD.indexedRawRDD.context()).broadcast(queryCenters);
+            partialResults = spatialRDD.indexedRawRDD.mapPartitions(new BatchKnnJudgementUsingIndex<U, T>(broadcastQueryCenters, k));
+        }
+        else {
+            broadcastQueryCenters = JavaSparkContext.fromSparkContext(spatialRDD.getRawSpatialRDD().context()).broadcast(queryCenters);
+            partialResults = spatialRDD.getRawSpatialRDD().mapPartitions(new BatchKnnJudgement<U, T>(broadcastQueryCenters, k));
+        }
+
+        final List<List<T>> result = partialResults.treeReduce(new BatchKnnMerger<U, T>(broadcastQueryCenters, k));
+        broadcastQueryCenters.unpersist();
+        return result;
+    }
+
+    /**
+     * Spatial knn query on a spatially partitioned RDD.
+     * <p>
+     * Starts from the partitions whose extent meets the query geometry and widens the search
+     * ring by ring, through the partitions adjacent to the ones already scanned, until k
+     * neighbours are found. Then scans the remaining partitions within the distance to the
+     * k-th neighbour. Each ring runs as a separate job, which launches tasks only for the
+     * partitions of that ring.
+     * <p>
+     * Geometries placed into several partitions are reported once, by record ID if present or by
+     * geometry equality otherwise. QUADTREE and KDBTREE partitioners drop geometries outside of
+     * their extent, so such geometries are never reported.
+     *
+     * @param spatialRDD the spatially partitioned spatial RDD
+     * @param originalQueryPoint the original query window
+     * @param k the k
+     * @param useIndex true to use the index built on spatialPartitionedRDD
+     * @return the k nearest geometries, ordered by distance
+     */
+    public static <U extends Geometry, T extends Geometry> List<T> PartitionedSpatialKnnQuery(SpatialRDD<T> spatialRDD, U originalQueryPoint, Integer k, boolean useIndex)
+    {
+        U queryCenter = originalQueryPoint;
+        if (spatialRDD.getCRStransformation()) {
+            queryCenter = CRSTransformation.Transform(spatialRDD.getSourceEpsgCode(), spatialRDD.getTargetEpgsgCode(), originalQueryPoint);
+        }
+
+        Objects.requireNonNull(spatialRDD.spatialPartitionedRDD, "[KNNQuery][PartitionedSpatialKnnQuery] SpatialPartitionedRDD is null. Please do spatial partitioning.");
+        if (useIndex && spatialRDD.indexedRDD == null) {
+            throw new NullPointerException("Need to invoke buildIndex() on spatialPartitionedRDD first, indexedRDD is null");
+        }
+
+        final SpatialPartitioner partitioner = spatialRDD.getPartitioner();
+        final List<Envelope> grids = partitioner.getGrids();
+        final boolean dedup = !(spatialRDD instanceof PointRDD);
+        final boolean byRecordId = spatialRDD.hasRecordIds();
+
+        final Set<Integer> scanned = new HashSet<>();
+        final Envelope scannedExtent = new Envelope(queryCenter.getEnvelopeInternal());
+        List<T> neighbours = new ArrayList<>();
+        List<Integer> ring = partitioner.getOverlappingPartitions(queryCenter.getEnvelopeInternal());
+        while (true) {
+            ring = new ArrayList<>(ring);
+            ring.removeAll(scanned);
+            if (!ring.isEmpty()) {
+                neighbours = mergeNeighbours(queryCenter, neighbours, scanPartitions(spatialRDD, ring, queryCenter, k, useIndex), k, dedup, byRecordId);
+                scanned.addAll(ring);
+                for (int partitionId : ring) {
+                    if (partitionId < grids.size()) {
+                        scannedExtent.expandToInclude(grids.get(partitionId));
+                    }
+                }
+            }
+
+            if (neighbours.size() >= k) {
+                // The k-th distance bounds the search. Scan the partitions within it.
+                final Envelope searchEnvelope = new Envelope(queryCenter.getEnvelopeInternal());
+                searchEnvelope.expandBy(queryCenter.distance(neighbours.get(k - 1)));
+                final List<Integer> remaining = new ArrayList<>(partitioner.getOverlappingPartitions(searchEnvelope));
+                remaining.removeAll(scanned);
+                if (!remaining.isEmpty()) {
+                    neighbours = mergeNeighbours(queryCenter, neighbours, scanPartitions(spatialRDD, remaining, queryCenter, k, useIndex), k, dedup, byRecordId);
+                }
+                return neighbours;
+            }
+
+            if (scanned.size() >= partitioner.numPartitions()) {
+                return neighbours;
+            }
+
+            // Widen by one ring. If no partition is adjacent, e.g. because the query geometry
+            // lies outside of all grid cells, scan the rest.
+            ring = new ArrayList<>(partitioner.getOverlappingPartitions(scannedExtent));
+            ring.removeAll(scanned);
+            if (ring.isEmpty()) {
+                for (int i = 0; i < partitioner.numPartitions(); i++) {
+                    ring.add(i);
+                }
+            }
+        }
+    }
+
+    private static <U extends Geometry, T extends Geometry> List<T> scanPartitions(SpatialRDD<T> spatialRDD, List<Integer> partitionIds, U queryCenter, int k, boolean useIndex)
+    {
+        if (useIndex) {
+            return PartitionPruner.prune(spatialRDD.indexedRDD, partitionIds).mapPartitions(new KnnJudgementUsingIndex<U, T>(queryCenter, k)).collect();
+        }
+        return PartitionPruner.prune(spatialRDD.spatialPartitionedRDD, partitionIds).mapPartitions(new KnnJudgement<U, T>(queryCenter, k)).collect();
+    }
+
+    /**
+     * Merges neighbours found so far with the top k of each newly scanned partition.
+     */
+    private static <U extends Geometry, T extends Geometry> List<T> mergeNeighbours(U queryCenter, List<T> neighbours, List<T> candidates, int k, boolean dedup, boolean byRecordId)
+    {
+        final List<T> sorted = new ArrayList<>(neighbours);
+        sorted.addAll(candidates);
+        Collections.sort(sorted, new GeometryDistanceComparator(queryCenter, true));
+
+        final List<T> result = new ArrayList<>(k);
+        final Set<Object> seen = new HashSet<>();
+        for (T candidate : sorted) {
+            if (result.size() >= k) {
+                break;
+            }
+            if (!dedup || seen.add(byRecordId ? IdentifiedUserData.getRecordId(candidate) : candidate)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * FILE: PartialJoinAggregator
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialOperator;
+
+import org.locationtech.jts.geom.Geometry;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces the matches a partition-level join judgement produces to one partial
+ * {@link JoinAggregate} per query geometry.
+ * <p>
+ * Runs in the same task as the judgement, so matching pairs are consumed as they are
+ * produced and never reach the shuffle. Within a task each query geometry is a single
+ * object, so partial aggregates are looked up by reference instead of hashing and
+ * comparing coordinates.
+ */
+final class PartialJoinAggregator<U extends Geometry, T extends Geometry>
+        implements FlatMapFunction<Iterator<Pair<U, T>>, Tuple2<U, JoinAggregate>>
+{
+    /**
+     * Use to aggregate counts only
+     */
+    static final int NO_FIELD = -1;
+
+    private final int userDataField;
+
+    /**
+     * @param userDataField Zero-based index of the tab-separated user data field to aggregate,
+     * or {@link #NO_FIELD} to count matches only
+     */
+    PartialJoinAggregator(int userDataField)
+    {
+        this.userDataField = userDataField;
+    }
+
+    @Override
+    public Iterator<Tuple2<U, JoinAggregate>> call(Iterator<Pair<U, T>> pairs)
+            throws Exception
+    {
+        final Map<U, JoinAggregate> aggregates = new IdentityHashMap<>();
+        while (pairs.hasNext()) {
+            final Pair<U, T> pair = pairs.next();
+            JoinAggregate aggregate = aggregates.get(pair.getKey());
+            if (aggregate == null) {
+                aggregate = new JoinAggregate();
+                aggregates.put(pair.getKey(), aggregate);
+            }
+            aggregate.addMatch();
+            if (userDataField != NO_FIELD) {
+                final Double value = getValue(IdentifiedUserData.getOriginalUserData(pair.getValue()));
+                if (value != null) {
+                    aggregate.addValue(value);
+                }
+            }
+        }
+
+        final List<Tuple2<U, JoinAggregate>> result = new ArrayList<>(aggregates.size());
+        for (Map.Entry<U, JoinAggregate> entry : aggregates.entrySet()) {
+            result.add(new Tuple2<>(entry.getKey(), entry.getValue()));
+        }
+        return result.iterator();
+    }
+
+    private Double getValue(Object userData)
+    {
+        if (userData instanceof Number) {
+            return userDataField == 0 ? ((Number) userData).doubleValue() : null;
+        }
+        if (!(userData instanceof String)) {
+            return null;
+        }
+
+        // Find the field without splitting the whole string
+        final String attributes = (String) userData;
+        int start = 0;
+        for (int i = 0; i < userDataField; i++) {
+            start = attributes.indexOf('\t', start);
+            if (start < 0) {
+                return null;
+            }
+            start++;
+        }
+        int end = attributes.indexOf('\t', start);
+        if (end < 0) {
+            end = attributes.length();
+        }
+
+        try {
+            return Double.parseDouble(attributes.substring(start, end));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
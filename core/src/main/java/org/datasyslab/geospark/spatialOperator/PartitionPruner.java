@@ -0,0 +1,83 @@
+/*
+ * FILE: PartitionPruner
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialOperator;
+
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.rdd.PartitionPruningRDD;
+import scala.runtime.AbstractFunction1;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Restricts a spatially partitioned RDD to a subset of its partitions, so that Spark launches
+ * tasks for these partitions only.
+ * <p>
+ * The tasks of the pruned RDD are numbered from zero in the ascending order of the partition IDs.
+ */
+final class PartitionPruner
+{
+    private PartitionPruner()
+    {
+    }
+
+    static <T> JavaRDD<T> prune(JavaRDD<T> rdd, List<Integer> partitionIds)
+    {
+        return prune(rdd, toArray(partitionIds));
+    }
+
+    /**
+     * @param partitionIds IDs of the partitions to keep, in ascending order
+     */
+    static <T> JavaRDD<T> prune(JavaRDD<T> rdd, int[] partitionIds)
+    {
+        return new JavaRDD<>(PartitionPruningRDD.create(rdd.rdd(), new PartitionFilter(partitionIds)), rdd.classTag());
+    }
+
+    /**
+     * Returns the partition IDs in ascending order, i.e. indexed by the task processing them
+     * in a pruned RDD.
+     */
+    static int[] toArray(List<Integer> partitionIds)
+    {
+        final int[] ids = new int[partitionIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = partitionIds.get(i);
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static final class PartitionFilter
+            extends AbstractFunction1<Object, Object>
+            implements Serializable
+    {
+        private final int[] partitionIds;
+
+        private PartitionFilter(int[] partitionIds)
+        {
+            this.partitionIds = partitionIds;
+        }
+
+        @Override
+        public Object apply(Object partitionId)
+        {
+            return Arrays.binarySearch(partitionIds, (Integer) partitionId) >= 0;
+        }
+    }
+}
@@ -20,13 +20,30 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
+import org.apache.spark.api.java.JavaPairRDD;
 import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.Function2;
+import org.apache.spark.broadcast.Broadcast;
+import org.datasyslab.geospark.joinJudgement.DedupParams;
+import org.datasyslab.geospark.rangeJudgement.MultiRangeCounter;
+import org.datasyslab.geospark.rangeJudgement.MultiRangeCounterUsingIndex;
+import org.datasyslab.geospark.rangeJudgement.MultiRangeFilter;
+import org.datasyslab.geospark.rangeJudgement.MultiRangeFilterUsingIndex;
+import org.datasyslab.geospark.rangeJudgement.PartitionRangeFilter;
+import org.datasyslab.geospark.rangeJudgement.PartitionRangeFilterUsingIndex;
+import org.datasyslab.geospark.rangeJudgement.RangeCounterUsingIndex;
 import org.datasyslab.geospark.rangeJudgement.RangeFilter;
 import org.datasyslab.geospark.rangeJudgement.RangeFilterUsingIndex;
+import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
 import org.datasyslab.geospark.spatialRDD.SpatialRDD;
 import org.datasyslab.geospark.utils.CRSTransformation;
+import scala.Tuple2;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 // TODO: Auto-generated Javadoc
 
@@ -66,6 +83,48 @@ public class RangeQuery
         }
     }
 
+    /**
+     * Spatial range query count. Return the number of objects in SpatialRDD covered/intersected by originalQueryGeometry,
+     * without collecting them.
+     * <p>
+     * With an R-Tree index and a rectangular query window, index nodes that lie inside the window
+     * are counted without testing the geometries below them.
+     *
+     * @param spatialRDD the spatial RDD
+     * @param originalQueryGeometry the original query window
+     * @param considerBoundaryIntersection the consider boundary intersection
+     * @param useIndex the use index
+     * @return the number of matching objects
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> long SpatialRangeQueryCount(SpatialRDD<T> spatialRDD, U originalQueryGeometry, boolean considerBoundaryIntersection, boolean useIndex)
+            throws Exception
+    {
+        U queryGeometry = originalQueryGeometry;
+        if (spatialRDD.getCRStransformation()) {
+            queryGeometry = CRSTransformation.Transform(spatialRDD.getSourceEpsgCode(), spatialRDD.getTargetEpgsgCode(), originalQueryGeometry);
+        }
+
+        if (useIndex == true) {
+            if (spatialRDD.indexedRawRDD == null) {
+                throw new Exception("[RangeQuery][SpatialRangeQueryCount] Index doesn't exist. Please build index on rawSpatialRDD.");
+            }
+            return spatialRDD.indexedRawRDD.mapPartitions(new RangeCounterUsingIndex<U>(queryGeometry, considerBoundaryIntersection, true))
+                    .reduce(new Function2<Long, Long, Long>()
+                    {
+                        @Override
+                        public Long call(Long count1, Long count2)
+                                throws Exception
+                        {
+                            return count1 + count2;
+                        }
+                    });
+        }
+        else {
+            return spatialRDD.getRawSpatialRDD().filter(new RangeFilter(queryGeometry, considerBoundaryIntersection, true)).count();
+        }
+    }
+
     /**
      * Spatial range query. Return objects in SpatialRDD are covered/intersected by queryWindow/Envelope
      *
@@ -142,4 +201,145 @@ public class RangeQuery
             return spatialRDD.getRawSpatialRDD().filter(new RangeFilter(queryGeometry, considerBoundaryIntersection, false));
         }
     }
+
+    /**
+     * Spatial range query for a batch of query windows. Return pairs of window ID and object in
+     * SpatialRDD covered/intersected by that window. Window ID is the index of the window in originalQueryWindows.
+     * <p>
+     * Broadcasts the query windows. Scans index the windows, so that each partition is traversed
+     * once for the whole batch. Partition indexes are queried once per window.
+     *
+     * @param spatialRDD the spatial RDD
+     * @param originalQueryWindows the original query windows
+     * @param considerBoundaryIntersection the consider boundary intersection
+     * @param useIndex the use index
+     * @return the java pair RDD
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> JavaPairRDD<Integer, T> SpatialRangeQuery(SpatialRDD<T> spatialRDD, List<U> originalQueryWindows, boolean considerBoundaryIntersection, boolean useIndex)
+            throws Exception
+    {
+        final Broadcast<List<U>> queryWindows = broadcastQueryWindows(spatialRDD, originalQueryWindows);
+        return JavaPairRDD.fromJavaRDD(multiRangeFilter(spatialRDD, queryWindows, considerBoundaryIntersection, useIndex));
+    }
+
+    /**
+     * Spatial range query for a batch of query windows. Return the number of objects in SpatialRDD
+     * covered/intersected by each window, indexed by window ID.
+     * <p>
+     * Each partition counts its matches into an array of counts, without materializing them.
+     *
+     * @param spatialRDD the spatial RDD
+     * @param originalQueryWindows the original query windows
+     * @param considerBoundaryIntersection the consider boundary intersection
+     * @param useIndex the use index
+     * @return the counts
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> long[] SpatialRangeQueryCount(SpatialRDD<T> spatialRDD, List<U> originalQueryWindows, boolean considerBoundaryIntersection, boolean useIndex)
+            throws Exception
+    {
+        final Broadcast<List<U>> queryWindows = broadcastQueryWindows(spatialRDD, originalQueryWindows);
+        final int numWindows = originalQueryWindows.size();
+
+        final JavaRDD<long[]> partitionCounts;
+        if (useIndex == true) {
+            if (spatialRDD.indexedRawRDD == null) {
+                throw new Exception("[RangeQuery][SpatialRangeQueryCount] Index doesn't exist. Please build index on rawSpatialRDD.");
+            }
+            partitionCounts = spatialRDD.indexedRawRDD.mapPartitions(new MultiRangeCounterUsingIndex<U>(queryWindows, considerBoundaryIntersection));
+        }
+        else {
+            partitionCounts = spatialRDD.getRawSpatialRDD().mapPartitions(new MultiRangeCounter<U, T>(queryWindows, considerBoundaryIntersection));
+        }
+
+        final long[] counts = partitionCounts.treeReduce(new Function2<long[], long[], long[]>()
+        {
+            @Override
+            public long[] call(long[] counts1, long[] counts2)
+                    throws Exception
+            {
+                final long[] sum = new long[numWindows];
+                for (int i = 0; i < numWindows; i++) {
+                    sum[i] = counts1[i] + counts2[i];
+                }
+                return sum;
+            }
+        });
+        queryWindows.unpersist();
+        return counts;
+    }
+
+    private static <U extends Geometry, T extends Geometry> Broadcast<List<U>> broadcastQueryWindows(SpatialRDD<T> spatialRDD, List<U> originalQueryWindows)
+    {
+        final List<U> queryWindows = new ArrayList<>(originalQueryWindows.size());
+        for (U originalQueryWindow : originalQueryWindows) {
+            if (spatialRDD.getCRStransformation()) {
+                queryWindows.add(CRSTransformation.Transform(spatialRDD.getSourceEpsgCode(), spatialRDD.getTargetEpgsgCode(), originalQueryWindow));
+            }
+            else {
+                queryWindows.add(originalQueryWindow);
+            }
+        }
+        return JavaSparkContext.fromSparkContext(spatialRDD.getRawSpatialRDD().context()).broadcast(queryWindows);
+    }
+
+    private static <U extends Geometry, T extends Geometry> JavaRDD<Tuple2<Integer, T>> multiRangeFilter(SpatialRDD<T> spatialRDD, Broadcast<List<U>> queryWindows, boolean considerBoundaryIntersection, boolean useIndex)
+            throws Exception
+    {
+        if (useIndex == true) {
+            if (spatialRDD.indexedRawRDD == null) {
+                throw new Exception("[RangeQuery][SpatialRangeQuery] Index doesn't exist. Please build index on rawSpatialRDD.");
+            }
+            return spatialRDD.indexedRawRDD.mapPartitions(new MultiRangeFilterUsingIndex<U, T>(queryWindows, considerBoundaryIntersection));
+        }
+        else {
+            return spatialRDD.getRawSpatialRDD().mapPartitions(new MultiRangeFilter<U, T>(queryWindows, considerBoundaryIntersection));
+        }
+    }
+
+    /**
+     * Spatial range query on a spatially partitioned RDD. Return objects in SpatialRDD are covered/intersected by originalQueryGeometry
+     * <p>
+     * Launches tasks only for the partitions whose extent meets the query window, as reported by
+     * {@link SpatialPartitioner#getOverlappingPartitions}. Geometries placed into several
+     * partitions are reported once. QUADTREE and KDBTREE partitioners drop geometries outside
+     * of their extent, so such geometries are never reported.
+     *
+     * @param spatialRDD the spatially partitioned spatial RDD
+     * @param originalQueryGeometry the original query window
+     * @param considerBoundaryIntersection the consider boundary intersection
+     * @param useIndex true to use the index built on spatialPartitionedRDD
+     * @return the java RDD
+     * @throws Exception the exception
+     */
+    public static <U extends Geometry, T extends Geometry> JavaRDD<T> PartitionedSpatialRangeQuery(SpatialRDD<T> spatialRDD, U originalQueryGeometry, boolean considerBoundaryIntersection, boolean useIndex)
+            throws Exception
+    {
+        U queryGeometry = originalQueryGeometry;
+        if (spatialRDD.getCRStransformation()) {
+            queryGeometry = CRSTransformation.Transform(spatialRDD.getSourceEpsgCode(), spatialRDD.getTargetEpgsgCode(), originalQueryGeometry);
+        }
+
+        Objects.requireNonNull(spatialRDD.spatialPartitionedRDD, "[RangeQuery][PartitionedSpatialRangeQuery] SpatialPartitionedRDD is null. Please do spatial partitioning.");
+        final SpatialPartitioner partitioner = spatialRDD.getPartitioner();
+        final List<Integer> partitionIds = partitioner.getOverlappingPartitions(queryGeometry.getEnvelopeInternal());
+
+        DedupParams dedupParams = partitioner.getDedupParams();
+        if (dedupParams != null) {
+            dedupParams = dedupParams.withTaskPartitionIds(PartitionPruner.toArray(partitionIds));
+        }
+
+        if (useIndex == true) {
+            if (spatialRDD.indexedRDD == null) {
+                throw new Exception("[RangeQuery][PartitionedSpatialRangeQuery] Index doesn't exist. Please build index on spatialPartitionedRDD.");
+            }
+            return PartitionPruner.prune(spatialRDD.indexedRDD, partitionIds)
+                    .mapPartitions(new PartitionRangeFilterUsingIndex<U, T>(queryGeometry, considerBoundaryIntersection, dedupParams));
+        }
+        else {
+            return PartitionPruner.prune(spatialRDD.spatialPartitionedRDD, partitionIds)
+                    .mapPartitions(new PartitionRangeFilter<U, T>(queryGeometry, considerBoundaryIntersection, dedupParams));
+        }
+    }
 }
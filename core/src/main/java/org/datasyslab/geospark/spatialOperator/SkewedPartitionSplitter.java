@@ -0,0 +1,401 @@
+/*
+ * FILE: SkewedPartitionSplitter
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialOperator;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function2;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
+import org.datasyslab.geospark.joinJudgement.DedupParams;
+import org.datasyslab.geospark.spatialRDD.SpatialRDD;
+
+import javax.annotation.Nullable;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Splits oversized partitions of a spatial join into several tasks.
+ * <p>
+ * A partition is oversized if the total number of geometries on both sides exceeds
+ * the median of all non-empty partitions by more than a given factor. The larger side
+ * of such a partition is split into chunks, each of roughly the median size, and the
+ * smaller side is replicated next to every chunk. Each pair of geometries is therefore
+ * examined in exactly one chunk, and the chunks report matches using the extent of the
+ * original partition, which keeps {@link DedupParams} based de-duplication intact.
+ * <p>
+ * The join is planned as a number of rounds. Round 0 covers all partitions and the first
+ * chunk of every oversized partition. Round N covers only the partitions split into more than
+ * N chunks. Each round is a pair of partition-aligned RDDs which can be zipped and joined with
+ * any of the existing judgements.
+ * <p>
+ * Chunks are assigned by a hash of the record ID or of the geometry and its user data, never by
+ * the position of a geometry within its partition. Every round reads both sides again, and a
+ * partition recomputed from the shuffle may list its geometries in a different order. Identical
+ * geometries, e.g. the points of a hotspot, are dealt to consecutive chunks by the number of
+ * identical geometries seen before them. Since identical geometries are interchangeable, the
+ * order they are read in doesn't matter. Persist the spatially partitioned RDDs to avoid reading
+ * the shuffle output once per round.
+ */
+final class SkewedPartitionSplitter
+        implements Serializable
+{
+    private static final Logger log = LogManager.getLogger(SkewedPartitionSplitter.class);
+
+    /**
+     * Maximum number of chunks an oversized partition is split into
+     */
+    static final int MAX_SPLITS = 64;
+
+    // Number of chunks for each partition; 1 if the partition is not split
+    private final int[] splits;
+    // True if the left side of the partition is split and the right side replicated
+    private final boolean[] splitLeft;
+
+    SkewedPartitionSplitter(int[] splits, boolean[] splitLeft)
+    {
+        this.splits = splits;
+        this.splitLeft = splitLeft;
+    }
+
+    /**
+     * Decides which partitions to split based on the number of geometries in each partition of both
+     * sides. The counts are kept by the SpatialRDDs, so only the first join of a partitioned
+     * SpatialRDD runs a job to count its partitions.
+     *
+     * @param skewFactor A partition is split if it is larger than the median partition by more than this factor
+     */
+    static <U extends Geometry, T extends Geometry> SkewedPartitionSplitter plan(SpatialRDD<U> left, SpatialRDD<T> right, double skewFactor)
+            throws Exception
+    {
+        return plan(left.getPartitionCounts(), right.getPartitionCounts(), skewFactor);
+    }
+
+    static SkewedPartitionSplitter plan(long[] leftCounts, long[] rightCounts, double skewFactor)
+    {
+        if (skewFactor <= 1) {
+            throw new IllegalArgumentException("Skew factor must be > 1");
+        }
+
+        final int numPartitions = leftCounts.length;
+        final int[] splits = new int[numPartitions];
+        final boolean[] splitLeft = new boolean[numPartitions];
+        Arrays.fill(splits, 1);
+
+        final long median = median(leftCounts, rightCounts);
+        if (median == 0) {
+            return new SkewedPartitionSplitter(splits, splitLeft);
+        }
+
+        for (int i = 0; i < numPartitions; i++) {
+            if (leftCounts[i] == 0 || rightCounts[i] == 0) {
+                continue;
+            }
+
+            final long cost = leftCounts[i] + rightCounts[i];
+            if (cost > skewFactor * median) {
+                splitLeft[i] = leftCounts[i] >= rightCounts[i];
+                final long larger = Math.max(leftCounts[i], rightCounts[i]);
+                splits[i] = (int) Math.max(1, Math.min(MAX_SPLITS, (larger + median - 1) / median));
+                if (splits[i] > 1) {
+                    log.info("[SkewedPartitionSplitter] Splitting partition " + i + " with " + leftCounts[i] +
+                            " left and " + rightCounts[i] + " right geometries into " + splits[i] + " chunks");
+                }
+            }
+        }
+
+        return new SkewedPartitionSplitter(splits, splitLeft);
+    }
+
+    private static long median(long[] leftCounts, long[] rightCounts)
+    {
+        final List<Long> costs = new ArrayList<>();
+        for (int i = 0; i < leftCounts.length; i++) {
+            if (leftCounts[i] > 0 && rightCounts[i] > 0) {
+                costs.add(leftCounts[i] + rightCounts[i]);
+            }
+        }
+        if (costs.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(costs);
+        return costs.get(costs.size() / 2);
+    }
+
+    /**
+     * @return true if at least one partition is split
+     */
+    boolean hasSkew()
+    {
+        return getNumRounds() > 1;
+    }
+
+    int getNumRounds()
+    {
+        int rounds = 1;
+        for (int split : splits) {
+            rounds = Math.max(rounds, split);
+        }
+        return rounds;
+    }
+
+    int getSplits(int partitionId)
+    {
+        return splits[partitionId];
+    }
+
+    /**
+     * @return IDs of the original partitions taking part in the given round, in ascending order
+     */
+    private int[] partitionsInRound(int round)
+    {
+        int count = 0;
+        for (int split : splits) {
+            if (split > round) {
+                count++;
+            }
+        }
+
+        final int[] partitionIds = new int[count];
+        int pos = 0;
+        for (int i = 0; i < splits.length; i++) {
+            if (splits[i] > round) {
+                partitionIds[pos++] = i;
+            }
+        }
+        return partitionIds;
+    }
+
+    /**
+     * Returns partitions of one side of the join taking part in the given round.
+     * Partitions of that side which are split are reduced to a single chunk.
+     */
+    <G> JavaRDD<G> getRound(JavaRDD<G> rdd, boolean left, int round)
+    {
+        final int[] partitionIds = partitionsInRound(round);
+
+        final JavaRDD<G> pruned;
+        if (partitionIds.length == splits.length) {
+            pruned = rdd;
+        }
+        else {
+            pruned = PartitionPruner.prune(rdd, partitionIds);
+        }
+
+        return pruned.mapPartitionsWithIndex(new ChunkFilter<G>(partitionIds, left, round), true);
+    }
+
+    /**
+     * Returns de-dup parameters for the union of all rounds. Tasks of the union are numbered
+     * consecutively, round after round, so each task is mapped to the partition its chunk
+     * came from to let it use the extent of that partition.
+     */
+    @Nullable
+    DedupParams getDedupParams(@Nullable DedupParams dedupParams)
+    {
+        if (dedupParams == null || !hasSkew()) {
+            return dedupParams;
+        }
+
+        final List<Integer> taskPartitionIds = new ArrayList<>();
+        for (int round = 0; round < getNumRounds(); round++) {
+            for (int partitionId : partitionsInRound(round)) {
+                taskPartitionIds.add(partitionId);
+            }
+        }
+        final int[] ids = new int[taskPartitionIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = taskPartitionIds.get(i);
+        }
+        return dedupParams.withTaskPartitionIds(ids);
+    }
+
+    /**
+     * Returns the chunk of a record. Depends on the record and the number of identical records seen
+     * before it only, so that a partition recomputed in a different order assigns every record to
+     * the same chunk again, up to swapping identical records.
+     *
+     * @param occurrence Number of records identical to this one seen before it, see {@link RecordKey}
+     */
+    static int getChunk(Object record, int occurrence, int numChunks)
+    {
+        long hash = hash(record);
+
+        // Mix all bits into the lower ones, which decide the chunk
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) Math.floorMod(hash + occurrence, (long) numChunks);
+    }
+
+    /**
+     * Returns a hash of the record that is the same in every JVM. Only String user data is hashed,
+     * since other objects may hash by identity.
+     */
+    private static long hash(Object record)
+    {
+        if (!(record instanceof Geometry)) {
+            return record.hashCode();
+        }
+
+        final Geometry geometry = (Geometry) record;
+        final Object userData = geometry.getUserData();
+        if (userData instanceof IdentifiedUserData) {
+            return ((IdentifiedUserData) userData).getId();
+        }
+
+        long hash = geometry.getEnvelopeInternal().hashCode();
+        hash = 31 * hash + geometry.getNumPoints();
+        final Coordinate coordinate = geometry.getCoordinate();
+        if (coordinate != null) {
+            hash = 31 * hash + coordinate.hashCode();
+        }
+        if (userData instanceof String) {
+            hash = 31 * hash + userData.hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Returns true if the records are identical, i.e. interchangeable as input of a join.
+     * Records with IDs are never identical.
+     */
+    private static boolean isIdentical(Object record, Object other)
+    {
+        if (!(record instanceof Geometry) || !(other instanceof Geometry)) {
+            return record.equals(other);
+        }
+
+        final Geometry geometry = (Geometry) record;
+        final Geometry otherGeometry = (Geometry) other;
+        return geometry.equalsExact(otherGeometry)
+                && Objects.equals(geometry.getUserData(), otherGeometry.getUserData());
+    }
+
+    /**
+     * Key of a record in the map counting identical records
+     */
+    private static final class RecordKey
+    {
+        private final Object record;
+        private final int hash;
+
+        RecordKey(Object record)
+        {
+            this.record = record;
+            this.hash = Long.hashCode(hash(record));
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof RecordKey && isIdentical(record, ((RecordKey) o).record);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    private final class ChunkFilter<G>
+            implements Function2<Integer, Iterator<G>, Iterator<G>>
+    {
+        private final int[] partitionIds;
+        private final boolean left;
+        private final int chunk;
+
+        ChunkFilter(int[] partitionIds, boolean left, int chunk)
+        {
+            this.partitionIds = partitionIds;
+            this.left = left;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public Iterator<G> call(Integer index, final Iterator<G> iterator)
+                throws Exception
+        {
+            final int partitionId = partitionIds[index];
+            final int numChunks = splits[partitionId];
+            if (numChunks == 1 || splitLeft[partitionId] != left) {
+                return iterator;
+            }
+
+            return new Iterator<G>()
+            {
+                // Number of records seen so far for each distinct record without an ID
+                private final Map<RecordKey, Integer> occurrences = new HashMap<>();
+
+                private G next = null;
+
+                @Override
+                public boolean hasNext()
+                {
+                    while (next == null && iterator.hasNext()) {
+                        final G candidate = iterator.next();
+                        if (getChunk(candidate, nextOccurrence(candidate), numChunks) == chunk) {
+                            next = candidate;
+                        }
+                    }
+                    return next != null;
+                }
+
+                @Override
+                public G next()
+                {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    final G result = next;
+                    next = null;
+                    return result;
+                }
+
+                @Override
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                private int nextOccurrence(G record)
+                {
+                    if (record instanceof Geometry && ((Geometry) record).getUserData() instanceof IdentifiedUserData) {
+                        return 0;
+                    }
+
+                    final RecordKey key = new RecordKey(record);
+                    final Integer occurrence = occurrences.get(key);
+                    occurrences.put(key, occurrence == null ? 1 : occurrence + 1);
+                    return occurrence == null ? 0 : occurrence;
+                }
+            };
+        }
+    }
+}
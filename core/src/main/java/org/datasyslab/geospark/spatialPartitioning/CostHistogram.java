@@ -0,0 +1,164 @@
+/*
+ * FILE: CostHistogram
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.Serializable;
+
+/**
+ * Counts the geometries of a dataset and estimates the cost of processing them in each cell of
+ * a uniform grid over the dataset boundary.
+ * <p>
+ * The cost of a geometry crossing cell boundaries is spread evenly over the cells its envelope
+ * overlaps, so that the costs of a region of cells add up to the cost of the geometries in it
+ * rather than counting large geometries once per cell. Its count is added to the cell holding
+ * the center of its envelope only.
+ */
+public class CostHistogram
+        implements Serializable
+{
+    /**
+     * Number of cells along each axis
+     */
+    public static final int DEFAULT_RESOLUTION = 256;
+
+    private final Envelope boundary;
+    private final int resolution;
+    private final long[] counts;
+    private final long[] costs;
+
+    public CostHistogram(Envelope boundary, int resolution)
+    {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be > 0");
+        }
+        this.boundary = boundary;
+        this.resolution = resolution;
+        this.counts = new long[resolution * resolution];
+        this.costs = new long[resolution * resolution];
+    }
+
+    /**
+     * Estimates the cost of processing a geometry in a join: a fixed cost per record plus the
+     * number of its vertices, to which both its serialized size and the time spent in geometry
+     * tests are roughly proportional.
+     */
+    public static long estimateCost(Geometry geometry)
+    {
+        return 1 + geometry.getNumPoints();
+    }
+
+    public static CostHistogram add(CostHistogram histogram, Geometry geometry)
+    {
+        final Envelope envelope = geometry.getEnvelopeInternal();
+        final int minColumn = histogram.column(envelope.getMinX());
+        final int maxColumn = histogram.column(envelope.getMaxX());
+        final int minRow = histogram.row(envelope.getMinY());
+        final int maxRow = histogram.row(envelope.getMaxY());
+
+        // Give the remainder of the division to the first cells, so that the shares add up to the cost
+        final long cost = estimateCost(geometry);
+        final long numCells = (long) (maxRow - minRow + 1) * (maxColumn - minColumn + 1);
+        final long share = cost / numCells;
+        long remainder = cost % numCells;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                histogram.costs[histogram.cell(column, row)] += remainder-- > 0 ? share + 1 : share;
+            }
+        }
+
+        final double centerX = (envelope.getMinX() + envelope.getMaxX()) / 2.0;
+        final double centerY = (envelope.getMinY() + envelope.getMaxY()) / 2.0;
+        histogram.counts[histogram.cell(histogram.column(centerX), histogram.row(centerY))]++;
+        return histogram;
+    }
+
+    public static CostHistogram combine(CostHistogram histogram1, CostHistogram histogram2)
+    {
+        for (int i = 0; i < histogram1.costs.length; i++) {
+            histogram1.counts[i] += histogram2.counts[i];
+            histogram1.costs[i] += histogram2.costs[i];
+        }
+        return histogram1;
+    }
+
+    public Envelope getBoundary()
+    {
+        return boundary;
+    }
+
+    public int getResolution()
+    {
+        return resolution;
+    }
+
+    public long getCount(int column, int row)
+    {
+        return counts[cell(column, row)];
+    }
+
+    public long getCost(int column, int row)
+    {
+        return costs[cell(column, row)];
+    }
+
+    /**
+     * Returns the extent of the cells in [minColumn, maxColumn) x [minRow, maxRow)
+     */
+    public Envelope getExtent(int minColumn, int maxColumn, int minRow, int maxRow)
+    {
+        final double cellWidth = boundary.getWidth() / resolution;
+        final double cellHeight = boundary.getHeight() / resolution;
+
+        // Use the exact boundary on its edges to avoid rounding errors
+        return new Envelope(
+                boundary.getMinX() + minColumn * cellWidth,
+                maxColumn == resolution ? boundary.getMaxX() : boundary.getMinX() + maxColumn * cellWidth,
+                boundary.getMinY() + minRow * cellHeight,
+                maxRow == resolution ? boundary.getMaxY() : boundary.getMinY() + maxRow * cellHeight);
+    }
+
+    private int cell(int column, int row)
+    {
+        return row * resolution + column;
+    }
+
+    /**
+     * Maps a coordinate to a column in [0, resolution). Coordinates outside of the boundary are
+     * mapped to the nearest column.
+     */
+    private int column(double x)
+    {
+        return locationMapping(boundary.getMinX(), x, boundary.getMaxX());
+    }
+
+    private int row(double y)
+    {
+        return locationMapping(boundary.getMinY(), y, boundary.getMaxY());
+    }
+
+    private int locationMapping(double axisMin, double axisLocation, double axisMax)
+    {
+        final double gridLocation = (axisLocation - axisMin) * resolution / (axisMax - axisMin);
+        if (!(gridLocation > 0)) {
+            return 0;
+        }
+        return gridLocation >= resolution ? resolution - 1 : (int) gridLocation;
+    }
+}
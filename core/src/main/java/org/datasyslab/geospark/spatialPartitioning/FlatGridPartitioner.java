@@ -18,21 +18,28 @@ package org.datasyslab.geospark.spatialPartitioning;
 
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.joinJudgement.DedupParams;
 import scala.Tuple2;
 
 import javax.annotation.Nullable;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 
 public class FlatGridPartitioner
         extends SpatialPartitioner
 {
+    /**
+     * Lookup structure over the grid cells, built on first use after deserialization
+     */
+    private transient GridIndex gridIndex;
+
     public FlatGridPartitioner(GridType gridType, List<Envelope> grids)
     {
         super(gridType, grids);
@@ -56,41 +63,116 @@ public class FlatGridPartitioner
 
         final Envelope envelope = spatialObject.getEnvelopeInternal();
 
-        Set<Tuple2<Integer, T>> result = new HashSet();
-        boolean containFlag = false;
-        for (int i = 0; i < grids.size(); i++) {
-            final Envelope grid = grids.get(i);
-            if (grid.covers(envelope)) {
-                result.add(new Tuple2(i, spatialObject));
-                containFlag = true;
-            }
-            else if (grid.intersects(envelope) || envelope.covers(grid)) {
-                result.add(new Tuple2<>(i, spatialObject));
-            }
+        // Grid cells may overlap. Each point goes to the first cell that contains it, which is
+        // the partition that owns the point for de-dup purposes (see DedupParams).
+        if (spatialObject instanceof Point) {
+            final FirstCellFinder finder = new FirstCellFinder(overflowContainerID);
+            getGridIndex().visitIntersectingCells(envelope, finder);
+            return Collections.singletonList(new Tuple2<Integer, T>(finder.firstCell, spatialObject)).iterator();
         }
 
-        if (!containFlag) {
+        final CellCollector collector = new CellCollector(envelope);
+        getGridIndex().visitIntersectingCells(envelope, collector);
+        final int[] cells = collector.getSortedCells();
+
+        final List<Tuple2<Integer, T>> result = new ArrayList<>(cells.length + 1);
+        for (int cell : cells) {
+            result.add(new Tuple2<>(cell, spatialObject));
+        }
+        if (!collector.covered) {
             result.add(new Tuple2<>(overflowContainerID, spatialObject));
         }
-
         return result.iterator();
     }
 
+    @Override
+    public List<Integer> getOverlappingPartitions(Envelope envelope)
+    {
+        final CellCollector collector = new CellCollector(envelope);
+        getGridIndex().visitIntersectingCells(envelope, collector);
+
+        final List<Integer> partitionIds = new ArrayList<>();
+        for (int cell : collector.getSortedCells()) {
+            partitionIds.add(cell);
+        }
+        partitionIds.add(grids.size());
+        return partitionIds;
+    }
+
+    private GridIndex getGridIndex()
+    {
+        if (gridIndex == null) {
+            gridIndex = GridIndex.create(grids);
+        }
+        return gridIndex;
+    }
+
+    /**
+     * Finds the lowest ID of the cells that contain a point
+     */
+    private static final class FirstCellFinder
+            implements GridIndex.CellVisitor
+    {
+        private int firstCell;
+
+        private FirstCellFinder(int overflowContainerID)
+        {
+            this.firstCell = overflowContainerID;
+        }
+
+        @Override
+        public void visitCell(int cellId)
+        {
+            firstCell = Math.min(firstCell, cellId);
+        }
+    }
+
+    /**
+     * Collects the IDs of the cells that intersect an envelope and notes whether any of them
+     * covers the envelope
+     */
+    private final class CellCollector
+            implements GridIndex.CellVisitor
+    {
+        private final Envelope envelope;
+        private int[] cells = new int[4];
+        private int numCells = 0;
+        private boolean covered = false;
+
+        private CellCollector(Envelope envelope)
+        {
+            this.envelope = envelope;
+        }
+
+        @Override
+        public void visitCell(int cellId)
+        {
+            if (numCells == cells.length) {
+                cells = Arrays.copyOf(cells, 2 * numCells);
+            }
+            cells[numCells++] = cellId;
+            covered = covered || grids.get(cellId).covers(envelope);
+        }
+
+        private int[] getSortedCells()
+        {
+            final int[] sortedCells = Arrays.copyOf(cells, numCells);
+            Arrays.sort(sortedCells);
+            return sortedCells;
+        }
+    }
+
+    /**
+     * Grid cells of R-Tree, Voronoi and Hilbert partitioning may overlap and, together with
+     * the overflow partition, don't tile the plane into half-open rectangles. De-dup therefore
+     * assigns a reference point to the first cell that contains it or to the overflow partition,
+     * which is the same rule {@link #placeObject} uses for points. The rule doesn't depend on
+     * the grid type, so it also works for grids passed in without one.
+     */
     @Nullable
     public DedupParams getDedupParams()
     {
-        /**
-         * Equal and Hilbert partitioning methods have necessary properties to support de-dup.
-         * These methods provide non-overlapping partition extents and not require overflow
-         * partition as they cover full extent of the RDD. However, legacy
-         * SpatialRDD.spatialPartitioning(otherGrids) method doesn't preserve the grid type
-         * making it impossible to reliably detect whether partitioning allows efficient de-dup or not.
-         *
-         * TODO Figure out how to remove SpatialRDD.spatialPartitioning(otherGrids) API. Perhaps,
-         * make the implementation no-op and fold the logic into JoinQuery, RangeQuery and KNNQuery APIs.
-         */
-
-        return null;
+        return new DedupParams(grids, true);
     }
 
     @Override
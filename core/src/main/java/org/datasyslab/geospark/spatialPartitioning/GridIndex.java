@@ -0,0 +1,227 @@
+/*
+ * FILE: GridIndex
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Envelope;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the grid cells whose extent intersects an envelope without checking every cell.
+ * <p>
+ * Cells that form a lattice of columns and rows, like those of an EQUALGRID, are looked up with
+ * binary search over the columns and rows. Other cells are looked up in a packed R-Tree.
+ */
+abstract class GridIndex
+{
+    /**
+     * Receives the IDs of the grid cells, i.e. their positions in the list of grids
+     */
+    interface CellVisitor
+    {
+        void visitCell(int cellId);
+    }
+
+    /**
+     * Reports every cell whose extent intersects the envelope, in no particular order.
+     */
+    abstract void visitIntersectingCells(Envelope envelope, CellVisitor visitor);
+
+    static GridIndex create(List<Envelope> grids)
+    {
+        // Grids passed in without a grid type may form a lattice too, so always check
+        final LatticeGridIndex lattice = LatticeGridIndex.create(grids);
+        if (lattice != null) {
+            return lattice;
+        }
+        return new RTreeGridIndex(grids);
+    }
+
+    private static final class RTreeGridIndex
+            extends GridIndex
+    {
+        private final PackedRTree tree;
+
+        private RTreeGridIndex(List<Envelope> grids)
+        {
+            this.tree = new PackedRTree();
+            for (int i = 0; i < grids.size(); i++) {
+                tree.insert(grids.get(i), i);
+            }
+            tree.build();
+        }
+
+        @Override
+        void visitIntersectingCells(Envelope envelope, final CellVisitor visitor)
+        {
+            tree.query(envelope, new PackedRTree.ItemIdVisitor()
+            {
+                @Override
+                public void visitItem(int itemId)
+                {
+                    visitor.visitCell((Integer) tree.getItem(itemId));
+                }
+            });
+        }
+    }
+
+    private static final class LatticeGridIndex
+            extends GridIndex
+    {
+        private final double[] columnMinX;
+        private final double[] columnMaxX;
+        private final double[] rowMinY;
+        private final double[] rowMaxY;
+        /**
+         * Cell ID of every column and row, indexed by column * number of rows + row
+         */
+        private final int[] cellIds;
+
+        private LatticeGridIndex(double[] columnMinX, double[] columnMaxX, double[] rowMinY, double[] rowMaxY, int[] cellIds)
+        {
+            this.columnMinX = columnMinX;
+            this.columnMaxX = columnMaxX;
+            this.rowMinY = rowMinY;
+            this.rowMaxY = rowMaxY;
+            this.cellIds = cellIds;
+        }
+
+        /**
+         * Returns null if the cells don't form a complete lattice
+         */
+        private static LatticeGridIndex create(List<Envelope> grids)
+        {
+            final double[] columnMinX = distinct(grids, true);
+            final double[] rowMinY = distinct(grids, false);
+            final int numRows = rowMinY.length;
+            if ((long) columnMinX.length * numRows != grids.size()) {
+                return null;
+            }
+
+            final double[] columnMaxX = new double[columnMinX.length];
+            final double[] rowMaxY = new double[numRows];
+            final int[] cellIds = new int[grids.size()];
+            Arrays.fill(cellIds, -1);
+            for (int i = 0; i < grids.size(); i++) {
+                final Envelope grid = grids.get(i);
+                final int column = Arrays.binarySearch(columnMinX, grid.getMinX());
+                final int row = Arrays.binarySearch(rowMinY, grid.getMinY());
+                if (cellIds[column * numRows + row] != -1) {
+                    return null;
+                }
+                cellIds[column * numRows + row] = i;
+                columnMaxX[column] = grid.getMaxX();
+                rowMaxY[row] = grid.getMaxY();
+            }
+
+            // Every cell of a column (row) must have the same extent along the x (y) axis
+            for (int i = 0; i < grids.size(); i++) {
+                final Envelope grid = grids.get(i);
+                if (grid.getMaxX() != columnMaxX[Arrays.binarySearch(columnMinX, grid.getMinX())]
+                        || grid.getMaxY() != rowMaxY[Arrays.binarySearch(rowMinY, grid.getMinY())]) {
+                    return null;
+                }
+            }
+            for (int i = 1; i < columnMaxX.length; i++) {
+                if (columnMaxX[i] < columnMaxX[i - 1]) {
+                    return null;
+                }
+            }
+            for (int i = 1; i < rowMaxY.length; i++) {
+                if (rowMaxY[i] < rowMaxY[i - 1]) {
+                    return null;
+                }
+            }
+            return new LatticeGridIndex(columnMinX, columnMaxX, rowMinY, rowMaxY, cellIds);
+        }
+
+        private static double[] distinct(List<Envelope> grids, boolean x)
+        {
+            final double[] values = new double[grids.size()];
+            for (int i = 0; i < grids.size(); i++) {
+                values[i] = x ? grids.get(i).getMinX() : grids.get(i).getMinY();
+            }
+            Arrays.sort(values);
+            int numDistinct = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (i == 0 || values[i] != values[i - 1]) {
+                    values[numDistinct++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, numDistinct);
+        }
+
+        @Override
+        void visitIntersectingCells(Envelope envelope, CellVisitor visitor)
+        {
+            if (envelope.isNull()) {
+                return;
+            }
+
+            final int firstColumn = firstWithMaxAtLeast(columnMaxX, envelope.getMinX());
+            final int lastColumn = lastWithMinAtMost(columnMinX, envelope.getMaxX());
+            final int firstRow = firstWithMaxAtLeast(rowMaxY, envelope.getMinY());
+            final int lastRow = lastWithMinAtMost(rowMinY, envelope.getMaxY());
+            final int numRows = rowMinY.length;
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                for (int row = firstRow; row <= lastRow; row++) {
+                    visitor.visitCell(cellIds[column * numRows + row]);
+                }
+            }
+        }
+
+        /**
+         * Returns the first index whose value is at least the given value; values must be ascending
+         */
+        private static int firstWithMaxAtLeast(double[] maxValues, double value)
+        {
+            int low = 0;
+            int high = maxValues.length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (maxValues[middle] < value) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Returns the last index whose value is at most the given value; values must be ascending
+         */
+        private static int lastWithMinAtMost(double[] minValues, double value)
+        {
+            int low = 0;
+            int high = minValues.length;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (minValues[middle] <= value) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low - 1;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * FILE: HistogramPartitioning
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Cuts the boundary of a {@link CostHistogram} into rectangles of similar estimated cost.
+ * <p>
+ * Starting from the whole boundary, the rectangle with the highest cost is repeatedly split
+ * at the cell boundary that best balances the costs of the two halves, along either axis,
+ * until there are as many rectangles as partitions. A single cell can't be split, so a cell
+ * whose cost alone exceeds the target cost per partition stays oversized.
+ */
+public class HistogramPartitioning
+        implements Serializable
+{
+    /**
+     * Partitions whose cost exceeds the target by this factor are reported as oversized
+     */
+    public static final double OVERSIZED_FACTOR = 2.0;
+
+    private final List<Envelope> grids = new ArrayList<>();
+    private final List<Long> costs = new ArrayList<>();
+    private final long targetCost;
+
+    public HistogramPartitioning(CostHistogram histogram, int partitions)
+    {
+        final int resolution = histogram.getResolution();
+        final Region root = new Region(histogram, 0, resolution, 0, resolution);
+        this.targetCost = (root.cost + partitions - 1) / partitions;
+
+        final PriorityQueue<Region> queue = new PriorityQueue<>();
+        final List<Region> regions = new ArrayList<>();
+        queue.add(root);
+        while (!queue.isEmpty() && queue.size() + regions.size() < partitions) {
+            final Region region = queue.poll();
+            final Region[] halves = region.split(histogram);
+            if (halves == null) {
+                regions.add(region);
+                continue;
+            }
+            queue.add(halves[0]);
+            queue.add(halves[1]);
+        }
+        regions.addAll(queue);
+
+        for (Region region : regions) {
+            grids.add(histogram.getExtent(region.minColumn, region.maxColumn, region.minRow, region.maxRow));
+            costs.add(region.cost);
+        }
+    }
+
+    public List<Envelope> getGrids()
+    {
+        return grids;
+    }
+
+    /**
+     * Returns the estimated cost of every grid
+     */
+    public List<Long> getCosts()
+    {
+        return costs;
+    }
+
+    /**
+     * Returns the total estimated cost divided by the number of partitions
+     */
+    public long getTargetCost()
+    {
+        return targetCost;
+    }
+
+    /**
+     * Cells in [minColumn, maxColumn) x [minRow, maxRow), ordered by descending cost
+     */
+    private static final class Region
+            implements Comparable<Region>
+    {
+        private final int minColumn;
+        private final int maxColumn;
+        private final int minRow;
+        private final int maxRow;
+        private final long cost;
+
+        private Region(CostHistogram histogram, int minColumn, int maxColumn, int minRow, int maxRow)
+        {
+            this.minColumn = minColumn;
+            this.maxColumn = maxColumn;
+            this.minRow = minRow;
+            this.maxRow = maxRow;
+
+            long cost = 0;
+            for (int row = minRow; row < maxRow; row++) {
+                for (int column = minColumn; column < maxColumn; column++) {
+                    cost += histogram.getCost(column, row);
+                }
+            }
+            this.cost = cost;
+        }
+
+        /**
+         * Returns the two halves of this region, or null if it is a single cell. Tries both axes
+         * and picks the cut that best balances the costs, preferring the longer side on ties.
+         */
+        private Region[] split(CostHistogram histogram)
+        {
+            final int width = maxColumn - minColumn;
+            final int height = maxRow - minRow;
+            if (width == 1 && height == 1) {
+                return null;
+            }
+
+            final boolean longerX = width >= height;
+            final long[] cutX = width > 1 ? findCut(histogram, true) : null;
+            final long[] cutY = height > 1 ? findCut(histogram, false) : null;
+            final boolean splitX = cutY == null || (cutX != null && (cutX[1] < cutY[1] || (cutX[1] == cutY[1] && longerX)));
+            final int split = (int) (splitX ? cutX[0] : cutY[0]);
+
+            if (splitX) {
+                return new Region[] {
+                        new Region(histogram, minColumn, split, minRow, maxRow),
+                        new Region(histogram, split, maxColumn, minRow, maxRow)};
+            }
+            return new Region[] {
+                    new Region(histogram, minColumn, maxColumn, minRow, split),
+                    new Region(histogram, minColumn, maxColumn, split, maxRow)};
+        }
+
+        /**
+         * Returns the cell boundary along the given axis that best balances the costs of the two
+         * halves, and the difference between their costs
+         */
+        private long[] findCut(CostHistogram histogram, boolean splitX)
+        {
+            final int start = splitX ? minColumn : minRow;
+            final int end = splitX ? maxColumn : maxRow;
+
+            // Cost of the lines of cells across the split axis
+            final long[] lineCosts = new long[end - start];
+            for (int row = minRow; row < maxRow; row++) {
+                for (int column = minColumn; column < maxColumn; column++) {
+                    lineCosts[(splitX ? column : row) - start] += histogram.getCost(column, row);
+                }
+            }
+
+            int split = start + 1;
+            long lowerCost = lineCosts[0];
+            long bestImbalance = Math.abs(cost - 2 * lowerCost);
+            for (int i = start + 2; i < end; i++) {
+                final long imbalance = Math.abs(cost - 2 * (lowerCost + lineCosts[i - 1 - start]));
+                if (imbalance >= bestImbalance) {
+                    break;
+                }
+                lowerCost += lineCosts[i - 1 - start];
+                bestImbalance = imbalance;
+                split = i;
+            }
+            return new long[] {split, bestImbalance};
+        }
+
+        @Override
+        public int compareTo(Region other)
+        {
+            return Long.compare(other.cost, cost);
+        }
+    }
+}
@@ -28,6 +28,7 @@ import scala.Tuple2;
 import javax.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -78,6 +79,17 @@ public class KDBTreePartitioner
         return result.iterator();
     }
 
+    @Override
+    public List<Integer> getOverlappingPartitions(Envelope envelope)
+    {
+        final List<Integer> partitionIds = new ArrayList<>();
+        for (KDBTree leaf : tree.findLeafNodes(envelope)) {
+            partitionIds.add(leaf.getLeafId());
+        }
+        Collections.sort(partitionIds);
+        return partitionIds;
+    }
+
     @Nullable
     @Override
     public DedupParams getDedupParams()
@@ -26,6 +26,7 @@ import scala.Tuple2;
 import javax.annotation.Nullable;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
@@ -57,6 +58,26 @@ abstract public class SpatialPartitioner
     @Nullable
     abstract public DedupParams getDedupParams();
 
+    /**
+     * Returns the IDs of the partitions which may hold geometries intersecting the given
+     * envelope, in ascending order.
+     * <p>
+     * This implementation checks every grid cell and includes the overflow partition, if any.
+     */
+    public List<Integer> getOverlappingPartitions(Envelope envelope)
+    {
+        final List<Integer> partitionIds = new ArrayList<>();
+        for (int i = 0; i < grids.size(); i++) {
+            if (grids.get(i).intersects(envelope)) {
+                partitionIds.add(i);
+            }
+        }
+        for (int i = grids.size(); i < numPartitions(); i++) {
+            partitionIds.add(i);
+        }
+        return partitionIds;
+    }
+
     public GridType getGridType()
     {
         return gridType;
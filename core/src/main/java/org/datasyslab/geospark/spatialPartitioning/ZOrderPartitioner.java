@@ -0,0 +1,184 @@
+/*
+ * FILE: ZOrderPartitioner
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.datasyslab.geospark.enums.GridType;
+import org.datasyslab.geospark.joinJudgement.DedupParams;
+import scala.Tuple2;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Places geometries by their keys on the Z-order curve, see {@link ZOrderPartitioning}.
+ * <p>
+ * A point goes to the partition whose range holds its key, found by a binary search over the
+ * splits. Other geometries go to every partition whose range holds the key of a cell they overlap.
+ * Geometries outside of the boundary, and those crossing it, also go to the overflow partition,
+ * whose ID equals the number of ranges.
+ */
+public class ZOrderPartitioner
+        extends SpatialPartitioner
+        implements DedupParams.PointPartitioner
+{
+    private final Envelope boundary;
+    private final long[] splits;
+
+    public ZOrderPartitioner(GridType gridType, ZOrderPartitioning partitioning)
+    {
+        super(gridType, partitioning.getGrids());
+        this.boundary = partitioning.getBoundary();
+        this.splits = partitioning.getSplits();
+    }
+
+    @Override
+    public <T extends Geometry> Iterator<Tuple2<Integer, T>> placeObject(T spatialObject)
+            throws Exception
+    {
+        Objects.requireNonNull(spatialObject, "spatialObject");
+
+        final Envelope envelope = spatialObject.getEnvelopeInternal();
+
+        if (spatialObject instanceof Point) {
+            final int partitionId = getPartition(envelope.getMinX(), envelope.getMinY());
+            return Collections.singletonList(new Tuple2<Integer, T>(partitionId, spatialObject)).iterator();
+        }
+
+        final List<Tuple2<Integer, T>> result = new ArrayList<>();
+        for (int partitionId : getOverlappingPartitions(envelope)) {
+            result.add(new Tuple2<>(partitionId, spatialObject));
+        }
+        return result.iterator();
+    }
+
+    public Envelope getBoundary()
+    {
+        return boundary;
+    }
+
+    public long[] getSplits()
+    {
+        return splits;
+    }
+
+    /**
+     * Returns the ID of the partition holding the given location, or of the overflow partition
+     * if the location is outside of the boundary
+     */
+    @Override
+    public int getPartition(double x, double y)
+    {
+        if (!boundary.covers(x, y)) {
+            return grids.size();
+        }
+        return ZOrderPartitioning.getPartition(splits, ZOrderPartitioning.computeKey(boundary, x, y));
+    }
+
+    @Override
+    public List<Integer> getOverlappingPartitions(Envelope envelope)
+    {
+        final BitSet partitionIds = new BitSet(numPartitions());
+        final Envelope clipped = boundary.intersection(envelope);
+        if (!clipped.isNull()) {
+            final int minColumn = ZOrderPartitioning.locationMapping(boundary.getMinX(), clipped.getMinX(), boundary.getMaxX());
+            final int maxColumn = ZOrderPartitioning.locationMapping(boundary.getMinX(), clipped.getMaxX(), boundary.getMaxX());
+            final int minRow = ZOrderPartitioning.locationMapping(boundary.getMinY(), clipped.getMinY(), boundary.getMaxY());
+            final int maxRow = ZOrderPartitioning.locationMapping(boundary.getMinY(), clipped.getMaxY(), boundary.getMaxY());
+            collectPartitions(0, ZOrderPartitioning.BITS, minColumn, maxColumn, minRow, maxRow, partitionIds);
+        }
+        if (!boundary.covers(envelope)) {
+            partitionIds.set(grids.size());
+        }
+
+        final List<Integer> result = new ArrayList<>(partitionIds.cardinality());
+        for (int i = partitionIds.nextSetBit(0); i >= 0; i = partitionIds.nextSetBit(i + 1)) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the partitions holding the keys of the cells of the block which lie within the
+     * given column and row range. The block is a square of 2^level x 2^level cells whose keys
+     * start at the given key.
+     * <p>
+     * Blocks whose keys all lie in one partition, and blocks fully covered by the range, are
+     * resolved without looking at their sub-blocks. Only the blocks crossing a split are refined.
+     */
+    private void collectPartitions(long key, int level, int minColumn, int maxColumn, int minRow, int maxRow, BitSet partitionIds)
+    {
+        final int column = ZOrderPartitioning.column(key);
+        final int row = ZOrderPartitioning.row(key);
+        final int size = 1 << level;
+        if (column > maxColumn || column + size - 1 < minColumn || row > maxRow || row + size - 1 < minRow) {
+            return;
+        }
+
+        final int first = ZOrderPartitioning.getPartition(splits, key);
+        final int last = ZOrderPartitioning.getPartition(splits, key + (1L << (2 * level)) - 1);
+        final boolean covered = column >= minColumn && column + size - 1 <= maxColumn && row >= minRow && row + size - 1 <= maxRow;
+        if (first == last || covered) {
+            partitionIds.set(first, last + 1);
+            return;
+        }
+
+        final long childKeys = 1L << (2 * (level - 1));
+        for (int child = 0; child < 4; child++) {
+            collectPartitions(key + child * childKeys, level - 1, minColumn, maxColumn, minRow, maxRow, partitionIds);
+        }
+    }
+
+    /**
+     * Ranges of a curve don't form rectangles, so the owner of a reference point is found by its key.
+     * Any geometry whose envelope contains the point overlaps its cell, so it is placed into
+     * the owner partition as well.
+     */
+    @Nullable
+    @Override
+    public DedupParams getDedupParams()
+    {
+        return new DedupParams(grids, this);
+    }
+
+    @Override
+    public int numPartitions()
+    {
+        return grids.size() + 1 /* overflow partition */;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (o == null || !(o instanceof ZOrderPartitioner)) {
+            return false;
+        }
+
+        final ZOrderPartitioner other = (ZOrderPartitioner) o;
+        return Objects.equals(other.gridType, this.gridType) && other.boundary.equals(this.boundary)
+                && Arrays.equals(other.splits, this.splits);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * FILE: ZOrderPartitioning
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the Z-order curve over a boundary into ranges of keys holding similar numbers of samples.
+ * <p>
+ * The boundary is divided into 2^16 x 2^16 cells. The key of a cell interleaves the bits of its
+ * column and row, the column bit first. Over the boundary of the whole world in longitude and
+ * latitude, the key of a point is the 32-bit prefix of its geohash.
+ * <p>
+ * Each partition covers the keys from its split, inclusive, to the next split, exclusive. Its grid
+ * is the bounding box of the cells of its range.
+ */
+public class ZOrderPartitioning
+        implements Serializable
+{
+    /**
+     * Number of bits per axis
+     */
+    static final int BITS = 16;
+
+    static final int RESOLUTION = 1 << BITS;
+
+    /**
+     * Number of keys on the curve
+     */
+    static final long NUM_KEYS = 1L << (2 * BITS);
+
+    /**
+     * Longitude and latitude bounds of geohashes
+     */
+    public static final Envelope WORLD = new Envelope(-180, 180, -90, 90);
+
+    private final Envelope boundary;
+
+    /**
+     * First key of every partition but the first one, in ascending order
+     */
+    private final long[] splits;
+
+    private final List<Envelope> grids;
+
+    /**
+     * @param samples the sample list
+     * @param boundary the boundary
+     * @param partitions the maximum number of partitions; fewer are created if samples share keys
+     */
+    public ZOrderPartitioning(List<Envelope> samples, Envelope boundary, int partitions)
+    {
+        this.boundary = boundary;
+
+        final long[] keys = new long[samples.size()];
+        for (int i = 0; i < samples.size(); i++) {
+            final Envelope sample = samples.get(i);
+            keys[i] = computeKey(boundary, (sample.getMinX() + sample.getMaxX()) / 2.0, (sample.getMinY() + sample.getMaxY()) / 2.0);
+        }
+        Arrays.sort(keys);
+
+        final long[] candidates = new long[Math.max(0, partitions - 1)];
+        int numSplits = 0;
+        for (int i = 1; i < partitions && keys.length > 0; i++) {
+            final long quantile = keys[(int) ((long) i * keys.length / partitions)];
+            if (quantile > (numSplits == 0 ? 0 : candidates[numSplits - 1])) {
+                candidates[numSplits++] = quantile;
+            }
+        }
+        this.splits = Arrays.copyOf(candidates, numSplits);
+
+        this.grids = new ArrayList<>(splits.length + 1);
+        for (int i = 0; i <= splits.length; i++) {
+            grids.add(getRangeExtent(boundary, getRangeStart(splits, i), getRangeEnd(splits, i)));
+        }
+    }
+
+    public Envelope getBoundary()
+    {
+        return boundary;
+    }
+
+    public long[] getSplits()
+    {
+        return splits;
+    }
+
+    public List<Envelope> getGrids()
+    {
+        return grids;
+    }
+
+    /**
+     * Returns the Z-order key of the cell holding the given location. Locations outside the
+     * boundary are assigned to the nearest cell on its edge.
+     */
+    public static long computeKey(Envelope boundary, double x, double y)
+    {
+        final int column = locationMapping(boundary.getMinX(), x, boundary.getMaxX());
+        final int row = locationMapping(boundary.getMinY(), y, boundary.getMaxY());
+        return interleave(column, row);
+    }
+
+    /**
+     * Returns the partition holding the given key
+     */
+    public static int getPartition(long[] splits, long key)
+    {
+        final int index = Arrays.binarySearch(splits, key);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    static long getRangeStart(long[] splits, int partition)
+    {
+        return partition == 0 ? 0 : splits[partition - 1];
+    }
+
+    static long getRangeEnd(long[] splits, int partition)
+    {
+        return partition == splits.length ? NUM_KEYS : splits[partition];
+    }
+
+    /**
+     * Maps a coordinate to a cell column or row in [0, RESOLUTION)
+     */
+    static int locationMapping(double axisMin, double axisLocation, double axisMax)
+    {
+        final double gridLocation = (axisLocation - axisMin) * RESOLUTION / (axisMax - axisMin);
+        if (!(gridLocation > 0)) {
+            return 0;
+        }
+        return gridLocation >= RESOLUTION ? RESOLUTION - 1 : (int) gridLocation;
+    }
+
+    static long interleave(int column, int row)
+    {
+        return (spread(column) << 1) | spread(row);
+    }
+
+    static int column(long key)
+    {
+        return compact(key >>> 1);
+    }
+
+    static int row(long key)
+    {
+        return compact(key);
+    }
+
+    /**
+     * Moves the 16 low bits of the value to the even bit positions
+     */
+    private static long spread(int value)
+    {
+        long x = value & 0xFFFFL;
+        x = (x | (x << 8)) & 0x00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0FL;
+        x = (x | (x << 2)) & 0x33333333L;
+        x = (x | (x << 1)) & 0x55555555L;
+        return x;
+    }
+
+    /**
+     * Inverse of spread, ignores the odd bit positions
+     */
+    private static int compact(long value)
+    {
+        long x = value & 0x55555555L;
+        x = (x | (x >>> 1)) & 0x33333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFFL;
+        return (int) x;
+    }
+
+    /**
+     * Returns the extent of the cells with keys in [start, end), or null if the range is empty.
+     * <p>
+     * The range is decomposed into aligned blocks of 4^level keys, each of which is a square
+     * of 2^level x 2^level cells.
+     */
+    static Envelope getRangeExtent(Envelope boundary, long start, long end)
+    {
+        Envelope extent = null;
+        long key = start;
+        while (key < end) {
+            int level = 0;
+            while (level < BITS && (key & ((1L << (2 * (level + 1))) - 1)) == 0 && key + (1L << (2 * (level + 1))) <= end) {
+                level++;
+            }
+
+            final Envelope block = getCellExtent(boundary, column(key), row(key), 1 << level);
+            if (extent == null) {
+                extent = block;
+            }
+            else {
+                extent.expandToInclude(block);
+            }
+            key += 1L << (2 * level);
+        }
+        return extent;
+    }
+
+    /**
+     * Returns the extent of the square of size x size cells whose lower left cell is given
+     */
+    static Envelope getCellExtent(Envelope boundary, int column, int row, int size)
+    {
+        final double cellWidth = boundary.getWidth() / RESOLUTION;
+        final double cellHeight = boundary.getHeight() / RESOLUTION;
+        // Use the exact boundary on its edges to avoid rounding errors
+        return new Envelope(
+                boundary.getMinX() + column * cellWidth,
+                column + size == RESOLUTION ? boundary.getMaxX() : boundary.getMinX() + (column + size) * cellWidth,
+                boundary.getMinY() + row * cellHeight,
+                row + size == RESOLUTION ? boundary.getMaxY() : boundary.getMinY() + (row + size) * cellHeight);
+    }
+}
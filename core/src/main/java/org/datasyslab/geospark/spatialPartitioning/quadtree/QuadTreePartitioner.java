@@ -28,6 +28,7 @@ import scala.Tuple2;
 import javax.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -74,6 +75,17 @@ public class QuadTreePartitioner
         return result.iterator();
     }
 
+    @Override
+    public List<Integer> getOverlappingPartitions(Envelope envelope)
+    {
+        final List<Integer> partitionIds = new ArrayList<>();
+        for (QuadRectangle rectangle : quadTree.findZones(new QuadRectangle(envelope))) {
+            partitionIds.add(rectangle.partitionId);
+        }
+        Collections.sort(partitionIds);
+        return partitionIds;
+    }
+
     @Nullable
     @Override
     public DedupParams getDedupParams()
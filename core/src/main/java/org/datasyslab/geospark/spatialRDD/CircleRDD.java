@@ -77,6 +77,7 @@ public class CircleRDD
         this.CRStransformation = spatialRDD.CRStransformation;
         this.sourceEpsgCode = spatialRDD.sourceEpsgCode;
         this.targetEpgsgCode = spatialRDD.targetEpgsgCode;
+        this.recordIds = spatialRDD.recordIds;
     }
 
     /**
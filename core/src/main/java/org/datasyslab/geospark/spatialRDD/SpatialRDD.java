@@ -21,13 +21,17 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.io.WKBWriter;
 import org.locationtech.jts.io.WKTWriter;
 import org.apache.commons.lang.NullArgumentException;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.apache.log4j.Logger;
 import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.apache.spark.api.java.function.Function;
 import org.apache.spark.api.java.function.Function2;
@@ -36,19 +40,33 @@ import org.apache.spark.storage.StorageLevel;
 import org.apache.spark.util.random.SamplingUtils;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.geometryObjects.CoordinateQuantizer;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
+import org.datasyslab.geospark.monitoring.GeoSparkGauge;
+import org.datasyslab.geospark.monitoring.GeoSparkMetrics;
+import org.datasyslab.geospark.spatialPartitioning.CostHistogram;
 import org.datasyslab.geospark.spatialPartitioning.EqualPartitioning;
 import org.datasyslab.geospark.spatialPartitioning.FlatGridPartitioner;
 import org.datasyslab.geospark.spatialPartitioning.HilbertPartitioning;
+import org.datasyslab.geospark.spatialPartitioning.HistogramPartitioning;
 import org.datasyslab.geospark.spatialPartitioning.KDBTree;
 import org.datasyslab.geospark.spatialPartitioning.KDBTreePartitioner;
 import org.datasyslab.geospark.spatialPartitioning.QuadtreePartitioning;
 import org.datasyslab.geospark.spatialPartitioning.RtreePartitioning;
 import org.datasyslab.geospark.spatialPartitioning.SpatialPartitioner;
 import org.datasyslab.geospark.spatialPartitioning.VoronoiPartitioning;
+import org.datasyslab.geospark.spatialPartitioning.ZOrderPartitioner;
+import org.datasyslab.geospark.spatialPartitioning.ZOrderPartitioning;
 import org.datasyslab.geospark.spatialPartitioning.quadtree.QuadTreePartitioner;
 import org.datasyslab.geospark.spatialPartitioning.quadtree.StandardQuadTree;
+import org.datasyslab.geospark.spatialRddTool.HilbertSorter;
+import org.datasyslab.geospark.spatialRddTool.IndexAppender;
 import org.datasyslab.geospark.spatialRddTool.IndexBuilder;
+import org.datasyslab.geospark.spatialRddTool.PartitionStore;
+import org.datasyslab.geospark.spatialRddTool.PartitionedRDD;
+import org.datasyslab.geospark.spatialRddTool.SampledStatCalculator;
 import org.datasyslab.geospark.spatialRddTool.StatCalculator;
+import org.datasyslab.geospark.utils.GeoSparkConf;
 import org.datasyslab.geospark.utils.RDDSampleUtils;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.referencing.CRS;
@@ -59,8 +77,14 @@ import org.wololo.geojson.Feature;
 import org.wololo.jts2geojson.GeoJSONWriter;
 import scala.Tuple2;
 
+import javax.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -81,6 +105,10 @@ public class SpatialRDD<T extends Geometry>
      */
     final static Logger logger = Logger.getLogger(SpatialRDD.class);
 
+    private static final String PARTITIONS_DIRECTORY = "partitions";
+    private static final String INDEX_DIRECTORY = "index";
+    private static final String METADATA_FILE = "_metadata";
+
     /**
      * The total number of records.
      */
@@ -142,6 +170,59 @@ public class SpatialRDD<T extends Geometry>
         this.sampleNumber = sampleNumber;
     }
 
+    public boolean getSortWithinPartitions()
+    {
+        return sortWithinPartitions;
+    }
+
+    /**
+     * Sorts the records of every partition by the Hilbert key of their envelope centres during
+     * spatial partitioning. Index builds and join probes then visit nearby records one after another,
+     * and cached or spilled partitions compress better. Each partition is held in memory while sorting.
+     *
+     * @param sortWithinPartitions true to sort the records of every partition
+     */
+    public void setSortWithinPartitions(boolean sortWithinPartitions)
+    {
+        this.sortWithinPartitions = sortWithinPartitions;
+    }
+
+    /**
+     * Envelopes sampled by analyzeAndSample, in random order, and the RDD they were sampled from.
+     * Transient, so that closures capturing this SpatialRDD don't ship the samples to every task.
+     */
+    private transient List<Envelope> sampledEnvelopes;
+    private int sampledMaxNumPartitions;
+    private transient JavaRDD<T> sampledRDD;
+
+    /**
+     * Number of partitions requested by the last call to spatialPartitioning with a grid type
+     */
+    private int requestedNumPartitions = -1;
+
+    /**
+     * Number of records per partition of spatialPartitionedRDD, maintained by appendPartitioned,
+     * and the RDD they were counted on, see {@link #getPartitionCounts()}
+     */
+    private transient long[] partitionCounts;
+    private transient JavaRDD<T> countedRDD;
+
+    /**
+     * If true, the records of every partition of spatialPartitionedRDD are sorted by the Hilbert
+     * key of their envelope centres
+     */
+    private boolean sortWithinPartitions = false;
+
+    /**
+     * True if every geometry carries a record ID, see {@link #assignRecordIds()}.
+     */
+    protected boolean recordIds = false;
+
+    /**
+     * Smallest record ID not used by rawSpatialRDD, or -1 if not known yet
+     */
+    private long nextRecordId = -1;
+
     /**
      * The CR stransformation.
      */
@@ -207,6 +288,39 @@ public class SpatialRDD<T extends Geometry>
         return CRSTransform(sourceEpsgCRSCode, targetEpsgCRSCode, false);
     }
 
+    /**
+     * Assigns a unique long ID to each record of the rawSpatialRDD. The ID is kept in the user
+     * data of the geometry, see {@link IdentifiedUserData}, and survives spatial partitioning,
+     * indexing and serialization.
+     * <p>
+     * Once both sides of a join have record IDs, JoinQuery groups, counts and de-duplicates
+     * results by ID instead of by geometry, and can return pairs of IDs only. IDs are not
+     * consecutive, but no extra job is needed to compute them.
+     * <p>
+     * Call this method right after loading the data, before analyze() and spatial partitioning.
+     */
+    public void assignRecordIds()
+    {
+        this.rawSpatialRDD = this.rawSpatialRDD.zipWithUniqueId().map(new Function<Tuple2<T, Long>, T>()
+        {
+            @Override
+            public T call(Tuple2<T, Long> record)
+                    throws Exception
+            {
+                final T geometry = record._1();
+                geometry.setUserData(new IdentifiedUserData(record._2(), geometry.getUserData()));
+                return geometry;
+            }
+        });
+        this.recordIds = true;
+        this.nextRecordId = -1;
+    }
+
+    public boolean hasRecordIds()
+    {
+        return recordIds;
+    }
+
     public boolean spatialPartitioning(GridType gridType)
             throws Exception
     {
@@ -226,8 +340,9 @@ public class SpatialRDD<T extends Geometry>
             throws Exception
     {
         if (numPartitions <= 0) {
-            throw new IllegalArgumentException("Number of partitions must be >= 0");
+            throw new IllegalArgumentException("Number of partitions must be > 0");
         }
+        this.requestedNumPartitions = numPartitions;
 
         if (this.boundaryEnvelope == null) {
             throw new Exception("[AbstractSpatialRDD][spatialPartitioning] SpatialRDD boundary is null. Please call analyze() first.");
@@ -238,56 +353,76 @@ public class SpatialRDD<T extends Geometry>
 
         //Calculate the number of samples we need to take.
         int sampleNumberOfRecords = RDDSampleUtils.getSampleNumbers(numPartitions, this.approximateTotalCount, this.sampleNumber);
-        //Take Sample
-        // RDD.takeSample implementation tends to scan the data multiple times to gather the exact
-        // number of samples requested. Repeated scans increase the latency of the join. This increase
-        // is significant for large datasets.
-        // See https://github.com/apache/spark/blob/412b0e8969215411b97efd3d0984dc6cac5d31e0/core/src/main/scala/org/apache/spark/rdd/RDD.scala#L508
-        // Here, we choose to get samples faster over getting exactly specified number of samples.
-        final double fraction = SamplingUtils.computeFractionForSampleSize(sampleNumberOfRecords, approximateTotalCount, false);
-        List<Envelope> samples = this.rawSpatialRDD.sample(false, fraction)
-                .map(new Function<T, Envelope>()
-                {
-                    @Override
-                    public Envelope call(T geometry)
-                            throws Exception
-                    {
-                        return geometry.getEnvelopeInternal();
-                    }
-                })
-                .collect();
 
-        logger.info("Collected " + samples.size() + " samples");
+        // Geometries are placed by the coordinates they are shuffled with, see partition()
+        final CoordinateQuantizer quantizer = createQuantizer(this.rawSpatialRDD);
+        final Envelope boundary = quantizer == null ? boundaryEnvelope : quantizer.quantize(boundaryEnvelope);
 
         // Add some padding at the top and right of the boundaryEnvelope to make
         // sure all geometries lie within the half-open rectangle.
         final Envelope paddedBoundary = new Envelope(
-                boundaryEnvelope.getMinX(), boundaryEnvelope.getMaxX() + 0.01,
-                boundaryEnvelope.getMinY(), boundaryEnvelope.getMaxY() + 0.01);
+                boundary.getMinX(), boundary.getMaxX() + 0.01,
+                boundary.getMinY(), boundary.getMaxY() + 0.01);
+
+        if (gridType == GridType.HISTOGRAM) {
+            // Built from a histogram of the whole dataset rather than from samples
+            grids = histogramPartitioning(paddedBoundary, numPartitions).getGrids();
+            partitioner = new FlatGridPartitioner(gridType, grids);
+            this.spatialPartitionedRDD = partition(partitioner);
+            return;
+        }
+
+        List<Envelope> samples;
+        if (sampledEnvelopes != null && sampledRDD == rawSpatialRDD && numPartitions <= sampledMaxNumPartitions) {
+            // Reuse the samples gathered by analyzeAndSample
+            samples = new ArrayList<>(sampledEnvelopes.subList(0, Math.min(sampleNumberOfRecords, sampledEnvelopes.size())));
+        }
+        else {
+            //Take Sample
+            // RDD.takeSample implementation tends to scan the data multiple times to gather the exact
+            // number of samples requested. Repeated scans increase the latency of the join. This increase
+            // is significant for large datasets.
+            // See https://github.com/apache/spark/blob/412b0e8969215411b97efd3d0984dc6cac5d31e0/core/src/main/scala/org/apache/spark/rdd/RDD.scala#L508
+            // Here, we choose to get samples faster over getting exactly specified number of samples.
+            final double fraction = SamplingUtils.computeFractionForSampleSize(sampleNumberOfRecords, approximateTotalCount, false);
+            samples = this.rawSpatialRDD.sample(false, fraction)
+                    .map(new Function<T, Envelope>()
+                    {
+                        @Override
+                        public Envelope call(T geometry)
+                                throws Exception
+                        {
+                            return geometry.getEnvelopeInternal();
+                        }
+                    })
+                    .collect();
+        }
+
+        logger.info("Collected " + samples.size() + " samples");
 
         switch (gridType) {
             case EQUALGRID: {
                 EqualPartitioning EqualPartitioning = new EqualPartitioning(paddedBoundary, numPartitions);
                 grids = EqualPartitioning.getGrids();
-                partitioner = new FlatGridPartitioner(grids);
+                partitioner = new FlatGridPartitioner(gridType, grids);
                 break;
             }
             case HILBERT: {
                 HilbertPartitioning hilbertPartitioning = new HilbertPartitioning(samples, paddedBoundary, numPartitions);
                 grids = hilbertPartitioning.getGrids();
-                partitioner = new FlatGridPartitioner(grids);
+                partitioner = new FlatGridPartitioner(gridType, grids);
                 break;
             }
             case RTREE: {
                 RtreePartitioning rtreePartitioning = new RtreePartitioning(samples, numPartitions);
                 grids = rtreePartitioning.getGrids();
-                partitioner = new FlatGridPartitioner(grids);
+                partitioner = new FlatGridPartitioner(gridType, grids);
                 break;
             }
             case VORONOI: {
                 VoronoiPartitioning voronoiPartitioning = new VoronoiPartitioning(samples, numPartitions);
                 grids = voronoiPartitioning.getGrids();
-                partitioner = new FlatGridPartitioner(grids);
+                partitioner = new FlatGridPartitioner(gridType, grids);
                 break;
             }
             case QUADTREE: {
@@ -305,6 +440,29 @@ public class SpatialRDD<T extends Geometry>
                 partitioner = new KDBTreePartitioner(tree);
                 break;
             }
+            case ZORDER: {
+                final ZOrderPartitioner zOrderPartitioner =
+                        new ZOrderPartitioner(gridType, new ZOrderPartitioning(samples, paddedBoundary, numPartitions));
+                grids = zOrderPartitioner.getGrids();
+                partitioner = zOrderPartitioner;
+                break;
+            }
+            case GEOHASH: {
+                // Geohashes cover longitudes and latitudes only. Other coordinates would all fall
+                // into the overflow partition, so partition them along the curve over the dataset.
+                final ZOrderPartitioner geohashPartitioner;
+                if (ZOrderPartitioning.WORLD.covers(boundary)) {
+                    geohashPartitioner = new ZOrderPartitioner(gridType, new ZOrderPartitioning(samples, ZOrderPartitioning.WORLD, numPartitions));
+                }
+                else {
+                    logger.warn("[AbstractSpatialRDD][spatialPartitioning] Dataset boundary " + boundary
+                            + " exceeds longitude and latitude bounds. Using ZORDER instead of GEOHASH partitioning.");
+                    geohashPartitioner = new ZOrderPartitioner(GridType.ZORDER, new ZOrderPartitioning(samples, paddedBoundary, numPartitions));
+                }
+                grids = geohashPartitioner.getGrids();
+                partitioner = geohashPartitioner;
+                break;
+            }
             default:
                 throw new Exception("[AbstractSpatialRDD][spatialPartitioning] Unsupported spatial partitioning method.");
         }
@@ -312,6 +470,48 @@ public class SpatialRDD<T extends Geometry>
         this.spatialPartitionedRDD = partition(partitioner);
     }
 
+    /**
+     * Builds a histogram of the estimated cost of the whole dataset in one pass, then cuts it
+     * into partitions of similar cost. Reports the partitions whose cost clearly exceeds the
+     * target, which happens when a single cell of the histogram holds too much data.
+     */
+    private HistogramPartitioning histogramPartitioning(Envelope boundary, int numPartitions)
+    {
+        final Function2<CostHistogram, CostHistogram, CostHistogram> combOp =
+                new Function2<CostHistogram, CostHistogram, CostHistogram>()
+                {
+                    @Override
+                    public CostHistogram call(CostHistogram histogram1, CostHistogram histogram2)
+                            throws Exception
+                    {
+                        return CostHistogram.combine(histogram1, histogram2);
+                    }
+                };
+
+        final Function2<CostHistogram, T, CostHistogram> seqOp = new Function2<CostHistogram, T, CostHistogram>()
+        {
+            @Override
+            public CostHistogram call(CostHistogram histogram, T geometry)
+                    throws Exception
+            {
+                return CostHistogram.add(histogram, geometry);
+            }
+        };
+
+        final CostHistogram histogram = this.rawSpatialRDD.treeAggregate(
+                new CostHistogram(boundary, CostHistogram.DEFAULT_RESOLUTION), seqOp, combOp);
+        final HistogramPartitioning partitioning = new HistogramPartitioning(histogram, numPartitions);
+
+        final List<Long> costs = partitioning.getCosts();
+        for (int i = 0; i < costs.size(); i++) {
+            if (costs.get(i) > HistogramPartitioning.OVERSIZED_FACTOR * partitioning.getTargetCost()) {
+                logger.warn("[AbstractSpatialRDD][spatialPartitioning] Partition " + i + " has an estimated cost of "
+                        + costs.get(i) + ", target is " + partitioning.getTargetCost());
+            }
+        }
+        return partitioning;
+    }
+
     public SpatialPartitioner getPartitioner()
     {
         return partitioner;
@@ -349,14 +549,29 @@ public class SpatialRDD<T extends Geometry>
 
     private JavaRDD<T> partition(final SpatialPartitioner partitioner)
     {
-        return this.rawSpatialRDD.flatMapToPair(
+        return partition(this.rawSpatialRDD, partitioner);
+    }
+
+    private JavaRDD<T> partition(JavaRDD<T> records, final SpatialPartitioner partitioner)
+    {
+        // Observe the cost of every partition of cost-aware partitionings, see GeoSparkListener.
+        // The cost is reported once a partition has been read entirely and replaces the cost
+        // reported by earlier computations of the same partition.
+        final GeoSparkGauge partitionCost = partitioner.getGridType() == GridType.HISTOGRAM
+                ? GeoSparkMetrics.createPartitioningGauge(records.context(), "cost") : null;
+
+        // Lossy coordinate encodings round the coordinates of shuffled geometries. Place the
+        // rounded geometries, so that joins de-duplicate by the coordinates they were placed by.
+        final CoordinateQuantizer quantizer = createQuantizer(records);
+
+        final JavaRDD<T> partitionedRecords = records.flatMapToPair(
                 new PairFlatMapFunction<T, Integer, T>()
                 {
                     @Override
                     public Iterator<Tuple2<Integer, T>> call(T spatialObject)
                             throws Exception
                     {
-                        return partitioner.placeObject(spatialObject);
+                        return partitioner.placeObject(quantizer == null ? spatialObject : quantizer.quantize(spatialObject));
                     }
                 }
         ).partitionBy(partitioner)
@@ -368,16 +583,28 @@ public class SpatialRDD<T extends Geometry>
                     {
                         return new Iterator<T>()
                         {
+                            private long cost = 0;
+                            private boolean reported = false;
+
                             @Override
                             public boolean hasNext()
                             {
-                                return tuple2Iterator.hasNext();
+                                final boolean hasNext = tuple2Iterator.hasNext();
+                                if (!hasNext && partitionCost != null && !reported) {
+                                    partitionCost.add(cost);
+                                    reported = true;
+                                }
+                                return hasNext;
                             }
 
                             @Override
                             public T next()
                             {
-                                return tuple2Iterator.next()._2();
+                                final T spatialObject = tuple2Iterator.next()._2();
+                                if (partitionCost != null) {
+                                    cost += CostHistogram.estimateCost(spatialObject);
+                                }
+                                return spatialObject;
                             }
 
                             @Override
@@ -388,6 +615,25 @@ public class SpatialRDD<T extends Geometry>
                         };
                     }
                 }, true);
+
+        if (sortWithinPartitions) {
+            return partitionedRecords.mapPartitions(new HilbertSorter<T>(), true);
+        }
+        return partitionedRecords;
+    }
+
+    /**
+     * Returns the quantizer of the lossy coordinate encoding set by geospark.serde.coordinates,
+     * or null if coordinates are serialized as doubles.
+     */
+    @Nullable
+    private static CoordinateQuantizer createQuantizer(JavaRDD<?> records)
+    {
+        final GeoSparkConf geoSparkConf = new GeoSparkConf(records.context().getConf());
+        if (!CoordinateQuantizer.isLossy(geoSparkConf.getSerdeCoordinateEncoding())) {
+            return null;
+        }
+        return new CoordinateQuantizer(geoSparkConf.getSerdeCoordinateEncoding(), geoSparkConf.getSerdeCoordinatePrecision());
     }
 
     /**
@@ -444,6 +690,211 @@ public class SpatialRDD<T extends Geometry>
         }
     }
 
+    /**
+     * Appends records to a spatially partitioned SpatialRDD without partitioning the existing
+     * records again.
+     * <p>
+     * New records are placed by the existing partitioner and merged into the matching partitions
+     * of spatialPartitionedRDD. If an index was built on spatialPartitionedRDD, only the indexes
+     * of the partitions receiving new records are rebuilt. The other indexes are reused, so
+     * persist indexedRDD beforehand. rawSpatialRDD, approximateTotalCount and boundaryEnvelope are
+     * updated as well.
+     * <p>
+     * Once the largest partition holds more than rebalanceThreshold times the mean number of
+     * records per partition, all records are partitioned and indexed again from scratch, with
+     * the same grid type and number of partitions. So are they if new records fall outside of the
+     * boundary of a partitioner without an overflow partition, e.g. QUADTREE or KDBTREE, which would
+     * drop them. This requires a partitioner with a grid type.
+     * <p>
+     * If the records carry record IDs, see {@link #assignRecordIds()}, the new records are given IDs
+     * above the largest existing one.
+     * <p>
+     * Every append adds to the lineage of spatialPartitionedRDD and indexedRDD. Checkpoint them
+     * from time to time.
+     *
+     * @param newRecords the records to append
+     * @param rebalanceThreshold the largest allowed ratio of the largest partition to the mean partition
+     * @return true if all records were partitioned again
+     * @throws Exception the exception
+     */
+    public boolean appendPartitioned(JavaRDD<T> newRecords, double rebalanceThreshold)
+            throws Exception
+    {
+        if (this.spatialPartitionedRDD == null || this.partitioner == null) {
+            throw new Exception("[AbstractSpatialRDD][appendPartitioned] spatialPartitionedRDD is null. Please do spatial partitioning before appending.");
+        }
+        if (rebalanceThreshold < 1) {
+            throw new IllegalArgumentException("Rebalance threshold must be >= 1");
+        }
+
+        final int numPartitions = this.partitioner.numPartitions();
+        countPartitions();
+
+        // The new records are read by several jobs below
+        newRecords = this.recordIds ? assignNextRecordIds(newRecords) : newRecords;
+        newRecords.persist(StorageLevel.MEMORY_ONLY());
+        try {
+            return appendPersisted(newRecords, rebalanceThreshold, numPartitions);
+        }
+        finally {
+            newRecords.unpersist(false);
+        }
+    }
+
+    private boolean appendPersisted(JavaRDD<T> newRecords, double rebalanceThreshold, int numPartitions)
+            throws Exception
+    {
+        final JavaRDD<T> newPartitionedRDD = partition(newRecords, this.partitioner);
+        final long[] newCounts = countPerPartition(newPartitionedRDD, numPartitions);
+        final StatCalculator newStats = computeStats(newRecords);
+
+        // Partitioners without an overflow partition drop the records outside of their grids
+        final boolean outsideGrids = newStats != null && this.boundaryEnvelope != null
+                && !this.boundaryEnvelope.covers(newStats.getBoundary()) && numPartitions == this.partitioner.getGrids().size();
+
+        this.rawSpatialRDD = this.rawSpatialRDD.union(newRecords);
+        if (newStats != null) {
+            this.boundaryEnvelope = StatCalculator.combine(this.boundaryEnvelope, newStats.getBoundary());
+            this.approximateTotalCount += newStats.getCount();
+            if (this.recordIds) {
+                this.nextRecordId += newStats.getCount();
+            }
+        }
+
+        long totalCount = 0;
+        long maxCount = 0;
+        for (int i = 0; i < numPartitions; i++) {
+            this.partitionCounts[i] += newCounts[i];
+            totalCount += this.partitionCounts[i];
+            maxCount = Math.max(maxCount, this.partitionCounts[i]);
+        }
+
+        final GridType gridType = this.partitioner.getGridType();
+        if (outsideGrids || maxCount > rebalanceThreshold * totalCount / numPartitions) {
+            if (gridType != null) {
+                logger.info("[AbstractSpatialRDD][appendPartitioned] Largest partition has " + maxCount + " of "
+                        + totalCount + " records, new records outside of the grids: " + outsideGrids + ". Partitioning all records again.");
+                final IndexType indexType = this.indexedRDD != null ? IndexAppender.getIndexType(this.indexedRDD.first()) : null;
+                final int rebalancedNumPartitions = this.requestedNumPartitions > 0 ? this.requestedNumPartitions : numPartitions;
+                this.analyzeAndSample(rebalancedNumPartitions);
+                this.spatialPartitioning(gridType, rebalancedNumPartitions);
+                this.indexedRDD = null;
+                if (indexType != null) {
+                    this.buildIndex(indexType, true);
+                }
+                return true;
+            }
+            logger.warn("[AbstractSpatialRDD][appendPartitioned] Largest partition has " + maxCount + " of " + totalCount
+                    + " records, new records outside of the grids: " + outsideGrids + ", but partitions without a grid type can't be rebalanced.");
+        }
+
+        this.spatialPartitionedRDD = this.spatialPartitionedRDD.union(newPartitionedRDD);
+        if (this.indexedRDD != null) {
+            this.indexedRDD = this.indexedRDD.zipPartitions(newPartitionedRDD, new IndexAppender<T>());
+        }
+        this.countedRDD = this.spatialPartitionedRDD;
+        return false;
+    }
+
+    /**
+     * Returns the number of records in each partition of spatialPartitionedRDD.
+     * <p>
+     * The counts are computed by a job on the first call and kept until spatialPartitionedRDD
+     * is replaced. appendPartitioned keeps them up to date, so repeated joins and appends don't
+     * count the partitions again.
+     *
+     * @return the number of records in each partition
+     * @throws Exception the exception
+     */
+    public long[] getPartitionCounts()
+            throws Exception
+    {
+        if (this.spatialPartitionedRDD == null) {
+            throw new Exception("[AbstractSpatialRDD][getPartitionCounts] spatialPartitionedRDD is null. Please do spatial partitioning first.");
+        }
+        countPartitions();
+        return this.partitionCounts.clone();
+    }
+
+    private void countPartitions()
+    {
+        if (this.partitionCounts == null || this.countedRDD != this.spatialPartitionedRDD) {
+            final int numPartitions = this.partitioner != null ? this.partitioner.numPartitions() : this.spatialPartitionedRDD.getNumPartitions();
+            this.partitionCounts = countPerPartition(this.spatialPartitionedRDD, numPartitions);
+            this.countedRDD = this.spatialPartitionedRDD;
+        }
+    }
+
+    /**
+     * Gives the records consecutive IDs starting at the smallest ID not used by rawSpatialRDD.
+     * IDs the records carry already are replaced.
+     * The IDs of the new records are counted into nextRecordId by the caller.
+     */
+    private JavaRDD<T> assignNextRecordIds(JavaRDD<T> records)
+    {
+        if (this.nextRecordId < 0) {
+            this.nextRecordId = this.rawSpatialRDD.map(new Function<T, Long>()
+            {
+                @Override
+                public Long call(T geometry)
+                        throws Exception
+                {
+                    return IdentifiedUserData.getRecordId(geometry);
+                }
+            }).fold(-1L, new Function2<Long, Long, Long>()
+            {
+                @Override
+                public Long call(Long id1, Long id2)
+                        throws Exception
+                {
+                    return Math.max(id1, id2);
+                }
+            }) + 1;
+        }
+
+        final long firstRecordId = this.nextRecordId;
+        return records.zipWithIndex().map(new Function<Tuple2<T, Long>, T>()
+        {
+            @Override
+            public T call(Tuple2<T, Long> record)
+                    throws Exception
+            {
+                // Replaces an ID the record already carries, also when recomputing cached records
+                final T geometry = record._1();
+                geometry.setUserData(new IdentifiedUserData(firstRecordId + record._2(), IdentifiedUserData.getOriginalUserData(geometry)));
+                return geometry;
+            }
+        });
+    }
+
+    /**
+     * Returns the number of records in every partition of the given RDD
+     */
+    private static <T> long[] countPerPartition(JavaRDD<T> records, int numPartitions)
+    {
+        final List<Tuple2<Integer, Long>> counts = records.mapPartitionsWithIndex(
+                new Function2<Integer, Iterator<T>, Iterator<Tuple2<Integer, Long>>>()
+                {
+                    @Override
+                    public Iterator<Tuple2<Integer, Long>> call(Integer partitionId, Iterator<T> iterator)
+                            throws Exception
+                    {
+                        long count = 0;
+                        while (iterator.hasNext()) {
+                            iterator.next();
+                            count++;
+                        }
+                        return Collections.singletonList(new Tuple2<>(partitionId, count)).iterator();
+                    }
+                }, false).collect();
+
+        final long[] result = new long[numPartitions];
+        for (Tuple2<Integer, Long> count : counts) {
+            result[count._1()] = count._2();
+        }
+        return result;
+    }
+
     /**
      * Boundary.
      *
@@ -495,6 +946,23 @@ public class SpatialRDD<T extends Geometry>
      * @return true, if successful
      */
     public boolean analyze()
+    {
+        StatCalculator agg = computeStats(this.rawSpatialRDD);
+        if (agg != null) {
+            this.boundaryEnvelope = agg.getBoundary();
+            this.approximateTotalCount = agg.getCount();
+        }
+        else {
+            this.boundaryEnvelope = null;
+            this.approximateTotalCount = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the boundary and the count of the given records, or null if there are none
+     */
+    private static <T extends Geometry> StatCalculator computeStats(JavaRDD<T> records)
     {
         final Function2 combOp =
                 new Function2<StatCalculator, StatCalculator, StatCalculator>()
@@ -517,18 +985,70 @@ public class SpatialRDD<T extends Geometry>
             }
         };
 
-        StatCalculator agg = (StatCalculator) this.rawSpatialRDD.aggregate(null, seqOp, combOp);
-        if (agg != null) {
-            this.boundaryEnvelope = agg.getBoundary();
-            this.approximateTotalCount = agg.getCount();
-        }
-        else {
-            this.boundaryEnvelope = null;
-            this.approximateTotalCount = 0;
+        return (StatCalculator) records.aggregate(null, seqOp, combOp);
+    }
+
+    /**
+     * Computes the boundary and the count like analyze(), and samples the envelopes for spatial
+     * partitioning in the same pass over the data. A following call to spatialPartitioning with
+     * up to maxNumPartitions partitions doesn't need to scan the data again, as long as
+     * rawSpatialRDD isn't replaced in between.
+     *
+     * @param maxNumPartitions the largest number of partitions spatialPartitioning will be called with
+     * @return true, if successful
+     */
+    public boolean analyzeAndSample(int maxNumPartitions)
+    {
+        if (maxNumPartitions <= 0) {
+            throw new IllegalArgumentException("Number of partitions must be > 0");
         }
+
+        // RDDSampleUtils.getSampleNumbers asks for all records of small datasets, for 2 samples
+        // per partition, or for the user-specified sample number, whichever applies
+        final int minSampleCount = Math.max(Math.max(1000, 2 * maxNumPartitions), this.sampleNumber);
+
+        final Function2<SampledStatCalculator, SampledStatCalculator, SampledStatCalculator> combOp =
+                new Function2<SampledStatCalculator, SampledStatCalculator, SampledStatCalculator>()
+                {
+                    @Override
+                    public SampledStatCalculator call(SampledStatCalculator agg1, SampledStatCalculator agg2)
+                            throws Exception
+                    {
+                        return SampledStatCalculator.combine(agg1, agg2);
+                    }
+                };
+
+        final Function2<SampledStatCalculator, T, SampledStatCalculator> seqOp =
+                new Function2<SampledStatCalculator, T, SampledStatCalculator>()
+                {
+                    @Override
+                    public SampledStatCalculator call(SampledStatCalculator agg, T object)
+                            throws Exception
+                    {
+                        return SampledStatCalculator.add(agg, object);
+                    }
+                };
+
+        final SampledStatCalculator agg =
+                this.rawSpatialRDD.treeAggregate(new SampledStatCalculator(minSampleCount), seqOp, combOp);
+        this.boundaryEnvelope = agg.getBoundary();
+        this.approximateTotalCount = agg.getCount();
+        this.sampledEnvelopes = agg.getSamples();
+        this.sampledMaxNumPartitions = maxNumPartitions;
+        this.sampledRDD = this.rawSpatialRDD;
         return true;
     }
 
+    /**
+     * Runs analyzeAndSample for up to as many partitions as rawSpatialRDD has.
+     *
+     * @return true, if successful
+     */
+    public boolean analyzeAndSample()
+    {
+        return analyzeAndSample(this.rawSpatialRDD.rdd().partitions().length);
+    }
+
     public boolean analyze(Envelope datasetBoundary, Integer approximateTotalCount)
     {
         this.boundaryEnvelope = datasetBoundary;
@@ -536,6 +1056,136 @@ public class SpatialRDD<T extends Geometry>
         return true;
     }
 
+    /**
+     * Saves the spatially partitioned RDD, the index built on it if any, the partitioner, the boundary
+     * envelope and the count to a directory. {@link #loadPartitioned} restores a SpatialRDD ready for
+     * joins and queries without re-reading the input, partitioning or building the index again.
+     * <p>
+     * Records and indexes are written with the serializer Spark is configured with, which is
+     * recorded in the metadata. Persist spatialPartitionedRDD before saving both it and an index
+     * built on it.
+     *
+     * @param outputLocation the output directory
+     * @throws IOException the IO exception
+     */
+    public void saveAsPartitioned(String outputLocation)
+            throws IOException
+    {
+        if (this.spatialPartitionedRDD == null) {
+            throw new NullArgumentException("save as partitioned cannot operate on null spatialPartitionedRDD");
+        }
+
+        PartitionStore.save(this.spatialPartitionedRDD, outputLocation + "/" + PARTITIONS_DIRECTORY);
+        if (this.indexedRDD != null) {
+            PartitionStore.save(this.indexedRDD, outputLocation + "/" + INDEX_DIRECTORY);
+        }
+
+        final Path metadataPath = new Path(outputLocation, METADATA_FILE);
+        final FileSystem fs = metadataPath.getFileSystem(this.spatialPartitionedRDD.context().hadoopConfiguration());
+        try (ObjectOutputStream output = new ObjectOutputStream(fs.create(metadataPath, true))) {
+            output.writeObject(PartitionStore.describeSerializer(this.spatialPartitionedRDD.context()));
+            output.writeInt(this.spatialPartitionedRDD.getNumPartitions());
+            output.writeBoolean(this.indexedRDD != null);
+            output.writeObject(this.partitioner);
+            output.writeObject(this.boundaryEnvelope);
+            output.writeLong(this.approximateTotalCount);
+            output.writeObject(this.fieldNames);
+            output.writeBoolean(this.recordIds);
+            output.writeBoolean(this.CRStransformation);
+            output.writeObject(this.sourceEpsgCode);
+            output.writeObject(this.targetEpgsgCode);
+        }
+    }
+
+    /**
+     * Loads a SpatialRDD saved by {@link #saveAsPartitioned}. spatialPartitionedRDD is set to the stored
+     * partitions and reports the stored partitioner, and indexedRDD to the stored index if any. rawSpatialRDD
+     * is derived from the stored partitions and holds every record once, although partitioning may have
+     * placed copies of a geometry into several partitions. Other SpatialRDDs can be partitioned with
+     * {@link #getPartitioner()} to join them with the loaded one.
+     * <p>
+     * Spark must be configured with the serializer, and Kryo registrator if any, the SpatialRDD was saved with.
+     *
+     * @param sc the spark context
+     * @param inputLocation the directory written by saveAsPartitioned
+     * @return the loaded SpatialRDD
+     * @throws IOException the IO exception
+     * @throws ClassNotFoundException the class not found exception
+     */
+    public static <T extends Geometry> SpatialRDD<T> loadPartitioned(JavaSparkContext sc, String inputLocation)
+            throws IOException, ClassNotFoundException
+    {
+        final SpatialRDD<T> spatialRDD = new SpatialRDD<>();
+        final Path metadataPath = new Path(inputLocation, METADATA_FILE);
+        final FileSystem fs = metadataPath.getFileSystem(sc.hadoopConfiguration());
+        final int numPartitions;
+        final boolean hasIndex;
+        try (ObjectInputStream input = new ObjectInputStream(fs.open(metadataPath))) {
+            final String savedSerializer = (String) input.readObject();
+            final String serializer = PartitionStore.describeSerializer(sc.sc());
+            if (!savedSerializer.equals(serializer)) {
+                throw new IOException("[AbstractSpatialRDD][loadPartitioned] " + inputLocation + " was saved with serializer "
+                        + savedSerializer + ", but Spark is configured with " + serializer
+                        + ". Please configure spark.serializer and spark.kryo.registrator as when saving.");
+            }
+            numPartitions = input.readInt();
+            hasIndex = input.readBoolean();
+            spatialRDD.partitioner = (SpatialPartitioner) input.readObject();
+            spatialRDD.boundaryEnvelope = (Envelope) input.readObject();
+            spatialRDD.approximateTotalCount = input.readLong();
+            spatialRDD.fieldNames = (List<String>) input.readObject();
+            spatialRDD.recordIds = input.readBoolean();
+            spatialRDD.CRStransformation = input.readBoolean();
+            spatialRDD.sourceEpsgCode = (String) input.readObject();
+            spatialRDD.targetEpgsgCode = (String) input.readObject();
+        }
+
+        spatialRDD.grids = spatialRDD.partitioner.getGrids();
+        spatialRDD.spatialPartitionedRDD = PartitionedRDD.wrap(
+                PartitionStore.<T>load(sc, inputLocation + "/" + PARTITIONS_DIRECTORY, numPartitions), spatialRDD.partitioner);
+        spatialRDD.rawSpatialRDD = removeCopies(spatialRDD.spatialPartitionedRDD, spatialRDD.partitioner);
+        if (hasIndex) {
+            spatialRDD.indexedRDD = PartitionedRDD.wrap(
+                    PartitionStore.<SpatialIndex>load(sc, inputLocation + "/" + INDEX_DIRECTORY, numPartitions), spatialRDD.partitioner);
+        }
+        return spatialRDD;
+    }
+
+    /**
+     * Keeps a single copy of every record of a spatially partitioned RDD, the one in the first
+     * partition the partitioner places the record into. Points are placed into one partition only.
+     */
+    private static <T extends Geometry> JavaRDD<T> removeCopies(JavaRDD<T> partitionedRDD, final SpatialPartitioner partitioner)
+    {
+        return partitionedRDD.mapPartitionsWithIndex(new Function2<Integer, Iterator<T>, Iterator<T>>()
+        {
+            @Override
+            public Iterator<T> call(Integer partitionId, Iterator<T> records)
+                    throws Exception
+            {
+                final List<T> result = new ArrayList<>();
+                while (records.hasNext()) {
+                    final T record = records.next();
+                    if (record instanceof Point || getFirstPartition(partitioner, record) == partitionId) {
+                        result.add(record);
+                    }
+                }
+                return result.iterator();
+            }
+        }, false);
+    }
+
+    private static <T extends Geometry> int getFirstPartition(SpatialPartitioner partitioner, T record)
+            throws Exception
+    {
+        int firstPartition = Integer.MAX_VALUE;
+        final Iterator<Tuple2<Integer, T>> placements = partitioner.placeObject(record);
+        while (placements.hasNext()) {
+            firstPartition = Math.min(firstPartition, placements.next()._1());
+        }
+        return firstPartition;
+    }
+
     /**
      * Save as WKB.
      *
@@ -559,8 +1209,9 @@ public class SpatialRDD<T extends Geometry>
                     Geometry spatialObject = iterator.next();
                     String wkb = WKBWriter.toHex(writer.write(spatialObject));
                     
-                    if (spatialObject.getUserData() != null) {
-                        wkbs.add(wkb + "\t" + spatialObject.getUserData());
+                    final Object userData = IdentifiedUserData.getOriginalUserData(spatialObject);
+                    if (userData != null) {
+                        wkbs.add(wkb + "\t" + userData);
                     }
                     else {
                         wkbs.add(wkb);
@@ -593,8 +1244,9 @@ public class SpatialRDD<T extends Geometry>
                     Geometry spatialObject = iterator.next();
                     String wkt = writer.write(spatialObject);
 
-                    if (spatialObject.getUserData() != null) {
-                        wkts.add(wkt + "\t" + spatialObject.getUserData());
+                    final Object userData = IdentifiedUserData.getOriginalUserData(spatialObject);
+                    if (userData != null) {
+                        wkts.add(wkt + "\t" + userData);
                     }
                     else {
                         wkts.add(wkt);
@@ -623,9 +1275,10 @@ public class SpatialRDD<T extends Geometry>
                 while (iterator.hasNext()) {
                     Geometry spatialObject = (Geometry) iterator.next();
                     Feature jsonFeature;
-                    if (spatialObject.getUserData() != null) {
+                    final Object originalUserData = IdentifiedUserData.getOriginalUserData(spatialObject);
+                    if (originalUserData != null) {
                         Map<String, Object> userData = new HashMap<String, Object>();
-                        userData.put("UserData", spatialObject.getUserData());
+                        userData.put("UserData", originalUserData);
                         jsonFeature = new Feature(writer.write(spatialObject), userData);
                     }
                     else {
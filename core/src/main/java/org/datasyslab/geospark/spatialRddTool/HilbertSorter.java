@@ -0,0 +1,100 @@
+/*
+ * FILE: HilbertSorter
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialRddTool;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.datasyslab.geospark.spatialPartitioning.HilbertPartitioning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Sorts the geometries of a partition by the Hilbert key of their envelope centres.
+ * <p>
+ * Keys are computed on a grid spanning the extent of the partition, so that the full resolution
+ * is available regardless of the partition size. Geometries with empty envelopes are sorted
+ * as if they were located at the lower left corner of the partition extent.
+ * The whole partition is held in memory while sorting.
+ */
+public final class HilbertSorter<T extends Geometry>
+        implements FlatMapFunction<Iterator<T>, T>
+{
+    /**
+     * Number of grid cells along each axis. Keys fit into 30 bits.
+     */
+    static final int RESOLUTION = 1 << 15;
+
+    @Override
+    public Iterator<T> call(Iterator<T> objects)
+            throws Exception
+    {
+        final List<T> unsorted = new ArrayList<>();
+        final Envelope extent = new Envelope();
+        while (objects.hasNext()) {
+            final T object = objects.next();
+            final Envelope envelope = object.getEnvelopeInternal();
+            if (!envelope.isNull()) {
+                extent.expandToInclude(envelope.centre());
+            }
+            unsorted.add(object);
+        }
+
+        if (unsorted.size() < 2) {
+            return unsorted.iterator();
+        }
+
+        // Sort the keys together with the positions of their geometries, without boxing
+        final long[] keys = new long[unsorted.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) computeKey(extent, unsorted.get(i).getEnvelopeInternal()) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        final List<T> sorted = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            sorted.add(unsorted.get((int) key));
+        }
+        return sorted.iterator();
+    }
+
+    /**
+     * Returns the Hilbert key of the centre of the envelope on a grid spanning the extent,
+     * or 0 for an empty envelope.
+     */
+    public static int computeKey(Envelope extent, Envelope envelope)
+    {
+        if (envelope.isNull()) {
+            return 0;
+        }
+        final int x = locationMapping(extent.getMinX(), extent.getMaxX(), (envelope.getMinX() + envelope.getMaxX()) / 2.0);
+        final int y = locationMapping(extent.getMinY(), extent.getMaxY(), (envelope.getMinY() + envelope.getMaxY()) / 2.0);
+        return HilbertPartitioning.computeHValue(RESOLUTION, x, y);
+    }
+
+    private static int locationMapping(double axisMin, double axisMax, double axisLocation)
+    {
+        if (axisMax <= axisMin) {
+            return 0;
+        }
+        final int gridLocation = (int) ((axisLocation - axisMin) * RESOLUTION / (axisMax - axisMin));
+        return Math.max(0, Math.min(RESOLUTION - 1, gridLocation));
+    }
+}
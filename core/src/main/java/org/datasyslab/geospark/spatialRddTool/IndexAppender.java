@@ -0,0 +1,107 @@
+/*
+ * FILE: IndexAppender
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialRddTool;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.quadtree.Quadtree;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.apache.spark.api.java.function.FlatMapFunction2;
+import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Adds new geometries to the index of a partition.
+ * <p>
+ * Partitions without new geometries keep their index as it is. For the others, a new index of
+ * the same type is built from the existing and the new geometries. The existing index is not
+ * modified, since it may be shared with a cached RDD.
+ */
+public final class IndexAppender<T extends Geometry>
+        implements FlatMapFunction2<Iterator<SpatialIndex>, Iterator<T>, SpatialIndex>
+{
+    @Override
+    public Iterator<SpatialIndex> call(Iterator<SpatialIndex> indexes, Iterator<T> newObjects)
+            throws Exception
+    {
+        if (!newObjects.hasNext()) {
+            return indexes;
+        }
+
+        final SpatialIndex index = indexes.next();
+        final List<Geometry> objects = getItems(index);
+        while (newObjects.hasNext()) {
+            objects.add(newObjects.next());
+        }
+        return new IndexBuilder<Geometry>(getIndexType(index)).call(objects.iterator());
+    }
+
+    /**
+     * Returns the type of the given index, as built by {@link IndexBuilder}
+     */
+    public static IndexType getIndexType(SpatialIndex index)
+    {
+        if (index instanceof STRtree) {
+            return IndexType.RTREE;
+        }
+        if (index instanceof PackedRTree) {
+            return IndexType.PACKED_RTREE;
+        }
+        if (index instanceof Quadtree) {
+            return IndexType.QUADTREE;
+        }
+        throw new IllegalArgumentException("Unsupported index type: " + index.getClass().getName());
+    }
+
+    private static List<Geometry> getItems(SpatialIndex index)
+    {
+        final List<Geometry> items = new ArrayList<>();
+        if (index instanceof STRtree) {
+            addItems(((STRtree) index).itemsTree(), items);
+        }
+        else if (index instanceof PackedRTree) {
+            for (Object item : ((PackedRTree) index).getItems()) {
+                items.add((Geometry) item);
+            }
+        }
+        else {
+            for (Object item : ((Quadtree) index).queryAll()) {
+                items.add((Geometry) item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Flattens the nested lists returned by STRtree.itemsTree
+     */
+    private static void addItems(List<?> itemsTree, List<Geometry> items)
+    {
+        for (Object node : itemsTree) {
+            if (node instanceof List) {
+                addItems((List<?>) node, items);
+            }
+            else {
+                items.add((Geometry) node);
+            }
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.locationtech.jts.index.quadtree.Quadtree;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.apache.spark.api.java.function.FlatMapFunction;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
 
 import java.util.HashSet;
 import java.util.Iterator;
@@ -47,6 +48,9 @@ public final class IndexBuilder<T extends Geometry>
         if (indexType == IndexType.RTREE) {
             spatialIndex = new STRtree();
         }
+        else if (indexType == IndexType.PACKED_RTREE) {
+            spatialIndex = new PackedRTree();
+        }
         else {
             spatialIndex = new Quadtree();
         }
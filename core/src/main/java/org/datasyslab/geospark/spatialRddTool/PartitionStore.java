@@ -0,0 +1,177 @@
+/*
+ * FILE: PartitionStore
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialRddTool;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.spark.SerializableWritable;
+import org.apache.spark.SparkEnv;
+import org.apache.spark.TaskContext;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.api.java.function.FlatMapFunction;
+import org.apache.spark.api.java.function.VoidFunction;
+import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.serializer.DeserializationStream;
+import org.apache.spark.serializer.SerializationStream;
+import org.apache.spark.util.TaskCompletionListener;
+import scala.collection.JavaConverters;
+import scala.reflect.ClassTag;
+import scala.reflect.ClassTag$;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Stores the partitions of an RDD in a directory, one file per partition, and reads them back
+ * into an RDD with the same partitions in the same order.
+ * <p>
+ * Records are written with the serializer Spark is configured with, e.g. Kryo with
+ * {@link org.datasyslab.geospark.serde.GeoSparkKryoRegistrator}. Partition files are never split
+ * or combined on read, so the i-th partition of the loaded RDD holds exactly the records of the
+ * i-th partition of the stored RDD, and no shuffle is needed to restore the partitioning.
+ * <p>
+ * Each task attempt writes its partition to a temporary file named after the attempt and renames
+ * it into place once the partition is complete, so a speculative or retried attempt never leaves
+ * a partially written file behind in place of a complete one.
+ */
+public final class PartitionStore
+{
+    private static final ClassTag<Object> OBJECT_TAG = ClassTag$.MODULE$.apply(Object.class);
+
+    private static final String TEMPORARY_DIRECTORY = "_temporary";
+
+    private PartitionStore() {}
+
+    /**
+     * Writes every partition of the RDD into its own file in the directory. The directory is
+     * replaced if it exists.
+     */
+    public static <T> void save(JavaRDD<T> rdd, final String location)
+            throws IOException
+    {
+        final Path directory = new Path(location);
+        final FileSystem directoryFs = directory.getFileSystem(rdd.context().hadoopConfiguration());
+        directoryFs.delete(directory, true);
+
+        final Broadcast<SerializableWritable<Configuration>> hadoopConf = broadcastHadoopConf(rdd.context());
+        rdd.foreachPartition(new VoidFunction<Iterator<T>>()
+        {
+            @Override
+            public void call(Iterator<T> records)
+                    throws Exception
+            {
+                final TaskContext context = TaskContext.get();
+                final Path path = partitionPath(location, context.partitionId());
+                final Path attemptPath = new Path(new Path(location, TEMPORARY_DIRECTORY),
+                        String.format("%s-attempt-%d", path.getName(), context.taskAttemptId()));
+                final FileSystem fs = path.getFileSystem(hadoopConf.value().value());
+                try (FSDataOutputStream output = fs.create(attemptPath, true)) {
+                    final SerializationStream stream = SparkEnv.get().serializer().newInstance().serializeStream(output);
+                    while (records.hasNext()) {
+                        stream.writeObject(records.next(), OBJECT_TAG);
+                    }
+                    stream.close();
+                }
+                commit(fs, attemptPath, path);
+            }
+        });
+
+        // Attempts which failed or lost the race to commit may leave temporary files behind
+        directoryFs.delete(new Path(location, TEMPORARY_DIRECTORY), true);
+    }
+
+    /**
+     * Renames the complete file of a task attempt into place. If another attempt of the same task
+     * has committed already, its file is kept and this attempt's file is discarded.
+     */
+    private static void commit(FileSystem fs, Path attemptPath, Path path)
+            throws IOException
+    {
+        if (fs.rename(attemptPath, path)) {
+            return;
+        }
+        if (!fs.exists(path)) {
+            throw new IOException("Failed to rename " + attemptPath + " to " + path);
+        }
+        fs.delete(attemptPath, false);
+    }
+
+    /**
+     * Describes the serializer Spark is configured with, including the Kryo registrator if any.
+     * Partitions can only be read back with the serializer they were written with.
+     */
+    public static String describeSerializer(org.apache.spark.SparkContext sc)
+    {
+        final String serializer = SparkEnv.get().serializer().getClass().getName();
+        final String registrator = sc.getConf().get("spark.kryo.registrator", "");
+        return registrator.isEmpty() ? serializer : serializer + " with registrator " + registrator;
+    }
+
+    /**
+     * Reads the partitions written by {@link #save} into an RDD with as many partitions.
+     */
+    public static <T> JavaRDD<T> load(JavaSparkContext sc, final String location, int numPartitions)
+    {
+        final Broadcast<SerializableWritable<Configuration>> hadoopConf = broadcastHadoopConf(sc.sc());
+        final List<Integer> partitionIds = new ArrayList<>(numPartitions);
+        for (int i = 0; i < numPartitions; i++) {
+            partitionIds.add(i);
+        }
+
+        return sc.parallelize(partitionIds, Math.max(numPartitions, 1)).mapPartitions(new FlatMapFunction<Iterator<Integer>, T>()
+        {
+            @Override
+            public Iterator<T> call(Iterator<Integer> ids)
+                    throws Exception
+            {
+                if (!ids.hasNext()) {
+                    return new ArrayList<T>().iterator();
+                }
+
+                final Path path = partitionPath(location, ids.next());
+                final FileSystem fs = path.getFileSystem(hadoopConf.value().value());
+                final FSDataInputStream input = fs.open(path);
+                final DeserializationStream stream = SparkEnv.get().serializer().newInstance().deserializeStream(input);
+                TaskContext.get().addTaskCompletionListener(new TaskCompletionListener()
+                {
+                    @Override
+                    public void onTaskCompletion(TaskContext context)
+                    {
+                        stream.close();
+                    }
+                });
+                return (Iterator<T>) JavaConverters.asJavaIteratorConverter(stream.asIterator()).asJava();
+            }
+        });
+    }
+
+    private static Broadcast<SerializableWritable<Configuration>> broadcastHadoopConf(org.apache.spark.SparkContext sc)
+    {
+        return JavaSparkContext.fromSparkContext(sc).broadcast(new SerializableWritable<>(sc.hadoopConfiguration()));
+    }
+
+    private static Path partitionPath(String location, int partitionId)
+    {
+        return new Path(location, String.format("part-%05d", partitionId));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * FILE: SampledStatCalculator
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialRddTool;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Computes the boundary and the count of a dataset together with a sample of its envelopes,
+ * in a single aggregation.
+ * <p>
+ * Every envelope gets a random priority. The sample of size s is made of the s envelopes with the
+ * lowest priorities, which is a uniform sample without replacement. Since s depends on the count,
+ * which is known only at the end, the calculator keeps two groups of envelopes:
+ * every envelope whose priority is below {@link #SAMPLE_FRACTION}, and the minSampleCount envelopes
+ * with the lowest priorities among the others. Any s up to minSampleCount, or up to the
+ * SAMPLE_FRACTION of the count, can then be served.
+ */
+public class SampledStatCalculator
+        implements Serializable
+{
+    /**
+     * Fraction of all envelopes that is always kept. Matches the share of records sampled for
+     * large datasets by {@link org.datasyslab.geospark.utils.RDDSampleUtils#getSampleNumbers}.
+     */
+    public static final double SAMPLE_FRACTION = 0.01;
+
+    private final int minSampleCount;
+
+    private Envelope boundary = null;
+    private long count = 0;
+
+    /**
+     * Envelopes with priority below SAMPLE_FRACTION
+     */
+    private final List<Sample> fractionSamples = new ArrayList<>();
+
+    /**
+     * Envelopes with the lowest priorities among the others, highest priority first
+     */
+    private final PriorityQueue<Sample> lowestSamples = new PriorityQueue<>();
+
+    private transient Random random;
+
+    public SampledStatCalculator(int minSampleCount)
+    {
+        if (minSampleCount <= 0) {
+            throw new IllegalArgumentException("Minimum sample count must be > 0");
+        }
+        this.minSampleCount = minSampleCount;
+    }
+
+    public static SampledStatCalculator add(SampledStatCalculator agg, Geometry object)
+            throws Exception
+    {
+        final Envelope envelope = object.getEnvelopeInternal();
+        agg.boundary = StatCalculator.combine(agg.boundary, envelope);
+        agg.count++;
+
+        if (agg.random == null) {
+            agg.random = new Random();
+        }
+        agg.addSample(new Sample(agg.random.nextDouble(), envelope));
+        return agg;
+    }
+
+    public static SampledStatCalculator combine(SampledStatCalculator agg1, SampledStatCalculator agg2)
+            throws Exception
+    {
+        agg1.boundary = StatCalculator.combine(agg1.boundary, agg2.boundary);
+        agg1.count += agg2.count;
+        agg1.fractionSamples.addAll(agg2.fractionSamples);
+        for (Sample sample : agg2.lowestSamples) {
+            agg1.addSample(sample);
+        }
+        return agg1;
+    }
+
+    private void addSample(Sample sample)
+    {
+        if (sample.priority < SAMPLE_FRACTION) {
+            fractionSamples.add(sample);
+            return;
+        }
+
+        if (lowestSamples.size() < minSampleCount) {
+            lowestSamples.add(sample);
+        }
+        else if (sample.priority < lowestSamples.peek().priority) {
+            lowestSamples.poll();
+            lowestSamples.add(sample);
+        }
+    }
+
+    /**
+     * Returns null if the dataset is empty
+     */
+    public Envelope getBoundary()
+    {
+        return boundary;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns all kept envelopes, lowest priority first. Any prefix is a uniform sample as long as
+     * its length doesn't exceed minSampleCount or the SAMPLE_FRACTION of the count.
+     */
+    public List<Envelope> getSamples()
+    {
+        final List<Sample> samples = new ArrayList<>(fractionSamples.size() + lowestSamples.size());
+        samples.addAll(fractionSamples);
+        samples.addAll(lowestSamples);
+        Collections.sort(samples, Collections.reverseOrder());
+
+        final List<Envelope> envelopes = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            envelopes.add(sample.envelope);
+        }
+        return envelopes;
+    }
+
+    public int getMinSampleCount()
+    {
+        return minSampleCount;
+    }
+
+    /**
+     * Ordered by descending priority, so that the head of a PriorityQueue has the highest priority
+     */
+    private static final class Sample
+            implements Comparable<Sample>, Serializable
+    {
+        private final double priority;
+        private final Envelope envelope;
+
+        private Sample(double priority, Envelope envelope)
+        {
+            this.priority = priority;
+            this.envelope = envelope;
+        }
+
+        @Override
+        public int compareTo(Sample other)
+        {
+            return Double.compare(other.priority, priority);
+        }
+    }
+}
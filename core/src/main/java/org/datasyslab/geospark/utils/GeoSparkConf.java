@@ -18,8 +18,10 @@ package org.datasyslab.geospark.utils;
 
 import org.locationtech.jts.geom.Envelope;
 import org.apache.spark.SparkConf;
+import org.datasyslab.geospark.enums.CoordinateEncoding;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.enums.JoinAlgorithm;
 import org.datasyslab.geospark.enums.JoinBuildSide;
 import org.datasyslab.geospark.enums.JoinSparitionDominantSide;
 
@@ -50,6 +52,22 @@ public class GeoSparkConf
 
     private GridType joinGridType = GridType.QUADTREE;
 
+    private JoinAlgorithm joinAlgorithm = JoinAlgorithm.DEFAULT;
+
+    private double joinSkewFactor = 0;
+
+    private boolean joinSortWithinPartitions = false;
+
+    private long joinAdaptiveNestedLoopMaxPairs = 10000;
+
+    private int joinAdaptiveLopsidedRatio = 10;
+
+    // Parameters for serialization of geometries by Kryo
+
+    private CoordinateEncoding serdeCoordinateEncoding = CoordinateEncoding.DOUBLE;
+
+    private int serdeCoordinatePrecision = 7;
+
     public GeoSparkConf(SparkConf sparkConf)
     {
         this.useIndex = sparkConf.getBoolean("geospark.global.index", true);
@@ -62,6 +80,13 @@ public class GeoSparkConf
         this.joinBuildSide = JoinBuildSide.getBuildSide(sparkConf.get("geospark.join.indexbuildside", "left"));
         this.joinSparitionDominantSide = JoinSparitionDominantSide.getJoinSparitionDominantSide(sparkConf.get("geospark.join.spatitionside", "left"));
         this.fallbackPartitionNum = sparkConf.getInt("geospark.join.numpartition", -1);
+        this.joinAlgorithm = JoinAlgorithm.getJoinAlgorithm(sparkConf.get("geospark.join.algorithm", "default"));
+        this.joinSkewFactor = sparkConf.getDouble("geospark.join.skewfactor", 0);
+        this.joinSortWithinPartitions = sparkConf.getBoolean("geospark.join.sortwithinpartitions", false);
+        this.joinAdaptiveNestedLoopMaxPairs = sparkConf.getLong("geospark.join.adaptive.nestedloopmaxpairs", 10000);
+        this.joinAdaptiveLopsidedRatio = sparkConf.getInt("geospark.join.adaptive.lopsidedratio", 10);
+        this.serdeCoordinateEncoding = CoordinateEncoding.getCoordinateEncoding(sparkConf.get("geospark.serde.coordinates", "double"));
+        this.serdeCoordinatePrecision = sparkConf.getInt("geospark.serde.precision", 7);
     }
 
     public Boolean getUseIndex()
@@ -144,6 +169,76 @@ public class GeoSparkConf
         this.fallbackPartitionNum = fallbackPartitionNum;
     }
 
+    public JoinAlgorithm getJoinAlgorithm()
+    {
+        return joinAlgorithm;
+    }
+
+    public void setJoinAlgorithm(JoinAlgorithm joinAlgorithm)
+    {
+        this.joinAlgorithm = joinAlgorithm;
+    }
+
+    public double getJoinSkewFactor()
+    {
+        return joinSkewFactor;
+    }
+
+    public void setJoinSkewFactor(double joinSkewFactor)
+    {
+        this.joinSkewFactor = joinSkewFactor;
+    }
+
+    public boolean getJoinSortWithinPartitions()
+    {
+        return joinSortWithinPartitions;
+    }
+
+    public void setJoinSortWithinPartitions(boolean joinSortWithinPartitions)
+    {
+        this.joinSortWithinPartitions = joinSortWithinPartitions;
+    }
+
+    public long getJoinAdaptiveNestedLoopMaxPairs()
+    {
+        return joinAdaptiveNestedLoopMaxPairs;
+    }
+
+    public void setJoinAdaptiveNestedLoopMaxPairs(long joinAdaptiveNestedLoopMaxPairs)
+    {
+        this.joinAdaptiveNestedLoopMaxPairs = joinAdaptiveNestedLoopMaxPairs;
+    }
+
+    public int getJoinAdaptiveLopsidedRatio()
+    {
+        return joinAdaptiveLopsidedRatio;
+    }
+
+    public void setJoinAdaptiveLopsidedRatio(int joinAdaptiveLopsidedRatio)
+    {
+        this.joinAdaptiveLopsidedRatio = joinAdaptiveLopsidedRatio;
+    }
+
+    public CoordinateEncoding getSerdeCoordinateEncoding()
+    {
+        return serdeCoordinateEncoding;
+    }
+
+    public void setSerdeCoordinateEncoding(CoordinateEncoding serdeCoordinateEncoding)
+    {
+        this.serdeCoordinateEncoding = serdeCoordinateEncoding;
+    }
+
+    public int getSerdeCoordinatePrecision()
+    {
+        return serdeCoordinatePrecision;
+    }
+
+    public void setSerdeCoordinatePrecision(int serdeCoordinatePrecision)
+    {
+        this.serdeCoordinatePrecision = serdeCoordinatePrecision;
+    }
+
     public String toString()
     {
         try {
@@ -0,0 +1,45 @@
+/*
+ * FILE: GeoSparkGauge.scala
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.monitoring
+
+import org.apache.spark.TaskContext
+import org.apache.spark.util.AccumulatorV2
+
+import scala.collection.mutable
+
+/**
+  * An accumulator to collect a per-partition value into a map keyed by partition ID.
+  * Unlike [[GeoSparkMetric]], a value replaces the previous value of the partition,
+  * so recomputed and retried partitions are not counted twice.
+  */
+case class GeoSparkGauge(initialValue: Map[Int, Long] = Map()) extends AccumulatorV2[Long, Map[Int, Long]] {
+  private var _values: mutable.Map[Int, Long] = mutable.Map[Int, Long]() ++ initialValue
+
+  override def isZero: Boolean = _values.isEmpty
+
+  override def copy(): AccumulatorV2[Long, Map[Int, Long]] = new GeoSparkGauge(_values.toMap)
+
+  override def reset(): Unit = _values.clear()
+
+  override def add(v: Long): Unit = _values(TaskContext.getPartitionId) = v
+
+  override def merge(other: AccumulatorV2[Long, Map[Int, Long]]): Unit = {
+    _values ++= other.asInstanceOf[GeoSparkGauge]._values
+  }
+
+  override def value: Map[Int, Long] = _values.toMap
+}
@@ -18,6 +18,8 @@
 package org.datasyslab.geospark.monitoring
 
 import org.apache.spark.scheduler.{SparkListener, SparkListenerStageCompleted, SparkListenerTaskEnd}
+import org.datasyslab.geospark.joinJudgement.AdaptiveJoinJudgement
+import org.datasyslab.geospark.spatialPartitioning.HistogramPartitioning
 
 import scala.collection.mutable
 
@@ -49,6 +51,11 @@ class GeoSparkListener extends SparkListener {
       getCounterOption(name).get._2.value.get
     }
 
+    val partitionCostOption = accumulables.find { case (k, v) => v.name == Some("geospark.partitioning.cost") }
+    if (partitionCostOption.isDefined) {
+      reportOversizedPartitions(partitionCostOption.get._2.value.get.asInstanceOf[Map[Int, Long]])
+    }
+
     if (getCounterOption("buildCount").isDefined) {
 
       val stageId = stageCompleted.stageInfo.stageId
@@ -57,6 +64,8 @@ class GeoSparkListener extends SparkListener {
       val streamCounts: Map[Int, Long] = getCounter("streamCount").asInstanceOf[Map[Int, Long]]
       val candidateCounts: Map[Int, Long] = getCounter("candidateCount").asInstanceOf[Map[Int, Long]]
       val resultCounts: Map[Int, Long] = getCounter("resultCount").asInstanceOf[Map[Int, Long]]
+      val strategies: Map[Int, Long] =
+        getCounterOption("strategy").map(_._2.value.get.asInstanceOf[Map[Int, Long]]).getOrElse(Map())
 
       val stats: List[(Int, Long, Long, Long, Long, Long)] =
         buildCounts.map {
@@ -72,11 +81,37 @@ class GeoSparkListener extends SparkListener {
         }
 
       Console.out.println("Spatial join is complete. Execution statistics:")
-      Console.out.println("Partition\t CPU Time (s)\tBuild ##\tStream ##\tCandidates ##\tResults ##")
+      Console.out.println("Partition\t CPU Time (s)\tBuild ##\tStream ##\tCandidates ##\tResults ##\tStrategy")
       stats.foreach {
         case (partitionId, buildCount, streamCount, candidateCount, resultCount, cpuTime) =>
+          val strategy = strategies.get(partitionId)
+            .flatMap(ordinal => AdaptiveJoinJudgement.Strategy.values().lift(ordinal.toInt))
+            .map(_.name())
+            .getOrElse("-")
           Console.out.println(f"$partitionId% 10d\t${cpuTime / 1000}% 10d" +
-            f"$buildCount% 10d\t$streamCount% 10d\t$candidateCount% 10d\t$resultCount% 10d")
+            f"$buildCount% 10d\t$streamCount% 10d\t$candidateCount% 10d\t$resultCount% 10d\t$strategy")
+      }
+    }
+  }
+
+  /**
+    * Prints the partitions whose observed cost clearly exceeds the mean cost of the partitions.
+    */
+  private def reportOversizedPartitions(partitionCosts: Map[Int, Long]): Unit = {
+    if (partitionCosts.isEmpty) {
+      return
+    }
+
+    val meanCost = partitionCosts.values.sum.toDouble / partitionCosts.size
+    val oversized = partitionCosts.filter {
+      case (_, cost) => cost > HistogramPartitioning.OVERSIZED_FACTOR * meanCost
+    }.toList.sortBy(-_._2)
+
+    if (oversized.nonEmpty) {
+      Console.out.println(f"Spatial partitioning is complete. Oversized partitions (mean cost $meanCost%.0f):")
+      Console.out.println("Partition\tCost")
+      oversized.foreach {
+        case (partitionId, cost) => Console.out.println(f"$partitionId% 10d\t$cost% 10d")
       }
     }
   }
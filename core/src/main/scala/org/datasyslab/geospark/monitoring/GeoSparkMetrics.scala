@@ -25,4 +25,16 @@ object GeoSparkMetrics {
     sc.register(acc, "geospark.spatialjoin." + name)
     acc
   }
+
+  def createGauge(sc: SparkContext, name: String): GeoSparkGauge = {
+    val acc = new GeoSparkGauge()
+    sc.register(acc, "geospark.spatialjoin." + name)
+    acc
+  }
+
+  def createPartitioningGauge(sc: SparkContext, name: String): GeoSparkGauge = {
+    val acc = new GeoSparkGauge()
+    sc.register(acc, "geospark.partitioning." + name)
+    acc
+  }
 }
@@ -5,6 +5,7 @@ import java.nio.{ByteBuffer, ByteOrder}
 import java.util
 
 import org.locationtech.jts.geom.Geometry
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData
 
 object implicits {
 
@@ -30,7 +31,7 @@ object implicits {
 
   implicit class GeometryEnhancer(geometry: Geometry){
     def userDataToUtf8ByteArray: Array[Byte] =
-      geometry.getUserData.asInstanceOf[String]
+      IdentifiedUserData.getOriginalUserData(geometry).asInstanceOf[String]
         .getBytes(StandardCharsets.UTF_8)
   }
 
@@ -0,0 +1,72 @@
+/*
+ * FILE: BroadcastReleaser.scala
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.datasyslab.geospark.spatialRddTool
+
+import java.lang.ref.WeakReference
+
+import org.apache.spark.SparkContext
+import org.apache.spark.api.java.JavaRDD
+import org.apache.spark.broadcast.Broadcast
+import org.apache.spark.scheduler.{SparkListener, SparkListenerJobEnd, SparkListenerJobStart}
+
+import scala.collection.mutable
+
+/**
+  * Removes the executor copies of a broadcast variable once the first job which computed the given
+  * RDD ends, and removes itself from the listener bus at that point. The driver keeps the value, so
+  * executors fetch it again if the RDD is recomputed later.
+  *
+  * Only holds a weak reference to the broadcast, so that Spark still destroys it once the RDD is
+  * garbage collected. If the RDD is never computed, the listener removes itself at the end of the
+  * first job after that.
+  */
+class BroadcastReleaser(sparkContext: SparkContext, rddId: Int, broadcast: Broadcast[_]) extends SparkListener {
+
+  private val broadcastRef = new WeakReference[Broadcast[_]](broadcast)
+
+  // Jobs which compute the RDD and are still running. Listener events arrive on a single thread.
+  private val jobIds = mutable.Set[Int]()
+
+  override def onJobStart(jobStart: SparkListenerJobStart): Unit = {
+    if (jobStart.stageInfos.exists(_.rddInfos.exists(_.id == rddId))) {
+      jobIds += jobStart.jobId
+    }
+  }
+
+  override def onJobEnd(jobEnd: SparkListenerJobEnd): Unit = {
+    val value = broadcastRef.get()
+    if (jobIds.remove(jobEnd.jobId)) {
+      if (value != null) {
+        value.unpersist(blocking = false)
+      }
+      sparkContext.removeSparkListener(this)
+    } else if (value == null) {
+      sparkContext.removeSparkListener(this)
+    }
+  }
+}
+
+object BroadcastReleaser {
+  /**
+    * Releases the executor copies of the broadcast once the first job computing the RDD ends.
+    */
+  def register(rdd: JavaRDD[_], broadcast: Broadcast[_]): Unit = {
+    val sparkContext = rdd.context
+    sparkContext.addSparkListener(new BroadcastReleaser(sparkContext, rdd.id, broadcast))
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * FILE: PartitionedRDD.scala
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.datasyslab.geospark.spatialRddTool
+
+import org.apache.spark.api.java.JavaRDD
+import org.apache.spark.rdd.RDD
+import org.apache.spark.{Partition, Partitioner, TaskContext}
+
+import scala.reflect.ClassTag
+
+/**
+  * Reports a partitioner the records of the parent RDD are already placed by, e.g. after reading
+  * partitions stored by [[PartitionStore]]. Records are not moved.
+  */
+class PartitionedRDD[T: ClassTag](prev: RDD[T], part: Partitioner) extends RDD[T](prev) {
+  require(part.numPartitions == prev.partitions.length,
+    s"Partitioner has ${part.numPartitions} partitions, but the RDD has ${prev.partitions.length}")
+
+  override val partitioner: Option[Partitioner] = Some(part)
+
+  override protected def getPartitions: Array[Partition] = firstParent[T].partitions
+
+  override def compute(split: Partition, context: TaskContext): Iterator[T] =
+    firstParent[T].iterator(split, context)
+}
+
+object PartitionedRDD {
+  def wrap[T](rdd: JavaRDD[T], partitioner: Partitioner): JavaRDD[T] = {
+    implicit val classTag: ClassTag[T] = rdd.classTag
+    new PartitionedRDD[T](rdd.rdd, partitioner).toJavaRDD()
+  }
+}
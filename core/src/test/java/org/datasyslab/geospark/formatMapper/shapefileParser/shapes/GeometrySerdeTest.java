@@ -31,8 +31,12 @@ import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.MultiLineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
+import org.datasyslab.geospark.enums.CoordinateEncoding;
 import org.datasyslab.geospark.geometryObjects.Circle;
 import org.datasyslab.geospark.geometryObjects.GeometrySerde;
 import org.junit.Assert;
@@ -60,6 +64,31 @@ public class GeometrySerdeTest
         test("GEOMETRYCOLLECTION (POINT(4 6), LINESTRING(4 6,7 10))");
     }
 
+    @Test
+    public void testEmpty()
+            throws Exception
+    {
+        for (String wkt : new String[] {"POINT EMPTY", "LINESTRING EMPTY", "POLYGON EMPTY",
+                "MULTIPOLYGON (((0 0, 0 1, 1 1, 1 0.4, 0 0)), EMPTY)"}) {
+            Geometry geometry = parseWkt(wkt);
+            Assert.assertEquals(geometry, serde(geometry));
+        }
+    }
+
+    @Test
+    public void testUserData()
+            throws Exception
+    {
+        Geometry geometry = parseWkt("MULTILINESTRING ((1 1, 1.3 4.5, 5.2 999))");
+        geometry.setUserData("\u00e9t\u00e9\t2019");
+        Geometry result = serde(geometry);
+        Assert.assertEquals(MultiLineString.class, result.getClass());
+        Assert.assertEquals(geometry.getUserData(), result.getUserData());
+
+        geometry.setUserData(42);
+        Assert.assertEquals(42, serde(geometry).getUserData());
+    }
+
     private void test(String wkt)
             throws Exception
     {
@@ -77,6 +106,42 @@ public class GeometrySerdeTest
         Assert.assertEquals(circle, serde(circle));
     }
 
+    @Test
+    public void testCompactEncodings()
+            throws Exception
+    {
+        Geometry polygon = parseWkt("POLYGON ((-122.4194155 37.7749295, -122.4194 37.775, -122.418 37.7751, -122.4194155 37.7749295), " +
+                "(-122.4193 37.77495, -122.41925 37.77497, -122.4192 37.77495, -122.4193 37.77495))");
+        polygon.setUserData("This is a test");
+        byte[] doubles = serialize(polygon);
+
+        // Fixed precision keeps the given number of decimal digits, with less than half the size
+        Kryo fixedKryo = new Kryo();
+        GeometrySerde fixedSerde = new GeometrySerde(CoordinateEncoding.FIXED, 7);
+        fixedKryo.register(Polygon.class, fixedSerde);
+        fixedKryo.register(Point.class, fixedSerde);
+        byte[] fixed = serialize(fixedKryo, polygon);
+        Assert.assertTrue(fixed.length * 2 < doubles.length);
+        Geometry fixedPolygon = fixedKryo.readObject(new Input(fixed), Polygon.class);
+        Assert.assertTrue(polygon.equalsExact(fixedPolygon, 1e-7));
+        Assert.assertEquals(polygon.getUserData(), fixedPolygon.getUserData());
+
+        // Floats keep about 7 significant digits
+        Kryo floatKryo = new Kryo();
+        floatKryo.register(Polygon.class, new GeometrySerde(CoordinateEncoding.FLOAT, 0));
+        byte[] floats = serialize(floatKryo, polygon);
+        Assert.assertTrue(floats.length < doubles.length);
+        Assert.assertTrue(polygon.equalsExact(floatKryo.readObject(new Input(floats), Polygon.class), 1e-5));
+
+        // Every serializer reads every encoding
+        Assert.assertTrue(fixedPolygon.equalsExact(kryo.readObject(new Input(fixed), Polygon.class)));
+        Assert.assertEquals(polygon, fixedKryo.readObject(new Input(doubles), Polygon.class));
+
+        // Coordinates out of range of the fixed precision are written as doubles
+        Geometry point = parseWkt("POINT (1e300 -1e300)");
+        Assert.assertEquals(point, fixedKryo.readObject(new Input(serialize(fixedKryo, point)), Point.class));
+    }
+
     private Geometry parseWkt(String wkt)
             throws ParseException
     {
@@ -92,7 +157,11 @@ public class GeometrySerdeTest
     private byte[] serialize(Geometry input)
     {
         kryo.register(input.getClass(), new GeometrySerde());
+        return serialize(kryo, input);
+    }
 
+    private byte[] serialize(Kryo kryo, Geometry input)
+    {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         Output output = new Output(bos);
         kryo.writeObject(output, input);
@@ -36,6 +36,7 @@ import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.quadtree.Quadtree;
 import org.locationtech.jts.index.strtree.STRtree;
+import org.datasyslab.geospark.spatialIndex.PackedRTree;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
@@ -67,10 +68,12 @@ public class SpatialIndexSerdeTest
 
         kryo.register(Quadtree.class, spatialIndexSerde);
         kryo.register(STRtree.class, spatialIndexSerde);
+        kryo.register(PackedRTree.class, spatialIndexSerde);
 
         // test correctness
         testCorrectness(Quadtree.class);
         testCorrectness(STRtree.class);
+        testCorrectness(PackedRTree.class);
 
         // workbench of compare size
         compareSize(Quadtree.class);
@@ -81,6 +84,32 @@ public class SpatialIndexSerdeTest
         compareTime(STRtree.class);
     }
 
+    @Test
+    public void testPackedRTreeRoundTrip()
+            throws Exception
+    {
+        kryo.register(PackedRTree.class, spatialIndexSerde);
+
+        PackedRTree tree = new PackedRTree();
+        for (int i = 0; i < 1000; ++i) {
+            Point point = geometryFactory.createPoint(new Coordinate(i % 100, i / 100));
+            point.setUserData("point " + i);
+            tree.insert(point.getEnvelopeInternal(), point);
+        }
+        // the deserialized tree decodes its geometries lazily and is written back without decoding them
+        SpatialIndex dtree = deserializeIndexKryo(serializeIndexKryo(tree));
+        SpatialIndex ddtree = deserializeIndexKryo(serializeIndexKryo(dtree));
+
+        Envelope envelope = new Envelope(10, 20, 3, 5);
+        List expected = queryIndex(tree, envelope);
+        assertThat(expected.size(), is(33));
+        assertThat(queryIndex(dtree, envelope), is(expected));
+        assertThat(queryIndex(ddtree, envelope), is(expected));
+        for (int i = 0; i < expected.size(); ++i) {
+            assertThat(((Point) queryIndex(ddtree, envelope).get(i)).getUserData(), is(((Point) expected.get(i)).getUserData()));
+        }
+    }
+
     public void testCorrectness(Class aClass)
             throws IOException
     {
@@ -217,6 +246,12 @@ public class SpatialIndexSerdeTest
             }
             return strtree.query(envelope);
         }
+        else if (index instanceof PackedRTree) {
+            if (envelope == null) {
+                envelope = new Envelope(-180, 180, -90, 90);
+            }
+            return index.query(envelope);
+        }
         else { throw new UnsupportedOperationException("unsupport index type"); }
     }
 
@@ -226,6 +261,7 @@ public class SpatialIndexSerdeTest
         SpatialIndex quadtree;
         // initialize according to class pointed
         if (aClass == Quadtree.class) { quadtree = new Quadtree(); }
+        else if (aClass == PackedRTree.class) { quadtree = new PackedRTree(); }
         else { quadtree = new STRtree(); }
 
         for (int i = 0; i < geomNum; ++i) {
@@ -0,0 +1,63 @@
+/*
+ * FILE: AdaptiveJoinJudgementTest
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.datasyslab.geospark.joinJudgement.AdaptiveJoinJudgement.Strategy;
+import org.junit.Test;
+
+import static org.datasyslab.geospark.spatialOperator.JoinQuery.JoinParams.DEFAULT_LOPSIDED_RATIO;
+import static org.datasyslab.geospark.spatialOperator.JoinQuery.JoinParams.DEFAULT_NESTED_LOOP_MAX_PAIRS;
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveJoinJudgementTest
+{
+    @Test
+    public void testSmallPartition()
+    {
+        assertEquals(Strategy.NESTED_LOOP, choose(100, 100));
+        assertEquals(Strategy.NESTED_LOOP, choose(1, 10000));
+        assertEquals(Strategy.NESTED_LOOP, choose(0, 1000000));
+    }
+
+    @Test
+    public void testLopsidedPartition()
+    {
+        assertEquals(Strategy.INDEX_RIGHT, choose(10000, 1000));
+        assertEquals(Strategy.INDEX_LEFT, choose(100, 5000));
+    }
+
+    @Test
+    public void testBalancedPartition()
+    {
+        assertEquals(Strategy.PLANE_SWEEP, choose(1000, 1000));
+        assertEquals(Strategy.PLANE_SWEEP, choose(1000, 9999));
+    }
+
+    @Test
+    public void testCustomThresholds()
+    {
+        // A larger nested loop budget and a smaller lopsided ratio
+        assertEquals(Strategy.NESTED_LOOP, AdaptiveJoinJudgement.chooseStrategy(1000, 1000, 1000000, 2));
+        assertEquals(Strategy.INDEX_LEFT, AdaptiveJoinJudgement.chooseStrategy(1000, 2000, 1000, 2));
+        assertEquals(Strategy.PLANE_SWEEP, AdaptiveJoinJudgement.chooseStrategy(1000, 1999, 1000, 2));
+    }
+
+    private static Strategy choose(long leftCount, long rightCount)
+    {
+        return AdaptiveJoinJudgement.chooseStrategy(leftCount, rightCount, DEFAULT_NESTED_LOOP_MAX_PAIRS, DEFAULT_LOPSIDED_RATIO);
+    }
+}
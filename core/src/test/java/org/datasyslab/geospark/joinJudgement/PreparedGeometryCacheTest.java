@@ -0,0 +1,113 @@
+/*
+ * FILE: PreparedGeometryCacheTest
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.joinJudgement;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PreparedGeometryCacheTest
+{
+    private static final GeometryFactory geometryFactory = new GeometryFactory();
+
+    @Test
+    public void testPreparedOnSecondUse()
+    {
+        final PreparedGeometryCache cache = new PreparedGeometryCache();
+        final Polygon polygon = square(0);
+
+        assertNull(cache.get(polygon));
+        final PreparedGeometry prepared = cache.get(polygon);
+        assertNotNull(prepared);
+        assertSame(polygon, prepared.getGeometry());
+        assertSame(prepared, cache.get(polygon));
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.getNumVertices());
+    }
+
+    @Test
+    public void testPointsNotPrepared()
+    {
+        final PreparedGeometryCache cache = new PreparedGeometryCache();
+        final Point point = geometryFactory.createPoint(new Coordinate(1, 1));
+
+        assertNull(cache.get(point));
+        assertNull(cache.get(point));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEntryCap()
+    {
+        final PreparedGeometryCache cache = new PreparedGeometryCache(3, 1000);
+        final Polygon[] polygons = new Polygon[5];
+        for (int i = 0; i < polygons.length; i++) {
+            polygons[i] = square(i);
+            cache.get(polygons[i]);
+            assertEquals(Math.min(i + 1, 3), cache.size());
+        }
+
+        // The least recently used polygons were evicted and count as used once again
+        assertNull(cache.get(polygons[0]));
+        assertNotNull(cache.get(polygons[4]));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testVertexCap()
+    {
+        // Room for two prepared squares with 5 vertices each
+        final PreparedGeometryCache cache = new PreparedGeometryCache(100, 10);
+        final Polygon[] polygons = new Polygon[3];
+        for (int i = 0; i < polygons.length; i++) {
+            polygons[i] = square(i);
+            cache.get(polygons[i]);
+            assertNotNull(cache.get(polygons[i]));
+            assertEquals(Math.min(i + 1, 2) * 5, cache.getNumVertices());
+        }
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(polygons[0]));
+        assertSame(cache.get(polygons[2]), cache.get(polygons[2]));
+    }
+
+    @Test
+    public void testGeometryLargerThanVertexCap()
+    {
+        final PreparedGeometryCache cache = new PreparedGeometryCache(100, 4);
+        final Polygon polygon = square(0);
+
+        assertNull(cache.get(polygon));
+        assertNotNull(cache.get(polygon));
+        assertEquals(0, cache.getNumVertices());
+        assertNotNull(cache.get(polygon));
+    }
+
+    private static Polygon square(int offset)
+    {
+        return (Polygon) geometryFactory.toGeometry(new Envelope(offset, offset + 1, 0, 1));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * FILE: CoordinateEncodingJoinTest
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialOperator;
+
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.spark.SparkConf;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.apache.spark.serializer.KryoSerializer;
+import org.apache.spark.storage.StorageLevel;
+import org.datasyslab.geospark.GeoSparkTestBase;
+import org.datasyslab.geospark.enums.CoordinateEncoding;
+import org.datasyslab.geospark.enums.FileDataSplitter;
+import org.datasyslab.geospark.enums.GridType;
+import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.geometryObjects.CoordinateQuantizer;
+import org.datasyslab.geospark.serde.GeoSparkKryoRegistrator;
+import org.datasyslab.geospark.spatialRDD.PointRDD;
+import org.datasyslab.geospark.spatialRDD.RectangleRDD;
+import org.datasyslab.geospark.spatialRDD.SpatialRDD;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Joins geometries shuffled with the float coordinate encoding. Results must match the results
+ * computed on the rounded coordinates, which for these datasets are the results computed on
+ * the original double coordinates.
+ */
+public class CoordinateEncodingJoinTest
+        extends GeoSparkTestBase
+{
+    private static final GridType[] gridTypes = {GridType.KDBTREE, GridType.QUADTREE, GridType.RTREE};
+
+    private static final int numPartitions = 11;
+
+    private static String pointLocation;
+    private static String rectangleLocation;
+
+    @BeforeClass
+    public static void onceExecutedBeforeAll()
+    {
+        conf = new SparkConf().setAppName("CoordinateEncodingJoin").setMaster("local[2]");
+        conf.set("spark.serializer", KryoSerializer.class.getName());
+        conf.set("spark.kryo.registrator", GeoSparkKryoRegistrator.class.getName());
+        conf.set("geospark.serde.coordinates", "float");
+
+        sc = new JavaSparkContext(conf);
+        Logger.getLogger("org").setLevel(Level.WARN);
+        Logger.getLogger("akka").setLevel(Level.WARN);
+
+        final ClassLoader classLoader = CoordinateEncodingJoinTest.class.getClassLoader();
+        pointLocation = "file://" + classLoader.getResource("arealm-small.csv").getPath();
+        rectangleLocation = "file://" + classLoader.getResource("zcta510-small.csv").getPath();
+    }
+
+    @AfterClass
+    public static void TearDown()
+    {
+        sc.stop();
+    }
+
+    @Test
+    public void testPointJoin()
+            throws Exception
+    {
+        for (GridType gridType : gridTypes) {
+            final PointRDD spatialRDD = createPointRDD();
+            final RectangleRDD queryRDD = createRectangleRDD();
+            final long expectedCount = countMatches(queryRDD.rawSpatialRDD.collect(), spatialRDD.rawSpatialRDD.collect());
+
+            spatialRDD.spatialPartitioning(gridType, numPartitions);
+            queryRDD.spatialPartitioning(spatialRDD.getPartitioner());
+
+            assertJoinCount(expectedCount, spatialRDD, queryRDD, gridType);
+        }
+    }
+
+    @Test
+    public void testRectangleJoin()
+            throws Exception
+    {
+        for (GridType gridType : gridTypes) {
+            final RectangleRDD spatialRDD = createRectangleRDD();
+            final RectangleRDD queryRDD = createRectangleRDD();
+            final long expectedCount = countMatches(queryRDD.rawSpatialRDD.collect(), spatialRDD.rawSpatialRDD.collect());
+
+            spatialRDD.spatialPartitioning(gridType, numPartitions);
+            queryRDD.spatialPartitioning(spatialRDD.getPartitioner());
+
+            assertJoinCount(expectedCount, spatialRDD, queryRDD, gridType);
+        }
+    }
+
+    private <T extends Geometry> void assertJoinCount(long expectedCount, SpatialRDD<T> spatialRDD,
+            RectangleRDD queryRDD, GridType gridType)
+            throws Exception
+    {
+        final String message = "Grid type " + gridType;
+        assertEquals(message, expectedCount, JoinQuery.SpatialJoinQueryFlat(spatialRDD, queryRDD, false, true).count());
+
+        spatialRDD.buildIndex(IndexType.RTREE, true);
+        assertEquals(message, expectedCount, JoinQuery.SpatialJoinQueryFlat(spatialRDD, queryRDD, true, true).count());
+    }
+
+    /**
+     * Counts the intersecting pairs of windows and geometries with both the original and the
+     * rounded coordinates, and checks that the datasets don't depend on the difference.
+     */
+    private static <T extends Geometry> long countMatches(List<Polygon> windows, List<T> geometries)
+    {
+        final CoordinateQuantizer quantizer = new CoordinateQuantizer(CoordinateEncoding.FLOAT, 0);
+        final List<Polygon> quantizedWindows = new ArrayList<>();
+        for (Polygon window : windows) {
+            quantizedWindows.add(quantizer.quantize(window));
+        }
+        final List<T> quantizedGeometries = new ArrayList<>();
+        for (T geometry : geometries) {
+            quantizedGeometries.add(quantizer.quantize(geometry));
+        }
+
+        final long count = countIntersections(windows, geometries);
+        assertEquals(count, countIntersections(quantizedWindows, quantizedGeometries));
+        return count;
+    }
+
+    private static <T extends Geometry> long countIntersections(List<Polygon> windows, List<T> geometries)
+    {
+        long count = 0;
+        for (Polygon window : windows) {
+            for (T geometry : geometries) {
+                if (window.getEnvelopeInternal().intersects(geometry.getEnvelopeInternal())
+                        && (geometry instanceof Point || window.intersects(geometry))) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static PointRDD createPointRDD()
+    {
+        final PointRDD rdd = new PointRDD(sc, pointLocation, 1, FileDataSplitter.CSV, false, numPartitions);
+        return new PointRDD(rdd.rawSpatialRDD, StorageLevel.MEMORY_ONLY());
+    }
+
+    private static RectangleRDD createRectangleRDD()
+    {
+        final RectangleRDD rdd = new RectangleRDD(sc, rectangleLocation, FileDataSplitter.CSV, true, numPartitions);
+        return new RectangleRDD(rdd.rawSpatialRDD, StorageLevel.MEMORY_ONLY());
+    }
+}
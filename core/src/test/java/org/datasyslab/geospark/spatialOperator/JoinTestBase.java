@@ -184,7 +184,9 @@ class JoinTestBase
 
     protected boolean expectToPreserveOriginalDuplicates()
     {
-        return gridType == GridType.QUADTREE || gridType == GridType.KDBTREE;
+        // All grid types de-dup join results in the partition-level judgement instead of
+        // running a distinct, so duplicates in the input RDDs are reflected in the results.
+        return true;
     }
 
     protected <T extends Geometry> long countJoinResults(List<Tuple2<Polygon, HashSet<T>>> results)
@@ -0,0 +1,99 @@
+/*
+ * FILE: PartialJoinAggregatorTest
+ * Copyright (c) 2015 - 2018 GeoSpark Development Team
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+package org.datasyslab.geospark.spatialOperator;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartialJoinAggregatorTest
+{
+    private final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void testAggregateUserDataField()
+            throws Exception
+    {
+        final Geometry window = factory.toGeometry(new Envelope(0, 10, 0, 10));
+        final List<Pair<Geometry, Point>> pairs = Arrays.asList(
+                Pair.of(window, makePoint("a\t1.5")),
+                Pair.of(window, makePoint("b\t-2")),
+                Pair.of(window, makePoint("c\tnot a number")),
+                Pair.of(window, makePoint("d")));
+
+        final Iterator<Tuple2<Geometry, JoinAggregate>> result =
+                new PartialJoinAggregator<Geometry, Point>(1).call(pairs.iterator());
+
+        assertTrue(result.hasNext());
+        final JoinAggregate aggregate = result.next()._2();
+        assertFalse(result.hasNext());
+        assertEquals(4, aggregate.getCount());
+        assertEquals(2, aggregate.getValueCount());
+        assertEquals(-0.5, aggregate.getSum(), 0);
+        assertEquals(-2, aggregate.getMin(), 0);
+        assertEquals(1.5, aggregate.getMax(), 0);
+    }
+
+    @Test
+    public void testCountOnly()
+            throws Exception
+    {
+        final Geometry window1 = factory.toGeometry(new Envelope(0, 10, 0, 10));
+        final Geometry window2 = factory.toGeometry(new Envelope(0, 10, 0, 10));
+        final List<Pair<Geometry, Point>> pairs = new ArrayList<>();
+        pairs.add(Pair.of(window1, makePoint("1")));
+        pairs.add(Pair.of(window2, makePoint("2")));
+        pairs.add(Pair.of(window1, makePoint("3")));
+
+        final Iterator<Tuple2<Geometry, JoinAggregate>> result =
+                new PartialJoinAggregator<Geometry, Point>(PartialJoinAggregator.NO_FIELD).call(pairs.iterator());
+
+        // Partial aggregates are kept per object, equal geometries are merged later
+        long total = 0;
+        int keys = 0;
+        while (result.hasNext()) {
+            final JoinAggregate aggregate = result.next()._2();
+            assertEquals(0, aggregate.getValueCount());
+            assertTrue(Double.isNaN(aggregate.getMin()));
+            total += aggregate.getCount();
+            keys++;
+        }
+        assertEquals(2, keys);
+        assertEquals(3, total);
+    }
+
+    private Point makePoint(String userData)
+    {
+        final Point point = factory.createPoint(new Coordinate(1, 1));
+        point.setUserData(userData);
+        return point;
+    }
+}
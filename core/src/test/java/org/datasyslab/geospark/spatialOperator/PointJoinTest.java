@@ -29,6 +29,7 @@ import org.locationtech.jts.geom.Point;
 import org.locationtech.jts.geom.Polygon;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.enums.JoinAlgorithm;
 import org.datasyslab.geospark.enums.JoinBuildSide;
 import org.datasyslab.geospark.spatialRDD.PointRDD;
 import org.datasyslab.geospark.spatialRDD.PolygonRDD;
@@ -45,6 +46,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 
@@ -238,6 +240,150 @@ public class PointJoinTest
         assertEquals(expectedCount, results.size());
     }
 
+    @Test
+    public void testPlaneSweepWithRectangles()
+            throws Exception
+    {
+        final RectangleRDD rectangleRDD = createRectangleRDD();
+        final long expectedCount = expectToPreserveOriginalDuplicates()
+                ? expectedRectangleMatchWithOriginalDuplicatesCount : expectedRectangleMatchCount;
+        testJoinAlgorithmInt(rectangleRDD, JoinAlgorithm.PLANE_SWEEP, expectedCount);
+    }
+
+    @Test
+    public void testPlaneSweepWithPolygons()
+            throws Exception
+    {
+        PolygonRDD polygonRDD = createPolygonRDD();
+        final long expectedCount = expectToPreserveOriginalDuplicates()
+                ? expectedPolygonMatchWithOriginalDuplicatesCount : expectedPolygonMatchCount;
+        testJoinAlgorithmInt(polygonRDD, JoinAlgorithm.PLANE_SWEEP, expectedCount);
+    }
+
+    @Test
+    public void testAdaptiveWithRectangles()
+            throws Exception
+    {
+        final RectangleRDD rectangleRDD = createRectangleRDD();
+        final long expectedCount = expectToPreserveOriginalDuplicates()
+                ? expectedRectangleMatchWithOriginalDuplicatesCount : expectedRectangleMatchCount;
+        testJoinAlgorithmInt(rectangleRDD, JoinAlgorithm.ADAPTIVE, expectedCount);
+    }
+
+    @Test
+    public void testAdaptiveWithPolygons()
+            throws Exception
+    {
+        PolygonRDD polygonRDD = createPolygonRDD();
+        final long expectedCount = expectToPreserveOriginalDuplicates()
+                ? expectedPolygonMatchWithOriginalDuplicatesCount : expectedPolygonMatchCount;
+        testJoinAlgorithmInt(polygonRDD, JoinAlgorithm.ADAPTIVE, expectedCount);
+    }
+
+    @Test
+    public void testBroadcastWithRectangles()
+            throws Exception
+    {
+        testBroadcastInt(createRectangleRDD(), expectedRectangleMatchWithOriginalDuplicatesCount);
+    }
+
+    @Test
+    public void testBroadcastWithPolygons()
+            throws Exception
+    {
+        testBroadcastInt(createPolygonRDD(), expectedPolygonMatchWithOriginalDuplicatesCount);
+    }
+
+    private void testBroadcastInt(SpatialRDD<Polygon> queryRDD, long expectedCount)
+            throws Exception
+    {
+        PointRDD spatialRDD = createPointRDD();
+
+        JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(true, indexType, JoinBuildSide.LEFT, JoinAlgorithm.BROADCAST);
+        List<Tuple2<Polygon, Point>> results = JoinQuery.spatialJoin(queryRDD, spatialRDD, joinParams).collect();
+
+        sanityCheckFlatJoinResults(results);
+        assertEquals(expectedCount, results.size());
+    }
+
+    @Test
+    public void testCountByKeyWithPolygons()
+            throws Exception
+    {
+        PolygonRDD queryRDD = createPolygonRDD();
+        PointRDD spatialRDD = createPointRDD();
+
+        partitionRdds(queryRDD, spatialRDD);
+
+        JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(true, IndexType.RTREE, JoinBuildSide.LEFT);
+        List<Tuple2<Polygon, Long>> counts = JoinQuery.SpatialJoinQueryCountByKey(spatialRDD, queryRDD, joinParams).collect();
+        List<Tuple2<Polygon, JoinAggregate>> aggregates = JoinQuery.SpatialJoinQueryAggregateByKey(spatialRDD, queryRDD, joinParams, 0).collect();
+
+        assertEquals(counts.size(), aggregates.size());
+        long totalCount = 0;
+        for (Tuple2<Polygon, Long> count : counts) {
+            totalCount += count._2();
+        }
+        long totalAggregateCount = 0;
+        for (Tuple2<Polygon, JoinAggregate> aggregate : aggregates) {
+            totalAggregateCount += aggregate._2().getCount();
+        }
+        assertEquals(expectedPolygonMatchWithOriginalDuplicatesCount, totalCount);
+        assertEquals(expectedPolygonMatchWithOriginalDuplicatesCount, totalAggregateCount);
+    }
+
+    @Test
+    public void testIdPairsWithPolygons()
+            throws Exception
+    {
+        PolygonRDD queryRDD = createPolygonRDD();
+        PointRDD spatialRDD = createPointRDD();
+        queryRDD.assignRecordIds();
+        spatialRDD.assignRecordIds();
+
+        partitionRdds(queryRDD, spatialRDD);
+
+        JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(true, IndexType.RTREE, JoinBuildSide.LEFT);
+        List<Tuple2<Long, Long>> idPairs = JoinQuery.SpatialJoinQueryIdPairs(spatialRDD, queryRDD, joinParams).collect();
+
+        assertEquals(expectedPolygonMatchWithOriginalDuplicatesCount, idPairs.size());
+        assertEquals(idPairs.size(), new HashSet<>(idPairs).size());
+
+        List<Tuple2<Polygon, HashSet<Point>>> groups = JoinQuery.SpatialJoinQuery(spatialRDD, queryRDD, joinParams).collect();
+        sanityCheckJoinResults(groups);
+    }
+
+    @Test
+    public void testSemiAndAntiJoinWithPolygons()
+            throws Exception
+    {
+        PolygonRDD queryRDD = createPolygonRDD();
+        PointRDD spatialRDD = createPointRDD();
+        partitionRdds(queryRDD, spatialRDD);
+
+        JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(true, IndexType.RTREE, JoinBuildSide.LEFT);
+        List<Point> matched = JoinQuery.SpatialSemiJoinQuery(spatialRDD, queryRDD, joinParams).collect();
+        long unmatchedCount = JoinQuery.SpatialAntiJoinQuery(spatialRDD, queryRDD, joinParams).count();
+
+        Set<Point> expected = new HashSet<>(JoinQuery.SpatialJoinQueryFlat(spatialRDD, queryRDD, joinParams).values().collect());
+        assertEquals(expected, new HashSet<>(matched));
+        assertEquals(spatialRDD.spatialPartitionedRDD.count(), matched.size() + unmatchedCount);
+    }
+
+    private void testJoinAlgorithmInt(SpatialRDD<Polygon> queryRDD, JoinAlgorithm joinAlgorithm, long expectedCount)
+            throws Exception
+    {
+        PointRDD spatialRDD = createPointRDD();
+
+        partitionRdds(queryRDD, spatialRDD);
+
+        JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(true, IndexType.RTREE, JoinBuildSide.LEFT, joinAlgorithm);
+        List<Tuple2<Polygon, Point>> results = JoinQuery.spatialJoin(queryRDD, spatialRDD, joinParams).collect();
+
+        sanityCheckFlatJoinResults(results);
+        assertEquals(expectedCount, results.size());
+    }
+
     private RectangleRDD createRectangleRDD()
     {
         return createRectangleRDD(InputLocationQueryWindow);
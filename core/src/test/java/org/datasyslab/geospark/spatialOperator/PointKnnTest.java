@@ -33,20 +33,26 @@ import org.apache.log4j.Logger;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.datasyslab.geospark.enums.FileDataSplitter;
+import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
 import org.datasyslab.geospark.knnJudgement.GeometryDistanceComparator;
 import org.datasyslab.geospark.spatialRDD.PointRDD;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import scala.Tuple2;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
 
+import static org.junit.Assert.assertEquals;
+
 // TODO: Auto-generated Javadoc
 
 /**
@@ -231,4 +237,144 @@ public class PointKnnTest
         }
         assert difference == 0;
     }
-}
\ No newline at end of file
+
+    /**
+     * Test spatial KNN correctness using a packed R-Tree index.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSpatialKNNCorrectnessUsingPackedRTree()
+            throws Exception
+    {
+        PointRDD pointRDD = new PointRDD(sc, InputLocation, offset, splitter, false);
+        List<Point> resultNoIndex = KNNQuery.SpatialKnnQuery(pointRDD, queryPoint, topK, false);
+        pointRDD.buildIndex(IndexType.PACKED_RTREE, false);
+        List<Point> resultWithIndex = KNNQuery.SpatialKnnQuery(pointRDD, queryPoint, topK, true);
+        assertEquals(topK, resultWithIndex.size());
+        GeometryDistanceComparator geometryDistanceComparator = new GeometryDistanceComparator(this.queryPoint, true);
+        for (int i = 0; i < topK; i++) {
+            assertEquals(0, geometryDistanceComparator.compare(resultNoIndex.get(i), resultWithIndex.get(i)));
+        }
+    }
+
+    /**
+     * Test batch spatial KNN correctness.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testBatchSpatialKNNCorrectness()
+            throws Exception
+    {
+        PointRDD pointRDD = new PointRDD(sc, InputLocation, offset, splitter, false);
+        GeometryFactory fact = new GeometryFactory();
+        List<Point> queryPoints = Arrays.asList(queryPoint, fact.createPoint(new Coordinate(-90.01, 40.01)), fact.createPoint(new Coordinate(-110.01, 35.01)));
+
+        List<List<Point>> resultNoIndex = KNNQuery.SpatialKnnQuery(pointRDD, queryPoints, topK, false);
+        pointRDD.buildIndex(IndexType.RTREE, false);
+        List<List<Point>> resultWithIndex = KNNQuery.SpatialKnnQuery(pointRDD, queryPoints, topK, true);
+
+        assertEquals(queryPoints.size(), resultNoIndex.size());
+        assertEquals(queryPoints.size(), resultWithIndex.size());
+        for (int i = 0; i < queryPoints.size(); i++) {
+            Point query = queryPoints.get(i);
+            List<Point> expected = KNNQuery.SpatialKnnQuery(pointRDD, query, topK, false);
+            assertEquals(topK, resultNoIndex.get(i).size());
+            assertEquals(topK, resultWithIndex.get(i).size());
+            for (int j = 0; j < topK; j++) {
+                assertEquals(expected.get(j).distance(query), resultNoIndex.get(i).get(j).distance(query), 0);
+                assertEquals(expected.get(j).distance(query), resultWithIndex.get(i).get(j).distance(query), 0);
+            }
+        }
+    }
+
+    /**
+     * Test spatial KNN query on spatially partitioned RDDs.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testPartitionedSpatialKNNCorrectness()
+            throws Exception
+    {
+        PointRDD pointRDD = new PointRDD(sc, InputLocation, offset, splitter, false);
+        List<Point> expected = KNNQuery.SpatialKnnQuery(pointRDD, queryPoint, topK, false);
+
+        pointRDD.analyze();
+        pointRDD.spatialPartitioning(GridType.KDBTREE, 64);
+        List<Point> resultNoIndex = KNNQuery.PartitionedSpatialKnnQuery(pointRDD, queryPoint, topK, false);
+        pointRDD.buildIndex(IndexType.RTREE, true);
+        List<Point> resultWithIndex = KNNQuery.PartitionedSpatialKnnQuery(pointRDD, queryPoint, topK, true);
+
+        assertEquals(topK, resultNoIndex.size());
+        assertEquals(topK, resultWithIndex.size());
+        for (int i = 0; i < topK; i++) {
+            assertEquals(expected.get(i).distance(queryPoint), resultNoIndex.get(i).distance(queryPoint), 0);
+            assertEquals(expected.get(i).distance(queryPoint), resultWithIndex.get(i).distance(queryPoint), 0);
+        }
+    }
+
+    /**
+     * Test KNN join correctness.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testKnnJoinCorrectness()
+            throws Exception
+    {
+        PointRDD pointRDD = new PointRDD(sc, InputLocation, offset, splitter, false);
+        pointRDD.analyze();
+        pointRDD.spatialPartitioning(GridType.KDBTREE, 16);
+
+        List<Point> queryPoints = pointRDD.rawSpatialRDD.takeSample(false, 20, 42);
+        PointRDD queryRDD = new PointRDD(sc.parallelize(queryPoints));
+        queryRDD.spatialPartitioning(pointRDD.getPartitioner());
+
+        List<Tuple2<Point, List<Point>>> results = JoinQuery.KnnJoinQuery(pointRDD, queryRDD, topK).collect();
+        assertEquals(new HashSet<>(queryPoints).size(), results.size());
+        for (Tuple2<Point, List<Point>> result : results) {
+            List<Point> expected = KNNQuery.SpatialKnnQuery(pointRDD, result._1(), topK, false);
+            assertEquals(topK, result._2().size());
+            for (int i = 0; i < topK; i++) {
+                assertEquals(expected.get(i).distance(result._1()), result._2().get(i).distance(result._1()), 0);
+            }
+        }
+    }
+
+    /**
+     * Test KNN join correctness when no partition holds k points, so that every search widens
+     * ring by ring.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testKnnJoinBeyondLocalPartition()
+            throws Exception
+    {
+        PointRDD pointRDD = new PointRDD(sc, InputLocation, offset, splitter, false);
+        pointRDD.analyze();
+        pointRDD.spatialPartitioning(GridType.KDBTREE, 64);
+
+        long maxPartitionCount = 0;
+        for (long count : pointRDD.getPartitionCounts()) {
+            maxPartitionCount = Math.max(maxPartitionCount, count);
+        }
+        int k = (int) maxPartitionCount + 1;
+
+        List<Point> queryPoints = pointRDD.rawSpatialRDD.takeSample(false, 5, 42);
+        PointRDD queryRDD = new PointRDD(sc.parallelize(queryPoints));
+        queryRDD.spatialPartitioning(pointRDD.getPartitioner());
+
+        List<Tuple2<Point, List<Point>>> results = JoinQuery.KnnJoinQuery(pointRDD, queryRDD, k).collect();
+        assertEquals(new HashSet<>(queryPoints).size(), results.size());
+        for (Tuple2<Point, List<Point>> result : results) {
+            List<Point> expected = KNNQuery.SpatialKnnQuery(pointRDD, result._1(), k, false);
+            assertEquals(k, result._2().size());
+            for (int i = 0; i < k; i++) {
+                assertEquals(expected.get(i).distance(result._1()), result._2().get(i).distance(result._1()), 0);
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ package org.datasyslab.geospark.spatialOperator;
 import org.locationtech.jts.geom.Polygon;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.enums.JoinAlgorithm;
 import org.datasyslab.geospark.enums.JoinBuildSide;
 import org.datasyslab.geospark.spatialRDD.PolygonRDD;
 import org.junit.AfterClass;
@@ -68,6 +69,9 @@ public class PolygonJoinTest
                 {GridType.QUADTREE, true, 11},
                 {GridType.QUADTREE, false, 11},
                 {GridType.KDBTREE, false, 11},
+                {GridType.VORONOI, false, 11},
+                {GridType.ZORDER, false, 11},
+                {GridType.HISTOGRAM, false, 11},
         });
     }
 
@@ -140,6 +144,98 @@ public class PolygonJoinTest
         assertEquals(expectedCount, results.size());
     }
 
+    @Test
+    public void testPlaneSweepAndContains()
+            throws Exception
+    {
+        testJoinAlgorithmInt(false, JoinAlgorithm.PLANE_SWEEP);
+    }
+
+    @Test
+    public void testPlaneSweepAndIntersects()
+            throws Exception
+    {
+        testJoinAlgorithmInt(true, JoinAlgorithm.PLANE_SWEEP);
+    }
+
+    @Test
+    public void testAdaptiveAndContains()
+            throws Exception
+    {
+        testJoinAlgorithmInt(false, JoinAlgorithm.ADAPTIVE);
+    }
+
+    @Test
+    public void testAdaptiveAndIntersects()
+            throws Exception
+    {
+        testJoinAlgorithmInt(true, JoinAlgorithm.ADAPTIVE);
+    }
+
+    @Test
+    public void testBroadcastAndContains()
+            throws Exception
+    {
+        testBroadcastInt(false);
+    }
+
+    @Test
+    public void testBroadcastAndIntersects()
+            throws Exception
+    {
+        testBroadcastInt(true);
+    }
+
+    private void testBroadcastInt(boolean intersects)
+            throws Exception
+    {
+        final PolygonRDD queryRDD = createPolygonRDD(InputLocationQueryPolygon);
+        final PolygonRDD spatialRDD = createPolygonRDD(InputLocation);
+
+        final JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(intersects, indexType, JoinBuildSide.LEFT, JoinAlgorithm.BROADCAST);
+        final List<Tuple2<Polygon, Polygon>> results = JoinQuery.spatialJoin(queryRDD, spatialRDD, joinParams).collect();
+        sanityCheckFlatJoinResults(results);
+
+        // Neither side is partitioned, so duplicates present in the input are preserved
+        assertEquals(getExpectedWithOriginalDuplicatesCount(intersects), results.size());
+    }
+
+    @Test
+    public void testSkewHandlingAndContains()
+            throws Exception
+    {
+        testJoinAlgorithmInt(false, JoinAlgorithm.PLANE_SWEEP, 1.5);
+    }
+
+    @Test
+    public void testSkewHandlingAndIntersects()
+            throws Exception
+    {
+        testJoinAlgorithmInt(true, JoinAlgorithm.PLANE_SWEEP, 1.5);
+    }
+
+    private void testJoinAlgorithmInt(boolean intersects, JoinAlgorithm joinAlgorithm)
+            throws Exception
+    {
+        testJoinAlgorithmInt(intersects, joinAlgorithm, 0);
+    }
+
+    private void testJoinAlgorithmInt(boolean intersects, JoinAlgorithm joinAlgorithm, double skewFactor)
+            throws Exception
+    {
+        final PolygonRDD queryRDD = createPolygonRDD(InputLocationQueryPolygon);
+        final PolygonRDD spatialRDD = createPolygonRDD(InputLocation);
+        partitionRdds(queryRDD, spatialRDD);
+
+        final JoinQuery.JoinParams joinParams = new JoinQuery.JoinParams(intersects, IndexType.RTREE, JoinBuildSide.LEFT, joinAlgorithm, skewFactor);
+        final List<Tuple2<Polygon, Polygon>> results = JoinQuery.spatialJoin(queryRDD, spatialRDD, joinParams).collect();
+        sanityCheckFlatJoinResults(results);
+
+        final long expectedCount = expectToPreserveOriginalDuplicates()
+                ? getExpectedWithOriginalDuplicatesCount(intersects) : getExpectedCount(intersects);
+        assertEquals(expectedCount, results.size());
+    }
+
     /**
      * Test spatial join query with polygon RDD.
      *
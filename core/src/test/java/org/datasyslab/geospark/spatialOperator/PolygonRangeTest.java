@@ -26,12 +26,15 @@
 package org.datasyslab.geospark.spatialOperator;
 
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.storage.StorageLevel;
 import org.datasyslab.geospark.enums.FileDataSplitter;
+import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
 import org.datasyslab.geospark.spatialRDD.PolygonRDD;
 import org.junit.AfterClass;
@@ -40,8 +43,12 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 // TODO: Auto-generated Javadoc
@@ -194,4 +201,80 @@ public class PolygonRangeTest
         }
         assert RangeQuery.SpatialRangeQuery(spatialRDD, queryEnvelope, false, true).take(10).get(1).getUserData().toString() != null;
     }
+
+    /**
+     * Test spatial range query count with and without index.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSpatialRangeQueryCount()
+            throws Exception
+    {
+        Polygon queryWindow = (Polygon) new GeometryFactory().toGeometry(queryEnvelope);
+        PolygonRDD spatialRDD = new PolygonRDD(sc, InputLocation, splitter, true, StorageLevel.MEMORY_ONLY());
+        long intersectsCount = RangeQuery.SpatialRangeQuery(spatialRDD, queryWindow, true, false).count();
+        assertEquals(704, RangeQuery.SpatialRangeQueryCount(spatialRDD, queryWindow, false, false));
+        assertEquals(intersectsCount, RangeQuery.SpatialRangeQueryCount(spatialRDD, queryWindow, true, false));
+
+        for (IndexType indexType : IndexType.values()) {
+            spatialRDD.buildIndex(indexType, false);
+            assertEquals(704, RangeQuery.SpatialRangeQueryCount(spatialRDD, queryWindow, false, true));
+            assertEquals(704, RangeQuery.SpatialRangeQuery(spatialRDD, queryWindow, false, true).count());
+            assertEquals(intersectsCount, RangeQuery.SpatialRangeQueryCount(spatialRDD, queryWindow, true, true));
+            assertEquals(intersectsCount, RangeQuery.SpatialRangeQuery(spatialRDD, queryWindow, true, true).count());
+        }
+    }
+
+    /**
+     * Test spatial range query for a batch of query windows.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSpatialRangeQueryWithMultipleWindows()
+            throws Exception
+    {
+        GeometryFactory geometryFactory = new GeometryFactory();
+        List<Polygon> queryWindows = Arrays.asList(
+                (Polygon) geometryFactory.toGeometry(queryEnvelope),
+                (Polygon) geometryFactory.toGeometry(new Envelope(-100.01, -80.01, 30.01, 40.01)),
+                (Polygon) geometryFactory.toGeometry(new Envelope(0.01, 1.01, 0.01, 1.01)));
+
+        PolygonRDD spatialRDD = new PolygonRDD(sc, InputLocation, splitter, true, StorageLevel.MEMORY_ONLY());
+        long[] expectedCounts = new long[queryWindows.size()];
+        for (int i = 0; i < queryWindows.size(); i++) {
+            expectedCounts[i] = RangeQuery.SpatialRangeQuery(spatialRDD, queryWindows.get(i), false, false).count();
+        }
+        assertEquals(704, expectedCounts[0]);
+
+        assertArrayEquals(expectedCounts, RangeQuery.SpatialRangeQueryCount(spatialRDD, queryWindows, false, false));
+        Map<Integer, Long> pairCounts = RangeQuery.SpatialRangeQuery(spatialRDD, queryWindows, false, false).countByKey();
+        for (int i = 0; i < queryWindows.size(); i++) {
+            assertEquals(expectedCounts[i], pairCounts.containsKey(i) ? pairCounts.get(i).longValue() : 0);
+        }
+
+        spatialRDD.buildIndex(IndexType.RTREE, false);
+        assertArrayEquals(expectedCounts, RangeQuery.SpatialRangeQueryCount(spatialRDD, queryWindows, false, true));
+    }
+
+    /**
+     * Test spatial range query on spatially partitioned RDDs.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testPartitionedSpatialRangeQuery()
+            throws Exception
+    {
+        Polygon queryWindow = (Polygon) new GeometryFactory().toGeometry(queryEnvelope);
+        for (GridType gridType : new GridType[] {GridType.RTREE, GridType.QUADTREE, GridType.KDBTREE}) {
+            PolygonRDD spatialRDD = new PolygonRDD(sc, InputLocation, splitter, true, StorageLevel.MEMORY_ONLY());
+            spatialRDD.spatialPartitioning(gridType);
+            assertEquals(704, RangeQuery.PartitionedSpatialRangeQuery(spatialRDD, queryWindow, false, false).count());
+
+            spatialRDD.buildIndex(IndexType.RTREE, true);
+            assertEquals(704, RangeQuery.PartitionedSpatialRangeQuery(spatialRDD, queryWindow, false, true).count());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+/*
+ * FILE: SkewedPartitionSplitterTest
+ * Copyright (c) 2015 - 2018 GeoSpark Development Team
+ *
+ * MIT License
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package org.datasyslab.geospark.spatialOperator;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SkewedPartitionSplitterTest
+{
+    @Test
+    public void testNoSkew()
+    {
+        final SkewedPartitionSplitter splitter = SkewedPartitionSplitter.plan(
+                new long[] {10, 12, 9, 11}, new long[] {10, 8, 11, 9}, 4);
+        assertFalse(splitter.hasSkew());
+        assertEquals(1, splitter.getNumRounds());
+    }
+
+    @Test
+    public void testSplitOversizedPartition()
+    {
+        // Median partition holds 20 geometries; partition 2 holds 1000 on the left side
+        final SkewedPartitionSplitter splitter = SkewedPartitionSplitter.plan(
+                new long[] {10, 12, 1000, 11}, new long[] {10, 8, 5, 9}, 4);
+        assertTrue(splitter.hasSkew());
+        assertEquals(1, splitter.getSplits(0));
+        assertEquals(50, splitter.getSplits(2));
+        assertEquals(50, splitter.getNumRounds());
+    }
+
+    @Test
+    public void testSplitsAreCapped()
+    {
+        final SkewedPartitionSplitter splitter = SkewedPartitionSplitter.plan(
+                new long[] {1, 1, 1, 1}, new long[] {1, 1000000, 1, 1}, 4);
+        assertEquals(SkewedPartitionSplitter.MAX_SPLITS, splitter.getSplits(1));
+    }
+
+    @Test
+    public void testChunksDependOnGeometriesOnly()
+    {
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        final int[] chunkSizes = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            final Point point = geometryFactory.createPoint(new Coordinate(i * 0.1, i * 0.2));
+            final int chunk = SkewedPartitionSplitter.getChunk(point, 0, chunkSizes.length);
+            assertEquals(chunk, SkewedPartitionSplitter.getChunk(point.copy(), 0, chunkSizes.length));
+            chunkSizes[chunk]++;
+        }
+        for (int chunkSize : chunkSizes) {
+            assertTrue(chunkSize > 150 && chunkSize < 350);
+        }
+    }
+
+    @Test
+    public void testIdenticalGeometriesAreSpread()
+    {
+        final GeometryFactory geometryFactory = new GeometryFactory();
+        final Point hotspot = geometryFactory.createPoint(new Coordinate(1, 2));
+
+        // Identical geometries are dealt to consecutive chunks
+        final int[] chunkSizes = new int[4];
+        for (int occurrence = 0; occurrence < 1000; occurrence++) {
+            chunkSizes[SkewedPartitionSplitter.getChunk(hotspot, occurrence, chunkSizes.length)]++;
+        }
+        for (int chunkSize : chunkSizes) {
+            assertEquals(250, chunkSize);
+        }
+
+        // Identical geometries with different user data are spread by the hash
+        final int[] userDataChunkSizes = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            final Point point = (Point) hotspot.copy();
+            point.setUserData("record " + i);
+            userDataChunkSizes[SkewedPartitionSplitter.getChunk(point, 0, userDataChunkSizes.length)]++;
+        }
+        for (int chunkSize : userDataChunkSizes) {
+            assertTrue(chunkSize > 150 && chunkSize < 350);
+        }
+    }
+
+    @Test
+    public void testEmptySidesAreNotSplit()
+    {
+        final SkewedPartitionSplitter splitter = SkewedPartitionSplitter.plan(
+                new long[] {10, 10, 1000, 10}, new long[] {10, 10, 0, 10}, 4);
+        assertFalse(splitter.hasSkew());
+    }
+}
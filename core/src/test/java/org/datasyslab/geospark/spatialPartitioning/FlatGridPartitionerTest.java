@@ -0,0 +1,136 @@
+/*
+ * FILE: FlatGridPartitionerTest
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.datasyslab.geospark.enums.GridType;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+public class FlatGridPartitionerTest
+{
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private final Envelope extent = new Envelope(0, 100, 0, 100);
+
+    @Test
+    public void testEqualGrid()
+            throws Exception
+    {
+        final List<Envelope> grids = new EqualPartitioning(extent, 100).getGrids();
+        checkPlacement(new FlatGridPartitioner(GridType.EQUALGRID, grids));
+    }
+
+    @Test
+    public void testRTreeGrid()
+            throws Exception
+    {
+        final Random random = new Random(7);
+        final List<Envelope> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final double x = random.nextDouble() * 100;
+            final double y = random.nextDouble() * 100;
+            samples.add(new Envelope(x, x + random.nextDouble(), y, y + random.nextDouble()));
+        }
+        final List<Envelope> grids = new RtreePartitioning(samples, 50).getGrids();
+        checkPlacement(new FlatGridPartitioner(GridType.RTREE, grids));
+    }
+
+    /**
+     * Compares the placement of random points and polygons, including points on cell
+     * boundaries, with a scan of all cells.
+     */
+    private void checkPlacement(FlatGridPartitioner partitioner)
+            throws Exception
+    {
+        final List<Envelope> grids = partitioner.getGrids();
+        final Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            final Point point = factory.createPoint(new Coordinate(random.nextDouble() * 120 - 10, random.nextDouble() * 120 - 10));
+            assertEquals(expectedPlacement(grids, point), placement(partitioner, point));
+
+            final Envelope corner = grids.get(random.nextInt(grids.size()));
+            final Point cornerPoint = factory.createPoint(new Coordinate(corner.getMinX(), corner.getMaxY()));
+            assertEquals(expectedPlacement(grids, cornerPoint), placement(partitioner, cornerPoint));
+
+            final double x = random.nextDouble() * 120 - 10;
+            final double y = random.nextDouble() * 120 - 10;
+            final Geometry polygon = factory.toGeometry(new Envelope(x, x + random.nextDouble() * 20, y, y + random.nextDouble() * 20));
+            assertEquals(expectedPlacement(grids, polygon), placement(partitioner, polygon));
+            assertEquals(expectedOverlappingPartitions(grids, polygon.getEnvelopeInternal()),
+                    partitioner.getOverlappingPartitions(polygon.getEnvelopeInternal()));
+        }
+    }
+
+    private TreeSet<Integer> placement(FlatGridPartitioner partitioner, Geometry geometry)
+            throws Exception
+    {
+        final TreeSet<Integer> partitionIds = new TreeSet<>();
+        final Iterator<Tuple2<Integer, Geometry>> placements = partitioner.placeObject(geometry);
+        while (placements.hasNext()) {
+            partitionIds.add(placements.next()._1());
+        }
+        return partitionIds;
+    }
+
+    private List<Integer> expectedOverlappingPartitions(List<Envelope> grids, Envelope envelope)
+    {
+        final List<Integer> partitionIds = new ArrayList<>();
+        for (int i = 0; i < grids.size(); i++) {
+            if (grids.get(i).intersects(envelope)) {
+                partitionIds.add(i);
+            }
+        }
+        partitionIds.add(grids.size());
+        return partitionIds;
+    }
+
+    private TreeSet<Integer> expectedPlacement(List<Envelope> grids, Geometry geometry)
+    {
+        final TreeSet<Integer> partitionIds = new TreeSet<>();
+        final Envelope envelope = geometry.getEnvelopeInternal();
+        boolean covered = false;
+        for (int i = 0; i < grids.size(); i++) {
+            if (grids.get(i).covers(envelope)) {
+                covered = true;
+                partitionIds.add(i);
+                if (geometry instanceof Point) {
+                    return partitionIds;
+                }
+            }
+            else if (grids.get(i).intersects(envelope)) {
+                partitionIds.add(i);
+            }
+        }
+        if (!covered) {
+            partitionIds.add(grids.size());
+        }
+        return partitionIds;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * FILE: HistogramPartitioningTest
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramPartitioningTest
+{
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private final Envelope extent = new Envelope(0, 100, 0, 100);
+
+    @Test
+    public void testSkewedData()
+    {
+        // Most points are crowded in one corner, large polygons in another one
+        final Random random = new Random(5);
+        final CostHistogram histogram = new CostHistogram(extent, 64);
+        long totalCost = 0;
+        for (int i = 0; i < 10000; i++) {
+            final double x = i % 10 == 0 ? random.nextDouble() * 100 : random.nextDouble() * 10;
+            final double y = i % 10 == 0 ? random.nextDouble() * 100 : random.nextDouble() * 10;
+            CostHistogram.add(histogram, factory.createPoint(new Coordinate(x, y)));
+            totalCost += 2;
+        }
+        for (int i = 0; i < 100; i++) {
+            final double x = 70 + random.nextDouble() * 28;
+            final double y = 70 + random.nextDouble() * 28;
+            CostHistogram.add(histogram, factory.toGeometry(new Envelope(x, x + 0.5, y, y + 0.5)).buffer(0.5, 50));
+        }
+
+        final HistogramPartitioning partitioning = new HistogramPartitioning(histogram, 16);
+        final List<Envelope> grids = partitioning.getGrids();
+        final List<Long> costs = partitioning.getCosts();
+        assertEquals(16, grids.size());
+
+        // Grids tile the extent
+        double area = 0;
+        for (int i = 0; i < grids.size(); i++) {
+            area += grids.get(i).getArea();
+            for (int j = i + 1; j < grids.size(); j++) {
+                assertFalse(grids.get(i).intersection(grids.get(j)).getArea() > 0);
+            }
+        }
+        assertEquals(extent.getArea(), area, 1e-6);
+
+        // Costs are balanced
+        long sum = 0;
+        for (long cost : costs) {
+            sum += cost;
+            assertTrue(cost <= HistogramPartitioning.OVERSIZED_FACTOR * partitioning.getTargetCost());
+        }
+        assertTrue(sum > totalCost);
+    }
+
+    @Test
+    public void testOversizedCell()
+    {
+        // All points fall into a single cell, which can't be split
+        final CostHistogram histogram = new CostHistogram(extent, 16);
+        for (int i = 0; i < 1000; i++) {
+            CostHistogram.add(histogram, factory.createPoint(new Coordinate(1, 1)));
+        }
+
+        final HistogramPartitioning partitioning = new HistogramPartitioning(histogram, 8);
+        assertEquals(8, partitioning.getGrids().size());
+
+        long maxCost = 0;
+        for (long cost : partitioning.getCosts()) {
+            maxCost = Math.max(maxCost, cost);
+        }
+        assertEquals(2000, maxCost);
+        assertTrue(maxCost > HistogramPartitioning.OVERSIZED_FACTOR * partitioning.getTargetCost());
+    }
+
+    @Test
+    public void testLargeGeometryCostCountedOnce()
+    {
+        final CostHistogram histogram = new CostHistogram(extent, 16);
+        final Geometry polygon = factory.toGeometry(new Envelope(10, 60, 10, 60)).buffer(1, 20);
+        CostHistogram.add(histogram, polygon);
+
+        long sum = 0;
+        long maxCost = 0;
+        for (int row = 0; row < 16; row++) {
+            for (int column = 0; column < 16; column++) {
+                sum += histogram.getCost(column, row);
+                maxCost = Math.max(maxCost, histogram.getCost(column, row));
+            }
+        }
+        assertEquals(CostHistogram.estimateCost(polygon), sum);
+        assertTrue(maxCost < CostHistogram.estimateCost(polygon));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * FILE: ZOrderPartitionerTest
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.datasyslab.geospark.spatialPartitioning;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.datasyslab.geospark.enums.GridType;
+import org.junit.Test;
+import scala.Tuple2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ZOrderPartitionerTest
+{
+    private static final String GEOHASH_ALPHABET = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private final Envelope extent = new Envelope(0, 100, 0, 100);
+
+    @Test
+    public void testGeohashKey()
+    {
+        // 5 characters of 5 bits each
+        final long key = ZOrderPartitioning.computeKey(ZOrderPartitioning.WORLD, -5.603, 42.605);
+        assertEquals(decodeGeohash("ezs42"), key >>> (2 * ZOrderPartitioning.BITS - 25));
+    }
+
+    @Test
+    public void testInterleave()
+    {
+        final Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            final int column = random.nextInt(ZOrderPartitioning.RESOLUTION);
+            final int row = random.nextInt(ZOrderPartitioning.RESOLUTION);
+            final long key = ZOrderPartitioning.interleave(column, row);
+            assertEquals(column, ZOrderPartitioning.column(key));
+            assertEquals(row, ZOrderPartitioning.row(key));
+        }
+    }
+
+    @Test
+    public void testZOrderGrid()
+            throws Exception
+    {
+        final Random random = new Random(7);
+        final List<Envelope> samples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final double x = random.nextDouble() * 100;
+            final double y = random.nextDouble() * 100;
+            samples.add(new Envelope(x, x + random.nextDouble(), y, y + random.nextDouble()));
+        }
+        final ZOrderPartitioner partitioner = new ZOrderPartitioner(GridType.ZORDER, new ZOrderPartitioning(samples, extent, 50));
+        assertEquals(50, partitioner.getGrids().size());
+        assertEquals(51, partitioner.numPartitions());
+        checkPlacement(partitioner);
+    }
+
+    /**
+     * Compares the placement of random points and small polygons with a scan of all the cells
+     * they overlap.
+     */
+    private void checkPlacement(ZOrderPartitioner partitioner)
+            throws Exception
+    {
+        final List<Envelope> grids = partitioner.getGrids();
+        final Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            final Point point = factory.createPoint(new Coordinate(random.nextDouble() * 120 - 10, random.nextDouble() * 120 - 10));
+            final TreeSet<Integer> pointPlacement = placement(partitioner, point);
+            assertEquals(expectedPlacement(partitioner, point.getEnvelopeInternal()), pointPlacement);
+            final int partitionId = pointPlacement.first();
+            assertTrue(partitionId == grids.size() || grids.get(partitionId).covers(point.getCoordinate()));
+            assertEquals(partitionId, partitioner.getPartition(point.getX(), point.getY()));
+
+            final double x = random.nextDouble() * 110 - 5;
+            final double y = random.nextDouble() * 110 - 5;
+            final Geometry polygon = factory.toGeometry(new Envelope(x, x + random.nextDouble() * 0.02, y, y + random.nextDouble() * 0.02));
+            final TreeSet<Integer> polygonPlacement = placement(partitioner, polygon);
+            assertEquals(expectedPlacement(partitioner, polygon.getEnvelopeInternal()), polygonPlacement);
+            assertEquals(new ArrayList<>(polygonPlacement), partitioner.getOverlappingPartitions(polygon.getEnvelopeInternal()));
+            for (int id : polygonPlacement) {
+                assertTrue(id == grids.size() || grids.get(id).intersects(polygon.getEnvelopeInternal()));
+            }
+        }
+    }
+
+    private TreeSet<Integer> placement(ZOrderPartitioner partitioner, Geometry geometry)
+            throws Exception
+    {
+        final TreeSet<Integer> partitionIds = new TreeSet<>();
+        final Iterator<Tuple2<Integer, Geometry>> placements = partitioner.placeObject(geometry);
+        while (placements.hasNext()) {
+            partitionIds.add(placements.next()._1());
+        }
+        return partitionIds;
+    }
+
+    private TreeSet<Integer> expectedPlacement(ZOrderPartitioner partitioner, Envelope envelope)
+    {
+        final TreeSet<Integer> partitionIds = new TreeSet<>();
+        final Envelope clipped = extent.intersection(envelope);
+        if (!clipped.isNull()) {
+            final int minColumn = ZOrderPartitioning.locationMapping(extent.getMinX(), clipped.getMinX(), extent.getMaxX());
+            final int maxColumn = ZOrderPartitioning.locationMapping(extent.getMinX(), clipped.getMaxX(), extent.getMaxX());
+            final int minRow = ZOrderPartitioning.locationMapping(extent.getMinY(), clipped.getMinY(), extent.getMaxY());
+            final int maxRow = ZOrderPartitioning.locationMapping(extent.getMinY(), clipped.getMaxY(), extent.getMaxY());
+            for (int column = minColumn; column <= maxColumn; column++) {
+                for (int row = minRow; row <= maxRow; row++) {
+                    partitionIds.add(ZOrderPartitioning.getPartition(partitioner.getSplits(), ZOrderPartitioning.interleave(column, row)));
+                }
+            }
+        }
+        if (!extent.covers(envelope)) {
+            partitionIds.add(partitioner.getGrids().size());
+        }
+        return partitionIds;
+    }
+
+    private long decodeGeohash(String geohash)
+    {
+        long value = 0;
+        for (char c : geohash.toCharArray()) {
+            value = (value << 5) | GEOHASH_ALPHABET.indexOf(c);
+        }
+        return value;
+    }
+}
@@ -25,13 +25,20 @@
  */
 package org.datasyslab.geospark.spatialRDD;
 
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.SpatialIndex;
 import org.locationtech.jts.index.quadtree.Quadtree;
 import org.locationtech.jts.index.strtree.STRtree;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.storage.StorageLevel;
 import org.datasyslab.geospark.enums.GridType;
 import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData;
+import org.datasyslab.geospark.spatialRddTool.HilbertSorter;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -39,6 +46,8 @@ import org.junit.Test;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 // TODO: Auto-generated Javadoc
 
@@ -122,6 +131,40 @@ public class PointRDDTest
         assert spatialRDD.countWithoutDuplicates() == spatialRDD.countWithoutDuplicatesSPRDD();
     }
 
+    /**
+     * Test geohash partitioning of coordinates beyond longitude and latitude bounds, which falls back to
+     * the Z-order curve over the dataset.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testGeohashPartitioningOutsideWorld()
+            throws Exception
+    {
+        PointRDD lonLatRDD = new PointRDD(sc, InputLocation, offset, splitter, false, 10, StorageLevel.MEMORY_ONLY());
+        JavaRDD<Point> projected = lonLatRDD.rawSpatialRDD.map(new Function<Point, Point>()
+        {
+            @Override
+            public Point call(Point point)
+            {
+                return point.getFactory().createPoint(new Coordinate(point.getX() * 100000, point.getY() * 100000));
+            }
+        });
+        PointRDD spatialRDD = new PointRDD(projected);
+        spatialRDD.analyze();
+        spatialRDD.spatialPartitioning(GridType.GEOHASH, 10);
+
+        assertEquals(GridType.ZORDER, spatialRDD.getPartitioner().getGridType());
+        long total = 0;
+        long max = 0;
+        for (long count : spatialRDD.getPartitionCounts()) {
+            total += count;
+            max = Math.max(max, count);
+        }
+        assertEquals(spatialRDD.approximateTotalCount, total);
+        assertTrue(max < total);
+    }
+
     /**
      * Test R tree spatial partitioing.
      *
@@ -139,6 +182,53 @@ public class PointRDDTest
         assert spatialRDD.countWithoutDuplicates() == spatialRDD.countWithoutDuplicatesSPRDD();
     }
 
+    /**
+     * Test spatial partitioning with samples gathered while analyzing.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testAnalyzeAndSample()
+            throws Exception
+    {
+        PointRDD spatialRDD = new PointRDD(sc, InputLocation, offset, splitter, true, 10);
+        spatialRDD.analyzeAndSample();
+        assertEquals(inputCount, spatialRDD.approximateTotalCount);
+        assertEquals(inputBoundary, spatialRDD.boundaryEnvelope);
+
+        for (GridType gridType : new GridType[] {GridType.RTREE, GridType.QUADTREE, GridType.KDBTREE}) {
+            spatialRDD.spatialPartitioning(gridType);
+            assertEquals(inputCount, spatialRDD.spatialPartitionedRDD.count());
+        }
+    }
+
+    /**
+     * Test sorting the records of every partition along the Hilbert curve.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testSortWithinPartitions()
+            throws Exception
+    {
+        PointRDD spatialRDD = new PointRDD(sc, InputLocation, offset, splitter, true, 10);
+        spatialRDD.setSortWithinPartitions(true);
+        spatialRDD.spatialPartitioning(GridType.KDBTREE);
+        assertEquals(inputCount, spatialRDD.spatialPartitionedRDD.count());
+
+        List<List<Point>> partitions = spatialRDD.spatialPartitionedRDD.glom().collect();
+        for (List<Point> partition : partitions) {
+            Envelope extent = new Envelope();
+            for (Point point : partition) {
+                extent.expandToInclude(point.getCoordinate());
+            }
+            for (int i = 1; i < partition.size(); i++) {
+                assertTrue(HilbertSorter.computeKey(extent, partition.get(i - 1).getEnvelopeInternal())
+                        <= HilbertSorter.computeKey(extent, partition.get(i).getEnvelopeInternal()));
+            }
+        }
+    }
+
     /**
      * Test voronoi spatial partitioing.
      *
@@ -209,6 +299,96 @@ public class PointRDDTest
         }
     }
 
+    /**
+     * Test appending records to a spatially partitioned and indexed RDD.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testAppendPartitioned()
+            throws Exception
+    {
+        PointRDD inputRDD = new PointRDD(sc, InputLocation, offset, splitter, true, numPartitions);
+        JavaRDD<Point>[] splits = inputRDD.rawSpatialRDD.randomSplit(new double[] {0.7, 0.2, 0.1}, 42);
+
+        PointRDD spatialRDD = new PointRDD(splits[0]);
+        spatialRDD.analyze();
+        spatialRDD.spatialPartitioning(GridType.RTREE, 10);
+        spatialRDD.buildIndex(IndexType.RTREE, true);
+        spatialRDD.indexedRDD.persist(StorageLevel.MEMORY_ONLY());
+
+        // A loose threshold merges the new records into the existing partitions
+        assertFalse(spatialRDD.appendPartitioned(splits[1], 100));
+        assertEquals(splits[0].count() + splits[1].count(), spatialRDD.approximateTotalCount);
+        assertEquals(spatialRDD.approximateTotalCount, spatialRDD.spatialPartitionedRDD.count());
+        assertEquals(spatialRDD.approximateTotalCount, countIndexedRecords(spatialRDD));
+
+        // The tightest threshold partitions all records again
+        assertTrue(spatialRDD.appendPartitioned(splits[2], 1));
+        assertEquals(inputCount, spatialRDD.approximateTotalCount);
+        assertEquals(inputBoundary, spatialRDD.boundaryEnvelope);
+        assertEquals(inputCount, spatialRDD.spatialPartitionedRDD.count());
+        assertEquals(inputCount, countIndexedRecords(spatialRDD));
+    }
+
+    /**
+     * Test appending records to a SpatialRDD with record IDs.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testAppendPartitionedWithRecordIds()
+            throws Exception
+    {
+        PointRDD inputRDD = new PointRDD(sc, InputLocation, offset, splitter, true, numPartitions);
+        JavaRDD<Point>[] splits = inputRDD.rawSpatialRDD.randomSplit(new double[] {0.7, 0.2, 0.1}, 42);
+
+        PointRDD spatialRDD = new PointRDD(splits[0]);
+        spatialRDD.assignRecordIds();
+        spatialRDD.analyze();
+        spatialRDD.spatialPartitioning(GridType.RTREE, 10);
+
+        assertFalse(spatialRDD.appendPartitioned(splits[1], 100));
+        assertEquals(spatialRDD.approximateTotalCount, countDistinctRecordIds(spatialRDD));
+
+        assertTrue(spatialRDD.appendPartitioned(splits[2], 1));
+        assertEquals(inputCount, countDistinctRecordIds(spatialRDD));
+    }
+
+    private long countDistinctRecordIds(PointRDD spatialRDD)
+    {
+        return spatialRDD.spatialPartitionedRDD.map(new Function<Point, Long>()
+        {
+            @Override
+            public Long call(Point point)
+                    throws Exception
+            {
+                return IdentifiedUserData.getRecordId(point);
+            }
+        }).distinct().count();
+    }
+
+    private long countIndexedRecords(PointRDD spatialRDD)
+    {
+        return spatialRDD.indexedRDD.map(new Function<SpatialIndex, Long>()
+        {
+            @Override
+            public Long call(SpatialIndex index)
+                    throws Exception
+            {
+                return (long) ((STRtree) index).size();
+            }
+        }).reduce(new Function2<Long, Long, Long>()
+        {
+            @Override
+            public Long call(Long count1, Long count2)
+                    throws Exception
+            {
+                return count1 + count2;
+            }
+        });
+    }
+
     /**
      * Tear down.
      */
@@ -2,16 +2,27 @@ package org.datasyslab.geospark.spatialRDD;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.NullArgumentException;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
 import org.apache.spark.storage.StorageLevel;
 import org.datasyslab.geospark.enums.FileDataSplitter;
+import org.datasyslab.geospark.enums.GridType;
+import org.datasyslab.geospark.enums.IndexType;
+import org.datasyslab.geospark.spatialOperator.JoinQuery;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SpatialRDDWriterTest
         extends SpatialRDDTestBase{
@@ -21,6 +32,10 @@ public class SpatialRDDWriterTest
     private static String testSaveAsEmptyWKB;
     private static String testSaveAsWKT;
     private static String testSaveAsWKTWithData;
+    private static String testSaveAsPartitioned;
+    private static String testSaveAsPartitionedPolygons;
+    private static String polygonInputLocation;
+    private static String queryWindowLocation;
     
     /**
      * Once executed before all.
@@ -37,6 +52,12 @@ public class SpatialRDDWriterTest
         testSaveAsEmptyWKB = wkbFolder + "testSaveAsEmptyWKB";
         testSaveAsWKT = wktFolder + "testSaveAsWKT";
         testSaveAsWKTWithData = wktFolder + "testSaveAsWKTWithData";
+        testSaveAsPartitioned = System.getProperty("user.dir") + "/target/test-classes/partitioned/testSaveAsPartitioned";
+        testSaveAsPartitionedPolygons = System.getProperty("user.dir") + "/target/test-classes/partitioned/testSaveAsPartitionedPolygons";
+
+        ClassLoader classLoader = SpatialRDDWriterTest.class.getClassLoader();
+        polygonInputLocation = "file://" + classLoader.getResource("primaryroads-polygon.csv").getPath();
+        queryWindowLocation = "file://" + classLoader.getResource("zcta510-small.csv").getPath();
 
     }
 
@@ -118,6 +139,99 @@ public class SpatialRDDWriterTest
 
     }
 
+    /**
+     * Test save as partitioned and load the partitions, index and partitioner back.
+     */
+    @Test
+    public void testSaveAsPartitioned() throws Exception {
+        File partitioned = new File(testSaveAsPartitioned);
+        if (partitioned.exists()){FileUtils.deleteDirectory(partitioned);}
+
+        PointRDD spatialRDD = new PointRDD(sc, InputLocation, offset, splitter, true, numPartitions, StorageLevel.MEMORY_ONLY());
+        spatialRDD.analyze();
+        spatialRDD.spatialPartitioning(GridType.KDBTREE, numPartitions);
+        spatialRDD.spatialPartitionedRDD.persist(StorageLevel.MEMORY_ONLY());
+        spatialRDD.buildIndex(IndexType.RTREE, true);
+        spatialRDD.saveAsPartitioned(testSaveAsPartitioned);
+
+        SpatialRDD<Point> result = SpatialRDD.loadPartitioned(sc, testSaveAsPartitioned);
+        assertEquals(spatialRDD.approximateTotalCount, result.approximateTotalCount);
+        assertEquals(spatialRDD.boundaryEnvelope, result.boundaryEnvelope);
+        assertEquals(spatialRDD.getPartitioner().getGrids(), result.getPartitioner().getGrids());
+
+        List<List<Point>> expectedPartitions = spatialRDD.spatialPartitionedRDD.glom().collect();
+        List<List<Point>> resultPartitions = result.spatialPartitionedRDD.glom().collect();
+        assertEquals(expectedPartitions, resultPartitions);
+        assertEquals(resultPartitions.size(), result.indexedRDD.count());
+        assertEquals(spatialRDD.rawSpatialRDD.count(), result.rawSpatialRDD.count());
+        assertFalse(new File(testSaveAsPartitioned, "partitions/_temporary").exists());
+
+        // The other side of a join is partitioned against the loaded partitioner
+        PointRDD otherRDD = new PointRDD(sc, InputLocation, offset, splitter, true, numPartitions, StorageLevel.MEMORY_ONLY());
+        otherRDD.spatialPartitioning(result.getPartitioner());
+        List<List<Point>> otherPartitions = otherRDD.spatialPartitionedRDD.glom().collect();
+        assertEquals(expectedPartitions.size(), otherPartitions.size());
+        for (int i = 0; i < expectedPartitions.size(); i++) {
+            assertEquals(expectedPartitions.get(i).size(), otherPartitions.get(i).size());
+        }
+    }
+
+    /**
+     * Test that loading partitions saved with another serializer fails.
+     */
+    @Test
+    public void testLoadPartitionedWithOtherSerializer() throws Exception {
+        File partitioned = new File(testSaveAsPartitioned + "OtherSerializer");
+        if (partitioned.exists()){FileUtils.deleteDirectory(partitioned);}
+
+        PointRDD spatialRDD = new PointRDD(sc, InputLocation, offset, splitter, true, numPartitions, StorageLevel.MEMORY_ONLY());
+        spatialRDD.analyze();
+        spatialRDD.spatialPartitioning(GridType.KDBTREE, numPartitions);
+        spatialRDD.saveAsPartitioned(partitioned.getPath());
+
+        // Replace the recorded serializer, and drop the checksum of the local file system
+        new File(partitioned, "._metadata.crc").delete();
+        try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(new File(partitioned, "_metadata")))) {
+            output.writeObject("org.example.OtherSerializer");
+        }
+
+        try {
+            SpatialRDD.loadPartitioned(sc, partitioned.getPath());
+            fail("Loading partitions saved with another serializer should fail");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("org.example.OtherSerializer"));
+        }
+    }
+
+    /**
+     * Test joining a loaded RDD of polygons, some of which partitioning placed into several partitions.
+     */
+    @Test
+    public void testJoinLoadedPartitioned() throws Exception {
+        File partitioned = new File(testSaveAsPartitionedPolygons);
+        if (partitioned.exists()){FileUtils.deleteDirectory(partitioned);}
+
+        PolygonRDD spatialRDD = new PolygonRDD(sc, polygonInputLocation, FileDataSplitter.CSV, true, numPartitions, StorageLevel.MEMORY_ONLY());
+        spatialRDD.spatialPartitioning(GridType.QUADTREE, numPartitions);
+        spatialRDD.spatialPartitionedRDD.persist(StorageLevel.MEMORY_ONLY());
+        spatialRDD.buildIndex(IndexType.RTREE, true);
+        spatialRDD.saveAsPartitioned(testSaveAsPartitionedPolygons);
+
+        SpatialRDD<Polygon> result = SpatialRDD.loadPartitioned(sc, testSaveAsPartitionedPolygons);
+        assertTrue(result.spatialPartitionedRDD.partitioner().isPresent());
+        assertEquals(spatialRDD.rawSpatialRDD.count(), result.rawSpatialRDD.count());
+
+        PolygonRDD queryRDD = new PolygonRDD(sc, queryWindowLocation, FileDataSplitter.CSV, true, numPartitions, StorageLevel.MEMORY_ONLY());
+        queryRDD.spatialPartitioning(result.getPartitioner());
+
+        for (boolean useIndex : new boolean[] {false, true}) {
+            long expectedCount = JoinQuery.SpatialJoinQueryFlat(spatialRDD, queryRDD, useIndex, true).count();
+            assertTrue(expectedCount > 0);
+            assertEquals(expectedCount, JoinQuery.SpatialJoinQueryFlat(result, queryRDD, useIndex, true).count());
+        }
+    }
+
     /**
      * Test throws NullArgumentException when Spatial RDD is null.
      *
@@ -14,6 +14,9 @@ class GridType(Enum):
     VORONOI = "VORONOI"
     QUADTREE = "QUADTREE"
     KDBTREE = "KDBTREE"
+    ZORDER = "ZORDER"
+    GEOHASH = "GEOHASH"
+    HISTOGRAM = "HISTOGRAM"
 
     @classmethod
     def from_str(cls, grid: str) -> 'GridType':
@@ -10,6 +10,7 @@ class IndexType(Enum):
 
     QUADTREE = "QUADTREE"
     RTREE = "RTREE"
+    PACKED_RTREE = "PACKED_RTREE"
 
     @classmethod
     def from_string(cls, index: str):
@@ -90,3 +90,20 @@ class TestRDDSerialization(TestBase):
 
     def test_rectangle_rdd(self):
         pass
+
+    def test_rdd_with_record_ids(self):
+        point_rdd = PointRDD(
+            sparkContext=self.sc,
+            InputLocation=point_rdd_input_location,
+            Offset=point_rdd_offset,
+            splitter=point_rdd_splitter,
+            carryInputData=True
+        )
+        expected_data = [[geo_data.geom.wkt, geo_data.userData] for geo_data in point_rdd.getRawSpatialRDD().collect()]
+
+        point_rdd.get_srdd().assignRecordIds()
+        assert point_rdd.get_srdd().hasRecordIds()
+
+        collected_data = point_rdd.getRawSpatialRDD().collect()
+
+        assert [[geo_data.geom.wkt, geo_data.userData] for geo_data in collected_data] == expected_data
@@ -18,7 +18,7 @@ package org.apache.spark.sql.geosparksql.strategy.join
 
 import org.apache.spark.sql.Strategy
 import org.apache.spark.sql.catalyst.expressions.{Expression, LessThan, LessThanOrEqual}
-import org.apache.spark.sql.catalyst.plans.Inner
+import org.apache.spark.sql.catalyst.plans.{Inner, LeftAnti, LeftSemi}
 import org.apache.spark.sql.catalyst.plans.logical.{Join, LogicalPlan}
 import org.apache.spark.sql.execution.SparkPlan
 import org.apache.spark.sql.geosparksql.expressions._
@@ -28,6 +28,10 @@ import org.apache.spark.sql.geosparksql.expressions._
   * and ST_Intersects(a, b).
   *
   * Plans `DistanceJoinExec` for inner joins on spatial relationship ST_Distance(a, b) < r.
+  *
+  * Plans `SpatialSemiJoinExec` for left semi and left anti joins, which include EXISTS and
+  * NOT EXISTS subqueries, on spatial relationships ST_Contains(a, b), ST_Intersects(a, b)
+  * and ST_Within(a, b).
   */
 object JoinQueryDetector extends Strategy {
 
@@ -90,10 +94,57 @@ object JoinQueryDetector extends Strategy {
     case Join(left, right, Inner, Some(ST_Crosses(Seq(leftShape, rightShape)))) =>
       planSpatialJoin(right, left, Seq(rightShape, leftShape), false)
 
+    // LEFT SEMI JOIN / EXISTS on ST_Contains(a, b), ST_Intersects(a, b) and ST_Within(a, b)
+    case Join(left, right, LeftSemi, Some(ST_Contains(Seq(leftShape, rightShape)))) =>
+      planSemiJoin(left, right, Seq(leftShape, rightShape), false, false)
+
+    case Join(left, right, LeftSemi, Some(ST_Intersects(Seq(leftShape, rightShape)))) =>
+      planSemiJoin(left, right, Seq(leftShape, rightShape), true, false)
+
+    case Join(left, right, LeftSemi, Some(ST_Within(Seq(leftShape, rightShape)))) =>
+      planSemiJoin(left, right, Seq(rightShape, leftShape), false, false)
+
+    // LEFT ANTI JOIN / NOT EXISTS on ST_Contains(a, b), ST_Intersects(a, b) and ST_Within(a, b)
+    case Join(left, right, LeftAnti, Some(ST_Contains(Seq(leftShape, rightShape)))) =>
+      planSemiJoin(left, right, Seq(leftShape, rightShape), false, true)
+
+    case Join(left, right, LeftAnti, Some(ST_Intersects(Seq(leftShape, rightShape)))) =>
+      planSemiJoin(left, right, Seq(leftShape, rightShape), true, true)
+
+    case Join(left, right, LeftAnti, Some(ST_Within(Seq(leftShape, rightShape)))) =>
+      planSemiJoin(left, right, Seq(rightShape, leftShape), false, true)
+
     case _ =>
       Nil
   }
 
+  /**
+    * @param children arguments of ST_Contains or ST_Intersects; the first one contains or
+    *                 intersects the second one
+    */
+  private def planSemiJoin(left: LogicalPlan,
+                           right: LogicalPlan,
+                           children: Seq[Expression],
+                           intersects: Boolean,
+                           anti: Boolean): Seq[SparkPlan] = {
+    val a = children.head
+    val b = children.tail.head
+
+    val joinType = if (anti) "anti" else "semi"
+
+    matchExpressionsToPlans(a, b, left, right) match {
+      case Some((planA, _)) if planA eq left =>
+        logInfo(s"Planning spatial $joinType join")
+        SpatialSemiJoinExec(planLater(left), planLater(right), a, b, true, intersects, anti) :: Nil
+      case Some(_) =>
+        logInfo(s"Planning spatial $joinType join")
+        SpatialSemiJoinExec(planLater(left), planLater(right), b, a, false, intersects, anti) :: Nil
+      case None =>
+        logInfo(s"Spatial $joinType join with arguments not aligned with join relations is not supported")
+        Nil
+    }
+  }
+
   private def planSpatialJoin(left: LogicalPlan,
                               right: LogicalPlan,
                               children: Seq[Expression],
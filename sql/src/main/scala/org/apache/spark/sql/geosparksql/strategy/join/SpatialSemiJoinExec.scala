@@ -0,0 +1,86 @@
+/*
+ * FILE: SpatialSemiJoinExec.scala
+ * Copyright (c) 2015 - 2019 GeoSpark Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.spark.sql.geosparksql.strategy.join
+
+import org.apache.spark.internal.Logging
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.catalyst.expressions.{Attribute, BindReferences, Expression, UnsafeRow}
+import org.apache.spark.sql.execution.{BinaryExecNode, SparkPlan}
+import org.datasyslab.geospark.enums.JoinSparitionDominantSide
+import org.datasyslab.geospark.geometryObjects.IdentifiedUserData
+import org.datasyslab.geospark.spatialOperator.JoinQuery
+import org.datasyslab.geospark.spatialOperator.JoinQuery.JoinParams
+import org.datasyslab.geospark.utils.GeoSparkConf
+
+/**
+  * LEFT SEMI JOIN or LEFT ANTI JOIN on ST_Contains or ST_Intersects, including
+  * EXISTS and NOT EXISTS subqueries rewritten into such joins.
+  *
+  * Returns rows of the left side with (semi) or without (anti) at least one matching row
+  * on the right side. Probing stops at the first match of each left row.
+  *
+  * @param left        left side of the join; the rows to return
+  * @param right       right side of the join
+  * @param leftShape   expression for the geometry of the left side
+  * @param rightShape  expression for the geometry of the right side
+  * @param leftIsFirst true if leftShape is the first argument of ST_Contains or ST_Intersects
+  * @param intersects  boolean indicating whether spatial relationship is 'intersects' (true)
+  *                    or 'contains' (false)
+  * @param anti        true for an anti-join, false for a semi-join
+  */
+case class SpatialSemiJoinExec(left: SparkPlan,
+                               right: SparkPlan,
+                               leftShape: Expression,
+                               rightShape: Expression,
+                               leftIsFirst: Boolean,
+                               intersects: Boolean,
+                               anti: Boolean,
+                               extraCondition: Option[Expression] = None)
+  extends BinaryExecNode
+    with TraitJoinQueryExec
+    with Logging {
+
+  override def output: Seq[Attribute] = left.output
+
+  override protected def doExecute(): RDD[InternalRow] = {
+    val boundLeftShape = BindReferences.bindReference(leftShape, left.output)
+    val boundRightShape = BindReferences.bindReference(rightShape, right.output)
+
+    val leftResultsRaw = left.execute().asInstanceOf[RDD[UnsafeRow]]
+    val rightResultsRaw = right.execute().asInstanceOf[RDD[UnsafeRow]]
+
+    val geosparkConf = new GeoSparkConf(sparkContext.conf)
+    val (leftShapes, rightShapes) =
+      toSpatialRddPair(leftResultsRaw, boundLeftShape, rightResultsRaw, boundRightShape)
+
+    // Rows with equal geometries must not be merged when the left side is de-duplicated
+    leftShapes.assignRecordIds()
+
+    // Partitioners may drop geometries outside of the extent of their dominant side, which
+    // would turn into false positives of an anti-join
+    val dominantSide = if (anti) JoinSparitionDominantSide.LEFT else geosparkConf.getJoinSparitionDominantSide
+    partitionShapes(leftShapes, rightShapes, geosparkConf, dominantSide)
+
+    val joinParams = new JoinParams(intersects, geosparkConf.getIndexType, geosparkConf.getJoinBuildSide)
+    val rows = JoinQuery.semiJoin(leftShapes, rightShapes, joinParams, leftIsFirst, anti)
+
+    rows.rdd.map { shape =>
+      IdentifiedUserData.getOriginalUserData(shape).asInstanceOf[UnsafeRow]
+    }
+  }
+}
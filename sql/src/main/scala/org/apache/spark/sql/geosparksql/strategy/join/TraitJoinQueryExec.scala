@@ -23,7 +23,7 @@ import org.apache.spark.sql.catalyst.expressions.codegen.GenerateUnsafeRowJoiner
 import org.apache.spark.sql.catalyst.expressions.{Attribute, BindReferences, Expression, UnsafeRow}
 import org.apache.spark.sql.catalyst.util.ArrayData
 import org.apache.spark.sql.execution.SparkPlan
-import org.datasyslab.geospark.enums.JoinSparitionDominantSide
+import org.datasyslab.geospark.enums.{JoinAlgorithm, JoinSparitionDominantSide}
 import org.datasyslab.geospark.spatialOperator.JoinQuery
 import org.datasyslab.geospark.spatialOperator.JoinQuery.JoinParams
 import org.datasyslab.geospark.spatialRDD.SpatialRDD
@@ -62,26 +62,76 @@ trait TraitJoinQueryExec {
     val (leftShapes, rightShapes) =
       toSpatialRddPair(leftResultsRaw, boundLeftShape, rightResultsRaw, boundRightShape)
 
+    // A broadcast join probes the raw RDD of the larger side, so neither side needs to be partitioned
+    if (geosparkConf.getJoinAlgorithm != JoinAlgorithm.BROADCAST) {
+      partitionShapes(leftShapes, rightShapes, geosparkConf, geosparkConf.getJoinSparitionDominantSide)
+    }
+
+    val joinParams = new JoinParams(intersects, geosparkConf.getIndexType, geosparkConf.getJoinBuildSide,
+      geosparkConf.getJoinAlgorithm, geosparkConf.getJoinSkewFactor,
+      geosparkConf.getJoinAdaptiveNestedLoopMaxPairs, geosparkConf.getJoinAdaptiveLopsidedRatio)
+
+    //logInfo(s"leftShape count ${leftShapes.spatialPartitionedRDD.count()}")
+    //logInfo(s"rightShape count ${rightShapes.spatialPartitionedRDD.count()}")
+
+    val matches = JoinQuery.spatialJoin(leftShapes, rightShapes, joinParams)
+
+    logDebug(s"Join result has ${matches.count()} rows")
+
+    matches.rdd.mapPartitions { iter =>
+      val filtered =
+        if (extraCondition.isDefined) {
+          val boundCondition = newPredicate(extraCondition.get, left.output ++ right.output)
+          iter.filter {
+            case (l, r) =>
+              val leftRow = l.getUserData.asInstanceOf[UnsafeRow]
+              val rightRow = r.getUserData.asInstanceOf[UnsafeRow]
+              var joiner = GenerateUnsafeRowJoiner.create(left.schema, right.schema)
+              boundCondition.eval(joiner.join(leftRow, rightRow))
+          }
+        } else {
+          iter
+        }
+
+      filtered.map {
+        case (l, r) =>
+          val leftRow = l.getUserData.asInstanceOf[UnsafeRow]
+          val rightRow = r.getUserData.asInstanceOf[UnsafeRow]
+          var joiner = GenerateUnsafeRowJoiner.create(left.schema, right.schema)
+          joiner.join(leftRow, rightRow)
+      }
+    }
+  }
+
+  /**
+    * Spatially partitions both sides of the join with a partitioner built on the dominant side.
+    */
+  protected def partitionShapes(leftShapes: SpatialRDD[Geometry], rightShapes: SpatialRDD[Geometry],
+                                geosparkConf: GeoSparkConf, dominantSide: JoinSparitionDominantSide): Unit = {
     // Only do SpatialRDD analyze when the user doesn't know approximate total count of the spatial partitioning
     // dominant side rdd
     if (geosparkConf.getJoinApproximateTotalCount == -1) {
-      if (geosparkConf.getJoinSparitionDominantSide == JoinSparitionDominantSide.LEFT) {
-        leftShapes.analyze()
+      // Sample the dominant side in the same pass, for as many partitions as the optimizer may choose,
+      // so that spatial partitioning doesn't scan it again
+      val maxNumPartitions = Math.max(geosparkConf.getFallbackPartitionNum,
+        Math.max(leftShapes.rawSpatialRDD.partitions.size(), rightShapes.rawSpatialRDD.partitions.size()))
+      if (dominantSide == JoinSparitionDominantSide.LEFT) {
+        leftShapes.analyzeAndSample(maxNumPartitions)
         geosparkConf.setJoinApproximateTotalCount(leftShapes.approximateTotalCount)
         geosparkConf.setDatasetBoundary(leftShapes.boundaryEnvelope)
       }
       else {
-        rightShapes.analyze()
+        rightShapes.analyzeAndSample(maxNumPartitions)
         geosparkConf.setJoinApproximateTotalCount(rightShapes.approximateTotalCount)
         geosparkConf.setDatasetBoundary(rightShapes.boundaryEnvelope)
       }
     }
-    log.info("[GeoSparkSQL] Number of partitions on the left: " + leftResultsRaw.partitions.size)
-    log.info("[GeoSparkSQL] Number of partitions on the right: " + rightResultsRaw.partitions.size)
+    log.info("[GeoSparkSQL] Number of partitions on the left: " + leftShapes.rawSpatialRDD.partitions.size())
+    log.info("[GeoSparkSQL] Number of partitions on the right: " + rightShapes.rawSpatialRDD.partitions.size())
 
     var numPartitions = -1
     try {
-      if (geosparkConf.getJoinSparitionDominantSide == JoinSparitionDominantSide.LEFT) {
+      if (dominantSide == JoinSparitionDominantSide.LEFT) {
         if (geosparkConf.getFallbackPartitionNum != -1) {
           numPartitions = geosparkConf.getFallbackPartitionNum
         }
@@ -108,7 +158,7 @@ trait TraitJoinQueryExec {
         print(e.getMessage)
         // Partition number are not qualified
         // Use fallback num partitions specified in GeoSparkConf
-        if (geosparkConf.getJoinSparitionDominantSide == JoinSparitionDominantSide.LEFT) {
+        if (dominantSide == JoinSparitionDominantSide.LEFT) {
           numPartitions = geosparkConf.getFallbackPartitionNum
           doSpatialPartitioning(leftShapes, rightShapes, numPartitions, geosparkConf)
         }
@@ -118,40 +168,6 @@ trait TraitJoinQueryExec {
         }
       }
     }
-
-
-    val joinParams = new JoinParams(intersects, geosparkConf.getIndexType, geosparkConf.getJoinBuildSide)
-
-    //logInfo(s"leftShape count ${leftShapes.spatialPartitionedRDD.count()}")
-    //logInfo(s"rightShape count ${rightShapes.spatialPartitionedRDD.count()}")
-
-    val matches = JoinQuery.spatialJoin(leftShapes, rightShapes, joinParams)
-
-    logDebug(s"Join result has ${matches.count()} rows")
-
-    matches.rdd.mapPartitions { iter =>
-      val filtered =
-        if (extraCondition.isDefined) {
-          val boundCondition = newPredicate(extraCondition.get, left.output ++ right.output)
-          iter.filter {
-            case (l, r) =>
-              val leftRow = l.getUserData.asInstanceOf[UnsafeRow]
-              val rightRow = r.getUserData.asInstanceOf[UnsafeRow]
-              var joiner = GenerateUnsafeRowJoiner.create(left.schema, right.schema)
-              boundCondition.eval(joiner.join(leftRow, rightRow))
-          }
-        } else {
-          iter
-        }
-
-      filtered.map {
-        case (l, r) =>
-          val leftRow = l.getUserData.asInstanceOf[UnsafeRow]
-          val rightRow = r.getUserData.asInstanceOf[UnsafeRow]
-          var joiner = GenerateUnsafeRowJoiner.create(left.schema, right.schema)
-          joiner.join(leftRow, rightRow)
-      }
-    }
   }
 
   protected def toSpatialRdd(rdd: RDD[UnsafeRow],
@@ -179,6 +195,9 @@ trait TraitJoinQueryExec {
 
   def doSpatialPartitioning(dominantShapes: SpatialRDD[Geometry], followerShapes: SpatialRDD[Geometry],
                             numPartitions: Integer, geosparkConf: GeoSparkConf): Unit = {
+    // Let index builds and probes visit the geometries of each partition in Hilbert curve order
+    dominantShapes.setSortWithinPartitions(geosparkConf.getJoinSortWithinPartitions)
+    followerShapes.setSortWithinPartitions(geosparkConf.getJoinSortWithinPartitions)
     dominantShapes.spatialPartitioning(geosparkConf.getJoinGridType, numPartitions)
     followerShapes.spatialPartitioning(dominantShapes.getPartitioner)
   }
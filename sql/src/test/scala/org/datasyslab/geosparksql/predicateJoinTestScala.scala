@@ -381,5 +381,26 @@ class predicateJoinTestScala extends TestBaseScala {
       equalJoinDf.show(3)
       assert(equalJoinDf.count() == 0, s"Expected 0 but got ${equalJoinDf.count()}")
     }
+
+    it("Passed ST_Contains in a semi join and an anti join") {
+      var polygonCsvDf = sparkSession.read.format("csv").option("delimiter", ",").option("header", "false").load(csvPolygonInputLocation)
+      polygonCsvDf.createOrReplaceTempView("polygontable")
+      var polygonDf = sparkSession.sql("select ST_PolygonFromEnvelope(cast(polygontable._c0 as Decimal(24,20)),cast(polygontable._c1 as Decimal(24,20)), cast(polygontable._c2 as Decimal(24,20)), cast(polygontable._c3 as Decimal(24,20))) as polygonshape from polygontable")
+      polygonDf.createOrReplaceTempView("polygondf")
+
+      var pointCsvDF = sparkSession.read.format("csv").option("delimiter", ",").option("header", "false").load(csvPointInputLocation)
+      pointCsvDF.createOrReplaceTempView("pointtable")
+      var pointDf = sparkSession.sql("select ST_Point(cast(pointtable._c0 as Decimal(24,20)),cast(pointtable._c1 as Decimal(24,20))) as pointshape from pointtable")
+      pointDf.createOrReplaceTempView("pointdf")
+
+      var semiJoinDf = sparkSession.sql("select * from polygondf left semi join pointdf on ST_Contains(polygondf.polygonshape,pointdf.pointshape)")
+      semiJoinDf.explain()
+      var antiJoinDf = sparkSession.sql("select * from polygondf where not exists (select * from pointdf where ST_Contains(polygondf.polygonshape,pointdf.pointshape))")
+      antiJoinDf.explain()
+
+      var expectedSemiCount = sparkSession.sql("select distinct polygondf.polygonshape from polygondf, pointdf where ST_Contains(polygondf.polygonshape,pointdf.pointshape)").count()
+      assert(semiJoinDf.distinct().count() == expectedSemiCount)
+      assert(semiJoinDf.count() + antiJoinDf.count() == polygonDf.count())
+    }
   }
 }